@@ -0,0 +1,223 @@
+package ai;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import model.Cell;
+import model.PlacementKernels;
+
+/**
+ * 
+ * A bot that keeps improving its answer until the deadline, so it plays as well
+ * as the time it's given allows. It always has a move ready: first it works out
+ * a density heuristic, which only takes microseconds, and if that's all there was
+ * time for, that's the move. Then it hands half the time left to a LayoutSampler,
+ * and once that has drawn enough layouts, the square most likely to have a ship on
+ * it is the move instead. Last, if the samples only disagree about a few squares,
+ * the rest of the time goes to an EndgameSolver, and if it finishes, its shot is
+ * the move, since it's perfect.
+ * 
+ * Boards come up again and again across games, so density maps, the best
+ * sample estimates and solved endgames are kept in TranspositionCaches shared by
+ * every match on the server, keyed by the board's hash. That hash mixes in the
+ * mode's fleet, so games with different ships never share an answer. A board that
+ * has been solved is answered straight from the cache, and one that has been
+ * sampled enough skips straight to the endgame check.
+ * 
+ * Given a PlacementBias and who it's playing, the density heuristic and the
+ * sampler's layouts are also weighted toward the squares that player tends to put
+ * ships on. The cached density maps and estimates are always the plain ones, since
+ * every player shares them, so a weighted estimate is sampled fresh every time.
+ * The endgame solver still counts every layout the same.
+ * 
+ * The board doesn't say which ships are sunk, so every ship is assumed to still be
+ * somewhere on it, and every hit has to be covered by some ship.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class AnytimeStrategy implements Strategy {
+	/**
+	 * How many samples it takes before they're trusted over the density heuristic.
+	 */
+	public static final int MIN_SAMPLES = 32;
+	/**
+	 * How many sampler chains to run at once.
+	 */
+	public static final int CHAINS = 4;
+	/**
+	 * The most uncertain squares there can be for the endgame solver to be tried.
+	 */
+	public static final int ENDGAME_CELLS = 12;
+	/**
+	 * How many samples a cached estimate needs before it's used without sampling more.
+	 */
+	public static final long SETTLED_SAMPLES = 1 << 15;
+	/**
+	 * Density maps by board hash, shared by every match.
+	 */
+	private static final TranspositionCache<double[]> DENSITY_CACHE = new TranspositionCache<double[]>(1 << 14);
+	/**
+	 * The estimate with the most samples seen for each board hash, shared by every match.
+	 */
+	private static final TranspositionCache<CellProbabilities> ESTIMATE_CACHE =
+			new TranspositionCache<CellProbabilities>(1 << 12);
+	/**
+	 * Perfect shots from the endgame solver by board hash, shared by every match.
+	 */
+	private static final TranspositionCache<Integer> SOLVED_CACHE = new TranspositionCache<Integer>(1 << 12);
+	/**
+	 * How much more a placement counts in the density heuristic for each hit it covers.
+	 */
+	private static final double HIT_WEIGHT = 20;
+	/**
+	 * How much more a square counts in the density heuristic for each ship the
+	 * opponent usually has on it.
+	 */
+	private static final double BIAS_WEIGHT = 2;
+	/**
+	 * What's been learned about where players put their ships, or null to not use it.
+	 */
+	private final PlacementBias bias;
+	/**
+	 * The name of the player whose ships are being shot at.
+	 */
+	private final String opponent;
+	
+	/**
+	 * The constructor, for playing without knowing who the opponent is. This is
+	 * the one ServiceLoader uses.
+	 */
+	public AnytimeStrategy() {
+		this(null, null);
+	}
+	
+	/**
+	 * The constructor, for playing someone whose past games are known.
+	 * 
+	 * @param bias what's been learned about where players put their ships
+	 * @param opponent the name of the player whose ships are being shot at
+	 */
+	public AnytimeStrategy(PlacementBias bias, String opponent) {
+		this.bias = bias;
+		this.opponent = opponent;
+	}
+	
+	/**
+	 * Get the name of this strategy.
+	 * 
+	 * @return "anytime"
+	 */
+	@Override
+	public String getName() {
+		return "anytime";
+	}
+	
+	/**
+	 * Picks the best shot it can find before the deadline.
+	 * 
+	 * @param board what's known about the other grid
+	 * @param deadlineNanos when the answer is due, in System.nanoTime() terms
+	 * @return the shot, or Cell.NONE if every square has been shot
+	 */
+	@Override
+	public int chooseShot(OpponentBoard board, long deadlineNanos) {
+		long hash = board.getHash();
+		Integer solved = SOLVED_CACHE.get(hash);
+		if (solved != null) {
+			return solved;
+		}
+		double[] density = DENSITY_CACHE.get(hash);
+		if (density == null) {
+			density = density(board);
+			DENSITY_CACHE.put(hash, density);
+		}
+		double[] cellWeights = null;
+		if (bias != null && bias.getGames(opponent) > 0) {
+			double[] prior = bias.prior(opponent);
+			cellWeights = new double[density.length];
+			double[] biased = new double[density.length];
+			for (int cell = 0; cell < density.length; cell++) {
+				cellWeights[cell] = 1 + BIAS_WEIGHT * prior[cell];
+				biased[cell] = density[cell] * cellWeights[cell];
+			}
+			density = biased;
+		}
+		int best = best(board, density);
+		CellProbabilities estimate;
+		if (cellWeights != null) {
+			long now = System.nanoTime();
+			estimate = new LayoutSampler(board, board.getShipLengths(), cellWeights).estimate(CHAINS, Long.MAX_VALUE,
+					ThreadLocalRandom.current().nextLong(), now + (deadlineNanos - now) / 2);
+		} else {
+			estimate = ESTIMATE_CACHE.get(hash);
+		}
+		if (cellWeights == null && (estimate == null || estimate.getSamples() < SETTLED_SAMPLES)) {
+			long now = System.nanoTime();
+			CellProbabilities fresh = new LayoutSampler(board).estimate(CHAINS, Long.MAX_VALUE,
+					ThreadLocalRandom.current().nextLong(), now + (deadlineNanos - now) / 2);
+			if (estimate == null || fresh.getSamples() > estimate.getSamples()) {
+				ESTIMATE_CACHE.put(hash, fresh);
+				estimate = fresh;
+			}
+		}
+		if (estimate.getSamples() >= MIN_SAMPLES) {
+			best = estimate.best(board);
+			if (estimate.countUncertain(board) <= ENDGAME_CELLS) {
+				EndgameSolver solver = new EndgameSolver(board);
+				if (solver.solve(deadlineNanos)) {
+					SOLVED_CACHE.put(hash, solver.getBestShot());
+					best = solver.getBestShot();
+				}
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Scores every square by how many ways a ship could be lying across it.
+	 * 
+	 * Every horizontal and vertical spot for every ship is counted, unless it
+	 * crosses a miss. Spots that cover hits count for a lot more, so once
+	 * something has been hit, the squares next to it come out on top.
+	 * 
+	 * @param board what's known about the other grid
+	 * @return a score for each cell, row * size + column
+	 */
+	public static double[] density(OpponentBoard board) {
+		int size = board.getSize();
+		long[] missRows = new long[size];
+		long[] hitRows = new long[size];
+		for (int outerArray = 0; outerArray < size; outerArray++) {
+			for (int innerArray = 0; innerArray < size; innerArray++) {
+				if (board.isMiss(outerArray, innerArray)) {
+					missRows[outerArray] |= 1L << innerArray;
+				} else if (board.isHit(outerArray, innerArray)) {
+					hitRows[outerArray] |= 1L << innerArray;
+				}
+			}
+		}
+		double[] scores = new double[size * size];
+		PlacementKernels.density(missRows, hitRows, size, board.getShipLengths(), HIT_WEIGHT, scores);
+		return scores;
+	}
+	
+	/**
+	 * Picks the square that hasn't been shot with the best density score.
+	 * 
+	 * @param board what's known about the other grid
+	 * @param density the density scores
+	 * @return the best square, or Cell.NONE if every square has been shot
+	 */
+	private static int best(OpponentBoard board, double[] density) {
+		int size = board.getSize();
+		int bestCell = Cell.NONE;
+		for (int cell = 0; cell < size * size; cell++) {
+			if (board.isUnknown(cell / size, cell % size)
+					&& (bestCell < 0 || density[cell] > density[bestCell])) {
+				bestCell = cell;
+			}
+		}
+		return bestCell;
+	}
+}
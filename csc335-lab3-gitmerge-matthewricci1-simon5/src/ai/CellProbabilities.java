@@ -0,0 +1,119 @@
+package ai;
+
+import model.Cell;
+
+/**
+ * 
+ * How likely each square is to have a ship on it, as estimated by a LayoutSampler,
+ * with a standard error for each estimate. The estimates come from several
+ * independent chains: the probability is the average over the chains, and the
+ * standard error is how much the chains disagree, divided by the square root of
+ * the number of chains.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class CellProbabilities {
+	/**
+	 * The number of rows, which is also the number of columns.
+	 */
+	private final int size;
+	/**
+	 * The estimated probability for each cell, row * size + column.
+	 */
+	private final double[] probabilities;
+	/**
+	 * The standard error of each estimate.
+	 */
+	private final double[] standardErrors;
+	/**
+	 * How many layouts the estimates are based on, over all chains.
+	 */
+	private final long samples;
+	
+	/**
+	 * The constructor. Only LayoutSampler makes these.
+	 * 
+	 * @param size the number of rows
+	 * @param probabilities the estimate for each cell
+	 * @param standardErrors the standard error for each cell
+	 * @param samples how many layouts were drawn
+	 */
+	CellProbabilities(int size, double[] probabilities, double[] standardErrors, long samples) {
+		this.size = size;
+		this.probabilities = probabilities;
+		this.standardErrors = standardErrors;
+		this.samples = samples;
+	}
+	
+	/**
+	 * Get the estimated probability that a square has a ship on it.
+	 * 
+	 * Squares that have already been shot are always 0.
+	 * 
+	 * @param outerArray the row
+	 * @param innerArray the column
+	 * @return the probability, between 0 and 1
+	 */
+	public double getProbability(int outerArray, int innerArray) {
+		return probabilities[outerArray * size + innerArray];
+	}
+	
+	/**
+	 * Get the standard error of a square's estimate.
+	 * 
+	 * @param outerArray the row
+	 * @param innerArray the column
+	 * @return the standard error, or infinity if there were fewer than two chains
+	 */
+	public double getStandardError(int outerArray, int innerArray) {
+		return standardErrors[outerArray * size + innerArray];
+	}
+	
+	/**
+	 * Get how many layouts were drawn for these estimates.
+	 * 
+	 * @return the number of samples over all chains
+	 */
+	public long getSamples() {
+		return samples;
+	}
+	
+	/**
+	 * Counts the squares the samples disagree on.
+	 * 
+	 * A square that hasn't been shot and had a ship in some samples but not all
+	 * of them is still uncertain. When there are only a few of these, the game
+	 * is nearly over and an EndgameSolver can finish it exactly.
+	 * 
+	 * @param board what's known about the other grid
+	 * @return how many squares are uncertain
+	 */
+	public int countUncertain(OpponentBoard board) {
+		int uncertain = 0;
+		for (int cell = 0; cell < probabilities.length; cell++) {
+			if (board.isUnknown(cell / size, cell % size) && probabilities[cell] > 0 && probabilities[cell] < 1) {
+				uncertain++;
+			}
+		}
+		return uncertain;
+	}
+	
+	/**
+	 * Finds the square that hasn't been shot with the highest probability.
+	 * 
+	 * @param board what's known about the other grid
+	 * @return the best square, or Cell.NONE if every square has been shot
+	 */
+	public int best(OpponentBoard board) {
+		int bestCell = Cell.NONE;
+		for (int cell = 0; cell < probabilities.length; cell++) {
+			if (board.isUnknown(cell / size, cell % size)
+					&& (bestCell < 0 || probabilities[cell] > probabilities[bestCell])) {
+				bestCell = cell;
+			}
+		}
+		return bestCell;
+	}
+}
@@ -0,0 +1,642 @@
+package ai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import model.Cell;
+import model.Zobrist;
+
+/**
+ * 
+ * Plays the end of a game perfectly. Once only a handful of fleet layouts still
+ * fit the board, it lists every one of them and works out, exactly, which shot
+ * finishes the game in the fewest shots on average, counting every layout as
+ * equally likely. That makes it the strongest move there is, and also a yardstick
+ * for how far the quicker strategies are from perfect.
+ * 
+ * The search goes shot by shot: after each possible shot, the layouts split into
+ * the ones it would hit and the ones it would miss, and the search carries on in
+ * each. What's known about the board decides which layouts are left, so results
+ * are remembered by the board's Zobrist hash and reused wherever the same board
+ * comes up again. A shot isn't searched at all if even a best case for it can't
+ * beat the best shot found so far, since every layout needs at least one more shot
+ * per ship square that hasn't been hit.
+ * 
+ * The first shots are searched in parallel, on a pool with a fixed number of
+ * threads that the solver is given or shares with every other solver. The best
+ * value found so far is shared between them, so a good shot found on one thread
+ * prunes the others, and since remembered results are exact whichever thread
+ * found them, they all share one memo too. solve() waits for every search before
+ * it returns. If the calling thread is interrupted, like a StrategyRunner does
+ * when time's up, a shared flag stops every search.
+ * 
+ * It gives up, and solve() returns false, if there are more than MAX_LAYOUTS
+ * layouts, the deadline comes first or the calling thread is interrupted.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class EndgameSolver {
+	/**
+	 * The most layouts the solver will take on.
+	 */
+	public static final int MAX_LAYOUTS = 20_000;
+	/**
+	 * The pool solvers use when they aren't given one, with a thread per core.
+	 */
+	private static final ThreadPoolExecutor SHARED_POOL = newSharedPool();
+	/**
+	 * What's known about the other grid.
+	 */
+	private final OpponentBoard board;
+	/**
+	 * The number of rows, which is also the number of columns.
+	 */
+	private final int size;
+	/**
+	 * The lengths of the ships to place.
+	 */
+	private final int[] shipSizes;
+	/**
+	 * The low 64 cells of each distinct layout's ship squares.
+	 */
+	private long[] layoutLow;
+	/**
+	 * The cells past 64 of each distinct layout's ship squares.
+	 */
+	private long[] layoutHigh;
+	/**
+	 * How many ways each distinct layout can be made with the fleet.
+	 */
+	private double[] weights;
+	/**
+	 * Expected shots left for each board searched so far, by hash.
+	 */
+	private final Map<Long, Double> memo = new ConcurrentHashMap<Long, Double>();
+	/**
+	 * Where the first shots are searched.
+	 */
+	private final Executor pool;
+	/**
+	 * Set to stop every search, when the caller is interrupted or one of them
+	 * runs out of time.
+	 */
+	private final AtomicBoolean cancelled = new AtomicBoolean();
+	/**
+	 * When to give up, in System.nanoTime() terms.
+	 */
+	private long deadlineNanos;
+	/**
+	 * The best shot, once solved.
+	 */
+	private int bestShot = Cell.NONE;
+	/**
+	 * The expected number of shots left with perfect play, once solved.
+	 */
+	private double expectedShots = Double.NaN;
+	
+	/**
+	 * The constructor, for the fleet of the board's mode.
+	 * 
+	 * @param board what's known about the other grid
+	 */
+	public EndgameSolver(OpponentBoard board) {
+		this(board, board.getShipLengths());
+	}
+	
+	/**
+	 * The constructor, for any fleet.
+	 * 
+	 * @param board what's known about the other grid
+	 * @param shipSizes the lengths of the ships to place
+	 */
+	public EndgameSolver(OpponentBoard board, int[] shipSizes) {
+		this(board, shipSizes, SHARED_POOL);
+	}
+	
+	/**
+	 * The constructor, for any fleet, with the pool to search on.
+	 * 
+	 * @param board what's known about the other grid
+	 * @param shipSizes the lengths of the ships to place
+	 * @param pool where the first shots are searched, which should have a fixed
+	 * number of threads
+	 */
+	public EndgameSolver(OpponentBoard board, int[] shipSizes, Executor pool) {
+		this.pool = pool;
+		this.board = board;
+		this.size = board.getSize();
+		this.shipSizes = shipSizes.clone();
+	}
+	
+	/**
+	 * Lists the layouts and searches for the best shot.
+	 * 
+	 * @param deadlineNanos when to give up, in System.nanoTime() terms
+	 * @return true if it was solved, false if there were too many layouts, too
+	 * little time, the calling thread was interrupted, or no layout fits the
+	 * board at all
+	 */
+	public boolean solve(long deadlineNanos) {
+		this.deadlineNanos = deadlineNanos;
+		cancelled.set(Thread.currentThread().isInterrupted());
+		if (size * size > 128) {
+			return false;
+		}
+		try {
+			if (!enumerate()) {
+				return false;
+			}
+			long shotLow = 0;
+			long shotHigh = 0;
+			for (int cell = 0; cell < size * size; cell++) {
+				if (!board.isUnknown(cell / size, cell % size)) {
+					if (cell < 64) {
+						shotLow |= 1L << cell;
+					} else {
+						shotHigh |= 1L << (cell - 64);
+					}
+				}
+			}
+			int[] members = IntStream.range(0, weights.length).filter((layout) -> remaining(layout, board)).toArray();
+			if (members.length == 0) {
+				return false;
+			}
+			solveRoot(members, shotLow, shotHigh);
+			return true;
+		} catch (OutOfTime e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Get the best shot found by solve().
+	 * 
+	 * @return the shot, as a Cell, or Cell.NONE if it wasn't solved
+	 */
+	public int getBestShot() {
+		return bestShot;
+	}
+	
+	/**
+	 * Get how many more shots it takes on average to finish, with perfect play.
+	 * 
+	 * @return the expected number of shots, counting the next one, or NaN if it
+	 * wasn't solved
+	 */
+	public double getExpectedShots() {
+		return expectedShots;
+	}
+	
+	/**
+	 * Get how many different sets of ship squares fit the board.
+	 * 
+	 * @return the number of distinct layouts, or 0 before solve()
+	 */
+	public int getLayoutCount() {
+		return weights == null ? 0 : weights.length;
+	}
+	
+	/**
+	 * Searches every first shot in parallel and keeps the best.
+	 * 
+	 * Each shot is only searched as far as it takes to tell it can't beat the
+	 * best one so far, on any thread. Only a shot that's strictly better than the
+	 * best so far replaces it, since a pruned shot's value is just a best case.
+	 * 
+	 * @param members the layouts that are still possible
+	 * @param shotLow the low 64 cells that have been shot
+	 * @param shotHigh the cells past 64 that have been shot
+	 */
+	private void solveRoot(int[] members, long shotLow, long shotHigh) {
+		long hash = board.getHash();
+		int[] candidates = candidates(members, shotLow, shotHigh);
+		AtomicReference<Best> best = new AtomicReference<Best>(new Best(Double.POSITIVE_INFINITY, candidates[0]));
+		CountDownLatch finished = new CountDownLatch(candidates.length);
+		for (int cell : candidates) {
+			Runnable search = () -> {
+				try {
+					if (stopped()) {
+						return;
+					}
+					double value = shotValue(members, shotLow, shotHigh, hash, cell, best.get().value);
+					Best found = new Best(value, cell);
+					best.accumulateAndGet(found, (current, next) -> next.value < current.value ? next : current);
+				} catch (OutOfTime e) {
+					cancelled.set(true);
+				} finally {
+					finished.countDown();
+				}
+			};
+			try {
+				pool.execute(search);
+			} catch (RejectedExecutionException e) {
+				search.run();
+			}
+		}
+		boolean interrupted = false;
+		while (true) {
+			try {
+				finished.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+				cancelled.set(true);
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (cancelled.get()) {
+			throw OutOfTime.INSTANCE;
+		}
+		Best chosen = best.get();
+		bestShot = chosen.cell;
+		expectedShots = chosen.value;
+		memo.put(hash, expectedShots);
+	}
+	
+	/**
+	 * Checks if the search should stop.
+	 * 
+	 * @return true if the deadline has passed or the search was cancelled
+	 */
+	private boolean stopped() {
+		return cancelled.get() || System.nanoTime() >= deadlineNanos;
+	}
+	
+	/**
+	 * Makes the pool solvers share when they aren't given one.
+	 * 
+	 * @return a pool with a daemon thread per core
+	 */
+	private static ThreadPoolExecutor newSharedPool() {
+		int threads = Runtime.getRuntime().availableProcessors();
+		AtomicLong count = new AtomicLong();
+		return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, 
+				new LinkedBlockingQueue<Runnable>(), (runnable) -> {
+			Thread thread = new Thread(runnable, "endgame-solver-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Works out the expected shots left, with perfect play, from a board.
+	 * 
+	 * @param members the layouts that are still possible, none of them finished
+	 * @param shotLow the low 64 cells that have been shot
+	 * @param shotHigh the cells past 64 that have been shot
+	 * @param hash the board's Zobrist hash
+	 * @return the expected number of shots to finish
+	 */
+	private double expected(int[] members, long shotLow, long shotHigh, long hash) {
+		if (members.length == 0) {
+			return 0;
+		}
+		Double known = memo.get(hash);
+		if (known != null) {
+			return known;
+		}
+		if (stopped()) {
+			throw OutOfTime.INSTANCE;
+		}
+		double best = Double.POSITIVE_INFINITY;
+		for (int cell : candidates(members, shotLow, shotHigh)) {
+			best = Math.min(best, shotValue(members, shotLow, shotHigh, hash, cell, best));
+		}
+		memo.put(hash, best);
+		return best;
+	}
+	
+	/**
+	 * Works out the expected shots to finish if the next shot is at a cell.
+	 * 
+	 * If a best case for this shot can't beat the bound, it isn't searched, and
+	 * the best case is returned instead, which is no better than the bound.
+	 * 
+	 * @param members the layouts that are still possible
+	 * @param shotLow the low 64 cells that have been shot
+	 * @param shotHigh the cells past 64 that have been shot
+	 * @param hash the board's Zobrist hash
+	 * @param cell the cell to shoot
+	 * @param bound the best value found so far for this board
+	 * @return the expected number of shots to finish, counting this one
+	 */
+	private double shotValue(int[] members, long shotLow, long shotHigh, long hash, int cell, double bound) {
+		long newLow = cell < 64 ? shotLow | (1L << cell) : shotLow;
+		long newHigh = cell < 64 ? shotHigh : shotHigh | (1L << (cell - 64));
+		List<Integer> hitList = new ArrayList<Integer>();
+		List<Integer> missList = new ArrayList<Integer>();
+		double total = 0;
+		double hitWeight = 0;
+		double missWeight = 0;
+		double lowerBound = 0;
+		for (int layout : members) {
+			total += weights[layout];
+			int left = shipSquaresLeft(layout, newLow, newHigh);
+			if (covers(layout, cell)) {
+				//Layouts this shot finishes need nothing more.
+				if (left > 0) {
+					hitList.add(layout);
+					hitWeight += weights[layout];
+				}
+			} else {
+				missList.add(layout);
+				missWeight += weights[layout];
+			}
+			lowerBound += weights[layout] * left;
+		}
+		double bestCase = 1 + lowerBound / total;
+		if (bestCase >= bound) {
+			return bestCase;
+		}
+		int[] hits = hitList.stream().mapToInt(Integer::intValue).toArray();
+		int[] misses = missList.stream().mapToInt(Integer::intValue).toArray();
+		double afterHit = hits.length == 0 ? 0 : expected(hits, newLow, newHigh, hash ^ Zobrist.shot(cell, 'h'));
+		double afterMiss = misses.length == 0 ? 0 : expected(misses, newLow, newHigh, hash ^ Zobrist.shot(cell, 'm'));
+		return 1 + (hitWeight * afterHit + missWeight * afterMiss) / total;
+	}
+	
+	/**
+	 * Lists the cells worth shooting: ones that haven't been shot and have a
+	 * ship on them in at least one layout. The likeliest hits come first, so
+	 * good shots are found early and prune the rest.
+	 * 
+	 * @param members the layouts that are still possible
+	 * @param shotLow the low 64 cells that have been shot
+	 * @param shotHigh the cells past 64 that have been shot
+	 * @return the cells, likeliest first
+	 */
+	private int[] candidates(int[] members, long shotLow, long shotHigh) {
+		double[] hitWeight = new double[size * size];
+		for (int layout : members) {
+			for (int cell = 0; cell < size * size; cell++) {
+				if (covers(layout, cell)) {
+					hitWeight[cell] += weights[layout];
+				}
+			}
+		}
+		return IntStream.range(0, size * size)
+				.filter((cell) -> hitWeight[cell] > 0 && !isShot(cell, shotLow, shotHigh))
+				.boxed()
+				.sorted((a, b) -> Double.compare(hitWeight[b], hitWeight[a]))
+				.mapToInt(Integer::intValue)
+				.toArray();
+	}
+	
+	/**
+	 * Lists every layout of the fleet that fits the board.
+	 * 
+	 * Layouts with the same ship squares are merged, with a weight for how many
+	 * ways there are to make them.
+	 * 
+	 * @return true if there weren't too many, false if not
+	 */
+	private boolean enumerate() {
+		Map<Occupancy, double[]> found = new HashMap<Occupancy, double[]>();
+		long[] count = new long[1];
+		int hits = 0;
+		int shipSquares = 0;
+		for (int cell = 0; cell < size * size; cell++) {
+			if (board.isHit(cell / size, cell % size)) {
+				hits++;
+			}
+		}
+		for (int length : shipSizes) {
+			shipSquares += length;
+		}
+		if (!place(0, 0, 0, hits, shipSquares, found, count)) {
+			return false;
+		}
+		layoutLow = new long[found.size()];
+		layoutHigh = new long[found.size()];
+		weights = new double[found.size()];
+		int i = 0;
+		for (Map.Entry<Occupancy, double[]> entry : found.entrySet()) {
+			layoutLow[i] = entry.getKey().low;
+			layoutHigh[i] = entry.getKey().high;
+			weights[i] = entry.getValue()[0];
+			i++;
+		}
+		return true;
+	}
+	
+	/**
+	 * Places the rest of the fleet every way it fits, starting with one ship.
+	 * 
+	 * @param ship the index of the ship to place next
+	 * @param low the low 64 cells taken so far
+	 * @param high the cells past 64 taken so far
+	 * @param hitsLeft how many hits aren't covered yet
+	 * @param squaresLeft how many ship squares are left to place
+	 * @param found the layouts found so far, with their weights
+	 * @param count how many layouts have been found, counting repeats
+	 * @return true if there weren't too many, false if not
+	 */
+	private boolean place(int ship, long low, long high, int hitsLeft, int squaresLeft,
+			Map<Occupancy, double[]> found, long[] count) {
+		if (hitsLeft > squaresLeft) {
+			return true;
+		}
+		if (ship == shipSizes.length) {
+			if (hitsLeft == 0) {
+				if (++count[0] > MAX_LAYOUTS) {
+					return false;
+				}
+				found.computeIfAbsent(new Occupancy(low, high), (key) -> new double[1])[0]++;
+			}
+			return true;
+		}
+		if (stopped()) {
+			throw OutOfTime.INSTANCE;
+		}
+		int length = shipSizes[ship];
+		for (int dir = 0; dir < 2; dir++) {
+			int rowStep = dir == 0 ? 1 : 0;
+			int colStep = dir == 0 ? 0 : 1;
+			for (int outerArray = 0; outerArray + (length - 1) * rowStep < size; outerArray++) {
+				for (int innerArray = 0; innerArray + (length - 1) * colStep < size; innerArray++) {
+					long newLow = low;
+					long newHigh = high;
+					int covered = 0;
+					boolean fits = true;
+					for (int i = 0; i < length && fits; i++) {
+						int row = outerArray + i * rowStep;
+						int col = innerArray + i * colStep;
+						int cell = row * size + col;
+						if (board.isMiss(row, col) || isShot(cell, newLow, newHigh)) {
+							fits = false;
+						} else {
+							if (board.isHit(row, col)) {
+								covered++;
+							}
+							if (cell < 64) {
+								newLow |= 1L << cell;
+							} else {
+								newHigh |= 1L << (cell - 64);
+							}
+						}
+					}
+					if (fits && !place(ship + 1, newLow, newHigh, hitsLeft - covered, squaresLeft - length, found, count)) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks if a layout still has ship squares that haven't been hit.
+	 * 
+	 * @param layout the layout
+	 * @param board what's known about the other grid
+	 * @return true if the game wouldn't be over yet with that layout
+	 */
+	private boolean remaining(int layout, OpponentBoard board) {
+		for (int cell = 0; cell < size * size; cell++) {
+			if (covers(layout, cell) && board.isUnknown(cell / size, cell % size)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Counts the ship squares of a layout that haven't been shot.
+	 * 
+	 * @param layout the layout
+	 * @param shotLow the low 64 cells that have been shot
+	 * @param shotHigh the cells past 64 that have been shot
+	 * @return how many shots that layout needs at least
+	 */
+	private int shipSquaresLeft(int layout, long shotLow, long shotHigh) {
+		return Long.bitCount(layoutLow[layout] & ~shotLow) + Long.bitCount(layoutHigh[layout] & ~shotHigh);
+	}
+	
+	/**
+	 * Checks if a layout has a ship on a cell.
+	 * 
+	 * @param layout the layout
+	 * @param cell the cell
+	 * @return true if it does, false if not
+	 */
+	private boolean covers(int layout, int cell) {
+		return cell < 64 ? (layoutLow[layout] & (1L << cell)) != 0 : (layoutHigh[layout] & (1L << (cell - 64))) != 0;
+	}
+	
+	/**
+	 * Checks if a cell is in a pair of masks.
+	 * 
+	 * @param cell the cell
+	 * @param low the low 64 cells
+	 * @param high the cells past 64
+	 * @return true if it is, false if not
+	 */
+	private static boolean isShot(int cell, long low, long high) {
+		return cell < 64 ? (low & (1L << cell)) != 0 : (high & (1L << (cell - 64))) != 0;
+	}
+	
+	/**
+	 * 
+	 * The ship squares of one layout, as a pair of masks, for spotting repeats.
+	 *
+	 */
+	private static final class Occupancy {
+		/**
+		 * The low 64 cells.
+		 */
+		private final long low;
+		/**
+		 * The cells past 64.
+		 */
+		private final long high;
+		
+		/**
+		 * The constructor.
+		 * 
+		 * @param low the low 64 cells
+		 * @param high the cells past 64
+		 */
+		private Occupancy(long low, long high) {
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Occupancy && ((Occupancy) other).low == low && ((Occupancy) other).high == high;
+		}
+		
+		@Override
+		public int hashCode() {
+			return Long.hashCode(low * 31 + high);
+		}
+	}
+	
+	/**
+	 * 
+	 * The best first shot found so far, and its value.
+	 *
+	 */
+	private static final class Best {
+		/**
+		 * The expected number of shots to finish.
+		 */
+		private final double value;
+		/**
+		 * The cell to shoot.
+		 */
+		private final int cell;
+		
+		/**
+		 * The constructor.
+		 * 
+		 * @param value the expected number of shots to finish
+		 * @param cell the cell to shoot
+		 */
+		private Best(double value, int cell) {
+			this.value = value;
+			this.cell = cell;
+		}
+	}
+	
+	/**
+	 * 
+	 * Thrown to stop the search when the deadline passes or it's cancelled. It's
+	 * only ever caught inside this class, so one instance with no stack trace does.
+	 *
+	 */
+	private static final class OutOfTime extends RuntimeException {
+		/**
+		 * For serialization, which never happens.
+		 */
+		private static final long serialVersionUID = 1L;
+		/**
+		 * The one instance.
+		 */
+		private static final OutOfTime INSTANCE = new OutOfTime();
+		
+		/**
+		 * The constructor, with no stack trace.
+		 */
+		private OutOfTime() {
+			super(null, null, false, false);
+		}
+	}
+}
@@ -0,0 +1,416 @@
+package ai;
+
+import java.util.Arrays;
+
+import model.PlacementKernels;
+
+/**
+ *
+ * Works out what the hits and misses on the other grid prove, without guessing.
+ * A square is impossible when no ship that's still afloat fits across it without
+ * crossing a miss, so there's no point shooting it. A square is certain when some
+ * hit can only be covered by ships that all run through it, so shooting it is
+ * a guaranteed hit.
+ *
+ * Every ship covering a square lies along that square's row or column, so a shot
+ * can only change what's known about its own row and column. shot() only redoes
+ * those, using PlacementKernels to slide every ship along the row and down the
+ * column at once, and then redoes the hits in that row and column. Everything is
+ * kept as bit masks, one long per row, so checking a square is a shift and an AND.
+ *
+ * It's only as good as the ship lengths it's given. With the whole fleet, the
+ * length one ships can cover any hit on their own, so nothing is certain until
+ * they're known to be sunk.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class InferenceEngine {
+	/**
+	 * The number of rows, which is also the number of columns.
+	 */
+	private final int size;
+	/**
+	 * The lengths of the ships still afloat, smallest first, without repeats.
+	 */
+	private int[] lengths;
+	/**
+	 * Each row, with a bit set for each column that was a miss.
+	 */
+	private final long[] missRows;
+	/**
+	 * Each column, with a bit set for each row that was a miss.
+	 */
+	private final long[] missCols;
+	/**
+	 * Each row, with a bit set for each column that was a hit.
+	 */
+	private final long[] hitRows;
+	/**
+	 * Each row, with a bit set for each column some ship could cover lying along the row.
+	 */
+	private final long[] acrossCover;
+	/**
+	 * Each column, with a bit set for each row some ship could cover lying down the column.
+	 */
+	private final long[] downCover;
+	/**
+	 * For each hit square, the columns in its row every covering ship runs through,
+	 * if every covering ship lies along the row. Otherwise 0.
+	 */
+	private final long[] forcedAcross;
+	/**
+	 * For each hit square, the rows in its column every covering ship runs through,
+	 * if every covering ship lies down the column. Otherwise 0.
+	 */
+	private final long[] forcedDown;
+	/**
+	 * Each row, with a bit set for each column that's certain to be a hit.
+	 */
+	private final long[] certainRows;
+
+	/**
+	 * The constructor, for an empty grid.
+	 *
+	 * @param size the number of rows, which is also the number of columns
+	 * @param remainingLengths the lengths of the ships still afloat
+	 */
+	public InferenceEngine(int size, int[] remainingLengths) {
+		if (size > PlacementKernels.MAX_SIZE) {
+			throw new IllegalArgumentException("Grid too big: " + size);
+		}
+		this.size = size;
+		this.lengths = distinct(remainingLengths);
+		this.missRows = new long[size];
+		this.missCols = new long[size];
+		this.hitRows = new long[size];
+		this.acrossCover = new long[size];
+		this.downCover = new long[size];
+		this.forcedAcross = new long[size * size];
+		this.forcedDown = new long[size * size];
+		this.certainRows = new long[size];
+		recompute();
+	}
+
+	/**
+	 * Makes an engine that already knows every shot on a board.
+	 *
+	 * @param board what's known about the other grid
+	 * @param remainingLengths the lengths of the ships still afloat
+	 * @return the engine
+	 */
+	public static InferenceEngine of(OpponentBoard board, int[] remainingLengths) {
+		InferenceEngine engine = new InferenceEngine(board.getSize(), remainingLengths);
+		for (int outerArray = 0; outerArray < engine.size; outerArray++) {
+			for (int innerArray = 0; innerArray < engine.size; innerArray++) {
+				if (board.isMiss(outerArray, innerArray)) {
+					engine.mark(outerArray, innerArray, false);
+				} else if (board.isHit(outerArray, innerArray)) {
+					engine.mark(outerArray, innerArray, true);
+				}
+			}
+		}
+		engine.recompute();
+		return engine;
+	}
+
+	/**
+	 * Takes in one shot, and updates its row and column.
+	 *
+	 * Shooting a square that was already shot does nothing.
+	 *
+	 * @param outerArray the row that was shot
+	 * @param innerArray the column that was shot
+	 * @param hit true if it was a hit, false if it was a miss
+	 */
+	public void shot(int outerArray, int innerArray, boolean hit) {
+		if (isShot(outerArray, innerArray)) {
+			return;
+		}
+		mark(outerArray, innerArray, hit);
+		acrossCover[outerArray] = coverAcross(outerArray);
+		downCover[innerArray] = coverDown(innerArray);
+		long row = hitRows[outerArray];
+		while (row != 0) {
+			int col = Long.numberOfTrailingZeros(row);
+			row &= row - 1;
+			forceHit(outerArray, col);
+		}
+		for (int other = 0; other < size; other++) {
+			if (other != outerArray && isHit(other, innerArray)) {
+				forceHit(other, innerArray);
+			}
+		}
+		collectCertain();
+	}
+
+	/**
+	 * Changes which ships are still afloat, say once one is known to be sunk, and
+	 * works everything out again.
+	 *
+	 * @param remainingLengths the lengths of the ships still afloat
+	 */
+	public void setRemaining(int[] remainingLengths) {
+		lengths = distinct(remainingLengths);
+		recompute();
+	}
+
+	/**
+	 * Works everything out from scratch, row by row and column by column.
+	 */
+	public void recompute() {
+		for (int i = 0; i < size; i++) {
+			acrossCover[i] = coverAcross(i);
+			downCover[i] = coverDown(i);
+		}
+		Arrays.fill(forcedAcross, 0);
+		Arrays.fill(forcedDown, 0);
+		for (int outerArray = 0; outerArray < size; outerArray++) {
+			long row = hitRows[outerArray];
+			while (row != 0) {
+				int col = Long.numberOfTrailingZeros(row);
+				row &= row - 1;
+				forceHit(outerArray, col);
+			}
+		}
+		collectCertain();
+	}
+
+	/**
+	 * Checks if no ship still afloat can be on a square. Squares that were shot
+	 * aren't impossible, they're just known.
+	 *
+	 * @param outerArray the row
+	 * @param innerArray the column
+	 * @return true if the square can't have a ship on it, false if not
+	 */
+	public boolean isImpossible(int outerArray, int innerArray) {
+		return ((getImpossibleRow(outerArray) >>> innerArray) & 1) != 0;
+	}
+
+	/**
+	 * Checks if a square that hasn't been shot must have a ship on it.
+	 *
+	 * @param outerArray the row
+	 * @param innerArray the column
+	 * @return true if shooting it is a sure hit, false if not
+	 */
+	public boolean isCertain(int outerArray, int innerArray) {
+		return ((certainRows[outerArray] >>> innerArray) & 1) != 0;
+	}
+
+	/**
+	 * Get the impossible squares in a row.
+	 *
+	 * @param outerArray the row
+	 * @return a bit set for each column in the row that can't have a ship on it
+	 */
+	public long getImpossibleRow(int outerArray) {
+		long covered = acrossCover[outerArray];
+		for (int innerArray = 0; innerArray < size; innerArray++) {
+			covered |= ((downCover[innerArray] >>> outerArray) & 1) << innerArray;
+		}
+		return ~covered & ~missRows[outerArray] & ~hitRows[outerArray] & full();
+	}
+
+	/**
+	 * Get the certain squares in a row.
+	 *
+	 * @param outerArray the row
+	 * @return a bit set for each column in the row that must have a ship on it
+	 */
+	public long getCertainRow(int outerArray) {
+		return certainRows[outerArray];
+	}
+
+	/**
+	 * Counts the impossible squares on the whole grid.
+	 *
+	 * @return how many squares can't have a ship on them
+	 */
+	public int countImpossible() {
+		int count = 0;
+		for (int outerArray = 0; outerArray < size; outerArray++) {
+			count += Long.bitCount(getImpossibleRow(outerArray));
+		}
+		return count;
+	}
+
+	/**
+	 * Finds a square that's certain to be a hit.
+	 *
+	 * @return the square's cell, row * size + column, or -1 if there isn't one
+	 */
+	public int firstCertain() {
+		for (int outerArray = 0; outerArray < size; outerArray++) {
+			if (certainRows[outerArray] != 0) {
+				return outerArray * size + Long.numberOfTrailingZeros(certainRows[outerArray]);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Records a shot in the hit and miss masks, without working anything out.
+	 *
+	 * @param outerArray the row
+	 * @param innerArray the column
+	 * @param hit true if it was a hit, false if it was a miss
+	 */
+	private void mark(int outerArray, int innerArray, boolean hit) {
+		if (hit) {
+			hitRows[outerArray] |= 1L << innerArray;
+		} else {
+			missRows[outerArray] |= 1L << innerArray;
+			missCols[innerArray] |= 1L << outerArray;
+		}
+	}
+
+	/**
+	 * Checks if a square has been shot.
+	 *
+	 * @param outerArray the row
+	 * @param innerArray the column
+	 * @return true if it's a hit or a miss, false if not
+	 */
+	private boolean isShot(int outerArray, int innerArray) {
+		return (((missRows[outerArray] | hitRows[outerArray]) >>> innerArray) & 1) != 0;
+	}
+
+	/**
+	 * Checks if a square is a hit.
+	 *
+	 * @param outerArray the row
+	 * @param innerArray the column
+	 * @return true if it's a hit, false if not
+	 */
+	private boolean isHit(int outerArray, int innerArray) {
+		return ((hitRows[outerArray] >>> innerArray) & 1) != 0;
+	}
+
+	/**
+	 * Finds every column in a row that some ship could cover lying along the row.
+	 *
+	 * @param outerArray the row
+	 * @return a bit set for each coverable column
+	 */
+	private long coverAcross(int outerArray) {
+		return cover(~missRows[outerArray] & full());
+	}
+
+	/**
+	 * Finds every row in a column that some ship could cover lying down the column.
+	 *
+	 * @param innerArray the column
+	 * @return a bit set for each coverable row
+	 */
+	private long coverDown(int innerArray) {
+		return cover(~missCols[innerArray] & full());
+	}
+
+	/**
+	 * Slides every ship along a line and marks everything it can cover.
+	 *
+	 * @param free the line, with a bit set for each square that isn't a miss
+	 * @return a bit set for each square some ship can cover
+	 */
+	private long cover(long free) {
+		long covered = 0;
+		for (int length : lengths) {
+			long starts = PlacementKernels.windowStarts(free, length);
+			for (int i = 0; i < length; i++) {
+				covered |= starts << i;
+			}
+		}
+		return covered;
+	}
+
+	/**
+	 * Works out what a hit forces: the squares every ship that could cover it
+	 * runs through. If some ship could cover it either way, only the hit itself
+	 * is forced, so nothing new is learned.
+	 *
+	 * @param outerArray the hit's row
+	 * @param innerArray the hit's column
+	 */
+	private void forceHit(int outerArray, int innerArray) {
+		long across = intersect(~missRows[outerArray] & full(), innerArray);
+		long down = intersect(~missCols[innerArray] & full(), outerArray);
+		int cell = outerArray * size + innerArray;
+		//-1 means no ship fits that way at all.
+		forcedAcross[cell] = (down == -1 && across != -1) ? across : 0;
+		forcedDown[cell] = (across == -1 && down != -1) ? down : 0;
+	}
+
+	/**
+	 * Intersects every spot along a line where a ship could cover one square.
+	 *
+	 * @param free the line, with a bit set for each square that isn't a miss
+	 * @param at where the square is on the line
+	 * @return the squares every such spot covers, or -1 if there aren't any spots
+	 */
+	private long intersect(long free, int at) {
+		long common = -1;
+		for (int length : lengths) {
+			long starts = PlacementKernels.windowStarts(free, length);
+			//Only the starts from at - length + 1 to at cover the square.
+			long near = (1L << (at + 1)) - 1;
+			if (at - length + 1 > 0) {
+				near &= ~((1L << (at - length + 1)) - 1);
+			}
+			starts &= near;
+			while (starts != 0) {
+				int start = Long.numberOfTrailingZeros(starts);
+				starts &= starts - 1;
+				common &= ((1L << length) - 1) << start;
+			}
+		}
+		return common;
+	}
+
+	/**
+	 * Rebuilds the certain masks from what each hit forces.
+	 */
+	private void collectCertain() {
+		Arrays.fill(certainRows, 0);
+		for (int outerArray = 0; outerArray < size; outerArray++) {
+			long row = hitRows[outerArray];
+			while (row != 0) {
+				int innerArray = Long.numberOfTrailingZeros(row);
+				row &= row - 1;
+				int cell = outerArray * size + innerArray;
+				certainRows[outerArray] |= forcedAcross[cell];
+				long down = forcedDown[cell];
+				while (down != 0) {
+					int other = Long.numberOfTrailingZeros(down);
+					down &= down - 1;
+					certainRows[other] |= 1L << innerArray;
+				}
+			}
+		}
+		for (int outerArray = 0; outerArray < size; outerArray++) {
+			certainRows[outerArray] &= ~hitRows[outerArray] & ~missRows[outerArray];
+		}
+	}
+
+	/**
+	 * Get a mask with a bit set for every square on a line.
+	 *
+	 * @return the mask
+	 */
+	private long full() {
+		return (1L << size) - 1;
+	}
+
+	/**
+	 * Sorts the lengths and drops the repeats, since two ships the same length
+	 * fit in the same places.
+	 *
+	 * @param remainingLengths the lengths of the ships still afloat
+	 * @return the distinct lengths, smallest first
+	 */
+	private static int[] distinct(int[] remainingLengths) {
+		return Arrays.stream(remainingLengths).distinct().sorted().toArray();
+	}
+}
@@ -0,0 +1,558 @@
+package ai;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.Directions;
+
+/**
+ * 
+ * Estimates where the ships are by drawing fleet layouts that fit the board,
+ * without ever listing them all, so it still works on boards and fleets far too
+ * big to enumerate. Layouts follow the same rules as placing ships in the game:
+ * every ship in the fleet, each at an origin square and pointing UP or LEFT,
+ * none overlapping, none on a miss, and between them covering every hit.
+ * 
+ * Each chain is a Markov chain over layouts. It starts from a layout found by
+ * random placement, then over and over picks a ship, or a pair of ships, and
+ * proposes moving them to random spots, keeping the move only if the layout still
+ * fits. Moving pairs matters: a ship on a hit can never leave it by itself, but a
+ * pair move can hand the hit over to another ship. Every proposal is as likely as
+ * its reverse, so in the long run every layout that fits is equally likely. Each
+ * chain has its own random number stream split from the seed, so the same seed
+ * gives the same estimates.
+ * 
+ * Layouts don't have to be equally likely. Given a weight for each square, a
+ * layout is as likely as the product of the weights of its ship squares, which is
+ * how what a PlacementBias learned about a player gets into the estimates. Since
+ * proposals are still as likely as their reverses, a move is kept with the chance
+ * of the new layout's weight over the old one's, when that's less than one.
+ * 
+ * The chains run in parallel on a pool with a fixed number of threads, either one
+ * the sampler is given or one shared by every sampler, so lots of bots sampling at
+ * once queue up for the same few threads instead of each starting their own.
+ * estimate() waits for every chain before it returns. If the calling thread is
+ * interrupted, say by a StrategyRunner whose deadline passed, every chain is told
+ * to stop, and estimate() still waits for them so nothing is left running.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class LayoutSampler {
+	/**
+	 * How many moves a chain makes before it starts counting.
+	 */
+	private static final int BURN_IN = 200;
+	/**
+	 * How many times a chain tries to place its first layout before giving up.
+	 */
+	private static final int START_TRIES = 10_000;
+	/**
+	 * How many random spots to try for one ship when placing a first layout.
+	 */
+	private static final int PLACEMENT_TRIES = 64;
+	/**
+	 * The pool samplers use when they aren't given one, with a thread per core.
+	 */
+	private static final ThreadPoolExecutor SHARED_POOL = newSharedPool();
+	/**
+	 * What's known about the other grid.
+	 */
+	private final OpponentBoard board;
+	/**
+	 * The number of rows, which is also the number of columns.
+	 */
+	private final int size;
+	/**
+	 * The lengths of the ships to place.
+	 */
+	private final int[] shipSizes;
+	/**
+	 * How much each square counts toward a layout's likelihood, or null if every
+	 * layout is equally likely.
+	 */
+	private final double[] cellWeights;
+	/**
+	 * Where the chains run.
+	 */
+	private final Executor pool;
+	
+	/**
+	 * The constructor, for the fleet of the board's mode.
+	 * 
+	 * @param board what's known about the other grid
+	 */
+	public LayoutSampler(OpponentBoard board) {
+		this(board, board.getShipLengths());
+	}
+	
+	/**
+	 * The constructor, for any fleet.
+	 * 
+	 * @param board what's known about the other grid
+	 * @param shipSizes the lengths of the ships to place
+	 */
+	public LayoutSampler(OpponentBoard board, int[] shipSizes) {
+		this(board, shipSizes, null);
+	}
+	
+	/**
+	 * The constructor, for any fleet, with some squares more likely to have ships.
+	 * 
+	 * @param board what's known about the other grid
+	 * @param shipSizes the lengths of the ships to place
+	 * @param cellWeights how much each square counts, row * size + column, all
+	 * above zero, or null for every layout to be equally likely
+	 */
+	public LayoutSampler(OpponentBoard board, int[] shipSizes, double[] cellWeights) {
+		this(board, shipSizes, cellWeights, SHARED_POOL);
+	}
+	
+	/**
+	 * The constructor, with the pool to run the chains on.
+	 * 
+	 * @param board what's known about the other grid
+	 * @param shipSizes the lengths of the ships to place
+	 * @param cellWeights how much each square counts, row * size + column, all
+	 * above zero, or null for every layout to be equally likely
+	 * @param pool where the chains run, which should have a fixed number of threads
+	 */
+	public LayoutSampler(OpponentBoard board, int[] shipSizes, double[] cellWeights, Executor pool) {
+		this.pool = pool;
+		this.board = board;
+		this.size = board.getSize();
+		this.shipSizes = shipSizes.clone();
+		if (cellWeights != null) {
+			if (cellWeights.length != size * size) {
+				throw new IllegalArgumentException("Need a weight for each of the " + size * size + " squares.");
+			}
+			for (double weight : cellWeights) {
+				if (!(weight > 0) || Double.isInfinite(weight)) {
+					throw new IllegalArgumentException("Square weights have to be above zero: " + weight);
+				}
+			}
+			cellWeights = cellWeights.clone();
+		}
+		this.cellWeights = cellWeights;
+	}
+	
+	/**
+	 * Estimates the chance of a ship on each square.
+	 * 
+	 * Each chain stops after samplesPerChain layouts or at the deadline, whichever
+	 * comes first. A chain that only gets a thread after the deadline, or after
+	 * the caller was interrupted, draws nothing. Chains that couldn't find a first
+	 * layout don't count. If the caller is interrupted, it's still interrupted
+	 * when this returns.
+	 * 
+	 * @param chains how many chains to run in parallel
+	 * @param samplesPerChain the most layouts each chain draws
+	 * @param seed the seed all the chains' random number streams are split from
+	 * @param deadlineNanos when to stop, in System.nanoTime() terms
+	 * @return the estimates, with standard errors
+	 */
+	public CellProbabilities estimate(int chains, long samplesPerChain, long seed, long deadlineNanos) {
+		SplittableRandom root = new SplittableRandom(seed);
+		long[][] counts = new long[chains][];
+		long[] drawn = new long[chains];
+		AtomicBoolean cancelled = new AtomicBoolean(Thread.currentThread().isInterrupted());
+		CountDownLatch finished = new CountDownLatch(chains);
+		for (int chain = 0; chain < chains; chain++) {
+			int which = chain;
+			SplittableRandom random = root.split();
+			counts[chain] = new long[size * size];
+			Runnable work = () -> {
+				try {
+					drawn[which] = runChain(random, samplesPerChain, deadlineNanos, counts[which], cancelled);
+				} finally {
+					finished.countDown();
+				}
+			};
+			try {
+				pool.execute(work);
+			} catch (RejectedExecutionException e) {
+				work.run();
+			}
+		}
+		boolean interrupted = false;
+		while (true) {
+			try {
+				finished.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+				cancelled.set(true);
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return summarize(counts, drawn);
+	}
+	
+	/**
+	 * Makes the pool samplers share when they aren't given one.
+	 * 
+	 * @return a pool with a daemon thread per core
+	 */
+	private static ThreadPoolExecutor newSharedPool() {
+		int threads = Runtime.getRuntime().availableProcessors();
+		AtomicLong count = new AtomicLong();
+		return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, 
+				new LinkedBlockingQueue<Runnable>(), (runnable) -> {
+			Thread thread = new Thread(runnable, "layout-sampler-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Runs one chain, counting how often each square has a ship on it.
+	 * 
+	 * @param random this chain's random number stream
+	 * @param samples the most layouts to draw
+	 * @param deadlineNanos when to stop, in System.nanoTime() terms
+	 * @param counts how many layouts had a ship on each cell, added to
+	 * @param cancelled set when the caller wants every chain to stop
+	 * @return how many layouts were drawn
+	 */
+	private long runChain(SplittableRandom random, long samples, long deadlineNanos, long[] counts,
+			AtomicBoolean cancelled) {
+		if (cancelled.get() || System.nanoTime() >= deadlineNanos) {
+			return 0;
+		}
+		int[] owner = new int[size * size];
+		int[] origins = new int[shipSizes.length];
+		Directions[] dirs = new Directions[shipSizes.length];
+		if (!start(random, owner, origins, dirs)) {
+			return 0;
+		}
+		for (int step = 0; step < BURN_IN; step++) {
+			propose(random, owner, origins, dirs);
+		}
+		long drawn = 0;
+		while (drawn < samples && System.nanoTime() < deadlineNanos && !cancelled.get()) {
+			for (int step = 0; step < shipSizes.length; step++) {
+				propose(random, owner, origins, dirs);
+			}
+			for (int cell = 0; cell < owner.length; cell++) {
+				if (owner[cell] != 0) {
+					counts[cell]++;
+				}
+			}
+			drawn++;
+		}
+		return drawn;
+	}
+	
+	/**
+	 * Finds a first layout for a chain by placing ships at random until one fits.
+	 * 
+	 * @param random this chain's random number stream
+	 * @param owner filled in with which ship, plus one, is on each cell
+	 * @param origins filled in with each ship's origin cell
+	 * @param dirs filled in with each ship's direction
+	 * @return true if a layout was found, false if not
+	 */
+	private boolean start(SplittableRandom random, int[] owner, int[] origins, Directions[] dirs) {
+		for (int attempt = 0; attempt < START_TRIES; attempt++) {
+			Arrays.fill(owner, 0);
+			boolean placedAll = true;
+			for (int ship = 0; ship < shipSizes.length && placedAll; ship++) {
+				placedAll = false;
+				for (int tries = 0; tries < PLACEMENT_TRIES && !placedAll; tries++) {
+					Directions dir = randomDirection(random);
+					int origin = randomOrigin(random, shipSizes[ship], dir);
+					if (fits(owner, ship, origin, dir)) {
+						origins[ship] = origin;
+						dirs[ship] = dir;
+						mark(owner, origin, shipSizes[ship], dir, ship + 1);
+						placedAll = true;
+					}
+				}
+			}
+			if (placedAll && coversHits(owner)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Proposes moving one ship to a random spot, and moves it if the layout
+	 * still fits.
+	 * 
+	 * Nothing else can be on a hit the ship is covering, so the layout still
+	 * covers every hit exactly when the new spot covers as many hits as the
+	 * old one.
+	 * 
+	 * @param random this chain's random number stream
+	 * @param owner which ship, plus one, is on each cell
+	 * @param origins each ship's origin cell
+	 * @param dirs each ship's direction
+	 */
+	private void propose(SplittableRandom random, int[] owner, int[] origins, Directions[] dirs) {
+		if (shipSizes.length > 1 && random.nextBoolean()) {
+			proposePair(random, owner, origins, dirs);
+			return;
+		}
+		int ship = random.nextInt(shipSizes.length);
+		int length = shipSizes[ship];
+		Directions dir = randomDirection(random);
+		int origin = randomOrigin(random, length, dir);
+		if (!fits(owner, ship, origin, dir)
+				|| hitsUnder(origin, length, dir) != hitsUnder(origins[ship], length, dirs[ship])
+				|| !accept(random, weightOf(origin, length, dir) / weightOf(origins[ship], length, dirs[ship]))) {
+			return;
+		}
+		mark(owner, origins[ship], length, dirs[ship], 0);
+		mark(owner, origin, length, dir, ship + 1);
+		origins[ship] = origin;
+		dirs[ship] = dir;
+	}
+	
+	/**
+	 * Proposes moving two different ships to random spots at once, and moves
+	 * them if the layout still fits.
+	 * 
+	 * Like propose(), the hits the pair covers can only be covered by the pair,
+	 * so it's enough that the new spots cover as many hits as the old ones.
+	 * 
+	 * @param random this chain's random number stream
+	 * @param owner which ship, plus one, is on each cell
+	 * @param origins each ship's origin cell
+	 * @param dirs each ship's direction
+	 */
+	private void proposePair(SplittableRandom random, int[] owner, int[] origins, Directions[] dirs) {
+		int first = random.nextInt(shipSizes.length);
+		int second = random.nextInt(shipSizes.length - 1);
+		if (second >= first) {
+			second++;
+		}
+		Directions firstDir = randomDirection(random);
+		int firstOrigin = randomOrigin(random, shipSizes[first], firstDir);
+		Directions secondDir = randomDirection(random);
+		int secondOrigin = randomOrigin(random, shipSizes[second], secondDir);
+		int oldHits = hitsUnder(origins[first], shipSizes[first], dirs[first])
+				+ hitsUnder(origins[second], shipSizes[second], dirs[second]);
+		if (hitsUnder(firstOrigin, shipSizes[first], firstDir)
+				+ hitsUnder(secondOrigin, shipSizes[second], secondDir) != oldHits) {
+			return;
+		}
+		double ratio = weightOf(firstOrigin, shipSizes[first], firstDir)
+				* weightOf(secondOrigin, shipSizes[second], secondDir)
+				/ weightOf(origins[first], shipSizes[first], dirs[first])
+				/ weightOf(origins[second], shipSizes[second], dirs[second]);
+		if (!accept(random, ratio)) {
+			return;
+		}
+		mark(owner, origins[first], shipSizes[first], dirs[first], 0);
+		mark(owner, origins[second], shipSizes[second], dirs[second], 0);
+		boolean moved = false;
+		if (fits(owner, first, firstOrigin, firstDir)) {
+			mark(owner, firstOrigin, shipSizes[first], firstDir, first + 1);
+			if (fits(owner, second, secondOrigin, secondDir)) {
+				mark(owner, secondOrigin, shipSizes[second], secondDir, second + 1);
+				moved = true;
+			} else {
+				mark(owner, firstOrigin, shipSizes[first], firstDir, 0);
+			}
+		}
+		if (moved) {
+			origins[first] = firstOrigin;
+			dirs[first] = firstDir;
+			origins[second] = secondOrigin;
+			dirs[second] = secondDir;
+		}
+		mark(owner, origins[first], shipSizes[first], dirs[first], first + 1);
+		mark(owner, origins[second], shipSizes[second], dirs[second], second + 1);
+	}
+	
+	/**
+	 * Checks that a ship could lie at a spot, off the misses and the other ships.
+	 * 
+	 * @param owner which ship, plus one, is on each cell
+	 * @param ship the index of the ship being placed, which may overlap itself
+	 * @param origin the origin cell
+	 * @param dir the direction
+	 * @return true if it fits, false if not
+	 */
+	private boolean fits(int[] owner, int ship, int origin, Directions dir) {
+		int step = dir == Directions.UP ? size : 1;
+		for (int i = 0; i < shipSizes[ship]; i++) {
+			int cell = origin - i * step;
+			if ((owner[cell] != 0 && owner[cell] != ship + 1) || board.isMiss(cell / size, cell % size)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Counts the hits a ship would cover at a spot.
+	 * 
+	 * @param origin the origin cell
+	 * @param length the ship's length
+	 * @param dir the direction
+	 * @return how many of its squares are hits
+	 */
+	private int hitsUnder(int origin, int length, Directions dir) {
+		int step = dir == Directions.UP ? size : 1;
+		int hits = 0;
+		for (int i = 0; i < length; i++) {
+			int cell = origin - i * step;
+			if (board.isHit(cell / size, cell % size)) {
+				hits++;
+			}
+		}
+		return hits;
+	}
+	
+	/**
+	 * Multiplies the weights of the squares a ship would be on.
+	 * 
+	 * @param origin the origin cell
+	 * @param length the ship's length
+	 * @param dir the direction
+	 * @return the product, or 1 if there are no weights
+	 */
+	private double weightOf(int origin, int length, Directions dir) {
+		if (cellWeights == null) {
+			return 1;
+		}
+		int step = dir == Directions.UP ? size : 1;
+		double weight = 1;
+		for (int i = 0; i < length; i++) {
+			weight *= cellWeights[origin - i * step];
+		}
+		return weight;
+	}
+	
+	/**
+	 * Decides whether to keep a move that changes a layout's weight by a ratio.
+	 * 
+	 * Moves that make the layout at least as likely are always kept. Without
+	 * weights nothing random is drawn, so unweighted chains stay the same.
+	 * 
+	 * @param random this chain's random number stream
+	 * @param ratio the new layout's weight over the old one's
+	 * @return true to keep the move, false to stay put
+	 */
+	private boolean accept(SplittableRandom random, double ratio) {
+		return cellWeights == null || ratio >= 1 || random.nextDouble() < ratio;
+	}
+	
+	/**
+	 * Checks that every hit has a ship on it.
+	 * 
+	 * @param owner which ship, plus one, is on each cell
+	 * @return true if every hit is covered, false if not
+	 */
+	private boolean coversHits(int[] owner) {
+		for (int cell = 0; cell < owner.length; cell++) {
+			if (owner[cell] == 0 && board.isHit(cell / size, cell % size)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes a value over every square of a ship.
+	 * 
+	 * @param owner which ship, plus one, is on each cell
+	 * @param origin the origin cell
+	 * @param length the ship's length
+	 * @param dir the direction
+	 * @param value the ship's index plus one, or 0 to clear it
+	 */
+	private void mark(int[] owner, int origin, int length, Directions dir, int value) {
+		int step = dir == Directions.UP ? size : 1;
+		for (int i = 0; i < length; i++) {
+			owner[origin - i * step] = value;
+		}
+	}
+	
+	/**
+	 * Picks UP or LEFT.
+	 * 
+	 * @param random where the randomness comes from
+	 * @return a direction
+	 */
+	private static Directions randomDirection(SplittableRandom random) {
+		return random.nextBoolean() ? Directions.UP : Directions.LEFT;
+	}
+	
+	/**
+	 * Picks an origin cell where a ship would stay on the board.
+	 * 
+	 * Ships run from their origin toward the top for UP, and toward the left
+	 * for LEFT, so the origin can't be too close to that edge.
+	 * 
+	 * @param random where the randomness comes from
+	 * @param length the ship's length
+	 * @param dir the direction
+	 * @return the origin cell
+	 */
+	private int randomOrigin(SplittableRandom random, int length, Directions dir) {
+		int outerArray = dir == Directions.UP ? length - 1 + random.nextInt(size - length + 1) : random.nextInt(size);
+		int innerArray = dir == Directions.LEFT ? length - 1 + random.nextInt(size - length + 1) : random.nextInt(size);
+		return outerArray * size + innerArray;
+	}
+	
+	/**
+	 * Turns each chain's counts into probabilities and standard errors.
+	 * 
+	 * @param counts each chain's counts
+	 * @param drawn how many layouts each chain drew
+	 * @return the estimates
+	 */
+	private CellProbabilities summarize(long[][] counts, long[] drawn) {
+		double[] probabilities = new double[size * size];
+		double[] standardErrors = new double[size * size];
+		int usable = 0;
+		long total = 0;
+		for (int chain = 0; chain < counts.length; chain++) {
+			if (drawn[chain] > 0) {
+				usable++;
+				total += drawn[chain];
+			}
+		}
+		for (int cell = 0; cell < probabilities.length; cell++) {
+			if (!board.isUnknown(cell / size, cell % size)) {
+				continue;
+			}
+			double sum = 0;
+			double sumSquares = 0;
+			for (int chain = 0; chain < counts.length; chain++) {
+				if (drawn[chain] > 0) {
+					double p = (double) counts[chain][cell] / drawn[chain];
+					sum += p;
+					sumSquares += p * p;
+				}
+			}
+			if (usable == 0) {
+				standardErrors[cell] = Double.POSITIVE_INFINITY;
+				continue;
+			}
+			double mean = sum / usable;
+			probabilities[cell] = mean;
+			if (usable < 2) {
+				standardErrors[cell] = Double.POSITIVE_INFINITY;
+			} else {
+				double variance = Math.max(0, (sumSquares - usable * mean * mean) / (usable - 1));
+				standardErrors[cell] = Math.sqrt(variance / usable);
+			}
+		}
+		return new CellProbabilities(size, probabilities, standardErrors, total);
+	}
+}
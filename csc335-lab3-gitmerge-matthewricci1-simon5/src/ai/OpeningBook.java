@@ -0,0 +1,270 @@
+package ai;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+import model.BSModel;
+import model.Cell;
+import view.WhichGrid;
+
+/**
+ *
+ * The first few shots of a game, worked out ahead of time. Every game starts from
+ * the same empty board, and a strategy's first shots only depend on which of its
+ * earlier shots hit, so the same few hundred boards come up at the start of every
+ * game. build() plays a strategy through every way the first shots can go, with
+ * as much time as it likes, and writes down its answer for each board. A bot then
+ * only has to look the board up, and only thinks for itself once it's off the end
+ * of the book.
+ *
+ * The file is a short header, ending with the strategy's name, followed by records of a board's Zobrist hash and the
+ * shot for it, sorted by hash. open() maps it read-only and lookups binary search
+ * the mapping directly, so nothing is copied onto the heap, and every process that
+ * opens the same file shares the same pages. Lookups only use absolute reads, so
+ * any number of threads can share one book.
+ *
+ * The book remembers which strategy it was built with, and StrategyRunner only uses
+ * it for that strategy. Books are built for the classic fleet. A board's hash mixes
+ * in its mode's fleet, so boards from other modes are simply never found. A runner picks up the book named by the BOOK_PROPERTY
+ * system property on its own.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class OpeningBook {
+	/**
+	 * The first eight bytes of every book file.
+	 */
+	private static final long MAGIC = 0x4253424F4F4B3032L;
+	/**
+	 * The size of the header before the name: the magic, the grid size, the record
+	 * count and how many bytes the name takes.
+	 */
+	private static final int HEADER = 8 + 4 + 4 + 4;
+	/**
+	 * The most bytes a strategy's name can take in UTF-8.
+	 */
+	private static final int MAX_NAME_BYTES = 1024;
+	/**
+	 * The size of a record: a long hash and an int cell.
+	 */
+	private static final int RECORD = 12;
+
+	/**
+	 * The mapped file.
+	 */
+	private final MappedByteBuffer buffer;
+	/**
+	 * The size of the grid the book was built for.
+	 */
+	private final int size;
+	/**
+	 * How many boards are in the book.
+	 */
+	private final int count;
+	/**
+	 * The name of the strategy the book was built with.
+	 */
+	private final String strategyName;
+	/**
+	 * Where the records start, just past the name.
+	 */
+	private final int recordsStart;
+
+	/**
+	 * The constructor. Use open() instead.
+	 *
+	 * @param buffer the mapped file
+	 * @throws IOException if the file isn't a book
+	 */
+	private OpeningBook(MappedByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER || buffer.getLong(0) != MAGIC) {
+			throw new IOException("Not an opening book.");
+		}
+		size = buffer.getInt(8);
+		count = buffer.getInt(12);
+		int nameBytes = buffer.getInt(16);
+		if (count < 0 || nameBytes < 0 || nameBytes > MAX_NAME_BYTES
+				|| buffer.capacity() < HEADER + nameBytes + (long) count * RECORD) {
+			throw new IOException("Opening book is cut short.");
+		}
+		byte[] name = new byte[nameBytes];
+		buffer.get(HEADER, name);
+		strategyName = new String(name, StandardCharsets.UTF_8);
+		recordsStart = HEADER + nameBytes;
+	}
+
+	/**
+	 * Maps a book file, read-only.
+	 *
+	 * @param file the book file
+	 * @return the book
+	 * @throws IOException if the file can't be mapped or isn't a book
+	 */
+	public static OpeningBook open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Plays a strategy through every way the first shots of a game can go, and
+	 * writes a book of its answers.
+	 *
+	 * Each shot either hits or misses, so there are up to 2^depth - 1 boards.
+	 * Boards that are reached more than one way are only worked out once.
+	 *
+	 * @param file where to write the book
+	 * @param strategy the strategy to ask
+	 * @param depth how many shots into the game the book goes
+	 * @param budgetNanos how long the strategy gets for each board
+	 * @return how many boards are in the book
+	 * @throws IOException if the book couldn't be written
+	 */
+	public static int build(Path file, Strategy strategy, int depth, long budgetNanos) throws IOException {
+		if (strategy.getName().getBytes(StandardCharsets.UTF_8).length > MAX_NAME_BYTES) {
+			throw new IllegalArgumentException("Strategy name is too long for a book: " + strategy.getName());
+		}
+		int size = BSModel.GRID_SIZE;
+		BSModel model = new BSModel();
+		Map<Long, Integer> shots = new TreeMap<Long, Integer>();
+		Deque<char[][]> boards = new ArrayDeque<char[][]>();
+		Deque<Integer> depths = new ArrayDeque<Integer>();
+		char[][] empty = new char[size][size];
+		for (char[] row : empty) {
+			Arrays.fill(row, ' ');
+		}
+		boards.add(empty);
+		depths.add(0);
+		while (!boards.isEmpty()) {
+			char[][] grid = boards.poll();
+			int shotsIn = depths.poll();
+			model.setOtherGrid(grid);
+			OpponentBoard board = new OpponentBoard(model.getSnapshot(WhichGrid.OTHER_GRID));
+			if (shots.containsKey(board.getHash())) {
+				continue;
+			}
+			int shot = strategy.chooseShot(board, System.nanoTime() + budgetNanos);
+			if (!board.isLegal(shot)) {
+				continue;
+			}
+			shots.put(board.getHash(), shot);
+			if (shotsIn + 1 < depth) {
+				for (char outcome : new char[] {'h', 'm'}) {
+					char[][] next = new char[size][];
+					for (int row = 0; row < size; row++) {
+						next[row] = grid[row].clone();
+					}
+					next[Cell.row(shot)][Cell.col(shot)] = outcome;
+					boards.add(next);
+					depths.add(shotsIn + 1);
+				}
+			}
+		}
+
+		byte[] name = strategy.getName().getBytes(StandardCharsets.UTF_8);
+		ByteBuffer out = ByteBuffer.allocate(HEADER + name.length + shots.size() * RECORD);
+		out.putLong(MAGIC);
+		out.putInt(size);
+		out.putInt(shots.size());
+		out.putInt(name.length);
+		out.put(name);
+		for (Map.Entry<Long, Integer> entry : shots.entrySet()) {
+			out.putLong(entry.getKey());
+			out.putInt(entry.getValue());
+		}
+		out.flip();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+		}
+		return shots.size();
+	}
+
+	/**
+	 * Builds a book from the command line, for the anytime strategy unless
+	 * another is named.
+	 *
+	 * @param args the file, then optionally the depth, the milliseconds per board
+	 * and the strategy's name
+	 * @throws IOException if the book couldn't be written
+	 */
+	public static void main(String[] args) throws IOException {
+		Path file = Paths.get(args[0]);
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		long budgetNanos = (args.length > 2 ? Long.parseLong(args[2]) : 1000) * 1_000_000L;
+		Strategy strategy = StrategyRunner.find(args.length > 3 ? args[3] : "anytime");
+		System.out.println("Wrote " + build(file, strategy, depth, budgetNanos) + " boards to " + file);
+		System.out.println("Run with -D" + StrategyRunner.BOOK_PROPERTY + "=" + file + " to use it.");
+	}
+
+	/**
+	 * Looks up the shot for a board hash.
+	 *
+	 * @param hash the board's Zobrist hash
+	 * @return the shot's cell, row * size + column, or -1 if the board isn't in the book
+	 */
+	public int lookup(long hash) {
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long found = buffer.getLong(recordsStart + middle * RECORD);
+			if (found < hash) {
+				low = middle + 1;
+			} else if (found > hash) {
+				high = middle - 1;
+			} else {
+				return buffer.getInt(recordsStart + middle * RECORD + 8);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Looks up the shot for a board.
+	 *
+	 * @param board what's known about the other grid
+	 * @return the shot, or Cell.NONE if the board isn't in the book or is a different size
+	 */
+	public int lookup(OpponentBoard board) {
+		if (board.getSize() != size) {
+			return Cell.NONE;
+		}
+		int cell = lookup(board.getHash());
+		return board.isLegal(cell) ? cell : Cell.NONE;
+	}
+
+	/**
+	 * Get how many boards are in the book.
+	 *
+	 * @return the number of boards
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Get the name of the strategy the book was built with.
+	 *
+	 * @return the strategy's name
+	 */
+	public String getStrategyName() {
+		return strategyName;
+	}
+}
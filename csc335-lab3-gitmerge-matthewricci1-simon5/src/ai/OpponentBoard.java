@@ -0,0 +1,156 @@
+package ai;
+
+import model.Cell;
+import model.GameMode;
+import model.GridSnapshot;
+
+/**
+ * 
+ * What a strategy is allowed to see of the other grid: which squares have been
+ * hit, which have been missed, and which haven't been shot yet. The other grid in
+ * the model also knows where the ships are, so this hides them, and a strategy
+ * can't tell an untouched ship square from empty water.
+ * 
+ * It's backed by an immutable GridSnapshot, so it's safe to read from any thread
+ * and never changes under a strategy while it thinks. It also knows the game's
+ * mode, since where ships can be depends on how long they are.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class OpponentBoard {
+	/**
+	 * The snapshot of the other grid this board reads from.
+	 */
+	private final GridSnapshot snapshot;
+	/**
+	 * The mode of the game, for the fleet being shot at.
+	 */
+	private final GameMode mode;
+	
+	/**
+	 * The constructor, for the classic game.
+	 * 
+	 * @param snapshot a snapshot of the other grid
+	 */
+	public OpponentBoard(GridSnapshot snapshot) {
+		this(snapshot, GameMode.CLASSIC);
+	}
+	
+	/**
+	 * The constructor, for any mode.
+	 * 
+	 * @param snapshot a snapshot of the other grid
+	 * @param mode the mode of the game
+	 */
+	public OpponentBoard(GridSnapshot snapshot, GameMode mode) {
+		this.snapshot = snapshot;
+		this.mode = mode;
+	}
+	
+	/**
+	 * Get the number of rows, which is also the number of columns.
+	 * 
+	 * @return the size of the grid
+	 */
+	public int getSize() {
+		return snapshot.getSize();
+	}
+	
+	/**
+	 * Get the version of the snapshot behind this board.
+	 * 
+	 * Two boards with the same version show the same shots.
+	 * 
+	 * @return the snapshot's version
+	 */
+	public long getVersion() {
+		return snapshot.getVersion();
+	}
+	
+	/**
+	 * Get the lengths of the ships being shot at.
+	 * 
+	 * @return a copy of the lengths, in fleet order
+	 */
+	public int[] getShipLengths() {
+		return mode.getShipLengths();
+	}
+	
+	/**
+	 * Get the Zobrist hash of the shots on this board, with the mode's fleet key
+	 * mixed in.
+	 * 
+	 * Boards with the same hits and misses in games with the same fleet have the
+	 * same hash, so it's the key for anything cached about a board. The same
+	 * shots against a different fleet are a different position, so they get a
+	 * different key.
+	 * 
+	 * @return the hash
+	 */
+	public long getHash() {
+		return snapshot.getHash() ^ mode.getFleetKey();
+	}
+	
+	/**
+	 * Checks if a square was shot and hit a ship.
+	 * 
+	 * @param outerArray the row
+	 * @param innerArray the column
+	 * @return true if it's a hit, false if not
+	 */
+	public boolean isHit(int outerArray, int innerArray) {
+		return snapshot.charAt(outerArray, innerArray) == 'h';
+	}
+	
+	/**
+	 * Checks if a square was shot and missed.
+	 * 
+	 * @param outerArray the row
+	 * @param innerArray the column
+	 * @return true if it's a miss, false if not
+	 */
+	public boolean isMiss(int outerArray, int innerArray) {
+		return snapshot.charAt(outerArray, innerArray) == 'm';
+	}
+	
+	/**
+	 * Checks if a square hasn't been shot yet.
+	 * 
+	 * @param outerArray the row
+	 * @param innerArray the column
+	 * @return true if it can still be shot, false if not
+	 */
+	public boolean isUnknown(int outerArray, int innerArray) {
+		char square = snapshot.charAt(outerArray, innerArray);
+		return square != 'h' && square != 'm';
+	}
+	
+	/**
+	 * Checks if a cell is a legal shot on this board.
+	 * 
+	 * @param cell the shot, as a Cell
+	 * @return true if it's on the board and hasn't been shot, false if not
+	 */
+	public boolean isLegal(int cell) {
+		return Cell.isValid(cell) && isUnknown(Cell.row(cell), Cell.col(cell));
+	}
+	
+	/**
+	 * Finds the first square that hasn't been shot, reading row by row.
+	 * 
+	 * This is the move a strategy gets when it runs out of time, so it has
+	 * to be cheap and always work.
+	 * 
+	 * @return the first legal shot, or Cell.NONE if every square has been shot
+	 */
+	public int firstUnknown() {
+		for (int cell = 0; cell < Cell.COUNT; cell++) {
+			if (isLegal(cell)) {
+				return cell;
+			}
+		}
+		return Cell.NONE;
+	}
+}
@@ -0,0 +1,254 @@
+package ai;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import model.BSModel;
+import model.Directions;
+import objects.GameRecord;
+
+/**
+ *
+ * Learns where each player likes to put their ships. People don't place ships at
+ * random: some hug the edges, some always point the carrier up. For every player,
+ * this keeps a counter for each ship, origin cell and direction, and every finished
+ * game bumps the counters for where that player put each ship. prior() turns them
+ * into how many ships the player tends to have on each square, which an AI can
+ * multiply into its density map.
+ *
+ * Old games count for less. Every halfLife games a player finishes, what they did
+ * before is worth half as much. Decaying every counter that often would cost a pass
+ * over all of them, so it's done lazily instead: each counter remembers the epoch
+ * it was last written in, and is only shrunk by the epochs it missed when it's next
+ * read or written. That way recording a game only touches one counter per ship.
+ *
+ * Counters are packed into longs in an AtomicLongArray, with the epoch in the top
+ * 16 bits and the count in the bottom 48, as fixed point. Writers update them with
+ * compare-and-set and readers never write, so looking up a prior never blocks, even
+ * while games are being recorded.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class PlacementBias {
+	/**
+	 * How much a single placement adds to its counter, so decayed counts keep
+	 * some fractional bits.
+	 */
+	private static final long ONE = 1L << 16;
+	/**
+	 * Where the epoch starts in a packed counter.
+	 */
+	private static final int EPOCH_SHIFT = 48;
+	/**
+	 * The bits of a packed counter holding the count.
+	 */
+	private static final long COUNT_MASK = (1L << EPOCH_SHIFT) - 1;
+	/**
+	 * The number of squares on the grid.
+	 */
+	private static final int CELLS = BSModel.GRID_SIZE * BSModel.GRID_SIZE;
+
+	/**
+	 * How many games it takes for old games to count half as much.
+	 */
+	private final int halfLife;
+	/**
+	 * Everyone's counters, by player name.
+	 */
+	private final ConcurrentHashMap<String, Counters> players = new ConcurrentHashMap<String, Counters>();
+
+	/**
+	 * The constructor.
+	 *
+	 * @param halfLife how many games it takes for old games to count half as much
+	 */
+	public PlacementBias(int halfLife) {
+		if (halfLife < 1) {
+			throw new IllegalArgumentException("Half-life must be at least one game: " + halfLife);
+		}
+		this.halfLife = halfLife;
+	}
+
+	/**
+	 * Learns from where a player put their fleet in a finished game.
+	 *
+	 * @param player the name of the player who placed the fleet
+	 * @param record the game, with that player as the defender
+	 */
+	public void record(String player, GameRecord record) {
+		Counters counters = players.computeIfAbsent(player, (name) -> new Counters());
+		int epoch = (int) (counters.games.incrementAndGet() / halfLife);
+		int ships = Math.min(record.getShipCount(), BSModel.SHIP_SIZES.length);
+		for (int ship = 0; ship < ships; ship++) {
+			add(counters.counts, index(ship, record.getShipCell(ship), record.getShipDir(ship)), epoch);
+		}
+	}
+
+	/**
+	 * Get how many games a player has been seen in.
+	 *
+	 * @param player the player's name
+	 * @return the number of games recorded for them
+	 */
+	public long getGames(String player) {
+		Counters counters = players.get(player);
+		return counters == null ? 0 : counters.games.get();
+	}
+
+	/**
+	 * Get how much weight a player's history gives one placement.
+	 *
+	 * Each game with that placement adds one, shrunk by how long ago it was.
+	 *
+	 * @param player the player's name
+	 * @param ship the index of the ship
+	 * @param cell the origin cell, row * GRID_SIZE + column
+	 * @param dir which way the ship points from its origin
+	 * @return the decayed count
+	 */
+	public double getWeight(String player, int ship, int cell, Directions dir) {
+		Counters counters = players.get(player);
+		if (counters == null) {
+			return 0;
+		}
+		int epoch = (int) (counters.games.get() / halfLife);
+		return (double) decayed(counters.counts.get(index(ship, cell, dir)), epoch) / ONE;
+	}
+
+	/**
+	 * Works out how many ships a player tends to have on each square.
+	 *
+	 * For each ship, its placements are weighted by their counts, so the result
+	 * for a square is the expected number of that player's ships on it. A player
+	 * with no history gets all zeros.
+	 *
+	 * @param player the player's name
+	 * @return the expected number of ships on each cell, row * GRID_SIZE + column
+	 */
+	public double[] prior(String player) {
+		double[] prior = new double[CELLS];
+		Counters counters = players.get(player);
+		if (counters == null) {
+			return prior;
+		}
+		int epoch = (int) (counters.games.get() / halfLife);
+		double[] covered = new double[CELLS];
+		for (int ship = 0; ship < BSModel.SHIP_SIZES.length; ship++) {
+			Arrays.fill(covered, 0);
+			double total = 0;
+			for (int cell = 0; cell < CELLS; cell++) {
+				for (Directions dir : Directions.values()) {
+					long count = decayed(counters.counts.get(index(ship, cell, dir)), epoch);
+					if (count == 0) {
+						continue;
+					}
+					total += count;
+					int step = (dir == Directions.UP) ? BSModel.GRID_SIZE : 1;
+					int covering = cell;
+					for (int i = 0; i < BSModel.SHIP_SIZES[ship] && covering >= 0; i++) {
+						covered[covering] += count;
+						covering -= step;
+					}
+				}
+			}
+			if (total > 0) {
+				for (int cell = 0; cell < CELLS; cell++) {
+					prior[cell] += covered[cell] / total;
+				}
+			}
+		}
+		return prior;
+	}
+
+	/**
+	 * Finds the counter for a placement.
+	 *
+	 * @param ship the index of the ship
+	 * @param cell the origin cell
+	 * @param dir which way the ship points
+	 * @return the counter's index
+	 */
+	private static int index(int ship, int cell, Directions dir) {
+		return ((ship * CELLS) + cell) * 2 + (dir == Directions.UP ? 0 : 1);
+	}
+
+	/**
+	 * Adds one placement to a counter, catching up on any decay it missed first.
+	 *
+	 * If another writer has already moved the counter to a later epoch, the
+	 * placement is shrunk to match instead.
+	 *
+	 * @param counts the player's counters
+	 * @param index the counter to add to
+	 * @param epoch the epoch of the game being recorded
+	 */
+	private static void add(AtomicLongArray counts, int index, int epoch) {
+		while (true) {
+			long packed = counts.get(index);
+			int stored = (int) (packed >>> EPOCH_SHIFT);
+			int behind = (short) (epoch - stored);
+			long updated;
+			if (behind >= 0) {
+				updated = pack(shrink(packed & COUNT_MASK, behind) + ONE, epoch);
+			} else {
+				updated = pack((packed & COUNT_MASK) + shrink(ONE, -behind), stored);
+			}
+			if (counts.compareAndSet(index, packed, updated)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads a counter as it would be now, without writing the decay back.
+	 *
+	 * @param packed the packed counter
+	 * @param epoch the current epoch
+	 * @return the count, in fixed point
+	 */
+	private static long decayed(long packed, int epoch) {
+		int behind = (short) (epoch - (int) (packed >>> EPOCH_SHIFT));
+		return shrink(packed & COUNT_MASK, Math.max(0, behind));
+	}
+
+	/**
+	 * Halves a count once for each epoch.
+	 *
+	 * @param count the count
+	 * @param epochs how many epochs to decay it by
+	 * @return the smaller count
+	 */
+	private static long shrink(long count, int epochs) {
+		return epochs >= EPOCH_SHIFT ? 0 : count >>> epochs;
+	}
+
+	/**
+	 * Packs a count and an epoch into one long.
+	 *
+	 * @param count the count, which has to fit in 48 bits
+	 * @param epoch the epoch, of which only the low 16 bits are kept
+	 * @return the packed counter
+	 */
+	private static long pack(long count, int epoch) {
+		return ((long) (epoch & 0xFFFF) << EPOCH_SHIFT) | Math.min(count, COUNT_MASK);
+	}
+
+	/**
+	 * One player's counters: one for every ship, origin cell and direction,
+	 * and how many games they've played.
+	 */
+	private static final class Counters {
+		/**
+		 * The packed counters, indexed by index().
+		 */
+		private final AtomicLongArray counts = new AtomicLongArray(BSModel.SHIP_SIZES.length * CELLS * 2);
+		/**
+		 * How many of the player's games have been recorded.
+		 */
+		private final AtomicLong games = new AtomicLong();
+	}
+}
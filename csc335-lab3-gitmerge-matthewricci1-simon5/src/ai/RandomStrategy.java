@@ -0,0 +1,55 @@
+package ai;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import model.Cell;
+
+/**
+ * 
+ * The simplest bot: it shoots a random square that hasn't been shot yet. It
+ * always answers right away, so it's also handy for testing the runner.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class RandomStrategy implements Strategy {
+	
+	/**
+	 * Get the name of this strategy.
+	 * 
+	 * @return "random"
+	 */
+	@Override
+	public String getName() {
+		return "random";
+	}
+	
+	/**
+	 * Picks a random square that hasn't been shot.
+	 * 
+	 * @param board what's known about the other grid
+	 * @param deadlineNanos ignored, since this is always quick
+	 * @return a random legal shot, or Cell.NONE if there are none
+	 */
+	@Override
+	public int chooseShot(OpponentBoard board, long deadlineNanos) {
+		int size = board.getSize();
+		int unknown = 0;
+		for (int cell = 0; cell < size * size; cell++) {
+			if (board.isUnknown(cell / size, cell % size)) {
+				unknown++;
+			}
+		}
+		if (unknown == 0) {
+			return Cell.NONE;
+		}
+		int pick = ThreadLocalRandom.current().nextInt(unknown);
+		for (int cell = 0; cell < size * size; cell++) {
+			if (board.isUnknown(cell / size, cell % size) && pick-- == 0) {
+				return cell;
+			}
+		}
+		return Cell.NONE;
+	}
+}
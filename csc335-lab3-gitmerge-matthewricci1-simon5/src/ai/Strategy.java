@@ -0,0 +1,39 @@
+package ai;
+
+/**
+ * 
+ * A bot that picks shots. Implementations are found with ServiceLoader, so a bot
+ * in its own jar only has to list its class in META-INF/services/ai.Strategy and
+ * have a public no-argument constructor.
+ * 
+ * Strategies are run by a StrategyRunner, on its own threads, never on the game
+ * thread. Each shot has a deadline. A strategy should check System.nanoTime()
+ * against it and answer in time; if it doesn't, or if it throws, or if it picks a
+ * square that can't be shot, the runner plays a fallback move for it. The runner
+ * interrupts a strategy that runs over, so long loops should check for that too.
+ * 
+ * One Strategy object may be asked for shots for several games at once, from
+ * different threads.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public interface Strategy {
+	
+	/**
+	 * Get the name of this strategy, for picking it by name.
+	 * 
+	 * @return a short name that no other strategy uses
+	 */
+	String getName();
+	
+	/**
+	 * Picks the next shot.
+	 * 
+	 * @param board what's known about the other grid
+	 * @param deadlineNanos when the answer is due, in System.nanoTime() terms
+	 * @return the shot, as a Cell, or Cell.NONE if there's nothing to shoot
+	 */
+	int chooseShot(OpponentBoard board, long deadlineNanos);
+}
@@ -0,0 +1,405 @@
+package ai;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.Cell;
+
+/**
+ * 
+ * Runs strategies on their own small pool of threads, so a slow or broken bot can
+ * never hold up a game. Asking for a shot never blocks: you get a future, and it
+ * always completes with a legal shot by the deadline. If the strategy answers in
+ * time with a legal square, that's the shot. If it runs out of time, throws, picks
+ * a square that can't be shot, or the pool is too busy to even start it, the
+ * fallback move is used instead, which is the first square that hasn't been shot.
+ * 
+ * The time budget is wall-clock time from when the shot was asked for, so time
+ * spent waiting for a thread counts against it too. When every thread is busy,
+ * budgets are shrunk in proportion to how far behind the runner is, so that on a
+ * loaded box every bot still answers on time, just with less thinking. A budget
+ * is never shrunk below MIN_BUDGET_NANOS.
+ * 
+ * A strategy that runs out of time is interrupted, but one that ignores interrupts
+ * keeps its thread until it returns on its own. If it's still running
+ * STUCK_GRACE_NANOS after its deadline, the thread is written off as stuck and the
+ * pool gets an extra thread to make up for it, which goes away again once the
+ * stuck strategy finally returns. At most as many threads as the runner was made
+ * with are replaced, so it never runs more than twice its threads. Past that, stuck
+ * strategies do hold up the pool, and new requests wait or get the fallback move.
+ * 
+ * If an OpeningBook built with the same strategy has been given to the runner, the
+ * board is looked up in it first, and a shot found there is answered straight away
+ * without using a thread at all. Unless it's given another one, a runner opens the
+ * book named by the BOOK_PROPERTY system property, if there is one.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class StrategyRunner {
+	/**
+	 * The smallest budget a busy runner will shrink a shot down to.
+	 */
+	public static final long MIN_BUDGET_NANOS = 50_000;
+	/**
+	 * The system property naming the opening book file runners use by default.
+	 */
+	public static final String BOOK_PROPERTY = "battleship.book";
+	/**
+	 * How long past its deadline a strategy can keep its thread before the
+	 * thread is replaced.
+	 */
+	public static final long STUCK_GRACE_NANOS = 50_000_000;
+	/**
+	 * A worker that is still waiting for a thread.
+	 */
+	private static final int NOT_STARTED = 0;
+	/**
+	 * A worker that is thinking on its thread.
+	 */
+	private static final int RUNNING = 1;
+	/**
+	 * A worker that ran past its deadline and has had its thread replaced.
+	 */
+	private static final int REPLACED = 2;
+	/**
+	 * A worker that has returned.
+	 */
+	private static final int DONE = 3;
+	/**
+	 * How many strategies can think at once, not counting replacements.
+	 */
+	private final int threads;
+	/**
+	 * How many threads are stuck in strategies that ignored their interrupt, and
+	 * have been replaced. Only changed while holding the runner's lock.
+	 */
+	private volatile int stuck = 0;
+	/**
+	 * The threads strategies run on.
+	 */
+	private final ThreadPoolExecutor pool;
+	/**
+	 * A single thread that enforces deadlines.
+	 */
+	private final ScheduledThreadPoolExecutor timer;
+	/**
+	 * How many shots have had the fallback move played.
+	 */
+	private final AtomicLong fallbacks = new AtomicLong();
+	/**
+	 * How many shots have come straight out of the opening book.
+	 */
+	private final AtomicLong bookHits = new AtomicLong();
+	/**
+	 * The opening book to check first, or null if there isn't one.
+	 */
+	private volatile OpeningBook book;
+	
+	/**
+	 * The constructor.
+	 * 
+	 * @param threads how many strategies can think at once
+	 * @param queueSize how many requests can wait for a thread before new ones
+	 * get the fallback move straight away
+	 */
+	public StrategyRunner(int threads, int queueSize) {
+		this(threads, queueSize, defaultBook());
+	}
+	
+	/**
+	 * The constructor, with an opening book.
+	 * 
+	 * @param threads how many strategies can think at once
+	 * @param queueSize how many requests can wait for a thread before new ones
+	 * get the fallback move straight away
+	 * @param book the book to check first, or null to not use one
+	 */
+	public StrategyRunner(int threads, int queueSize, OpeningBook book) {
+		this.threads = threads;
+		this.book = book;
+		pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), daemonThreads("strategy"));
+		timer = new ScheduledThreadPoolExecutor(1, daemonThreads("strategy-timer"));
+		timer.setRemoveOnCancelPolicy(true);
+	}
+	
+	/**
+	 * Opens the book named by the BOOK_PROPERTY system property.
+	 * 
+	 * A book that can't be opened is reported and left out, so a bad file never
+	 * stops the bots from playing.
+	 * 
+	 * @return the book, or null if the property isn't set or the file can't be opened
+	 */
+	public static OpeningBook defaultBook() {
+		String file = System.getProperty(BOOK_PROPERTY);
+		if (file == null) {
+			return null;
+		}
+		try {
+			return OpeningBook.open(Paths.get(file));
+		} catch (IOException|InvalidPathException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Finds every strategy on the classpath through ServiceLoader.
+	 * 
+	 * @return one instance of each strategy that's registered
+	 */
+	public static List<Strategy> discover() {
+		List<Strategy> strategies = new ArrayList<Strategy>();
+		for (Strategy strategy : ServiceLoader.load(Strategy.class)) {
+			strategies.add(strategy);
+		}
+		return strategies;
+	}
+	
+	/**
+	 * Finds a strategy on the classpath by its name.
+	 * 
+	 * @param name the name the strategy gives in getName()
+	 * @return the strategy, or null if there isn't one by that name
+	 */
+	public static Strategy find(String name) {
+		for (Strategy strategy : discover()) {
+			if (strategy.getName().equals(name)) {
+				return strategy;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Asks a strategy for a shot, within a time budget.
+	 * 
+	 * @param strategy the strategy to ask
+	 * @param board what's known about the other grid
+	 * @param budgetNanos how long the strategy gets to answer
+	 * @return a future that completes with a legal shot, as a Cell, by the
+	 * deadline, or with Cell.NONE if every square has already been shot
+	 */
+	public CompletableFuture<Integer> chooseShot(Strategy strategy, OpponentBoard board, long budgetNanos) {
+		OpeningBook opening = book;
+		if (opening != null && opening.getStrategyName().equals(strategy.getName())) {
+			int shot = opening.lookup(board);
+			if (shot != Cell.NONE) {
+				bookHits.incrementAndGet();
+				return CompletableFuture.completedFuture(shot);
+			}
+		}
+		budgetNanos = scaleBudget(budgetNanos);
+		long deadline = System.nanoTime() + budgetNanos;
+		CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+		AtomicBoolean decided = new AtomicBoolean();
+		AtomicInteger worker = new AtomicInteger(NOT_STARTED);
+		Future<?> task;
+		try {
+			task = pool.submit(() -> {
+				if (!worker.compareAndSet(NOT_STARTED, RUNNING)) {
+					return;
+				}
+				try {
+					int shot = Cell.NONE;
+					try {
+						shot = strategy.chooseShot(board, deadline);
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+					if (!board.isLegal(shot)) {
+						fallback(result, decided, board);
+					} else if (decided.compareAndSet(false, true)) {
+						result.complete(shot);
+					}
+				} finally {
+					if (worker.getAndSet(DONE) == REPLACED) {
+						resize(-1);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			fallback(result, decided, board);
+			return result;
+		}
+		Future<?> timeout = timer.schedule(() -> {
+			if (fallback(result, decided, board)) {
+				task.cancel(true);
+				if (!worker.compareAndSet(NOT_STARTED, DONE)) {
+					timer.schedule(() -> replaceIfStuck(worker), STUCK_GRACE_NANOS, TimeUnit.NANOSECONDS);
+				}
+			}
+		}, budgetNanos, TimeUnit.NANOSECONDS);
+		result.whenComplete((shot, error) -> timeout.cancel(false));
+		return result;
+	}
+	
+	/**
+	 * Works out how much of a budget a shot actually gets, given how busy the
+	 * runner is right now.
+	 * 
+	 * If there's a free thread, the whole budget. If not, the budget is divided
+	 * by how many requests there are per thread, counting this one.
+	 * 
+	 * @param budgetNanos the budget that was asked for
+	 * @return the budget to use
+	 */
+	public long scaleBudget(long budgetNanos) {
+		int busy = pool.getActiveCount() - stuck + pool.getQueue().size();
+		if (busy < threads) {
+			return budgetNanos;
+		}
+		long scaled = budgetNanos * threads / (busy + 1);
+		return Math.min(budgetNanos, Math.max(MIN_BUDGET_NANOS, scaled));
+	}
+	
+	/**
+	 * Get how many shots have had the fallback move played so far.
+	 * 
+	 * @return the number of fallback moves
+	 */
+	public long getFallbacks() {
+		return fallbacks.get();
+	}
+	
+	/**
+	 * Get how many threads are stuck in strategies that ignored their deadline,
+	 * and have been replaced.
+	 * 
+	 * @return the number of stuck threads
+	 */
+	public int getStuckWorkers() {
+		return stuck;
+	}
+	
+	/**
+	 * Get how many shots have come straight out of the opening book so far.
+	 * 
+	 * @return the number of book moves
+	 */
+	public long getBookHits() {
+		return bookHits.get();
+	}
+	
+	/**
+	 * Sets the opening book to check before asking a strategy.
+	 * 
+	 * @param book the book, or null to stop using one
+	 */
+	public void setOpeningBook(OpeningBook book) {
+		this.book = book;
+	}
+	
+	/**
+	 * Get how many requests are waiting for a thread right now.
+	 * 
+	 * @return the number of queued requests
+	 */
+	public int getQueued() {
+		return pool.getQueue().size();
+	}
+	
+	/**
+	 * Stops the threads. Strategies that are still thinking are interrupted.
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+		timer.shutdownNow();
+	}
+	
+	/**
+	 * Completes a shot with the fallback move, if nothing else has decided it yet.
+	 * 
+	 * Whoever completes a shot has to win its decided flag first, so only one of
+	 * the strategy and the fallback ever gets to. The fallback is counted after
+	 * winning the flag but before the shot is completed, so whoever is waiting on
+	 * the shot already sees it in getFallbacks(), and it's never counted for a
+	 * shot the strategy answered.
+	 * 
+	 * @param result the shot to complete
+	 * @param decided the shot's flag, set by whoever completes it
+	 * @param board what's known about the other grid
+	 * @return true if the fallback was used, false if the shot was already decided
+	 */
+	private boolean fallback(CompletableFuture<Integer> result, AtomicBoolean decided, OpponentBoard board) {
+		if (!decided.compareAndSet(false, true)) {
+			return false;
+		}
+		fallbacks.incrementAndGet();
+		result.complete(board.firstUnknown());
+		return true;
+	}
+	
+	/**
+	 * Replaces a worker's thread if its strategy still hasn't returned, and
+	 * there's room for another thread.
+	 * 
+	 * A request that timed out while it was still waiting in the queue was
+	 * cancelled before it ever got a thread, so it has none to replace and is
+	 * left alone.
+	 * 
+	 * @param worker the state of the worker that ran out of time
+	 */
+	private synchronized void replaceIfStuck(AtomicInteger worker) {
+		if (stuck < threads && worker.compareAndSet(RUNNING, REPLACED)) {
+			resize(1);
+		}
+	}
+	
+	/**
+	 * Grows or shrinks the pool by one stuck thread.
+	 * 
+	 * A pool's core size can never be above its maximum, so growing raises the
+	 * maximum first and shrinking lowers the core first. Growing starts a thread
+	 * for anything already waiting.
+	 * 
+	 * @param change 1 when a thread gets stuck, -1 when a stuck thread returns
+	 */
+	private synchronized void resize(int change) {
+		stuck += change;
+		if (pool.isShutdown()) {
+			return;
+		}
+		if (change > 0) {
+			pool.setMaximumPoolSize(threads + stuck);
+			pool.setCorePoolSize(threads + stuck);
+		} else {
+			pool.setCorePoolSize(threads + stuck);
+			pool.setMaximumPoolSize(threads + stuck);
+		}
+	}
+	
+	/**
+	 * Makes a ThreadFactory for daemon threads, so the runner never keeps the
+	 * program open.
+	 * 
+	 * @param name what to call the threads
+	 * @return the factory
+	 */
+	private static ThreadFactory daemonThreads(String name) {
+		AtomicLong count = new AtomicLong();
+		return (runnable) -> {
+			Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
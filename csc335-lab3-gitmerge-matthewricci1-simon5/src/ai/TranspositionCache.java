@@ -0,0 +1,150 @@
+package ai;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 
+ * A fixed-size cache of AI results keyed by a board's Zobrist hash, meant to be
+ * shared by every match on a server. Lots of games pass through the same boards,
+ * especially early on, so work done for one game can be reused by the next.
+ * 
+ * It's a plain array of slots, and a hash always goes in the same slot, so a new
+ * entry simply pushes out whatever was there. That keeps its size fixed no matter
+ * how many boards go through it, and means there's no lock: each slot holds an
+ * immutable entry, and reading or writing one is a single atomic step. The whole
+ * hash is kept with the entry, so a different board that lands in the same slot
+ * is never mistaken for this one.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ * @param <V> what's cached for each board
+ */
+public class TranspositionCache<V> {
+	/**
+	 * The slots. The number of slots is a power of two.
+	 */
+	private final AtomicReferenceArray<Entry<V>> slots;
+	/**
+	 * The number of slots minus one, for picking a slot from a hash.
+	 */
+	private final int mask;
+	/**
+	 * How many lookups found what they were looking for.
+	 */
+	private final LongAdder hits = new LongAdder();
+	/**
+	 * How many lookups came back empty.
+	 */
+	private final LongAdder misses = new LongAdder();
+	
+	/**
+	 * The constructor.
+	 * 
+	 * @param capacity how many entries it can hold at most, rounded up to a
+	 * power of two
+	 */
+	public TranspositionCache(int capacity) {
+		int slotCount = 1;
+		while (slotCount < capacity) {
+			slotCount <<= 1;
+		}
+		slots = new AtomicReferenceArray<Entry<V>>(slotCount);
+		mask = slotCount - 1;
+	}
+	
+	/**
+	 * Looks up what's cached for a board.
+	 * 
+	 * @param hash the board's Zobrist hash
+	 * @return what was cached, or null if nothing is, or it was pushed out
+	 */
+	public V get(long hash) {
+		Entry<V> entry = slots.get(slot(hash));
+		if (entry != null && entry.hash == hash) {
+			hits.increment();
+			return entry.value;
+		}
+		misses.increment();
+		return null;
+	}
+	
+	/**
+	 * Caches something for a board, pushing out whatever was in its slot.
+	 * 
+	 * @param hash the board's Zobrist hash
+	 * @param value what to cache, which shouldn't be changed after this
+	 */
+	public void put(long hash, V value) {
+		slots.set(slot(hash), new Entry<V>(hash, value));
+	}
+	
+	/**
+	 * Get how many entries it can hold.
+	 * 
+	 * @return the number of slots
+	 */
+	public int getCapacity() {
+		return slots.length();
+	}
+	
+	/**
+	 * Get how many lookups found something.
+	 * 
+	 * @return the number of hits so far
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+	
+	/**
+	 * Get how many lookups found nothing.
+	 * 
+	 * @return the number of misses so far
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+	
+	/**
+	 * Picks the slot for a hash.
+	 * 
+	 * The low bits of a Zobrist hash are as random as the rest, so they're used
+	 * as they are.
+	 * 
+	 * @param hash the hash
+	 * @return the slot index
+	 */
+	private int slot(long hash) {
+		return (int) hash & mask;
+	}
+	
+	/**
+	 * 
+	 * One cached result, with the whole hash it belongs to.
+	 *
+	 * @param <V> what's cached
+	 */
+	private static final class Entry<V> {
+		/**
+		 * The board's hash.
+		 */
+		private final long hash;
+		/**
+		 * What was cached for it.
+		 */
+		private final V value;
+		
+		/**
+		 * The constructor.
+		 * 
+		 * @param hash the board's hash
+		 * @param value what was cached for it
+		 */
+		private Entry(long hash, V value) {
+			this.hash = hash;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package analytics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import archive.GameArchive;
+import objects.GameRecord;
+
+/**
+ * 
+ * Streams archived games through ShotHeatmap accumulators. Records are pulled
+ * from the stream one at a time, so the archive is never held in memory. The
+ * stream is run in parallel and every split of it fills its own ShotHeatmap, which
+ * is merged into its neighbour's as soon as both halves are done. A big archive
+ * splits into many more pieces than there are workers, so many partial heatmaps
+ * get made over a run, but each is a fixed size and only the ones for splits
+ * still in progress are alive at once.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class HeatmapPipeline {
+	
+	/**
+	 * Only static methods here, so no instances.
+	 */
+	private HeatmapPipeline() {
+	}
+	
+	/**
+	 * Accumulates a stream of records into a single heatmap.
+	 * 
+	 * @param records the games to count
+	 * @return the merged heatmap
+	 */
+	public static ShotHeatmap run(Stream<GameRecord> records) {
+		return records.parallel().collect(ShotHeatmap::new, ShotHeatmap::accept, ShotHeatmap::merge);
+	}
+	
+	/**
+	 * Accumulates a compressed GameArchive into a heatmap.
+	 * 
+	 * Each worker decompresses one block at a time, so only a few blocks are
+	 * ever in memory.
+	 * 
+	 * @param archive the open archive
+	 * @return the merged heatmap
+	 * @throws IOException if a block could not be read
+	 */
+	public static ShotHeatmap run(GameArchive archive) throws IOException {
+		try {
+			return run(archive.stream());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * Accumulates an archive file into a heatmap.
+	 * 
+	 * The file can be a GameArchive, or text with one record per line, written by
+	 * GameRecord.toLine(). Either way it is read lazily, so its size does not matter.
+	 * 
+	 * @param archive the path of the archive file
+	 * @return the merged heatmap
+	 * @throws IOException if the archive could not be read
+	 */
+	public static ShotHeatmap run(Path archive) throws IOException {
+		if (GameArchive.isArchive(archive)) {
+			try (GameArchive games = GameArchive.open(archive)) {
+				return run(games);
+			}
+		}
+		try (Stream<String> lines = Files.lines(archive)) {
+			return run(lines.filter(line -> !line.isEmpty()).map(GameRecord::parse));
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package analytics;
+
+import model.BSModel;
+import objects.GameRecord;
+
+/**
+ * 
+ * Accumulates per-cell statistics over many archived games. Each thread of the
+ * HeatmapPipeline gets its own ShotHeatmap, fills it with accept(), and the
+ * pipeline folds them together with merge() at the end. Everything is kept in
+ * fixed-size long[] counters, so the memory used never depends on how many games
+ * went through it.
+ * 
+ * Three things are tracked: how often each cell was the very first shot of a game,
+ * how often a shot on a cell was a hit for every move number, and how often each
+ * ship from SHIP_NAMES covered each cell.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class ShotHeatmap {
+	/**
+	 * How many cells are on the board.
+	 */
+	private static final int CELLS = BSModel.GRID_SIZE * BSModel.GRID_SIZE;
+	/**
+	 * How many games have been accepted.
+	 */
+	private long games;
+	/**
+	 * How many times each cell was the first shot of a game.
+	 */
+	private final long[] firstShots = new long[CELLS];
+	/**
+	 * Shots per move number and cell, laid out as [move * CELLS + cell]. A game
+	 * can never be longer than CELLS moves, since a cell can only be shot once.
+	 */
+	private final long[] shotsByMove = new long[CELLS * CELLS];
+	/**
+	 * Hits per move number and cell, laid out the same way as shotsByMove.
+	 */
+	private final long[] hitsByMove = new long[CELLS * CELLS];
+	/**
+	 * How many times each ship covered each cell, laid out as [ship * CELLS + cell].
+	 * Only as many ships as the classic fleet has are counted.
+	 */
+	private final long[] placements = new long[BSModel.SHIP_SIZES.length * CELLS];
+	/**
+	 * Scratch space for the occupancy of the record being accepted, reused so
+	 * that accepting a record makes no garbage.
+	 */
+	private final int[] occupancy = new int[CELLS];
+	
+	/**
+	 * Adds a single game to the counters.
+	 * 
+	 * @param record the game to add
+	 */
+	public void accept(GameRecord record) {
+		games++;
+		record.fillOccupancy(occupancy);
+		for (int cell = 0; cell < CELLS; cell++) {
+			int ship = occupancy[cell];
+			if (ship != 0 && ship <= BSModel.SHIP_SIZES.length) {
+				placements[(ship - 1) * CELLS + cell]++;
+			}
+		}
+		int shotCount = Math.min(record.getShotCount(), CELLS);
+		if (shotCount > 0) {
+			firstShots[record.getShot(0)]++;
+		}
+		for (int move = 0; move < shotCount; move++) {
+			int cell = record.getShot(move);
+			shotsByMove[move * CELLS + cell]++;
+			if (occupancy[cell] != 0) {
+				hitsByMove[move * CELLS + cell]++;
+			}
+		}
+	}
+	
+	/**
+	 * Folds another heatmap's counters into this one.
+	 * 
+	 * @param other the heatmap from another thread
+	 * @return this heatmap, now holding both sets of counts
+	 */
+	public ShotHeatmap merge(ShotHeatmap other) {
+		games += other.games;
+		add(firstShots, other.firstShots);
+		add(shotsByMove, other.shotsByMove);
+		add(hitsByMove, other.hitsByMove);
+		add(placements, other.placements);
+		return this;
+	}
+	
+	/**
+	 * Get the number of games counted.
+	 * 
+	 * @return the number of games
+	 */
+	public long getGames() {
+		return games;
+	}
+	
+	/**
+	 * The share of games that opened on each cell.
+	 * 
+	 * @return a GRID_SIZE by GRID_SIZE heatmap, indexed [row][col]
+	 */
+	public double[][] firstShotHeatmap() {
+		double[][] heatmap = new double[BSModel.GRID_SIZE][BSModel.GRID_SIZE];
+		for (int cell = 0; cell < CELLS; cell++) {
+			heatmap[cell / BSModel.GRID_SIZE][cell % BSModel.GRID_SIZE] = ratio(firstShots[cell], games);
+		}
+		return heatmap;
+	}
+	
+	/**
+	 * The chance that a shot on each cell was a hit, on a given move number.
+	 * 
+	 * Cells that were never shot on that move are left at 0.
+	 * 
+	 * @param move the move number, starting at 0
+	 * @return a GRID_SIZE by GRID_SIZE heatmap, indexed [row][col]
+	 * @throws IllegalArgumentException if no game can have that many moves
+	 */
+	public double[][] hitProbability(int move) {
+		if (move < 0 || move >= CELLS) {
+			throw new IllegalArgumentException("Not a move number: " + move);
+		}
+		double[][] heatmap = new double[BSModel.GRID_SIZE][BSModel.GRID_SIZE];
+		for (int cell = 0; cell < CELLS; cell++) {
+			heatmap[cell / BSModel.GRID_SIZE][cell % BSModel.GRID_SIZE] = 
+					ratio(hitsByMove[move * CELLS + cell], shotsByMove[move * CELLS + cell]);
+		}
+		return heatmap;
+	}
+	
+	/**
+	 * The share of games in which a ship covered each cell.
+	 * 
+	 * @param ship the index of the ship, matching SHIP_NAMES
+	 * @return a GRID_SIZE by GRID_SIZE heatmap, indexed [row][col]
+	 * @throws IllegalArgumentException if there's no ship with that index
+	 */
+	public double[][] placementHeatmap(int ship) {
+		if (ship < 0 || ship >= BSModel.SHIP_SIZES.length) {
+			throw new IllegalArgumentException("Not a ship: " + ship);
+		}
+		double[][] heatmap = new double[BSModel.GRID_SIZE][BSModel.GRID_SIZE];
+		for (int cell = 0; cell < CELLS; cell++) {
+			heatmap[cell / BSModel.GRID_SIZE][cell % BSModel.GRID_SIZE] = ratio(placements[ship * CELLS + cell], games);
+		}
+		return heatmap;
+	}
+	
+	/**
+	 * Adds one array of counters into another.
+	 * 
+	 * @param into the counters to add to
+	 * @param from the counters to add
+	 */
+	private static void add(long[] into, long[] from) {
+		for (int i = 0; i < into.length; i++) {
+			into[i] += from[i];
+		}
+	}
+	
+	/**
+	 * Divides two counts, treating a total of 0 as a ratio of 0.
+	 * 
+	 * @param count the numerator
+	 * @param total the denominator
+	 * @return count / total, or 0 if total is 0
+	 */
+	private static double ratio(long count, long total) {
+		return (total == 0) ? 0.0 : (double) count / total;
+	}
+}
@@ -0,0 +1,643 @@
+package archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ *
+ * MatchSummaries stored by column, so questions like "every game under 40 shots
+ * by strategy X" don't have to read every match. Rows are gathered into blocks
+ * of BLOCK_ROWS, and inside a block each column is stored on its own: all the
+ * timestamps, then all the fingerprints, then the player, opponent, winner and
+ * mode, and then the shots. Names are stored as ids into a dictionary kept once
+ * for the whole file.
+ *
+ * Two kinds of index let a query skip blocks before reading them. Every block
+ * keeps the smallest and biggest timestamp and number of shots in it, so a block
+ * that's entirely out of range is never read. And for every name in the
+ * dictionary, each of the player, opponent, winner and mode columns has a bitmap
+ * with a bit for each block that name appears in, so "by strategy X" is a few
+ * ANDs of longs. Only the blocks left over are read, in parallel, with positional
+ * reads, and checked row by row.
+ *
+ * Rows are numbered in the order they were added. If matches are added in the
+ * same order as their games are added to a GameArchive, the row numbers find()
+ * returns can be passed to GameArchive.get() to pull up the games themselves.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class ColumnarArchive implements Closeable {
+	/**
+	 * The first and last eight bytes of every columnar archive file.
+	 */
+	static final long MAGIC = 0x4253434F4C533031L;
+	/**
+	 * The most rows a block holds.
+	 */
+	public static final int BLOCK_ROWS = 4096;
+	/**
+	 * The size of the header: the magic and the rows per block.
+	 */
+	private static final int HEADER = 8 + 4;
+	/**
+	 * The size of each block's entry in the block table: where it starts, how
+	 * many rows it has, and the smallest and biggest timestamp and shots.
+	 */
+	private static final int TABLE_ENTRY = 8 + 4 + 8 + 8 + 4 + 4;
+	/**
+	 * The size of the footer: where the dictionary, block table and bitmaps
+	 * start, how many blocks there are, and the magic.
+	 */
+	private static final int FOOTER = 8 + 8 + 8 + 4 + 8;
+	/**
+	 * How many bytes a row takes in a block: two longs, four ids and the shots.
+	 */
+	private static final int ROW_BYTES = 8 + 8 + 4 * 4 + 2;
+	/**
+	 * The column of who fired the shots.
+	 */
+	private static final int PLAYER = 0;
+	/**
+	 * The column of whose fleet was shot at.
+	 */
+	private static final int OPPONENT = 1;
+	/**
+	 * The column of who won.
+	 */
+	private static final int WINNER = 2;
+	/**
+	 * The column of the game mode.
+	 */
+	private static final int MODE = 3;
+	/**
+	 * How many columns hold dictionary ids.
+	 */
+	private static final int NAME_COLUMNS = 4;
+
+	/**
+	 * The open file.
+	 */
+	private final FileChannel channel;
+	/**
+	 * Every name, by id.
+	 */
+	private final String[] names;
+	/**
+	 * The id of every name.
+	 */
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	/**
+	 * Where each block starts in the file.
+	 */
+	private final long[] offsets;
+	/**
+	 * The number of the first row in each block, plus one extra entry at the end
+	 * with the total number of rows.
+	 */
+	private final long[] firstRows;
+	/**
+	 * The earliest timestamp in each block.
+	 */
+	private final long[] minTimestamps;
+	/**
+	 * The latest timestamp in each block.
+	 */
+	private final long[] maxTimestamps;
+	/**
+	 * The fewest shots in each block.
+	 */
+	private final int[] minShots;
+	/**
+	 * The most shots in each block.
+	 */
+	private final int[] maxShots;
+	/**
+	 * For each name column and each id, the blocks that id appears in, as bits.
+	 */
+	private final long[][][] bitmaps;
+
+	/**
+	 * The constructor. Use open() instead.
+	 *
+	 * @param channel the open file
+	 * @throws IOException if the file isn't a columnar archive
+	 */
+	private ColumnarArchive(FileChannel channel) throws IOException {
+		this.channel = channel;
+		long size = channel.size();
+		if (size < HEADER + FOOTER) {
+			throw new IOException("Not a columnar archive.");
+		}
+		ByteBuffer header = GameArchive.readFully(channel, 0, HEADER);
+		ByteBuffer footer = GameArchive.readFully(channel, size - FOOTER, FOOTER);
+		if (header.getLong(0) != MAGIC || footer.getLong(28) != MAGIC) {
+			throw new IOException("Not a columnar archive, or it was never closed.");
+		}
+		if (header.getInt(8) != BLOCK_ROWS) {
+			throw new IOException("Columnar archive has " + header.getInt(8) + " rows per block.");
+		}
+		long dictionaryStart = footer.getLong(0);
+		long tableStart = footer.getLong(8);
+		long bitmapStart = footer.getLong(16);
+		int blocks = footer.getInt(24);
+		if (dictionaryStart > tableStart || tableStart + (long) blocks * TABLE_ENTRY != bitmapStart
+				|| bitmapStart > size - FOOTER || size - FOOTER - dictionaryStart > Integer.MAX_VALUE) {
+			throw new IOException("Columnar archive index is damaged.");
+		}
+		ByteBuffer index = GameArchive.readFully(channel, dictionaryStart, (int) (size - FOOTER - dictionaryStart));
+
+		names = new String[index.getInt()];
+		for (int id = 0; id < names.length; id++) {
+			byte[] name = new byte[index.getInt()];
+			index.get(name);
+			names[id] = new String(name, StandardCharsets.UTF_8);
+			ids.put(names[id], id);
+		}
+
+		offsets = new long[blocks];
+		firstRows = new long[blocks + 1];
+		minTimestamps = new long[blocks];
+		maxTimestamps = new long[blocks];
+		minShots = new int[blocks];
+		maxShots = new int[blocks];
+		index.position((int) (tableStart - dictionaryStart));
+		for (int block = 0; block < blocks; block++) {
+			offsets[block] = index.getLong();
+			firstRows[block + 1] = firstRows[block] + index.getInt();
+			minTimestamps[block] = index.getLong();
+			maxTimestamps[block] = index.getLong();
+			minShots[block] = index.getInt();
+			maxShots[block] = index.getInt();
+		}
+
+		int words = (blocks + 63) / 64;
+		if (index.remaining() != (long) NAME_COLUMNS * names.length * words * 8) {
+			throw new IOException("Columnar archive bitmaps are damaged.");
+		}
+		bitmaps = new long[NAME_COLUMNS][names.length][words];
+		for (int column = 0; column < NAME_COLUMNS; column++) {
+			for (int id = 0; id < names.length; id++) {
+				index.asLongBuffer().get(bitmaps[column][id]);
+				index.position(index.position() + words * 8);
+			}
+		}
+	}
+
+	/**
+	 * Opens a columnar archive for reading.
+	 *
+	 * @param file the archive file
+	 * @return the archive
+	 * @throws IOException if the file can't be read or isn't a columnar archive
+	 */
+	public static ColumnarArchive open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return new ColumnarArchive(channel);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts a new columnar archive, replacing the file if it's already there.
+	 *
+	 * @param file where to write the archive
+	 * @return the Writer to add matches with
+	 * @throws IOException if the file can't be written
+	 */
+	public static Writer create(Path file) throws IOException {
+		return new Writer(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING));
+	}
+
+	/**
+	 * Get how many matches are in the archive.
+	 *
+	 * @return the number of rows
+	 */
+	public long getRowCount() {
+		return firstRows[offsets.length];
+	}
+
+	/**
+	 * Get how many blocks the rows are in.
+	 *
+	 * @return the number of blocks
+	 */
+	public int getBlockCount() {
+		return offsets.length;
+	}
+
+	/**
+	 * Works out which blocks could hold matches for a query, using only the
+	 * indexes. Nothing is read from the file.
+	 *
+	 * @param query the query
+	 * @return the blocks that have to be scanned, in order
+	 */
+	public int[] candidateBlocks(MatchQuery query) {
+		long[] candidates = new long[(offsets.length + 63) / 64];
+		for (int block = 0; block < offsets.length; block++) {
+			if (maxShots[block] >= query.minShots && minShots[block] <= query.maxShots
+					&& maxTimestamps[block] >= query.minTimestamp && minTimestamps[block] <= query.maxTimestamp) {
+				candidates[block >>> 6] |= 1L << block;
+			}
+		}
+		String[] wanted = {query.player, query.opponent, query.winner, query.mode};
+		for (int column = 0; column < NAME_COLUMNS; column++) {
+			if (wanted[column] == null) {
+				continue;
+			}
+			Integer id = ids.get(wanted[column]);
+			if (id == null) {
+				return new int[0];
+			}
+			for (int word = 0; word < candidates.length; word++) {
+				candidates[word] &= bitmaps[column][id][word];
+			}
+		}
+		return BitSet.valueOf(candidates).stream().toArray();
+	}
+
+	/**
+	 * Counts the matches for a query.
+	 *
+	 * @param query the query
+	 * @return how many matches there are
+	 */
+	public long count(MatchQuery query) {
+		return scan(query).mapToLong((rows) -> rows.length).sum();
+	}
+
+	/**
+	 * Finds the matches for a query.
+	 *
+	 * @param query the query
+	 * @return the row numbers of the matches, from smallest to biggest
+	 */
+	public long[] find(MatchQuery query) {
+		return scan(query).flatMapToLong(LongStream::of).toArray();
+	}
+
+	/**
+	 * Reads one row back.
+	 *
+	 * @param row the number of the row, from 0
+	 * @return the match
+	 * @throws IOException if its block can't be read
+	 */
+	public MatchSummary getRow(long row) throws IOException {
+		if (row < 0 || row >= getRowCount()) {
+			throw new IndexOutOfBoundsException("No row " + row + " in an archive of " + getRowCount());
+		}
+		//Every block holds at least one row, so the first rows are all different.
+		int found = Arrays.binarySearch(firstRows, row);
+		int block = (found >= 0) ? found : -found - 2;
+		int rows = (int) (firstRows[block + 1] - firstRows[block]);
+		int i = (int) (row - firstRows[block]);
+		ByteBuffer columns = readBlock(block);
+		return new MatchSummary(columns.getLong(i * 8), name(columns, rows, PLAYER, i), name(columns, rows, OPPONENT, i),
+				name(columns, rows, WINNER, i), name(columns, rows, MODE, i), columns.getChar(shotsAt(rows) + i * 2),
+				columns.getLong(rows * 8 + i * 8));
+	}
+
+	/**
+	 * Closes the file.
+	 *
+	 * @throws IOException if the file couldn't be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Scans the candidate blocks for a query in parallel.
+	 *
+	 * @param query the query
+	 * @return the matching row numbers of each block, in block order
+	 */
+	private Stream<long[]> scan(MatchQuery query) {
+		int[] wanted = new int[NAME_COLUMNS];
+		String[] wantedNames = {query.player, query.opponent, query.winner, query.mode};
+		for (int column = 0; column < NAME_COLUMNS; column++) {
+			Integer id = (wantedNames[column] == null) ? null : ids.get(wantedNames[column]);
+			//A name that was never seen matches nothing, and candidateBlocks() will say so.
+			wanted[column] = (wantedNames[column] == null) ? -1 : (id == null) ? -2 : id;
+		}
+		return IntStream.of(candidateBlocks(query)).parallel().mapToObj((block) -> {
+			try {
+				return scanBlock(block, query, wanted);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Checks every row of one block against a query.
+	 *
+	 * The shots are checked first, since they rule out the most, and the other
+	 * columns are only looked at for rows that are still in.
+	 *
+	 * @param block the index of the block
+	 * @param query the query
+	 * @param wanted the id each name column has to have, or -1 for any
+	 * @return the row numbers that match
+	 * @throws IOException if the block can't be read
+	 */
+	private long[] scanBlock(int block, MatchQuery query, int[] wanted) throws IOException {
+		ByteBuffer columns = readBlock(block);
+		int rows = (int) (firstRows[block + 1] - firstRows[block]);
+		int shots = shotsAt(rows);
+		long[] found = new long[rows];
+		int count = 0;
+		rowLoop:
+		for (int i = 0; i < rows; i++) {
+			int shot = columns.getChar(shots + i * 2);
+			if (shot < query.minShots || shot > query.maxShots) {
+				continue;
+			}
+			for (int column = 0; column < NAME_COLUMNS; column++) {
+				if (wanted[column] != -1 && columns.getInt(idAt(rows, column, i)) != wanted[column]) {
+					continue rowLoop;
+				}
+			}
+			long timestamp = columns.getLong(i * 8);
+			if (timestamp < query.minTimestamp || timestamp > query.maxTimestamp) {
+				continue;
+			}
+			found[count++] = firstRows[block] + i;
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Reads all the columns of a block.
+	 *
+	 * @param block the index of the block
+	 * @return the columns
+	 * @throws IOException if the block can't be read
+	 */
+	private ByteBuffer readBlock(int block) throws IOException {
+		int rows = (int) (firstRows[block + 1] - firstRows[block]);
+		return GameArchive.readFully(channel, offsets[block], rows * ROW_BYTES);
+	}
+
+	/**
+	 * Looks up a name in a block.
+	 *
+	 * @param columns the block's columns
+	 * @param rows how many rows the block has
+	 * @param column which name column
+	 * @param i the row within the block
+	 * @return the name
+	 */
+	private String name(ByteBuffer columns, int rows, int column, int i) {
+		return names[columns.getInt(idAt(rows, column, i))];
+	}
+
+	/**
+	 * Finds where a row's id is in a block. The timestamps and fingerprints
+	 * come first, then each name column in turn.
+	 *
+	 * @param rows how many rows the block has
+	 * @param column which name column
+	 * @param i the row within the block
+	 * @return the offset of the id
+	 */
+	private static int idAt(int rows, int column, int i) {
+		return rows * 16 + (column * rows + i) * 4;
+	}
+
+	/**
+	 * Finds where the shots column starts in a block.
+	 *
+	 * @param rows how many rows the block has
+	 * @return the offset of the first row's shots
+	 */
+	private static int shotsAt(int rows) {
+		return rows * 16 + NAME_COLUMNS * rows * 4;
+	}
+
+	/**
+	 *
+	 * Adds matches to a new columnar archive. Rows are gathered in memory until
+	 * there are BLOCK_ROWS of them, and then written as a block. Closing the Writer
+	 * writes the last block, the dictionary, the block table and the bitmaps; an
+	 * archive that was never closed can't be opened.
+	 *
+	 * Only one thread should use a Writer.
+	 *
+	 */
+	public static final class Writer implements Closeable {
+		/**
+		 * The file being written.
+		 */
+		private final FileChannel channel;
+		/**
+		 * Every name seen so far, by id.
+		 */
+		private final List<String> names = new ArrayList<String>();
+		/**
+		 * The id of every name seen so far.
+		 */
+		private final Map<String, Integer> ids = new HashMap<String, Integer>();
+		/**
+		 * For each name column, the blocks each id appears in, by id.
+		 */
+		private final List<List<BitSet>> bitmaps = new ArrayList<List<BitSet>>();
+		/**
+		 * The block table entries so far.
+		 */
+		private final ByteArrayOutputStream table = new ByteArrayOutputStream();
+		/**
+		 * The timestamps of the block being gathered.
+		 */
+		private final long[] timestamps = new long[BLOCK_ROWS];
+		/**
+		 * The layout fingerprints of the block being gathered.
+		 */
+		private final long[] fingerprints = new long[BLOCK_ROWS];
+		/**
+		 * The name ids of the block being gathered, by column.
+		 */
+		private final int[][] nameIds = new int[NAME_COLUMNS][BLOCK_ROWS];
+		/**
+		 * The shots of the block being gathered.
+		 */
+		private final char[] shots = new char[BLOCK_ROWS];
+		/**
+		 * How many rows are in the block being gathered.
+		 */
+		private int pending = 0;
+		/**
+		 * How many blocks have been written.
+		 */
+		private int blocks = 0;
+		/**
+		 * Where the next block goes.
+		 */
+		private long position = HEADER;
+
+		/**
+		 * The constructor. Use ColumnarArchive.create() instead.
+		 *
+		 * @param channel the file to write
+		 * @throws IOException if the header can't be written
+		 */
+		private Writer(FileChannel channel) throws IOException {
+			this.channel = channel;
+			for (int column = 0; column < NAME_COLUMNS; column++) {
+				bitmaps.add(new ArrayList<BitSet>());
+			}
+			GameArchive.writeFully(channel, ByteBuffer.allocate(HEADER).putLong(MAGIC).putInt(BLOCK_ROWS).flip(), 0);
+		}
+
+		/**
+		 * Adds a match.
+		 *
+		 * @param match the match
+		 * @throws IOException if a full block couldn't be written
+		 */
+		public void append(MatchSummary match) throws IOException {
+			timestamps[pending] = match.getTimestamp();
+			fingerprints[pending] = match.getLayoutFingerprint();
+			nameIds[PLAYER][pending] = id(match.getPlayer());
+			nameIds[OPPONENT][pending] = id(match.getOpponent());
+			nameIds[WINNER][pending] = id(match.getWinner());
+			nameIds[MODE][pending] = id(match.getMode());
+			shots[pending] = (char) match.getShots();
+			pending++;
+			if (pending == BLOCK_ROWS) {
+				flushBlock();
+			}
+		}
+
+		/**
+		 * Writes the last block, the indexes and the footer, and closes the file.
+		 *
+		 * @throws IOException if the file couldn't be finished
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				if (pending > 0) {
+					flushBlock();
+				}
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(bytes);
+				out.writeInt(names.size());
+				for (String name : names) {
+					byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+					out.writeInt(encoded.length);
+					out.write(encoded);
+				}
+				long dictionaryStart = position;
+				long tableStart = dictionaryStart + bytes.size();
+				table.writeTo(out);
+				long bitmapStart = dictionaryStart + bytes.size();
+				int words = (blocks + 63) / 64;
+				for (List<BitSet> column : bitmaps) {
+					for (BitSet bitmap : column) {
+						long[] bits = Arrays.copyOf(bitmap.toLongArray(), words);
+						for (long word : bits) {
+							out.writeLong(word);
+						}
+					}
+				}
+				out.writeLong(dictionaryStart);
+				out.writeLong(tableStart);
+				out.writeLong(bitmapStart);
+				out.writeInt(blocks);
+				out.writeLong(MAGIC);
+				out.flush();
+				GameArchive.writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()), position);
+				position += bytes.size();
+			} finally {
+				channel.close();
+			}
+		}
+
+		/**
+		 * Finds a name's id, giving it a new one if it hasn't been seen.
+		 *
+		 * @param name the name
+		 * @return its id
+		 */
+		private int id(String name) {
+			Integer id = ids.get(name);
+			if (id == null) {
+				id = names.size();
+				names.add(name);
+				ids.put(name, id);
+				for (List<BitSet> column : bitmaps) {
+					column.add(new BitSet());
+				}
+			}
+			return id;
+		}
+
+		/**
+		 * Writes the gathered rows as a block, column by column, and adds the
+		 * block to the block table and the bitmaps.
+		 *
+		 * @throws IOException if the block couldn't be written
+		 */
+		private void flushBlock() throws IOException {
+			ByteBuffer columns = ByteBuffer.allocate(pending * ROW_BYTES);
+			long minTimestamp = Long.MAX_VALUE;
+			long maxTimestamp = Long.MIN_VALUE;
+			for (int i = 0; i < pending; i++) {
+				columns.putLong(timestamps[i]);
+				minTimestamp = Math.min(minTimestamp, timestamps[i]);
+				maxTimestamp = Math.max(maxTimestamp, timestamps[i]);
+			}
+			for (int i = 0; i < pending; i++) {
+				columns.putLong(fingerprints[i]);
+			}
+			for (int column = 0; column < NAME_COLUMNS; column++) {
+				for (int i = 0; i < pending; i++) {
+					columns.putInt(nameIds[column][i]);
+					bitmaps.get(column).get(nameIds[column][i]).set(blocks);
+				}
+			}
+			int fewest = Character.MAX_VALUE;
+			int most = 0;
+			for (int i = 0; i < pending; i++) {
+				columns.putChar(shots[i]);
+				fewest = Math.min(fewest, shots[i]);
+				most = Math.max(most, shots[i]);
+			}
+			GameArchive.writeFully(channel, columns.flip(), position);
+
+			ByteBuffer entry = ByteBuffer.allocate(TABLE_ENTRY);
+			entry.putLong(position).putInt(pending).putLong(minTimestamp).putLong(maxTimestamp).putInt(fewest).putInt(most);
+			table.write(entry.array(), 0, TABLE_ENTRY);
+			position += columns.capacity();
+			blocks++;
+			pending = 0;
+		}
+	}
+}
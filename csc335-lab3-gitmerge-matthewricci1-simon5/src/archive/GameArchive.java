@@ -0,0 +1,584 @@
+package archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import ai.PlacementBias;
+import model.BSModel;
+import objects.GameRecord;
+
+/**
+ *
+ * A file of finished games, packed as small as they'll go. Each game is written by
+ * GameCodec, a few dozen bytes for a classic game, and games are gathered into
+ * blocks of up to BLOCK_RECORDS that are compressed with Deflater, since games
+ * look a lot like each other. An index at the end of the file says where each
+ * block starts, how big it is and how many games it holds, so a reader can find
+ * any game by decompressing just its block, and different threads can read
+ * different blocks at once.
+ *
+ * The file is a header (the magic and the grid size), the blocks, the index, and
+ * a footer with where the index starts and the magic again. Games are only ever
+ * appended through a Writer, which writes the index when it's closed.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class GameArchive implements Closeable {
+	/**
+	 * The first and last eight bytes of every archive file.
+	 */
+	static final long MAGIC = 0x4253415243483031L;
+	/**
+	 * The size of the header: the magic and the grid size.
+	 */
+	private static final int HEADER = 8 + 4;
+	/**
+	 * The size of each block's entry in the index: where it starts, its size
+	 * compressed and not, and how many games it holds.
+	 */
+	private static final int INDEX_ENTRY = 8 + 4 + 4 + 4;
+	/**
+	 * The size of the footer: where the index starts, how many blocks there are,
+	 * and the magic.
+	 */
+	private static final int FOOTER = 8 + 4 + 8;
+	/**
+	 * The most games a block holds.
+	 */
+	public static final int BLOCK_RECORDS = 4096;
+	/**
+	 * The most Deflater can shrink anything by, so no block decompresses to
+	 * more than this many times its compressed size.
+	 */
+	private static final int MAX_INFLATION = 1032;
+
+	/**
+	 * The open file.
+	 */
+	private final FileChannel channel;
+	/**
+	 * Where each block starts in the file.
+	 */
+	private final long[] offsets;
+	/**
+	 * How many bytes each block takes in the file.
+	 */
+	private final int[] compressedSizes;
+	/**
+	 * How many bytes each block takes once decompressed.
+	 */
+	private final int[] rawSizes;
+	/**
+	 * The number of the first game in each block, plus one extra entry at the
+	 * end with the total number of games.
+	 */
+	private final long[] firstRecords;
+
+	/**
+	 * The constructor. Use open() instead.
+	 *
+	 * @param channel the open file
+	 * @throws IOException if the file isn't an archive
+	 */
+	private GameArchive(FileChannel channel) throws IOException {
+		this.channel = channel;
+		long size = channel.size();
+		if (size < HEADER + FOOTER) {
+			throw new IOException("Not a game archive.");
+		}
+		ByteBuffer header = read(0, HEADER);
+		ByteBuffer footer = read(size - FOOTER, FOOTER);
+		if (header.getLong(0) != MAGIC || footer.getLong(12) != MAGIC) {
+			throw new IOException("Not a game archive, or it was never closed.");
+		}
+		if (header.getInt(8) != BSModel.GRID_SIZE) {
+			throw new IOException("Game archive is for a " + header.getInt(8) + " grid.");
+		}
+		long indexStart = footer.getLong(0);
+		int blocks = footer.getInt(8);
+		if (blocks < 0 || indexStart < HEADER || indexStart + (long) blocks * INDEX_ENTRY != size - FOOTER) {
+			throw new IOException("Game archive index is damaged.");
+		}
+		offsets = new long[blocks];
+		compressedSizes = new int[blocks];
+		rawSizes = new int[blocks];
+		firstRecords = new long[blocks + 1];
+		ByteBuffer index = read(indexStart, blocks * INDEX_ENTRY);
+		for (int block = 0; block < blocks; block++) {
+			offsets[block] = index.getLong();
+			compressedSizes[block] = index.getInt();
+			rawSizes[block] = index.getInt();
+			int records = index.getInt();
+			checkEntry(offsets[block], compressedSizes[block], rawSizes[block], records, indexStart);
+			firstRecords[block + 1] = firstRecords[block] + records;
+		}
+	}
+
+	/**
+	 * Makes sure a block's entry in the index could be right, before anything is
+	 * allocated or read because of it.
+	 *
+	 * The block has to lie between the header and the index, and hold between one
+	 * and BLOCK_RECORDS games. It can't decompress to more than MAX_INFLATION
+	 * times its size, so a damaged raw size can't ask for a huge array.
+	 *
+	 * @param offset where the block starts
+	 * @param compressedSize how many bytes it takes in the file
+	 * @param rawSize how many bytes it takes once decompressed
+	 * @param records how many games it holds
+	 * @param indexStart where the index starts, which is where the blocks end
+	 * @throws IOException if the entry can't be right
+	 */
+	private static void checkEntry(long offset, int compressedSize, int rawSize, int records, long indexStart)
+			throws IOException {
+		if (offset < HEADER || compressedSize < 0 || offset + compressedSize > indexStart
+				|| rawSize < 0 || rawSize > (long) compressedSize * MAX_INFLATION
+				|| records < 1 || records > BLOCK_RECORDS) {
+			throw new IOException("Game archive index is damaged.");
+		}
+	}
+
+	/**
+	 * Opens an archive for reading.
+	 *
+	 * @param file the archive file
+	 * @return the archive
+	 * @throws IOException if the file can't be read or isn't an archive
+	 */
+	public static GameArchive open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return new GameArchive(channel);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts a new archive, replacing the file if it's already there.
+	 *
+	 * @param file where to write the archive
+	 * @return the Writer to add games with
+	 * @throws IOException if the file can't be written
+	 */
+	public static Writer create(Path file) throws IOException {
+		return create(file, null);
+	}
+
+	/**
+	 * Starts a new archive that also teaches a PlacementBias where each defender
+	 * put their fleet, as games are added with append(GameRecord, String).
+	 *
+	 * @param file where to write the archive
+	 * @param bias what to teach, or null to only write the games
+	 * @return the Writer to add games with
+	 * @throws IOException if the file can't be written
+	 */
+	public static Writer create(Path file, PlacementBias bias) throws IOException {
+		return new Writer(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING), bias);
+	}
+
+	/**
+	 * Checks if a file starts like an archive, without opening it.
+	 *
+	 * @param file the file to check
+	 * @return true if it starts with the archive magic, false if not
+	 * @throws IOException if the file can't be read
+	 */
+	public static boolean isArchive(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(8);
+			while (magic.hasRemaining()) {
+				if (channel.read(magic) < 0) {
+					return false;
+				}
+			}
+			return magic.getLong(0) == MAGIC;
+		}
+	}
+
+	/**
+	 * Get how many games are in the archive.
+	 *
+	 * @return the number of games
+	 */
+	public long getRecordCount() {
+		return firstRecords[offsets.length];
+	}
+
+	/**
+	 * Get how many blocks the games are in.
+	 *
+	 * @return the number of blocks
+	 */
+	public int getBlockCount() {
+		return offsets.length;
+	}
+
+	/**
+	 * Get how many bytes of the file are compressed blocks.
+	 *
+	 * @return the total size of the blocks
+	 */
+	public long getCompressedSize() {
+		long total = 0;
+		for (int size : compressedSizes) {
+			total += size;
+		}
+		return total;
+	}
+
+	/**
+	 * Reads every game in one block.
+	 *
+	 * Only positional reads are used, so any number of threads can read blocks
+	 * at once.
+	 *
+	 * @param block the index of the block
+	 * @return the games in it, in order
+	 * @throws IOException if the block can't be read or is damaged
+	 */
+	public List<GameRecord> readBlock(int block) throws IOException {
+		ByteBuffer raw = inflate(block);
+		int records = (int) (firstRecords[block + 1] - firstRecords[block]);
+		List<GameRecord> games = new ArrayList<GameRecord>(records);
+		for (int i = 0; i < records; i++) {
+			games.add(GameCodec.decode(raw, block));
+		}
+		return games;
+	}
+
+	/**
+	 * Reads one game, decompressing only the block it's in.
+	 *
+	 * @param record the number of the game, from 0
+	 * @return the game
+	 * @throws IOException if the block can't be read or is damaged
+	 */
+	public GameRecord get(long record) throws IOException {
+		if (record < 0 || record >= getRecordCount()) {
+			throw new IndexOutOfBoundsException("No game " + record + " in an archive of " + getRecordCount());
+		}
+		//Every block holds at least one game, so the first records are all different.
+		int found = Arrays.binarySearch(firstRecords, record);
+		int block = (found >= 0) ? found : -found - 2;
+		ByteBuffer raw = inflate(block);
+		for (long skip = firstRecords[block]; skip < record; skip++) {
+			GameCodec.decode(raw, block);
+		}
+		return GameCodec.decode(raw, block);
+	}
+
+	/**
+	 * Streams every game in the archive, one block at a time.
+	 *
+	 * Only one block per worker is ever decompressed at a time, so the archive
+	 * is never held in memory. The stream splits by block, so it runs well in
+	 * parallel.
+	 *
+	 * @return the games, in order
+	 */
+	public Stream<GameRecord> stream() {
+		return IntStream.range(0, offsets.length).boxed().flatMap((block) -> {
+			try {
+				return readBlock(block).stream();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Closes the file.
+	 *
+	 * @throws IOException if the file couldn't be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Reads and decompresses a block.
+	 *
+	 * @param block the index of the block
+	 * @return the decompressed bytes
+	 * @throws IOException if the block can't be read or is damaged
+	 */
+	private ByteBuffer inflate(int block) throws IOException {
+		ByteBuffer compressed = read(offsets[block], compressedSizes[block]);
+		byte[] raw = new byte[rawSizes[block]];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			int done = 0;
+			while (done < raw.length && !inflater.finished()) {
+				int inflated = inflater.inflate(raw, done, raw.length - done);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				done += inflated;
+			}
+			if (done != raw.length) {
+				throw new IOException("Game archive block " + block + " is damaged.");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Game archive block " + block + " is damaged.", e);
+		} finally {
+			inflater.end();
+		}
+		return ByteBuffer.wrap(raw);
+	}
+
+	/**
+	 * Reads part of the file.
+	 *
+	 * @param position where to start reading
+	 * @param length how many bytes to read
+	 * @return the bytes, ready to read from the start
+	 * @throws IOException if the file ends first
+	 */
+	private ByteBuffer read(long position, int length) throws IOException {
+		return readFully(channel, position, length);
+	}
+
+	/**
+	 * Reads part of a file with a positional read, which is safe to do from many
+	 * threads at once.
+	 *
+	 * @param channel the file
+	 * @param position where to start reading
+	 * @param length how many bytes to read
+	 * @return the bytes, ready to read from the start
+	 * @throws IOException if the file ends first
+	 */
+	static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Archive is cut short.");
+			}
+		}
+		return buffer.flip();
+	}
+
+	/**
+	 * Writes all of a buffer at a position in a file.
+	 *
+	 * @param channel the file
+	 * @param buffer the bytes to write
+	 * @param at where to write them
+	 * @throws IOException if they couldn't be written
+	 */
+	static void writeFully(FileChannel channel, ByteBuffer buffer, long at) throws IOException {
+		while (buffer.hasRemaining()) {
+			at += channel.write(buffer, at);
+		}
+	}
+
+	/**
+	 * Converts a file of games written one per line by GameRecord.toLine() into
+	 * an archive.
+	 *
+	 * @param args the text file to read, then the archive to write
+	 * @throws IOException if either file can't be used
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: GameArchive <games.txt> <games.archive>");
+			return;
+		}
+		try (Stream<String> lines = Files.lines(Paths.get(args[0]));
+				Writer writer = create(Paths.get(args[1]))) {
+			lines.filter((line) -> !line.isEmpty()).forEach((line) -> {
+				try {
+					writer.append(GameRecord.parse(line));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			System.out.println("Wrote " + writer.getRecordCount() + " games in " + writer.getBytesWritten() + " bytes.");
+		}
+	}
+
+	/**
+	 *
+	 * Adds games to a new archive. Games are gathered in memory until there are
+	 * BLOCK_RECORDS of them, and then compressed and written as a block. Closing
+	 * the Writer writes the last block and the index; an archive that was never
+	 * closed can't be opened.
+	 *
+	 * Only one thread should use a Writer.
+	 *
+	 */
+	public static final class Writer implements Closeable {
+		/**
+		 * The file being written.
+		 */
+		private final FileChannel channel;
+		/**
+		 * The games of the block being gathered, encoded but not compressed.
+		 */
+		private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+		/**
+		 * The index entries of the blocks written so far.
+		 */
+		private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+		/**
+		 * Compresses each block. Reused across blocks.
+		 */
+		private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		/**
+		 * Where the next block goes.
+		 */
+		private long position = HEADER;
+		/**
+		 * How many blocks have been written.
+		 */
+		private int blocks = 0;
+		/**
+		 * How many games are in the block being gathered.
+		 */
+		private int pendingRecords = 0;
+		/**
+		 * How many games have been added.
+		 */
+		private long records = 0;
+		/**
+		 * What learns from the games' layouts, or null.
+		 */
+		private final PlacementBias bias;
+
+		/**
+		 * The constructor. Use GameArchive.create() instead.
+		 *
+		 * @param channel the file to write
+		 * @param bias what learns from the games' layouts, or null
+		 * @throws IOException if the header can't be written
+		 */
+		private Writer(FileChannel channel, PlacementBias bias) throws IOException {
+			this.channel = channel;
+			this.bias = bias;
+			writeFully(channel, ByteBuffer.allocate(HEADER).putLong(MAGIC).putInt(BSModel.GRID_SIZE).flip(), 0);
+		}
+
+		/**
+		 * Adds a game.
+		 *
+		 * @param record the game
+		 * @throws IOException if a full block couldn't be written
+		 */
+		public void append(GameRecord record) throws IOException {
+			GameCodec.encode(record, pending);
+			pendingRecords++;
+			records++;
+			if (pendingRecords == BLOCK_RECORDS) {
+				flushBlock();
+			}
+		}
+
+		/**
+		 * Adds a game, and teaches this writer's PlacementBias, if it has one,
+		 * where the defender put their fleet.
+		 *
+		 * @param record the game
+		 * @param defender the name of the player whose fleet was shot at
+		 * @throws IOException if a full block couldn't be written
+		 */
+		public void append(GameRecord record, String defender) throws IOException {
+			append(record);
+			if (bias != null) {
+				bias.record(defender, record);
+			}
+		}
+
+		/**
+		 * Get how many games have been added.
+		 *
+		 * @return the number of games
+		 */
+		public long getRecordCount() {
+			return records;
+		}
+
+		/**
+		 * Get how many bytes have been written to the file so far.
+		 *
+		 * @return the size of the header and the blocks written
+		 */
+		public long getBytesWritten() {
+			return position;
+		}
+
+		/**
+		 * Writes the last block, the index and the footer, and closes the file.
+		 *
+		 * @throws IOException if the file couldn't be finished
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				if (pendingRecords > 0) {
+					flushBlock();
+				}
+				long indexStart = position;
+				writeFully(channel, ByteBuffer.wrap(index.toByteArray()), position);
+				position += index.size();
+				ByteBuffer footer = ByteBuffer.allocate(FOOTER).putLong(indexStart).putInt(blocks).putLong(MAGIC);
+				writeFully(channel, footer.flip(), position);
+				position += FOOTER;
+			} finally {
+				deflater.end();
+				channel.close();
+			}
+		}
+
+		/**
+		 * Compresses the gathered games and writes them as a block.
+		 *
+		 * @throws IOException if the block couldn't be written
+		 */
+		private void flushBlock() throws IOException {
+			byte[] raw = pending.toByteArray();
+			deflater.reset();
+			deflater.setInput(raw);
+			deflater.finish();
+			byte[] chunk = new byte[8192];
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+			while (!deflater.finished()) {
+				int size = deflater.deflate(chunk);
+				compressed.write(chunk, 0, size);
+			}
+			writeFully(channel, ByteBuffer.wrap(compressed.toByteArray()), position);
+
+			ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY);
+			entry.putLong(position).putInt(compressed.size()).putInt(raw.length).putInt(pendingRecords);
+			index.write(entry.array(), 0, INDEX_ENTRY);
+			position += compressed.size();
+			blocks++;
+			pending.reset();
+			pendingRecords = 0;
+		}
+	}
+}
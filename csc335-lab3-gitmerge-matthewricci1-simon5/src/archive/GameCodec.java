@@ -0,0 +1,204 @@
+package archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import model.BSModel;
+import model.Directions;
+import objects.GameRecord;
+
+/**
+ *
+ * Turns a GameRecord into as few bytes as it can and back. A record is:
+ *
+ * the number of ships, as a varint; then every ship bit-packed, with its origin
+ * cell in CELL_BITS bits and one bit for its direction, padded out to a whole
+ * byte; then the number of shots, as a varint; then each shot as the difference
+ * from the shot before it, zigzagged so small steps either way are small numbers,
+ * as a varint.
+ *
+ * Hits are never stored, since the layout already says which shots hit. Shots
+ * near the last one are the common case once a ship is found, and they cost a
+ * single byte, so a classic game comes to 7 bytes of layout and about a byte a
+ * shot, before the block it's in is compressed.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+final class GameCodec {
+	/**
+	 * How many bits a cell takes in a packed layout.
+	 */
+	static final int CELL_BITS = 32 - Integer.numberOfLeadingZeros(BSModel.GRID_SIZE * BSModel.GRID_SIZE - 1);
+
+	/**
+	 * Only static methods here, so no instances.
+	 */
+	private GameCodec() {
+	}
+
+	/**
+	 * Writes a record.
+	 *
+	 * @param record the record to write
+	 * @param out where to write it
+	 */
+	static void encode(GameRecord record, ByteArrayOutputStream out) {
+		int ships = record.getShipCount();
+		writeVarint(ships, out);
+		long bits = 0;
+		int bitCount = 0;
+		for (int ship = 0; ship < ships; ship++) {
+			int cell = checkCell(record.getShipCell(ship));
+			bits |= ((long) ((cell << 1) | (record.getShipDir(ship) == Directions.UP ? 0 : 1))) << bitCount;
+			bitCount += CELL_BITS + 1;
+			while (bitCount >= 8) {
+				out.write((int) bits);
+				bits >>>= 8;
+				bitCount -= 8;
+			}
+		}
+		if (bitCount > 0) {
+			out.write((int) bits);
+		}
+
+		int shots = record.getShotCount();
+		writeVarint(shots, out);
+		int previous = 0;
+		for (int move = 0; move < shots; move++) {
+			int cell = checkCell(record.getShot(move));
+			int delta = cell - previous;
+			writeVarint((delta << 1) ^ (delta >> 31), out);
+			previous = cell;
+		}
+	}
+
+	/**
+	 * Reads a record written by encode().
+	 *
+	 * A block that was cut short or damaged can't be read as records, and says
+	 * which block it was, rather than failing somewhere in the middle of decoding.
+	 *
+	 * @param in where to read it from, left just past the record
+	 * @param block the index of the block it's in, for the error message
+	 * @return the record
+	 * @throws IOException if the bytes aren't a whole, sensible record
+	 */
+	static GameRecord decode(ByteBuffer in, int block) throws IOException {
+		try {
+			return decode(in);
+		} catch (BufferUnderflowException|IllegalArgumentException e) {
+			throw new IOException("Game archive block " + block + " is damaged.", e);
+		}
+	}
+
+	/**
+	 * Does the work of decode(ByteBuffer, int).
+	 *
+	 * @param in where to read it from, left just past the record
+	 * @return the record
+	 * @throws BufferUnderflowException if the record runs past the end
+	 * @throws IllegalArgumentException if a count or cell can't be right
+	 */
+	private static GameRecord decode(ByteBuffer in) {
+		int ships = checkCount(readVarint(in));
+		if (ships > in.remaining() * 8L / (CELL_BITS + 1)) {
+			throw new BufferUnderflowException();
+		}
+		int[] shipCells = new int[ships];
+		Directions[] shipDirs = new Directions[ships];
+		long bits = 0;
+		int bitCount = 0;
+		int mask = (1 << (CELL_BITS + 1)) - 1;
+		for (int ship = 0; ship < ships; ship++) {
+			while (bitCount < CELL_BITS + 1) {
+				bits |= (long) (in.get() & 0xFF) << bitCount;
+				bitCount += 8;
+			}
+			int packed = (int) bits & mask;
+			bits >>>= CELL_BITS + 1;
+			bitCount -= CELL_BITS + 1;
+			shipCells[ship] = checkCell(packed >>> 1);
+			shipDirs[ship] = ((packed & 1) == 0) ? Directions.UP : Directions.LEFT;
+		}
+
+		int shotCount = checkCount(readVarint(in));
+		if (shotCount > in.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		int[] shots = new int[shotCount];
+		int previous = 0;
+		for (int move = 0; move < shots.length; move++) {
+			int zigzag = readVarint(in);
+			previous += (zigzag >>> 1) ^ -(zigzag & 1);
+			shots[move] = checkCell(previous);
+		}
+		return new GameRecord(shipCells, shipDirs, shots);
+	}
+
+	/**
+	 * Writes an int that isn't negative in as few bytes as it takes, seven bits
+	 * at a time, with the top bit of each byte set if more follow.
+	 *
+	 * @param value the int to write
+	 * @param out where to write it
+	 */
+	static void writeVarint(int value, ByteArrayOutputStream out) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Reads an int written by writeVarint().
+	 *
+	 * @param in where to read it from
+	 * @return the int
+	 */
+	static int readVarint(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Varint is too long.");
+	}
+
+	/**
+	 * Makes sure a count read back isn't negative.
+	 *
+	 * Five varint bytes can hold any int, so a damaged count can come out
+	 * negative, which would get past the checks against what's left of the
+	 * buffer and then fail making the array.
+	 *
+	 * @param count the count
+	 * @return the same count
+	 */
+	private static int checkCount(int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Not a count: " + count);
+		}
+		return count;
+	}
+
+	/**
+	 * Makes sure a cell is on the grid, so it fits in CELL_BITS.
+	 *
+	 * @param cell the cell
+	 * @return the same cell
+	 */
+	private static int checkCell(int cell) {
+		if (cell < 0 || cell >= BSModel.GRID_SIZE * BSModel.GRID_SIZE) {
+			throw new IllegalArgumentException("Not a cell on the grid: " + cell);
+		}
+		return cell;
+	}
+}
@@ -0,0 +1,142 @@
+package archive;
+
+/**
+ *
+ * Which matches to pull out of a ColumnarArchive. A new query matches every match;
+ * each method narrows it down and returns the same query, so they can be chained,
+ * like new MatchQuery().player("anytime").shotsBelow(40). Every condition has to
+ * hold for a match to be found.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class MatchQuery {
+	/**
+	 * The fewest shots a match can have taken.
+	 */
+	int minShots = 0;
+	/**
+	 * The most shots a match can have taken.
+	 */
+	int maxShots = Integer.MAX_VALUE;
+	/**
+	 * The earliest a match can have finished.
+	 */
+	long minTimestamp = Long.MIN_VALUE;
+	/**
+	 * The latest a match can have finished.
+	 */
+	long maxTimestamp = Long.MAX_VALUE;
+	/**
+	 * Who has to have fired the shots, or null for anyone.
+	 */
+	String player;
+	/**
+	 * Whose fleet has to have been shot at, or null for anyone.
+	 */
+	String opponent;
+	/**
+	 * Who has to have won, or null for anyone.
+	 */
+	String winner;
+	/**
+	 * Which mode has to have been played, or null for any.
+	 */
+	String mode;
+
+	/**
+	 * Only matches that took fewer shots than this.
+	 *
+	 * @param shots one more than the most shots allowed
+	 * @return this query
+	 */
+	public MatchQuery shotsBelow(int shots) {
+		return shotsBetween(0, shots - 1);
+	}
+
+	/**
+	 * Only matches that took between these many shots, both included.
+	 *
+	 * @param min the fewest shots
+	 * @param max the most shots
+	 * @return this query
+	 */
+	public MatchQuery shotsBetween(int min, int max) {
+		minShots = Math.max(minShots, min);
+		maxShots = Math.min(maxShots, max);
+		return this;
+	}
+
+	/**
+	 * Only matches that finished between these times, both included.
+	 *
+	 * @param from the earliest time, in milliseconds since the epoch
+	 * @param to the latest time, in milliseconds since the epoch
+	 * @return this query
+	 */
+	public MatchQuery finishedBetween(long from, long to) {
+		minTimestamp = Math.max(minTimestamp, from);
+		maxTimestamp = Math.min(maxTimestamp, to);
+		return this;
+	}
+
+	/**
+	 * Only matches where this player or strategy fired the shots.
+	 *
+	 * @param name the player
+	 * @return this query
+	 */
+	public MatchQuery player(String name) {
+		player = name;
+		return this;
+	}
+
+	/**
+	 * Only matches where this player's fleet was shot at.
+	 *
+	 * @param name the opponent
+	 * @return this query
+	 */
+	public MatchQuery opponent(String name) {
+		opponent = name;
+		return this;
+	}
+
+	/**
+	 * Only matches this player won.
+	 *
+	 * @param name the winner
+	 * @return this query
+	 */
+	public MatchQuery winner(String name) {
+		winner = name;
+		return this;
+	}
+
+	/**
+	 * Only matches played in this mode.
+	 *
+	 * @param name the name of the mode
+	 * @return this query
+	 */
+	public MatchQuery mode(String name) {
+		mode = name;
+		return this;
+	}
+
+	/**
+	 * Checks a single match against the query, without any index.
+	 *
+	 * @param match the match
+	 * @return true if it's one of the matches asked for, false if not
+	 */
+	public boolean matches(MatchSummary match) {
+		return match.getShots() >= minShots && match.getShots() <= maxShots
+				&& match.getTimestamp() >= minTimestamp && match.getTimestamp() <= maxTimestamp
+				&& (player == null || player.equals(match.getPlayer()))
+				&& (opponent == null || opponent.equals(match.getOpponent()))
+				&& (winner == null || winner.equals(match.getWinner()))
+				&& (mode == null || mode.equals(match.getMode()));
+	}
+}
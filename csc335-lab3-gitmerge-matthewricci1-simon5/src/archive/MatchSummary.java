@@ -0,0 +1,207 @@
+package archive;
+
+import model.BSModel;
+import model.Directions;
+import model.GameMode;
+import objects.GameRecord;
+
+/**
+ *
+ * The facts about one finished match that analysts ask about: when it was played,
+ * who attacked and who defended, who won, which mode it was, how many shots it
+ * took, and a fingerprint of the defender's layout, so games with the same layout
+ * can be found without comparing every ship. These are the rows of a
+ * ColumnarArchive.
+ *
+ * Players are named by whatever the caller uses for them: a player's name, or a
+ * strategy's getName() for a bot.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class MatchSummary {
+	/**
+	 * When the match finished, in milliseconds since the epoch.
+	 */
+	private final long timestamp;
+	/**
+	 * Who fired the shots.
+	 */
+	private final String player;
+	/**
+	 * Whose fleet was shot at.
+	 */
+	private final String opponent;
+	/**
+	 * Who won: the player or the opponent.
+	 */
+	private final String winner;
+	/**
+	 * The name of the game mode.
+	 */
+	private final String mode;
+	/**
+	 * How many shots the player fired.
+	 */
+	private final int shots;
+	/**
+	 * A hash of where the opponent put their ships.
+	 */
+	private final long layoutFingerprint;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param timestamp when the match finished, in milliseconds since the epoch
+	 * @param player who fired the shots
+	 * @param opponent whose fleet was shot at
+	 * @param winner who won, the player or the opponent
+	 * @param mode the name of the game mode
+	 * @param shots how many shots the player fired
+	 * @param layoutFingerprint a hash of the opponent's layout
+	 */
+	public MatchSummary(long timestamp, String player, String opponent, String winner, String mode,
+			int shots, long layoutFingerprint) {
+		if (!winner.equals(player) && !winner.equals(opponent)) {
+			throw new IllegalArgumentException("The winner has to be one of the players: " + winner);
+		}
+		if (shots < 0 || shots > Character.MAX_VALUE) {
+			throw new IllegalArgumentException("Not a number of shots: " + shots);
+		}
+		this.timestamp = timestamp;
+		this.player = player;
+		this.opponent = opponent;
+		this.winner = winner;
+		this.mode = mode;
+		this.shots = shots;
+		this.layoutFingerprint = layoutFingerprint;
+	}
+
+	/**
+	 * Sums up an archived game.
+	 *
+	 * The player won if their shots covered every square of the opponent's fleet,
+	 * with each ship as long as the mode says. The mode is given here rather than
+	 * taken from the record, since a record read back from an archive doesn't
+	 * know it.
+	 *
+	 * @param record the game, with the opponent as the defender
+	 * @param player who fired the shots
+	 * @param opponent whose fleet was shot at
+	 * @param mode the mode the game was played in
+	 * @param timestamp when the match finished, in milliseconds since the epoch
+	 * @return the summary
+	 * @throws IllegalArgumentException if the record's fleet doesn't fit the mode
+	 */
+	public static MatchSummary of(GameRecord record, String player, String opponent, GameMode mode, long timestamp) {
+		int[] occupancy = new int[BSModel.GRID_SIZE * BSModel.GRID_SIZE];
+		record.fillOccupancy(occupancy, mode);
+		int shipSquares = 0;
+		for (int square : occupancy) {
+			if (square != 0) {
+				shipSquares++;
+			}
+		}
+		for (int move = 0; move < record.getShotCount(); move++) {
+			int cell = record.getShot(move);
+			if (occupancy[cell] != 0) {
+				occupancy[cell] = 0;
+				shipSquares--;
+			}
+		}
+		return new MatchSummary(timestamp, player, opponent, (shipSquares == 0) ? player : opponent,
+				mode.getName(), record.getShotCount(), fingerprint(record));
+	}
+
+	/**
+	 * Works out the fingerprint of a game's layout.
+	 *
+	 * Games with the same ships in the same places get the same fingerprint.
+	 *
+	 * @param record the game
+	 * @return the fingerprint
+	 */
+	public static long fingerprint(GameRecord record) {
+		long hash = record.getShipCount();
+		for (int ship = 0; ship < record.getShipCount(); ship++) {
+			hash = mix(hash * 31 + (record.getShipCell(ship) << 1) + (record.getShipDir(ship) == Directions.UP ? 0 : 1));
+		}
+		return hash;
+	}
+
+	/**
+	 * Get when the match finished.
+	 *
+	 * @return the time, in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Get who fired the shots.
+	 *
+	 * @return the player
+	 */
+	public String getPlayer() {
+		return player;
+	}
+
+	/**
+	 * Get whose fleet was shot at.
+	 *
+	 * @return the opponent
+	 */
+	public String getOpponent() {
+		return opponent;
+	}
+
+	/**
+	 * Get who won.
+	 *
+	 * @return the player or the opponent
+	 */
+	public String getWinner() {
+		return winner;
+	}
+
+	/**
+	 * Get the name of the game mode.
+	 *
+	 * @return the mode's name
+	 */
+	public String getMode() {
+		return mode;
+	}
+
+	/**
+	 * Get how many shots the player fired.
+	 *
+	 * @return the number of shots
+	 */
+	public int getShots() {
+		return shots;
+	}
+
+	/**
+	 * Get the fingerprint of the opponent's layout.
+	 *
+	 * @return the fingerprint
+	 */
+	public long getLayoutFingerprint() {
+		return layoutFingerprint;
+	}
+
+	/**
+	 * Scrambles the bits of a long, so nearby inputs end up far apart.
+	 *
+	 * @param x the long to scramble
+	 * @return the scrambled long
+	 */
+	private static long mix(long x) {
+		x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+		x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+		return x ^ (x >>> 31);
+	}
+}
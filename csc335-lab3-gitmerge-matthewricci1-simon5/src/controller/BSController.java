@@ -1,9 +1,20 @@
 package controller;
 
 import java.awt.Point;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+import ai.OpponentBoard;
 import model.BSModel;
+import model.Cell;
+import model.CellSet;
 import model.Directions;
+import model.GridSnapshot;
+import model.MoveBatch;
+import model.ReplayIndex;
 import objects.Ship;
 import view.Turn;
 import view.WhichGrid;
@@ -13,6 +24,14 @@ import view.WhichGrid;
  * The controller for the BSView. Not much to say here; it just responds to certain
  * events and controls the model.
  * 
+ * Moves can also be submitted without waiting, with makeMoveAsync() and submit().
+ * Those run one at a time in this controller's MatchActor, and hand back a
+ * CompletableFuture, so the FX thread, the network thread and bots never have to
+ * park. Only so much work can be waiting at once: past MAX_PENDING, new work is
+ * turned away with a RejectedExecutionException instead of piling up. Once a game
+ * uses the asynchronous methods, anything else that touches the model should go
+ * through them too, or run in getExecutor().
+ * 
  * @author Matthew Ricci
  * @version JDK 14.0.1
  *
@@ -20,6 +39,10 @@ import view.WhichGrid;
 
 public class BSController {
 	/**
+	 * The most submitted work that can be waiting to run at once.
+	 */
+	public static final int MAX_PENDING = 256;
+	/**
    * The associated model for this controller.
 	 */
 	private BSModel model;
@@ -31,15 +54,40 @@ public class BSController {
 	 * Tracks whose turn it is.
 	 */
 	private Turn curTurn;
+	/**
+	 * The mailbox that submitted work for this game runs in.
+	 */
+	private final MatchActor actor;
+	/**
+	 * How much submitted work hasn't finished yet.
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
 	
 	/**
 	 * The basic constructor that resets if the game is over, and gives it
 	 * a new model.
 	 * 
+	 * Submitted work runs on whichever thread submits it when nothing else is
+	 * running.
+	 * 
 	 * @param model the associated model for this game.
 	 */
 	public BSController(BSModel model) {
+		this(model, Runnable::run);
+	}
+	
+	/**
+	 * The constructor, with somewhere to run submitted work.
+	 * 
+	 * Lots of games can share one executor. Each game's work still runs one
+	 * thing at a time.
+	 * 
+	 * @param model the associated model for this game.
+	 * @param executor where submitted work runs
+	 */
+	public BSController(BSModel model, Executor executor) {
 		this.model = model;
+		this.actor = new MatchActor(executor);
 		curTurn = Turn.SERVER;
 		isGameOver = false;
 	}
@@ -56,6 +104,18 @@ public class BSController {
 	}
 	
 	
+	/**
+	 * Starts a rematch, clearing the game in place.
+	 * 
+	 * Invokes the resetInPlace() method of BSModel, and puts the turn back to the
+	 * server.
+	 */
+	public void rematch() {
+		model.resetInPlace();
+		curTurn = Turn.SERVER;
+		isGameOver = false;
+	}
+	
 	/**
 	 * Tells the model to initialize ship states.
 	 * 
@@ -83,12 +143,42 @@ public class BSController {
 	 * Invokes the model to place a ship if it passed through the view's
 	 * own checks. While you see a GUI it is backed by a 2d array of characters.
 	 * 
-	 * @param point a Point object corresponding to the origin of that ship
+	 * @param cell the Cell at the origin of that ship
+	 * @param ship the Ship you want to place on that Cell
+	 * @param dir which direction the Ship is pointing - up or left.
+	 */
+	public void placeShip(int cell, Ship ship, Directions dir) {
+		model.updateGridWithShips(cell, ship, dir);
+	}
+	
+	/**
+	 * Invokes the model to place a ship, given a Point.
+	 * 
+	 * @param point a Point object corresponding to the origin of that ship, with
+	 * x as the outerArray
 	 * @param ship the Ship you want to place on that Point
 	 * @param dir which direction the Ship is pointing - up or left.
+	 * @deprecated use placeShip(int, Ship, Directions) with a Cell instead
 	 */
+	@Deprecated
 	public void placeShip(Point point, Ship ship, Directions dir) {
-		model.updateGridWithShips(point, ship, dir);
+		placeShip(Cell.of(point.x, point.y), ship, dir);
+	}
+	
+	/**
+	 * Checks if a ship could be placed on your grid, without placing it.
+	 * 
+	 * Invokes the canPlaceShip() method of BSModel, which is what the view uses to
+	 * decide whether to show a ship preview.
+	 * 
+	 * @param outerArray the origin's row
+	 * @param innerArray the origin's column
+	 * @param length the ship's length
+	 * @param dir which direction the Ship is pointing - up or left.
+	 * @return true if it can go there, false if not
+	 */
+	public boolean canPlaceShip(int outerArray, int innerArray, int length, Directions dir) {
+		return model.canPlaceShip(outerArray, innerArray, length, dir);
 	}
 	
 	/**
@@ -97,12 +187,26 @@ public class BSController {
 	 * A testing oriented method that bypasses the GUI by allowing you to
 	 * decide where the other player's ships should be.
 	 * 
-	 * @param point a Point object corresponding to the origin of that ship
+	 * @param cell the Cell at the origin of that ship
+	 * @param ship the Ship you want to place on that Cell
+	 * @param dir which direction the Ship is pointing - up or left.
+	 */
+	public void placeShipOnOther(int cell, Ship ship, Directions dir) {
+		model.updateOtherGridWithShips(cell, ship, dir);
+	}
+	
+	/**
+	 * Places a ship on the other grid, given a Point.
+	 * 
+	 * @param point a Point object corresponding to the origin of that ship, with
+	 * x as the outerArray
 	 * @param ship the Ship you want to place on that Point
 	 * @param dir which direction the Ship is pointing - up or left.
+	 * @deprecated use placeShipOnOther(int, Ship, Directions) with a Cell instead
 	 */
+	@Deprecated
 	public void placeShipOnOther(Point point, Ship ship, Directions dir) {
-		model.updateOtherGridWithShips(point, ship, dir);
+		placeShipOnOther(Cell.of(point.x, point.y), ship, dir);
 	}
 	
 	/**
@@ -122,23 +226,184 @@ public class BSController {
 	 * The method that handles clicking a spot to make a move. myTurn controls
 	 * whose grid it's on.
 	 * 
-	 * @param point the Point you want to make a hit at.
+	 * @param cell the Cell you want to make a hit at.
 	 * @param myTurn whose turn it is; if your turn, it goes on their grid. Otherwise,
 	 * it goes on yours.
 	 * @return true if the move was valid, false if not.
 	 */
-	public boolean makeMove(Point point, boolean myTurn) {
-		System.out.println("Controller.makeMove, point: " + point);
+	public boolean makeMove(int cell, boolean myTurn) {
+		System.out.println("Controller.makeMove, cell: " + Cell.toString(cell));
 		System.out.println("Controller.makeMove, myTurn: " + myTurn);
-		boolean success = model.updateGridWithHit(point, myTurn);
+		boolean success = model.updateGridWithHit(cell, myTurn);
 		isGameOver();
 		return success;
 	}
 	
+	/**
+	 * Tells the model that a move has been made, given a Point.
+	 * 
+	 * @param point the Point you want to make a hit at, with y as the outerArray
+	 * @param myTurn whose turn it is; if your turn, it goes on their grid. Otherwise,
+	 * it goes on yours.
+	 * @return true if the move was valid, false if not.
+	 * @deprecated use makeMove(int, boolean) with a Cell instead
+	 */
+	@Deprecated
+	public boolean makeMove(Point point, boolean myTurn) {
+		return makeMove(Cell.of(point.y, point.x), myTurn);
+	}
+	
+	/**
+	 * Makes a move and says what it did.
+	 * 
+	 * The same as makeMove(), except you find out if it was a hit or a miss.
+	 * 
+	 * @param cell the Cell you want to make a hit at.
+	 * @param myTurn whose turn it is; if your turn, it goes on their grid. Otherwise,
+	 * it goes on yours.
+	 * @return HIT or MISS, or INVALID if the square was already shot
+	 */
+	public ShotResult resolveMove(int cell, boolean myTurn) {
+		if (!makeMove(cell, myTurn)) {
+			return ShotResult.INVALID;
+		}
+		char[][] shotGrid = myTurn ? model.otherGrid : model.grid;
+		return shotGrid[Cell.row(cell)][Cell.col(cell)] == 'h' ? ShotResult.HIT : ShotResult.MISS;
+	}
+	
+	/**
+	 * Makes a move without waiting for it.
+	 * 
+	 * The move runs in this game's MatchActor, after anything submitted before it.
+	 * 
+	 * @param cell the Cell you want to make a hit at.
+	 * @param myTurn whose turn it is; if your turn, it goes on their grid. Otherwise,
+	 * it goes on yours.
+	 * @return a future that completes with what the move did, or fails with a
+	 * RejectedExecutionException if too much work is already waiting
+	 */
+	public CompletableFuture<ShotResult> makeMoveAsync(int cell, boolean myTurn) {
+		return submit(() -> resolveMove(cell, myTurn));
+	}
+	
+	/**
+	 * Makes a move without waiting for it, given a Point.
+	 * 
+	 * @param point the Point you want to make a hit at, with y as the outerArray
+	 * @param myTurn whose turn it is; if your turn, it goes on their grid. Otherwise,
+	 * it goes on yours.
+	 * @return a future that completes with what the move did
+	 * @deprecated use makeMoveAsync(int, boolean) with a Cell instead
+	 */
+	@Deprecated
+	public CompletableFuture<ShotResult> makeMoveAsync(Point point, boolean myTurn) {
+		return makeMoveAsync(Cell.of(point.y, point.x), myTurn);
+	}
+	
+	/**
+	 * Applies a run of moves at once, for rebuilding a game.
+	 * 
+	 * The same as calling makeMove() for each move in the range, except nothing is
+	 * printed and the observers are told once at the end, with a MoveBatch. Moves
+	 * that can't be made are skipped and counted.
+	 * 
+	 * @param cells the Cell of each move
+	 * @param myTurns for each move, whose turn it was
+	 * @param from the index of the first move to apply
+	 * @param to one past the index of the last move to apply
+	 * @return the totals for the moves
+	 */
+	public MoveBatch applyMoves(int[] cells, boolean[] myTurns, int from, int to) {
+		return model.applyMoves(cells, myTurns, from, to);
+	}
+	
+	/**
+	 * Applies a whole run of moves at once, for rebuilding a game.
+	 * 
+	 * @param cells the Cell of each move
+	 * @param myTurns for each move, whose turn it was
+	 * @return the totals for the moves
+	 */
+	public MoveBatch applyMoves(int[] cells, boolean[] myTurns) {
+		return applyMoves(cells, myTurns, 0, cells.length);
+	}
+	
+	/**
+	 * Indexes a recorded game so it can be replayed on this game's grids.
+	 * 
+	 * The ships should already be placed on both grids, with no shots made. Use
+	 * ReplayIndex.seek() to jump to any move.
+	 * 
+	 * @param cells the Cell of each move
+	 * @param myTurns for each move, whose turn it was
+	 * @return the index, ready to seek
+	 */
+	public ReplayIndex indexReplay(int[] cells, boolean[] myTurns) {
+		return new ReplayIndex(model, cells, myTurns);
+	}
+	
+	/**
+	 * Runs some work on this game without waiting for it.
+	 * 
+	 * The work runs in this game's MatchActor, one thing at a time, so it can
+	 * touch the model freely. If MAX_PENDING things are already waiting, the
+	 * work is turned away rather than queued.
+	 * 
+	 * @param <T> what the work produces
+	 * @param work the work to do
+	 * @return a future that completes with what the work produced, or fails with
+	 * whatever it threw, or a RejectedExecutionException if it was turned away
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<T> work) {
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		if (pending.incrementAndGet() > MAX_PENDING) {
+			pending.decrementAndGet();
+			result.completeExceptionally(new RejectedExecutionException("Too many moves waiting"));
+			return result;
+		}
+		try {
+			actor.execute(() -> {
+				try {
+					result.complete(work.get());
+				} catch (Throwable e) {
+					result.completeExceptionally(e);
+				} finally {
+					pending.decrementAndGet();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pending.decrementAndGet();
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+	
+	/**
+	 * Get the mailbox this game's submitted work runs in.
+	 * 
+	 * Anything run in it is ordered with the submitted moves.
+	 * 
+	 * @return this controller's MatchActor
+	 */
+	public Executor getExecutor() {
+		return actor;
+	}
+	
+	/**
+	 * Checks how much submitted work hasn't finished yet.
+	 * 
+	 * @return the number of submitted tasks still waiting or running
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+	
 	/**
 	 * Testing oriented method, allows you to access model grid.
 	 * 
 	 * A testing oriented method that allows direct access to the model's grid.
+	 * This is the live array, so only the game thread should use it. Other
+	 * threads should use getMySnapshot() instead.
 	 * 
 	 * @return model.grid your grid as stored in the model
 	 */
@@ -150,6 +415,7 @@ public class BSController {
 	 * Testing oriented method, allows you to access model other grid.
 	 * 
 	 * A testing oriented method that allows direct access to the model's other grid.
+	 * Like getMyGrid(), this is the live array. See getOtherSnapshot().
 	 * 
 	 * @return model.otherGrid their grid as stored in the model
 	 */
@@ -167,7 +433,63 @@ public class BSController {
 	 * the model.
 	 */
 	public void updateTheirGrid(char[][] newGrid) {
-		model.otherGrid = newGrid;
+		model.setOtherGrid(newGrid);
+	}
+	
+	/**
+	 * Get an immutable snapshot of your grid, safe to read from any thread.
+	 * 
+	 * Unlike getMyGrid(), this never hands out the live array, so spectators,
+	 * AI advisors and the like can read it while the game keeps going.
+	 * 
+	 * @return the latest GridSnapshot of your grid
+	 */
+	public GridSnapshot getMySnapshot() {
+		return model.getSnapshot(WhichGrid.THIS_GRID);
+	}
+	
+	/**
+	 * Get an immutable snapshot of the other grid, safe to read from any thread.
+	 * 
+	 * @return the latest GridSnapshot of the other grid
+	 */
+	public GridSnapshot getOtherSnapshot() {
+		return model.getSnapshot(WhichGrid.OTHER_GRID);
+	}
+	
+	/**
+	 * Get what a bot is allowed to see of the other grid.
+	 * 
+	 * Like getOtherSnapshot(), this is safe to read from any thread, but the
+	 * ships that haven't been hit are hidden.
+	 * 
+	 * @return an OpponentBoard over the latest snapshot of the other grid, for
+	 * this game's mode
+	 */
+	public OpponentBoard getOpponentBoard() {
+		return new OpponentBoard(getOtherSnapshot(), model.getMode());
+	}
+	
+	/**
+	 * Collects the squares that changed since the last call.
+	 * 
+	 * Invokes the drainDirty() method of BSModel, so the view can redraw only the
+	 * squares that changed.
+	 * 
+	 * @param whichGrid which grid's changes you want
+	 * @param into a CellSet to put the changed cells in
+	 */
+	public void drainDirty(WhichGrid whichGrid, CellSet into) {
+		model.drainDirty(whichGrid, into);
+	}
+	
+	/**
+	 * Collects the squares of the other grid that hold a ship that was never hit.
+	 * 
+	 * @param into a CellSet to put those cells in
+	 */
+	public void getOtherShipsLeft(CellSet into) {
+		model.getOtherShipsLeft(into);
 	}
 	
 	/**
@@ -182,4 +504,14 @@ public class BSController {
 		return model.shipStates;
 	}
 	
+	/**
+	 * Gets the Ship placed on a square of your grid.
+	 * 
+	 * @param cell the Cell to look at
+	 * @return the Ship on that square, or null if there isn't one
+	 */
+	public Ship getShipAt(int cell) {
+		return model.getShipAt(cell);
+	}
+	
 }
@@ -0,0 +1,125 @@
+package controller;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ *
+ * A mailbox that runs one match's work one task at a time. Anyone can hand it
+ * a task from any thread, and the tasks run in the order they were handed in,
+ * never two at once. There is no lock: whoever finds the mailbox idle claims it
+ * with a compare-and-set and drains it on the backing executor, and everyone
+ * else just leaves their task in the queue for the drainer to pick up.
+ *
+ * Many actors can share one backing executor, even a single thread. Each drain
+ * only runs a batch of tasks before handing the thread back, so one busy match
+ * can't starve the others.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class MatchActor implements Executor {
+	/**
+	 * How many tasks a drain runs before letting other actors have the thread.
+	 */
+	private static final int BATCH = 64;
+	/**
+	 * The tasks waiting to run.
+	 */
+	private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<Runnable>();
+	/**
+	 * Whether a drain is queued up or running right now.
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	/**
+	 * Where the drains actually run.
+	 */
+	private final Executor executor;
+
+	/**
+	 * The constructor.
+	 *
+	 * Runnable::run is a fine executor if you don't have one: the thread that
+	 * finds the mailbox idle does the draining itself.
+	 *
+	 * @param executor where the tasks should run
+	 */
+	public MatchActor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Puts a task in the mailbox.
+	 *
+	 * It runs after every task that was put in before it, and never at the same
+	 * time as any other task for this actor.
+	 *
+	 * @param task the work to do
+	 */
+	@Override
+	public void execute(Runnable task) {
+		mailbox.add(task);
+		trySchedule();
+	}
+
+	/**
+	 * Checks if there's nothing waiting and nothing running.
+	 *
+	 * @return true if the mailbox is idle, false if not
+	 */
+	public boolean isIdle() {
+		return !scheduled.get() && mailbox.isEmpty();
+	}
+
+	/**
+	 * Starts a drain if there isn't one already.
+	 * 
+	 * If the executor won't take it, say because it was shut down, the mailbox
+	 * is let go again so a later execute() can try.
+	 * 
+	 * @throws RejectedExecutionException if the executor wouldn't run the drain
+	 */
+	private void trySchedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(this::drain);
+			} catch (RejectedExecutionException e) {
+				scheduled.set(false);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Runs a batch of tasks from the mailbox.
+	 *
+	 * When it's done, it gives up the mailbox and then looks again, since a task
+	 * could have been added just before it let go. If there's still work, or the
+	 * batch ran out, another drain is started.
+	 */
+	private void drain() {
+		try {
+			for (int i = 0; i < BATCH; i++) {
+				Runnable task = mailbox.poll();
+				if (task == null) {
+					break;
+				}
+				try {
+					task.run();
+				} catch (Throwable e) {
+					//One broken task can't be allowed to stop the rest of the match.
+					e.printStackTrace();
+				}
+			}
+		} finally {
+			scheduled.set(false);
+			if (!mailbox.isEmpty()) {
+				trySchedule();
+			}
+		}
+	}
+}
@@ -0,0 +1,569 @@
+package controller;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import model.Cell;
+import network.Transport;
+
+/**
+ * 
+ * The networked half of a game, with no GUI in it. Once both sides have placed their
+ * ships, a MatchSession trades grids over a Transport, sends your shots, and applies
+ * the other side's shots to your grid as they come in. It used to live inside the
+ * socket code of BSView; pulling it out means a whole two-player game can be played
+ * in a test, over an in-memory transport, with no windows and no ports.
+ * 
+ * The protocol is the same as always: each side sends its grid, then the server
+ * shoots first and every shot is an Integer cell. Whoever loses their last ship closes the
+ * transport, which is how the winner finds out. When the game ends, the listener
+ * set with setGameOverListener() is called with true if this side won.
+ * 
+ * Clicks, shots from the other side and timeouts can all come in on different
+ * threads. The turn is an atomic state, and whoever wants to act on it has to win
+ * a compare-and-set first, so a click and a remote shot can never both think it's
+ * their turn. With setPeerTimeout(), a clock starts every time this side waits
+ * for the other side's shot, and if it runs out first the other side is treated
+ * as gone. The clock comes from a TurnClock, which is the wall clock unless the
+ * session is given another, like a simulation's. The submit methods also put the work in the controller's MatchActor,
+ * which runs one thing at a time for this match, so lots of matches can share a few
+ * threads. A GUI should give its controller a thread of its own, like
+ * newGameThread(), so a click only queues the shot and the send, which can block
+ * on the network, never runs on the FX thread.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class MatchSession {
+	/**
+	 * Thrown when a shot was made on the board but couldn't be sent. It still
+	 * says what the shot did.
+	 */
+	private static class UnsentShotException extends IOException {
+		/**
+		 * For serialization, which never happens.
+		 */
+		private static final long serialVersionUID = 1L;
+		/**
+		 * What the shot did to the board.
+		 */
+		final ShotResult result;
+		
+		/**
+		 * The constructor.
+		 * 
+		 * @param result what the shot did
+		 * @param cause why it couldn't be sent
+		 */
+		UnsentShotException(ShotResult result, IOException cause) {
+			super(cause);
+			this.result = result;
+		}
+	}
+	
+	/**
+	 * The controller for this side's game.
+	 */
+	private final BSController controller;
+	/**
+	 * The connection to the other side.
+	 */
+	private final Transport transport;
+	/**
+	 * It's this side's turn to shoot.
+	 */
+	private static final int MY_TURN = 0;
+	/**
+	 * It's the other side's turn to shoot.
+	 */
+	private static final int THEIR_TURN = 1;
+	/**
+	 * A shot is being made. Nothing else can touch the turn until it's done.
+	 */
+	private static final int BUSY = 2;
+	/**
+	 * The game is over.
+	 */
+	private static final int ENDED = 3;
+	/**
+	 * Whose turn it is, or if a shot is in progress or the game is over.
+	 */
+	private final AtomicInteger state;
+	/**
+	 * The controller's mailbox, which runs work for this match one thing at a time.
+	 */
+	private final Executor actor;
+	/**
+	 * Whether this side won. Only meaningful once the game has ended.
+	 */
+	private volatile boolean iWin = true;
+	/**
+	 * Whether the first shot has been made, by either side. After that, a grid
+	 * from the other side is ignored.
+	 */
+	private volatile boolean started = false;
+	/**
+	 * Called once when the game ends, with true if this side won, or null if
+	 * nobody is listening.
+	 */
+	private volatile Consumer<Boolean> gameOverListener;
+	/**
+	 * One timer thread shared by every match on the wall clock.
+	 */
+	private static final ScheduledThreadPoolExecutor TIMER = newTimer();
+	/**
+	 * The wall clock, running tasks on TIMER.
+	 */
+	private static final TurnClock WALL_CLOCK = (delayNanos, task) -> {
+		Future<?> scheduled = TIMER.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+		return () -> scheduled.cancel(false);
+	};
+	/**
+	 * Where the peer clocks come from.
+	 */
+	private final TurnClock turnClock;
+	/**
+	 * How long to wait for the other side's shot, in nanoseconds, or 0 to wait
+	 * forever.
+	 */
+	private volatile long peerTimeoutNanos = 0;
+	/**
+	 * Counts every time the clock is started. A timeout only counts if no newer
+	 * wait has started since it was scheduled.
+	 */
+	private final AtomicInteger waits = new AtomicInteger();
+	/**
+	 * Cancels the clock for the current wait, or null if there isn't one.
+	 */
+	private volatile Runnable clock;
+	
+	/**
+	 * The constructor. The server goes first, so it should pass true. Timeouts
+	 * run on the wall clock.
+	 * 
+	 * @param controller the controller for this side's game
+	 * @param transport the connection to the other side
+	 * @param myTurn true if this side makes the first shot
+	 */
+	public MatchSession(BSController controller, Transport transport, boolean myTurn) {
+		this(controller, transport, myTurn, WALL_CLOCK);
+	}
+	
+	/**
+	 * The constructor, with the clock timeouts run on.
+	 * 
+	 * @param controller the controller for this side's game
+	 * @param transport the connection to the other side
+	 * @param myTurn true if this side makes the first shot
+	 * @param turnClock where the peer clocks come from
+	 */
+	public MatchSession(BSController controller, Transport transport, boolean myTurn, TurnClock turnClock) {
+		this.turnClock = turnClock;
+		this.controller = controller;
+		this.transport = transport;
+		this.state = new AtomicInteger(myTurn ? MY_TURN : THEIR_TURN);
+		this.actor = controller.getExecutor();
+	}
+	
+	/**
+	 * Makes a single thread for a game's moves to run on.
+	 * 
+	 * The thread is a daemon, so an unfinished game doesn't keep the program
+	 * running after its window is closed.
+	 * 
+	 * @return an executor with one thread, to pass to the BSController
+	 */
+	public static ExecutorService newGameThread() {
+		return Executors.newSingleThreadExecutor((work) -> {
+			Thread thread = new Thread(work, "battleship-game");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Makes the timer thread the wall clock runs on.
+	 * 
+	 * @return a timer with one daemon thread that forgets cancelled clocks
+	 */
+	private static ScheduledThreadPoolExecutor newTimer() {
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, (work) -> {
+			Thread thread = new Thread(work, "battleship-clock");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+	
+	/**
+	 * Sets who to tell when the game ends.
+	 * 
+	 * @param listener called once with true if this side won and false if it
+	 * lost, on whichever thread ended the game
+	 */
+	public void setGameOverListener(Consumer<Boolean> listener) {
+		this.gameOverListener = listener;
+	}
+	
+	/**
+	 * Sets how long to wait for each of the other side's shots.
+	 * 
+	 * Takes effect from the next wait. If their shot doesn't come in time,
+	 * onTimeout() ends the game and this side wins.
+	 * 
+	 * @param millis the longest wait in milliseconds, or 0 to wait forever
+	 */
+	public void setPeerTimeout(long millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException("Not a timeout: " + millis);
+		}
+		peerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+	
+	/**
+	 * Sends your grid and waits for theirs.
+	 * 
+	 * The grid that comes back becomes the other grid in the model.
+	 * 
+	 * @param myGrid your grid, with your ships placed
+	 * @throws IOException if the transport broke
+	 * @throws ClassNotFoundException if what came back wasn't a grid
+	 */
+	public void tradeGrids(char[][] myGrid) throws IOException, ClassNotFoundException {
+		sendGrid(myGrid);
+		receiveGrid();
+	}
+	
+	/**
+	 * Sends your grid, the first half of tradeGrids().
+	 * 
+	 * @param myGrid your grid, with your ships placed
+	 * @throws IOException if the transport broke
+	 */
+	public void sendGrid(char[][] myGrid) throws IOException {
+		transport.send(myGrid);
+	}
+	
+	/**
+	 * Waits for their grid, the second half of tradeGrids().
+	 * 
+	 * @throws IOException if the transport broke
+	 * @throws ClassNotFoundException if what came back wasn't a grid
+	 */
+	public void receiveGrid() throws IOException, ClassNotFoundException {
+		char[][] theirGrid = (char[][]) transport.receive();
+		controller.updateTheirGrid(theirGrid);
+		System.out.println("Grid received.");
+	}
+	
+	/**
+	 * Makes a shot on the other grid, if it's your turn.
+	 * 
+	 * If the shot is valid, it's sent to the other side and the turn passes to them.
+	 * 
+	 * @param cell the Cell you want to hit
+	 * @return true if the shot was made, false if it wasn't your turn or the square
+	 * had already been shot
+	 * @throws IOException if the shot was made but couldn't be sent, which ends the game
+	 */
+	public boolean localMove(int cell) throws IOException {
+		return shoot(cell) != ShotResult.INVALID;
+	}
+	
+	/**
+	 * Makes a shot on the other grid if it's your turn, given a Point.
+	 * 
+	 * @param point the Point you want to hit, with y as the outerArray
+	 * @return true if the shot was made, false if not
+	 * @throws IOException if the shot couldn't be sent
+	 * @deprecated use localMove(int) with a Cell instead
+	 */
+	@Deprecated
+	public boolean localMove(Point point) throws IOException {
+		return localMove(Cell.of(point.y, point.x));
+	}
+	
+	/**
+	 * Puts a shot in this match's mailbox, to be made like localMove().
+	 * 
+	 * This doesn't wait. If the shot can't be sent, the game ends, but the shot
+	 * has already been made on the board, so the future still says what it did.
+	 * 
+	 * @param cell the Cell you want to hit
+	 * @return a future that completes with what the shot did, or fails with a
+	 * RejectedExecutionException if too many moves are already waiting
+	 */
+	public CompletableFuture<ShotResult> submitMove(int cell) {
+		return controller.submit(() -> {
+			try {
+				ShotResult result = shoot(cell);
+				System.out.println("Move was valid: " + (result != ShotResult.INVALID));
+				return result;
+			} catch (UnsentShotException e) {
+				return e.result;
+			}
+		});
+	}
+	
+	/**
+	 * Puts a message from the other side in this match's mailbox, to be
+	 * handled by onMessage().
+	 * 
+	 * @param message the message, an Integer cell or a char[][]
+	 */
+	public void deliver(Object message) {
+		actor.execute(() -> onMessage(message));
+	}
+	
+	/**
+	 * Puts a timeout in this match's mailbox, to be handled by onTimeout().
+	 */
+	public void submitTimeout() {
+		actor.execute(this::onTimeout);
+	}
+	
+	/**
+	 * Keeps receiving shots until the game is over.
+	 * 
+	 * This is the read loop that used to be in makeServerSocket() and makeClientSocket().
+	 * If the other side shoots first, their clock starts here.
+	 */
+	public void run() {
+		if (state.get() == THEIR_TURN && !started) {
+			startClock();
+		}
+		while (!isEnded()) {
+			if (!receiveOne()) {
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Waits for a single message from the other side and hands it to the mailbox.
+	 * 
+	 * If the transport breaks or the other side closes it, the game ends.
+	 * 
+	 * @return true if a message came in, false if the transport is done
+	 */
+	public boolean receiveOne() {
+		try {
+			deliver(transport.receive());
+			return true;
+		} catch (ClassNotFoundException|IOException e) {
+			actor.execute(this::onDisconnect);
+			return false;
+		}
+	}
+	
+	/**
+	 * Handles a message that arrived from the other side.
+	 * 
+	 * A grid becomes the other grid, just like receiveGrid(), but only before the
+	 * first shot. Once play has started, the other grid can't be swapped out from
+	 * under this side's shots, so a late grid is ignored. If it's their turn,
+	 * a shot is applied to your grid and the turn comes back to you. A shot off
+	 * the grid or on a square they already shot is ignored, and it stays their turn. If that shot
+	 * sank your last ship, you lose and the transport is closed. receiveOne() calls
+	 * this for messages it reads, but a transport that pushes its messages, like
+	 * the simulated one, can call it directly.
+	 * 
+	 * @param message the message, an Integer cell or a char[][]
+	 */
+	public void onMessage(Object message) {
+		if (message instanceof char[][]) {
+			if (!started && !isEnded()) {
+				controller.updateTheirGrid((char[][]) message);
+				System.out.println("Grid received.");
+			} else {
+				System.out.println("Ignored a grid sent after play started.");
+			}
+		} else if (message instanceof Integer) {
+			int cell = (Integer) message;
+			if (!Cell.isValid(cell) || alreadyShot(cell)) {
+				System.out.println("Ignored a shot that can't be made: " + cell);
+			} else if (state.compareAndSet(THEIR_TURN, BUSY)) {
+				try {
+					controller.makeMove(cell, false);
+					started = true;
+					stopClock();
+					if (controller.isGameOver()) {
+						System.out.println("Game is over so I closed the socket.");
+						iWin = false;
+						end();
+					} else {
+						state.compareAndSet(BUSY, MY_TURN);
+					}
+				} finally {
+					//If the move blew up, it's still their turn and their clock is still running.
+					state.compareAndSet(BUSY, THEIR_TURN);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Checks if a square of your grid has already been shot.
+	 * 
+	 * @param cell the Cell to check
+	 * @return true if it's a hit or a miss already
+	 */
+	private boolean alreadyShot(int cell) {
+		char square = controller.getMyGrid()[Cell.row(cell)][Cell.col(cell)];
+		return square == 'h' || square == 'm';
+	}
+	
+	/**
+	 * Makes a shot on the other grid if this side can win the turn for it.
+	 * 
+	 * If the shot is made but can't be sent, the game is over, since the other
+	 * side will never see it.
+	 * 
+	 * @param cell the Cell you want to hit
+	 * @return what the shot did, or INVALID if it wasn't your turn
+	 * @throws UnsentShotException if the shot was made but couldn't be sent
+	 */
+	private ShotResult shoot(int cell) throws UnsentShotException {
+		if (!state.compareAndSet(MY_TURN, BUSY)) {
+			return ShotResult.INVALID;
+		}
+		ShotResult result = controller.resolveMove(cell, true);
+		if (result == ShotResult.INVALID) {
+			state.compareAndSet(BUSY, MY_TURN);
+			return result;
+		}
+		started = true;
+		if (state.compareAndSet(BUSY, THEIR_TURN)) {
+			startClock();
+			try {
+				transport.send(cell);
+			} catch (IOException e) {
+				end();
+				throw new UnsentShotException(result, e);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Starts the clock on the other side's shot, if there's a timeout.
+	 * 
+	 * When it runs out, the timeout goes through the mailbox like everything
+	 * else, and is dropped if their shot or a newer wait got there first.
+	 */
+	private void startClock() {
+		long nanos = peerTimeoutNanos;
+		int wait = waits.incrementAndGet();
+		stopClock();
+		if (nanos > 0) {
+			clock = turnClock.schedule(nanos, () -> actor.execute(() -> {
+				if (waits.get() == wait && state.get() == THEIR_TURN) {
+					onTimeout();
+				}
+			}));
+		}
+	}
+	
+	/**
+	 * Stops the clock for the current wait, if there is one.
+	 */
+	private void stopClock() {
+		Runnable cancel = clock;
+		if (cancel != null) {
+			cancel.run();
+			clock = null;
+		}
+	}
+	
+	/**
+	 * Handles the other side going away, which ends the game.
+	 */
+	public void onDisconnect() {
+		end();
+	}
+	
+	/**
+	 * Handles the turn clock running out.
+	 * 
+	 * If it was your turn, you forfeit. If it was theirs, they're treated as
+	 * gone and you win. If a shot is being made right now, the timeout is too
+	 * late and nothing happens.
+	 */
+	public void onTimeout() {
+		if (state.compareAndSet(MY_TURN, BUSY)) {
+			iWin = false;
+			end();
+		} else if (state.compareAndSet(THEIR_TURN, BUSY)) {
+			end();
+		}
+	}
+	
+	/**
+	 * Get the controller this session plays on.
+	 * 
+	 * @return the BSController for this side
+	 */
+	public BSController getController() {
+		return controller;
+	}
+	
+	/**
+	 * Checks whose turn it is.
+	 * 
+	 * @return true if it's this side's turn, false if not
+	 */
+	public boolean isMyTurn() {
+		return state.get() == MY_TURN;
+	}
+	
+	/**
+	 * Checks if the game has ended.
+	 * 
+	 * @return true if the game is over, false if not
+	 */
+	public boolean isEnded() {
+		return state.get() == ENDED;
+	}
+	
+	/**
+	 * Checks if this side won.
+	 * 
+	 * @return true if this side won, false if it lost or the game isn't over
+	 */
+	public boolean didIWin() {
+		return isEnded() && iWin;
+	}
+	
+	/**
+	 * Ends the game, closing the transport and telling the listener who won.
+	 * 
+	 * Only the first call does anything, however many threads get here at once.
+	 */
+	private void end() {
+		if (state.getAndSet(ENDED) == ENDED) {
+			return;
+		}
+		waits.incrementAndGet();
+		stopClock();
+		try {
+			transport.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		Consumer<Boolean> listener = gameOverListener;
+		if (listener != null) {
+			listener.accept(iWin);
+		}
+	}
+}
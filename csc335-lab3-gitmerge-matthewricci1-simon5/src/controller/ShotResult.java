@@ -0,0 +1,15 @@
+package controller;
+
+/**
+ * 
+ * What came of a shot made through the asynchronous controller methods. INVALID
+ * means nothing happened, either because the square was already shot or because
+ * it wasn't your turn.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public enum ShotResult {
+INVALID, MISS, HIT
+}
@@ -0,0 +1,23 @@
+package controller;
+
+/**
+ *
+ * Where a MatchSession gets its timers from. A real game uses the wall clock, and
+ * a simulation passes its SimScheduler, so a timeout happens in virtual time like
+ * everything else and replays exactly with the same seed.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public interface TurnClock {
+
+	/**
+	 * Runs a task after a delay.
+	 *
+	 * @param delayNanos how long from now, in nanoseconds
+	 * @param task what to run
+	 * @return something to run to cancel the task, if it hasn't run yet
+	 */
+	Runnable schedule(long delayNanos, Runnable task);
+}
@@ -1,11 +1,13 @@
 package model;
 
 import java.awt.Point;
+import java.util.Arrays;
 import java.util.Observable;
 import java.util.Observer;
 
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import objects.Fleet;
 import objects.Ship;
 import view.Move;
 import view.WhichGrid;
@@ -37,9 +39,13 @@ public class BSModel extends Observable {
 	public static final String[] SHIP_NAMES = {"carrier", "battleship", "cruiser", "destroyer",
 			"destroyer2", "raft", "raft2"};
 	/**
-	 * Tracking the state of the ships, so we can check if they're sunken or not.
+	 * The state of every ship in your fleet, kept as arrays.
 	 */
-	public Ship[] shipStates = new Ship[SHIP_SIZES.length];
+	private final Fleet fleet;
+	/**
+	 * Handles on the ships in the fleet, so we can check if they're sunken or not.
+	 */
+	public Ship[] shipStates;
 	/**
 	 * Your grid represented as a char[][].
 	 */
@@ -48,15 +54,76 @@ public class BSModel extends Observable {
 	 * The other grid represented as a char[][].
 	 */
 	public char[][] otherGrid = new char[GRID_SIZE][GRID_SIZE];
-
+	/**
+	 * What makeShot() returns when the shot can't be made.
+	 */
+	public static final int INVALID_SHOT = -1;
+	/**
+	 * For each cell of your grid, the index of the ship on it plus one, or 0 if
+	 * there is no ship. Lets makeShot() find the hit ship without a Point.
+	 */
+	private int[] shipIndexAt = new int[GRID_SIZE * GRID_SIZE];
+	/**
+	 * Each row of your grid as bits, with a bit set for each column that has a
+	 * ship placed on it. Lets PlacementKernels check a whole ship in one go.
+	 */
+	private final long[] shipRows = new long[GRID_SIZE];
+	/**
+	 * Counts publications, so every snapshot gets a bigger version than the last.
+	 * Only touched by the game thread.
+	 */
+	private long version = 0;
+	/**
+	 * The Zobrist hash of the shots on your grid and the ships of yours they sank.
+	 * Kept up to date one shot at a time. Only touched by the game thread.
+	 */
+	private long myHash = 0;
+	/**
+	 * The Zobrist hash of the shots on the other grid. Their ships aren't tracked,
+	 * so it only covers hits and misses.
+	 */
+	private long otherHash = 0;
+	/**
+	 * The latest published snapshot of your grid. Safe to read from any thread.
+	 */
+	private volatile GridSnapshot mySnapshot = GridSnapshot.of(grid, version, myHash);
+	/**
+	 * The latest published snapshot of the other grid. Safe to read from any thread.
+	 */
+	private volatile GridSnapshot otherSnapshot = GridSnapshot.of(otherGrid, version, otherHash);
+	/**
+	 * The squares of your grid that changed since the view last drained them.
+	 */
+	private final CellSet myDirty = new CellSet(GRID_SIZE * GRID_SIZE);
+	/**
+	 * The squares of the other grid that changed since the view last drained them.
+	 */
+	private final CellSet otherDirty = new CellSet(GRID_SIZE * GRID_SIZE);
+	/**
+	 * The squares of the other grid that hold a ship that hasn't been hit yet.
+	 * Kept up to date as hits come in, so the end of the game can reveal them
+	 * without scanning the whole board.
+	 */
+	private final CellSet otherShipsLeft = new CellSet(GRID_SIZE * GRID_SIZE);
 
 	
 	
 	
 	/**
-	 * The constructor. Simply allows it to be made.
+	 * The constructor. Simply allows it to be made, for a classic game.
 	 */
 	public BSModel() {
+		this(GameMode.CLASSIC);
+	}
+	
+	/**
+	 * The constructor for a game with a different fleet.
+	 * 
+	 * @param mode the game mode, which says which ships each side has
+	 */
+	public BSModel(GameMode mode) {
+		fleet = new Fleet(mode);
+		shipStates = fleet.getShips();
 	}
 	
 	
@@ -81,13 +148,16 @@ public class BSModel extends Observable {
 	 * debug messages are here for convenience. See the in-line comments for more
 	 * information.
 	 * 
-	 * @param point the Point that you want to hit
+	 * Observers get the grid, which grid it was, the cell that was shot as an
+	 * Integer, and whether it was a HIT or a MISS.
+	 * 
+	 * @param cell the Cell that you want to hit
 	 * @param myTurn true if it's your turn, false if not
 	 * @return true if the hit was valid, false if not
 	 */
-	public boolean updateGridWithHit(Point point, boolean myTurn) {
-		int outerArray = point.y;
-		int innerArray = point.x;
+	public boolean updateGridWithHit(int cell, boolean myTurn) {
+		int outerArray = Cell.row(cell);
+		int innerArray = Cell.col(cell);
 
 		System.out.println("Model.updateGridWith Hit. Outerarray: " + outerArray + " innerArray: " + innerArray);
 		System.out.println("Model.updateGridWithHit. Myturn: " + myTurn);
@@ -119,7 +189,7 @@ public class BSModel extends Observable {
 				if (myShipThere) {
 					grid[outerArray][innerArray] = 'h';
 					move = Move.HIT;
-					updateShipStates(point);
+					updateShipStates(cell);
 				} else {
 					grid[outerArray][innerArray] = 'm';
 					move = Move.MISS;
@@ -133,38 +203,280 @@ public class BSModel extends Observable {
 		
 
 	   if (moveValid) { //Only notify observers if valid. 
+		   if (myTurn) {
+			   otherDirty.add(cell);
+			   otherShipsLeft.remove(cell);
+			   otherHash ^= Zobrist.shot(cell, otherGrid[outerArray][innerArray]);
+		   } else {
+			   myDirty.add(cell);
+			   myHash ^= Zobrist.shot(cell, grid[outerArray][innerArray]);
+		   }
+		   publishRow(myTurn ? WhichGrid.OTHER_GRID : WhichGrid.THIS_GRID, outerArray);
 		   setChanged();
 		   if (myTurn) {
-			   notifyObservers(new Object[] {otherGrid, WhichGrid.OTHER_GRID, new Point(outerArray, innerArray), move});
+			   notifyObservers(new Object[] {otherGrid, WhichGrid.OTHER_GRID, cell, move});
 		   } else {
-			   notifyObservers(new Object[] {grid, WhichGrid.THIS_GRID, new Point(outerArray, innerArray), move});
+			   notifyObservers(new Object[] {grid, WhichGrid.THIS_GRID, cell, move});
 		   }
 	   }
 	   return moveValid;
 	   
 	}
 	
+	/**
+	 * Update the grid with a hit, given as a Point.
+	 * 
+	 * @param point the Point that you want to hit, with y as the outerArray
+	 * @param myTurn true if it's your turn, false if not
+	 * @return true if the hit was valid, false if not
+	 * @deprecated use updateGridWithHit(int, boolean) with a Cell instead
+	 */
+	@Deprecated
+	public boolean updateGridWithHit(Point point, boolean myTurn) {
+		return updateGridWithHit(Cell.of(point.y, point.x), myTurn);
+	}
+	
+	/**
+	 * Makes a hypothetical shot for searching, returning a token to undo it.
+	 * 
+	 * This does the same thing to the grids and ship states as updateGridWithHit(),
+	 * but is meant for AI lookahead: nothing is printed, no observers are notified,
+	 * and nothing is allocated. Everything unmakeShot() needs to put the board back
+	 * is packed into the returned int: the cell, which grid it was on, the ship that
+	 * was hit (if any), and what the square held before. The grid's hash is kept
+	 * up to date too, so a search can look positions up by getHash(). Since these
+	 * shots are hypothetical, no snapshot is published either.
+	 * 
+	 * @param outerArray the row of the shot
+	 * @param innerArray the column of the shot
+	 * @param myTurn true to shoot the other grid, false to shoot yours
+	 * @return a token for unmakeShot(), or INVALID_SHOT if the square was already shot
+	 */
+	public int makeShot(int outerArray, int innerArray, boolean myTurn) {
+		char[][] target = myTurn ? otherGrid : grid;
+		char previous = target[outerArray][innerArray];
+		if (previous == 'h' || previous == 'm') {
+			return INVALID_SHOT;
+		}
+		int cell = outerArray * GRID_SIZE + innerArray;
+		int ship = 0;
+		if (previous == 's') {
+			target[outerArray][innerArray] = 'h';
+			//Only your own ships are tracked, same as updateGridWithHit().
+			if (!myTurn) {
+				ship = shipIndexAt[cell];
+				if (ship != 0) {
+					fleet.markHit(ship - 1);
+					if (fleet.isSunk(ship - 1)) {
+						myHash ^= Zobrist.sunk(ship - 1);
+					}
+				}
+			}
+		} else {
+			target[outerArray][innerArray] = 'm';
+		}
+		if (myTurn) {
+			otherHash ^= Zobrist.shot(cell, target[outerArray][innerArray]);
+		} else {
+			myHash ^= Zobrist.shot(cell, target[outerArray][innerArray]);
+		}
+		return (cell << 17) | (ship << 9) | ((myTurn ? 1 : 0) << 8) | (previous & 0xFF);
+	}
+	
+	/**
+	 * Takes back a shot made by makeShot().
+	 * 
+	 * Tokens must be undone in the reverse order they were made, like a stack.
+	 * 
+	 * @param token the token makeShot() returned
+	 */
+	public void unmakeShot(int token) {
+		int cell = token >>> 17;
+		int ship = (token >>> 9) & 0xFF;
+		boolean myTurn = ((token >>> 8) & 1) == 1;
+		char previous = (char) (token & 0xFF);
+		char[][] target = myTurn ? otherGrid : grid;
+		long key = Zobrist.shot(cell, target[cell / GRID_SIZE][cell % GRID_SIZE]);
+		if (myTurn) {
+			otherHash ^= key;
+		} else {
+			myHash ^= key;
+		}
+		target[cell / GRID_SIZE][cell % GRID_SIZE] = previous;
+		if (ship != 0) {
+			if (fleet.isSunk(ship - 1)) {
+				myHash ^= Zobrist.sunk(ship - 1);
+			}
+			fleet.unmarkHit(ship - 1);
+		}
+	}
+
+	/**
+	 * Applies a run of moves all at once, telling the observers only at the end.
+	 *
+	 * Meant for rebuilding games from their moves, where calling updateGridWithHit()
+	 * for every shot would print, publish and notify every time. Here each move goes
+	 * through makeShot() in a tight loop, and only the bookkeeping the view and other
+	 * threads care about is done per move: the dirty squares and the other grid's
+	 * remaining ships. Each grid that changed gets one snapshot at the end, and the
+	 * observers get a single MoveBatch with the totals.
+	 *
+	 * Moves that are off the grid or on a square that was already shot are skipped
+	 * and counted in the MoveBatch.
+	 *
+	 * @param cells the cell of each move
+	 * @param myTurns for each move, true if it was your shot at the other grid,
+	 * false if it was their shot at yours
+	 * @param from the index of the first move to apply
+	 * @param to one past the index of the last move to apply
+	 * @return what happened
+	 */
+	public MoveBatch applyMoves(int[] cells, boolean[] myTurns, int from, int to) {
+		if (cells.length != myTurns.length) {
+			throw new IllegalArgumentException("Every move needs exactly one turn.");
+		}
+		if (from < 0 || to > cells.length || from > to) {
+			throw new IndexOutOfBoundsException("Not a range of moves: " + from + " to " + to);
+		}
+		int hits = 0;
+		int invalid = 0;
+		int firstInvalid = -1;
+		boolean myGridChanged = false;
+		boolean otherGridChanged = false;
+		for (int i = from; i < to; i++) {
+			int cell = cells[i];
+			int token = Cell.isValid(cell) ? makeShot(Cell.row(cell), Cell.col(cell), myTurns[i]) : INVALID_SHOT;
+			if (token == INVALID_SHOT) {
+				if (invalid++ == 0) {
+					firstInvalid = i;
+				}
+				continue;
+			}
+			if ((token & 0xFF) == 's') {
+				hits++;
+			}
+			if (myTurns[i]) {
+				otherDirty.add(cell);
+				otherShipsLeft.remove(cell);
+				otherGridChanged = true;
+			} else {
+				myDirty.add(cell);
+				myGridChanged = true;
+			}
+		}
+		if (myGridChanged) {
+			publish(WhichGrid.THIS_GRID);
+		}
+		if (otherGridChanged) {
+			publish(WhichGrid.OTHER_GRID);
+		}
+		MoveBatch batch = new MoveBatch(to - from - invalid, hits, invalid, firstInvalid, fleet.allSunk());
+		setChanged();
+		notifyObservers(batch);
+		return batch;
+	}
+
+	/**
+	 * Copies both grids into one flat array, for a ReplayIndex keyframe.
+	 *
+	 * Your grid's squares come first, then the other grid's, each in cell order.
+	 *
+	 * @param into where to copy them, 2 * GRID_SIZE * GRID_SIZE long
+	 */
+	void captureKeyframe(char[] into) {
+		for (int outerArray = 0; outerArray < GRID_SIZE; outerArray++) {
+			System.arraycopy(grid[outerArray], 0, into, outerArray * GRID_SIZE, GRID_SIZE);
+			System.arraycopy(otherGrid[outerArray], 0, into, Cell.COUNT + outerArray * GRID_SIZE, GRID_SIZE);
+		}
+	}
+
+	/**
+	 * Puts both grids back the way captureKeyframe() saw them.
+	 *
+	 * Only the squares that are different get written and marked dirty, so the
+	 * view repaints just what moved. The ships' hits, the hashes and the other
+	 * grid's remaining ships are worked out again from the restored grids, and
+	 * both grids are published. Observers aren't told; whoever restores is
+	 * expected to follow up, like ReplayIndex does with applyMoves().
+	 *
+	 * Ships can't move during a game, so this is only meant for keyframes of the
+	 * same game, with the same ships placed.
+	 *
+	 * @param from the squares, as captureKeyframe() wrote them
+	 */
+	void restoreKeyframe(char[] from) {
+		for (int cell = 0; cell < Cell.COUNT; cell++) {
+			char[] myRow = grid[Cell.row(cell)];
+			char[] otherRow = otherGrid[Cell.row(cell)];
+			if (myRow[Cell.col(cell)] != from[cell]) {
+				myRow[Cell.col(cell)] = from[cell];
+				myDirty.add(cell);
+			}
+			char other = from[Cell.COUNT + cell];
+			if (otherRow[Cell.col(cell)] != other) {
+				otherRow[Cell.col(cell)] = other;
+				otherDirty.add(cell);
+			}
+			if (other == 's') {
+				otherShipsLeft.add(cell);
+			} else {
+				otherShipsLeft.remove(cell);
+			}
+		}
+		fleet.reset();
+		for (int cell = 0; cell < Cell.COUNT; cell++) {
+			if (from[cell] == 'h' && shipIndexAt[cell] != 0) {
+				fleet.markHit(shipIndexAt[cell] - 1);
+			}
+		}
+		myHash = Zobrist.of(grid);
+		for (int ship = 0; ship < fleet.size(); ship++) {
+			if (fleet.isSunk(ship)) {
+				myHash ^= Zobrist.sunk(ship);
+			}
+		}
+		otherHash = Zobrist.of(otherGrid);
+		publish(WhichGrid.THIS_GRID);
+		publish(WhichGrid.OTHER_GRID);
+	}
+
 	/**
 	 * A ship has been hit so we update it.
 	 * 
-	 * A ship has been hit. The Ship that corresponds to that point is retrieved,
+	 * A ship has been hit. The Ship that corresponds to that cell is retrieved,
 	 * and setHit() is called, registering a hit to it.
 	 * 
-	 * @param point the Point at which the ship was hit.
+	 * @param cell the Cell at which the ship was hit.
 	 */
-	public void updateShipStates(Point point) {
-		System.out.println("Model updateShipStates: " + point);
-		Ship hitShip = Ship.getShipAt(point);
+	public void updateShipStates(int cell) {
+		System.out.println("Model updateShipStates: " + Cell.toString(cell));
+		//Look the ship up in this model, so games running side by side don't mix.
+		int shipIndex = shipIndexAt[cell];
+		Ship hitShip = (shipIndex == 0) ? null : shipStates[shipIndex - 1];
 		System.out.println("hitShip: " + hitShip);
 		for (Ship ship : shipStates) {
 			if (ship.equals(hitShip)) {
 				ship.setHit();
 			}
 		}
+		if (hitShip != null && hitShip.isSunk()) {
+			myHash ^= Zobrist.sunk(shipIndex - 1);
+		}
 		setChanged();
 		notifyObservers(shipStates);
 	}
 	
+	/**
+	 * A ship has been hit so we update it, given as a Point.
+	 * 
+	 * @param point the Point at which the ship was hit, with y as the outerArray
+	 * @deprecated use updateShipStates(int) with a Cell instead
+	 */
+	@Deprecated
+	public void updateShipStates(Point point) {
+		updateShipStates(Cell.of(point.y, point.x));
+	}
+	
 	/**
 	 * Verifies if the game is over by checking ship states.
 	 * 
@@ -177,10 +489,7 @@ public class BSModel extends Observable {
 		/**
 		 * checks if all ships are sunk
 		 */
-		for (Ship ship : shipStates) {
-			if (!ship.isSunk()) return false;
-		}
-		return true;
+		return fleet.allSunk();
 	}
 	
 	
@@ -191,70 +500,72 @@ public class BSModel extends Observable {
 	 * array representing the grid and notifies the view for GUI processing. It does
 	 * a few boolean checks just like the GUI does and then is able to place it.
 	 * 
-	 * @param point the point origin of the ship
+	 * @param cell the Cell origin of the ship
 	 * @param ship the Ship object containing important information about that ship,
 	 * such as its length
 	 * @param dir whether or not the ship is pointed up or left.
 	 */
-	public void updateGridWithShips(Point point, Ship ship, Directions dir) {
+	public void updateGridWithShips(int cell, Ship ship, Directions dir) {
 		/**
 		 * updates grid with ships
 		 */
-		int outerArray = point.x;
-		int innerArray = point.y;
-		boolean shipCollidesWithOtherShip = false;
-		boolean shipGoesOffGrid = false;
+		int outerArray = Cell.row(cell);
+		int innerArray = Cell.col(cell);
+		int shipIndex = (ship.getFleet() == fleet) ? ship.getIndex() + 1 : 0;
 		//System.out.println("Model.updateGridWithShips: " + point);
 		
-		switch (dir) {
-			case UP:
-				//Ship goes off board
-				if (outerArray - ship.getLength() < -1) {
-					shipGoesOffGrid = true;
-					break;
-				}
-				//There's an 's' in its path
-				int checkOuterArray = outerArray;
-				for (int i = 0; i < ship.getLength(); i++) {
-					if (grid[checkOuterArray][innerArray] == 's') {
-						shipCollidesWithOtherShip = true;
-					}
-					checkOuterArray--;
-				}
-				if (!shipCollidesWithOtherShip && !shipGoesOffGrid) {
-					for (int i = 0; i < ship.getLength(); i++) {
-						grid[outerArray][innerArray] = 's'; 
-						ship.addPoint(new Point(innerArray, outerArray));
-						outerArray--;
-					}
-				}
-				break;
-			case LEFT:
-				if (innerArray - ship.getLength() < - 1) {
-					shipGoesOffGrid = true;
-					break;
-				}
-				int checkInnerArray = innerArray;
-				for (int i = 0; i < ship.getLength(); i++) {
-					if (grid[outerArray][checkInnerArray] == 's') {
-						shipCollidesWithOtherShip = true;
-					}
-					checkInnerArray--;
-				}
-				if (!shipCollidesWithOtherShip && !shipGoesOffGrid) {
-					for (int i = 0; i < ship.getLength(); i++) {
-						grid[outerArray][innerArray] = 's'; 
-						ship.addPoint(new Point(innerArray, outerArray));
-						innerArray--;
-					}
+		//Nothing happens if it goes off the board or there's an 's' in its path.
+		if (PlacementKernels.fitsAt(shipRows, outerArray, innerArray, ship.getLength(), dir)) {
+			for (int i = 0; i < ship.getLength(); i++) {
+				grid[outerArray][innerArray] = 's'; 
+				shipRows[outerArray] |= 1L << innerArray;
+				myDirty.add(outerArray * GRID_SIZE + innerArray);
+				shipIndexAt[outerArray * GRID_SIZE + innerArray] = shipIndex;
+				if (dir == Directions.UP) {
+					outerArray--;
+				} else {
+					innerArray--;
 				}
-				break;
+			}
 		}
 		
+	    publish(WhichGrid.THIS_GRID);
 	    setChanged();
 	    notifyObservers(new Object[] {grid, WhichGrid.THIS_GRID});
 	}
 	
+	/**
+	 * Updates the grid with ships, given a Point.
+	 * 
+	 * Unlike everywhere else a Point is used, x is the outerArray here.
+	 * 
+	 * @param point the point origin of the ship, with x as the outerArray
+	 * @param ship the Ship to place
+	 * @param dir whether or not the ship is pointed up or left.
+	 * @deprecated use updateGridWithShips(int, Ship, Directions) with a Cell instead
+	 */
+	@Deprecated
+	public void updateGridWithShips(Point point, Ship ship, Directions dir) {
+		updateGridWithShips(Cell.of(point.x, point.y), ship, dir);
+	}
+	
+	/**
+	 * Checks if a ship could be placed on your grid.
+	 * 
+	 * The same check updateGridWithShips() makes: the ship has to stay on the
+	 * board and not touch a ship that's already placed. The origin is a row and a
+	 * column instead of a Point, like the view's rectangles.
+	 * 
+	 * @param outerArray the origin's row
+	 * @param innerArray the origin's column
+	 * @param length the ship's length
+	 * @param dir whether the ship is pointed up or left
+	 * @return true if it can go there, false if not
+	 */
+	public boolean canPlaceShip(int outerArray, int innerArray, int length, Directions dir) {
+		return PlacementKernels.fitsAt(shipRows, outerArray, innerArray, length, dir);
+	}
+	
 	/**
 	 * A testing oriented method, allowing you to place ships on the other grid.
 	 * 
@@ -262,14 +573,14 @@ public class BSModel extends Observable {
 	 * ships on the other board for testing purposes. It works the same, except it places
 	 * it on the other grid instead of having to wait for a socket connection.
 	 * 
-	 * @param point the point origin of the ship
+	 * @param cell the Cell origin of the ship
 	 * @param ship the Ship object containing important information about that ship,
 	 * such as its length
 	 * @param dir whether or not the ship is pointed up or left.
 	 */
-	public void updateOtherGridWithShips(Point point, Ship ship, Directions dir) {
-		int outerArray = point.x;
-		int innerArray = point.y;
+	public void updateOtherGridWithShips(int cell, Ship ship, Directions dir) {
+		int outerArray = Cell.row(cell);
+		int innerArray = Cell.col(cell);
 		boolean shipCollidesWithOtherShip = false;
 		boolean shipGoesOffGrid = false;
 		//System.out.println("Model.updateGridWithShips: " + point);
@@ -290,7 +601,8 @@ public class BSModel extends Observable {
 				if (!shipCollidesWithOtherShip && !shipGoesOffGrid) {
 					for (int i = 0; i < ship.getLength(); i++) {
 						otherGrid[outerArray][innerArray] = 's'; 
-						ship.addPoint(new Point(innerArray, outerArray));
+						otherDirty.add(outerArray * GRID_SIZE + innerArray);
+						otherShipsLeft.add(outerArray * GRID_SIZE + innerArray);
 						outerArray--;
 					}
 				}
@@ -310,19 +622,146 @@ public class BSModel extends Observable {
 				if (!shipCollidesWithOtherShip && !shipGoesOffGrid) {
 					for (int i = 0; i < ship.getLength(); i++) {
 						otherGrid[outerArray][innerArray] = 's'; 
-						ship.addPoint(new Point(innerArray, outerArray));
+						otherDirty.add(outerArray * GRID_SIZE + innerArray);
+						otherShipsLeft.add(outerArray * GRID_SIZE + innerArray);
 						innerArray--;
 					}
 				}
 				break;
 		}
 		
+	    publish(WhichGrid.OTHER_GRID);
 	    setChanged();
 	    notifyObservers(new Object[] {otherGrid, WhichGrid.OTHER_GRID});
 	}
 	
+	/**
+	 * Places ships on the other grid, given a Point.
+	 * 
+	 * @param point the point origin of the ship, with x as the outerArray
+	 * @param ship the Ship to place
+	 * @param dir whether or not the ship is pointed up or left.
+	 * @deprecated use updateOtherGridWithShips(int, Ship, Directions) with a Cell instead
+	 */
+	@Deprecated
+	public void updateOtherGridWithShips(Point point, Ship ship, Directions dir) {
+		updateOtherGridWithShips(Cell.of(point.x, point.y), ship, dir);
+	}
+	
 
 	
+	/**
+	 * Replaces the other grid, e.g. with the one the opponent sent over.
+	 * 
+	 * The new grid is published as a fresh snapshot, so readers on other threads
+	 * see either the old grid or the new one, never a mix.
+	 * 
+	 * @param newGrid the char[][] that is now the other grid
+	 */
+	public void setOtherGrid(char[][] newGrid) {
+		otherGrid = newGrid;
+		otherHash = Zobrist.of(newGrid);
+		otherShipsLeft.clear();
+		for (int outerArray = 0; outerArray < GRID_SIZE; outerArray++) {
+			for (int innerArray = 0; innerArray < GRID_SIZE; innerArray++) {
+				int cell = outerArray * GRID_SIZE + innerArray;
+				otherDirty.add(cell);
+				if (newGrid[outerArray][innerArray] == 's') {
+					otherShipsLeft.add(cell);
+				}
+			}
+		}
+		publish(WhichGrid.OTHER_GRID);
+	}
+	
+	/**
+	 * Hands over the squares that changed since the last call, and forgets them.
+	 * 
+	 * The changed cells are added to the given set, which the caller owns, and the
+	 * model's own record is cleared. This way the view (or anything mirroring the
+	 * game) only has to redraw the squares that actually changed. Like the grids
+	 * themselves, this belongs to the game thread.
+	 * 
+	 * @param whichGrid which grid's changes you want
+	 * @param into where to put the changed cells
+	 */
+	public void drainDirty(WhichGrid whichGrid, CellSet into) {
+		CellSet dirty = (whichGrid == WhichGrid.THIS_GRID) ? myDirty : otherDirty;
+		into.addAll(dirty);
+		dirty.clear();
+	}
+	
+	/**
+	 * Copies out the squares of the other grid that still hold an unhit ship.
+	 * 
+	 * @param into where to put those cells
+	 */
+	public void getOtherShipsLeft(CellSet into) {
+		into.addAll(otherShipsLeft);
+	}
+	
+	/**
+	 * Get the latest published snapshot of a grid.
+	 * 
+	 * Unlike grid and otherGrid, which belong to the game thread, this can be
+	 * called from any thread. The snapshot will never change underneath you.
+	 * 
+	 * @param whichGrid whether you want your grid or the other grid
+	 * @return the latest GridSnapshot of that grid
+	 */
+	public GridSnapshot getSnapshot(WhichGrid whichGrid) {
+		return (whichGrid == WhichGrid.THIS_GRID) ? mySnapshot : otherSnapshot;
+	}
+	
+	/**
+	 * Get the Zobrist hash of what's known about a grid.
+	 * 
+	 * For your grid, that's every shot on it and which of your ships are sunk.
+	 * For the other grid, it's just the shots. Boards that got to the same shots
+	 * by different routes have the same hash, so it makes a good key for caching
+	 * AI work. Like the grids, this belongs to the game thread; other threads
+	 * can read it off a snapshot instead.
+	 * 
+	 * @param whichGrid whether you want your grid's hash or the other grid's
+	 * @return the hash
+	 */
+	public long getHash(WhichGrid whichGrid) {
+		return (whichGrid == WhichGrid.THIS_GRID) ? myHash : otherHash;
+	}
+	
+	/**
+	 * Publishes a whole grid as a new snapshot.
+	 * 
+	 * Used for setup, where lots of squares change at once.
+	 * 
+	 * @param whichGrid which grid to publish
+	 */
+	private void publish(WhichGrid whichGrid) {
+		version++;
+		if (whichGrid == WhichGrid.THIS_GRID) {
+			mySnapshot = GridSnapshot.of(grid, version, myHash);
+		} else {
+			otherSnapshot = GridSnapshot.of(otherGrid, version, otherHash);
+		}
+	}
+	
+	/**
+	 * Publishes a new snapshot where only one row has changed.
+	 * 
+	 * Every other row is shared with the previous snapshot.
+	 * 
+	 * @param whichGrid which grid to publish
+	 * @param row the row that changed
+	 */
+	private void publishRow(WhichGrid whichGrid, int row) {
+		version++;
+		if (whichGrid == WhichGrid.THIS_GRID) {
+			mySnapshot = mySnapshot.withRow(row, grid[row], version, myHash);
+		} else {
+			otherSnapshot = otherSnapshot.withRow(row, otherGrid[row], version, otherHash);
+		}
+	}
+	
 	/**
 	 * Makes empty grids to initialize them.
 	 * 
@@ -338,7 +777,14 @@ public class BSModel extends Observable {
 				curRow[col] = ' ';
 			}
 			grid[row] = curRow;
+			for (int col = 0; col < GRID_SIZE; col++) {
+				myDirty.add(row * GRID_SIZE + col);
+			}
 		}
+		Arrays.fill(shipIndexAt, 0);
+		Arrays.fill(shipRows, 0);
+		myHash = 0;
+		publish(WhichGrid.THIS_GRID);
 	    setChanged();
 	    if (whichGrid == WhichGrid.THIS_GRID) {
 	    	notifyObservers(new Object[] {grid, whichGrid});
@@ -349,32 +795,82 @@ public class BSModel extends Observable {
 
 	}
 	
+	/**
+	 * Clears everything for a rematch, reusing the existing storage.
+	 * 
+	 * Unlike making a new BSModel and calling initShipStates() and initGrid(), this
+	 * doesn't allocate anything: both grids are blanked out row by row, every ship
+	 * has its hits taken away, and every square is marked dirty so the view repaints
+	 * the whole board once. Observers get the same notifications as a fresh game.
+	 */
+	public void resetInPlace() {
+		for (int row = 0; row < GRID_SIZE; row++) {
+			Arrays.fill(grid[row], ' ');
+			Arrays.fill(otherGrid[row], ' ');
+			for (int col = 0; col < GRID_SIZE; col++) {
+				myDirty.add(row * GRID_SIZE + col);
+				otherDirty.add(row * GRID_SIZE + col);
+			}
+		}
+		Arrays.fill(shipIndexAt, 0);
+		Arrays.fill(shipRows, 0);
+		otherShipsLeft.clear();
+		myHash = 0;
+		otherHash = 0;
+		fleet.reset();
+		publish(WhichGrid.THIS_GRID);
+		publish(WhichGrid.OTHER_GRID);
+		
+		setChanged();
+		notifyObservers(shipStates);
+		setChanged();
+		notifyObservers(new Object[] {grid, WhichGrid.THIS_GRID});
+		setChanged();
+		notifyObservers(new Object[] {otherGrid, WhichGrid.OTHER_GRID});
+	}
+	
 	/**
 	 * Initializes the Ship[] tracking the state of the ships.
 	 * 
-	 * Initializes the ship states for the reset() method in BSView. This will
-	 * populate the Ship[] with all the corresponding Ships in their default values.
-	 * Note that we use the Prototype pattern here since the Ships only really vary
-	 * in length.
+	 * Initializes the ship states for the reset() method in BSView. The fleet was
+	 * laid out from the game mode when the model was made, so this just takes
+	 * away every hit, and nothing is allocated.
 	 */
 	public void initShipStates() {	
-		Ship carrier = new Ship(SHIP_SIZES[0], SHIP_NAMES[0]); carrier.setRep(); //PROTOTYPE
-		shipStates[0] = carrier;   
-	    for (int i = 1; i < SHIP_SIZES.length; i++) {
-	    	try {
-				Ship curShip = (Ship) carrier.clone(); //Clone the ship
-				curShip.setLength(SHIP_SIZES[i]); curShip.setName(SHIP_NAMES[i]); 
-				curShip.setRep();
-				shipStates[i] = curShip;
-			} catch (CloneNotSupportedException e) {
-				e.printStackTrace();
-			}
-	    }
-	    
+		fleet.reset();
 	    setChanged();
 	    notifyObservers(shipStates);
 	}
 	
+	/**
+	 * Get the game mode this model was made for.
+	 * 
+	 * @return the GameMode
+	 */
+	public GameMode getMode() {
+		return fleet.getMode();
+	}
+	
+	/**
+	 * Get the state of every ship in your fleet.
+	 * 
+	 * @return the Fleet
+	 */
+	public Fleet getFleet() {
+		return fleet;
+	}
+	
+	/**
+	 * Gets the Ship placed on a square of your grid.
+	 * 
+	 * @param cell the Cell to look at
+	 * @return the Ship on that square, or null if there isn't one
+	 */
+	public Ship getShipAt(int cell) {
+		int shipIndex = shipIndexAt[cell];
+		return (shipIndex == 0) ? null : shipStates[shipIndex - 1];
+	}
+	
 	/**
 	 * Ends the game, showing an Alert.
 	 * 
@@ -0,0 +1,84 @@
+package model;
+
+/**
+ *
+ * Squares of the grid as a single packed int: row * GRID_SIZE + column, where the
+ * row is the outerArray of a char[][] grid and the column is the innerArray. This
+ * is the one way the game names a square, from the model up through the controller,
+ * the events the view gets, and the shots sent over the network. An int costs
+ * nothing to make or send, and unlike a Point, nobody has to remember which of x
+ * and y is the row.
+ *
+ * Only static methods, since a cell is just an int.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class Cell {
+	/**
+	 * What's used for "no square".
+	 */
+	public static final int NONE = -1;
+	/**
+	 * How many squares there are.
+	 */
+	public static final int COUNT = BSModel.GRID_SIZE * BSModel.GRID_SIZE;
+
+	/**
+	 * Only static methods here, so no instances.
+	 */
+	private Cell() {
+	}
+
+	/**
+	 * Packs a square.
+	 *
+	 * @param outerArray the row
+	 * @param innerArray the column
+	 * @return the cell
+	 */
+	public static int of(int outerArray, int innerArray) {
+		return outerArray * BSModel.GRID_SIZE + innerArray;
+	}
+
+	/**
+	 * Get a cell's row.
+	 *
+	 * @param cell the cell
+	 * @return the row, the outerArray
+	 */
+	public static int row(int cell) {
+		return cell / BSModel.GRID_SIZE;
+	}
+
+	/**
+	 * Get a cell's column.
+	 *
+	 * @param cell the cell
+	 * @return the column, the innerArray
+	 */
+	public static int col(int cell) {
+		return cell % BSModel.GRID_SIZE;
+	}
+
+	/**
+	 * Checks if a cell is on the grid.
+	 *
+	 * @param cell the cell
+	 * @return true if it names a square, false if not
+	 */
+	public static boolean isValid(int cell) {
+		return cell >= 0 && cell < COUNT;
+	}
+
+	/**
+	 * Describes a cell, for debug messages.
+	 *
+	 * @param cell the cell
+	 * @return the row and column, like "[3][7]"
+	 */
+	public static String toString(int cell) {
+		return "[" + row(cell) + "][" + col(cell) + "]";
+	}
+}
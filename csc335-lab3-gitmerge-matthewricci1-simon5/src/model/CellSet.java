@@ -0,0 +1,130 @@
+package model;
+
+/**
+ * 
+ * A compact set of cells, stored as one bit per cell in a long[]. A cell is the
+ * single int outerArray * GRID_SIZE + innerArray. The model uses these to keep
+ * track of which squares changed since the view last looked, so the view only
+ * has to repaint those instead of the whole board.
+ * 
+ * To go through every cell in the set:
+ * for (int cell = set.nextCell(0); cell >= 0; cell = set.nextCell(cell + 1))
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class CellSet {
+	/**
+	 * The bits, 64 cells to a word.
+	 */
+	private final long[] words;
+	
+	/**
+	 * The constructor. Makes an empty set big enough for the given number of cells.
+	 * 
+	 * @param cells how many cells the board has
+	 */
+	public CellSet(int cells) {
+		words = new long[(cells + 63) >>> 6];
+	}
+	
+	/**
+	 * Adds a cell to the set.
+	 * 
+	 * @param cell the cell to add
+	 */
+	public void add(int cell) {
+		words[cell >>> 6] |= 1L << cell;
+	}
+	
+	/**
+	 * Removes a cell from the set.
+	 * 
+	 * @param cell the cell to remove
+	 */
+	public void remove(int cell) {
+		words[cell >>> 6] &= ~(1L << cell);
+	}
+	
+	/**
+	 * Checks if a cell is in the set.
+	 * 
+	 * @param cell the cell to check
+	 * @return true if it's in the set, false if not
+	 */
+	public boolean contains(int cell) {
+		return (words[cell >>> 6] & (1L << cell)) != 0;
+	}
+	
+	/**
+	 * Adds every cell of another set to this one.
+	 * 
+	 * @param other the set to add, which must be the same size
+	 */
+	public void addAll(CellSet other) {
+		for (int i = 0; i < words.length; i++) {
+			words[i] |= other.words[i];
+		}
+	}
+	
+	/**
+	 * Empties the set.
+	 */
+	public void clear() {
+		for (int i = 0; i < words.length; i++) {
+			words[i] = 0;
+		}
+	}
+	
+	/**
+	 * Checks if the set is empty.
+	 * 
+	 * @return true if there are no cells in it
+	 */
+	public boolean isEmpty() {
+		for (long word : words) {
+			if (word != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Counts the cells in the set.
+	 * 
+	 * @return how many cells are in it
+	 */
+	public int size() {
+		int size = 0;
+		for (long word : words) {
+			size += Long.bitCount(word);
+		}
+		return size;
+	}
+	
+	/**
+	 * Finds the next cell in the set, starting from a given cell.
+	 * 
+	 * @param from the first cell to look at
+	 * @return the smallest cell in the set that is at least from, or -1 if none
+	 */
+	public int nextCell(int from) {
+		int index = from >>> 6;
+		if (index >= words.length) {
+			return -1;
+		}
+		long word = words[index] & (-1L << from);
+		while (true) {
+			if (word != 0) {
+				return (index << 6) + Long.numberOfTrailingZeros(word);
+			}
+			index++;
+			if (index == words.length) {
+				return -1;
+			}
+			word = words[index];
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package model;
+
+import java.util.Arrays;
+
+import objects.Fleet;
+
+/**
+ *
+ * Which ships a game is played with. The classic game has the fleet in
+ * BSModel.SHIP_SIZES and SHIP_NAMES, but a mode can have any number of ships of
+ * any length, as long as each fits on the grid. A BSModel is made for one mode,
+ * and its Fleet is laid out from it.
+ *
+ * Modes can be written down as a line of text, like
+ * "salvo:carrier=5,submarine=3,submarine=3", so they can live in a config file.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class GameMode {
+	/**
+	 * The classic game, with the fleet from SHIP_SIZES and SHIP_NAMES.
+	 */
+	public static final GameMode CLASSIC = new GameMode("classic", BSModel.SHIP_NAMES, BSModel.SHIP_SIZES);
+	/**
+	 * The name of the mode.
+	 */
+	private final String name;
+	/**
+	 * The name of each ship.
+	 */
+	private final String[] shipNames;
+	/**
+	 * The length of each ship, matching shipNames.
+	 */
+	private final int[] shipLengths;
+	/**
+	 * A key for the ship lengths, whatever order they come in.
+	 */
+	private final long fleetKey;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param name the name of the mode
+	 * @param shipNames the name of each ship
+	 * @param shipLengths the length of each ship, matching shipNames
+	 */
+	public GameMode(String name, String[] shipNames, int[] shipLengths) {
+		if (shipNames.length != shipLengths.length) {
+			throw new IllegalArgumentException("Every ship needs exactly one length.");
+		}
+		if (shipLengths.length < 1 || shipLengths.length > Fleet.MAX_SHIPS) {
+			throw new IllegalArgumentException("A fleet needs 1 to " + Fleet.MAX_SHIPS + " ships: " + shipLengths.length);
+		}
+		int squares = 0;
+		for (int length : shipLengths) {
+			if (length < 1 || length > BSModel.GRID_SIZE) {
+				throw new IllegalArgumentException("Ship doesn't fit on the grid: " + length);
+			}
+			squares += length;
+		}
+		if (squares > BSModel.GRID_SIZE * BSModel.GRID_SIZE) {
+			throw new IllegalArgumentException("The fleet needs " + squares + " squares, more than the grid has.");
+		}
+		this.name = name;
+		this.shipNames = shipNames.clone();
+		this.shipLengths = shipLengths.clone();
+		this.fleetKey = fleetKey(shipLengths);
+	}
+
+	/**
+	 * Works out the key for a fleet.
+	 *
+	 * The lengths are sorted first, since which ship is which doesn't change
+	 * where ships can be. The classic fleet's key is 0, so anything keyed by a
+	 * board's hash XOR its fleet key is keyed the same as before for the classic
+	 * game, and only other fleets get keys of their own.
+	 *
+	 * @param shipLengths the length of each ship
+	 * @return the key
+	 */
+	private static long fleetKey(int[] shipLengths) {
+		int[] sorted = shipLengths.clone();
+		Arrays.sort(sorted);
+		int[] classic = BSModel.SHIP_SIZES.clone();
+		Arrays.sort(classic);
+		if (Arrays.equals(sorted, classic)) {
+			return 0;
+		}
+		long key = sorted.length;
+		for (int length : sorted) {
+			key = (key ^ length) * 0x9E3779B97F4A7C15L;
+			key ^= key >>> 29;
+		}
+		return key;
+	}
+
+	/**
+	 * Reads a mode from a line of text.
+	 *
+	 * The line is the mode's name, a colon, and then each ship as name=length,
+	 * separated by commas. The word "classic" on its own is the classic mode.
+	 *
+	 * @param line the line of text to read
+	 * @return the GameMode it describes
+	 */
+	public static GameMode parse(String line) {
+		if (line.trim().equals(CLASSIC.name)) {
+			return CLASSIC;
+		}
+		int colon = line.indexOf(':');
+		if (colon < 0) {
+			throw new IllegalArgumentException("Not a game mode: " + line);
+		}
+		String[] ships = line.substring(colon + 1).split(",");
+		String[] names = new String[ships.length];
+		int[] lengths = new int[ships.length];
+		for (int i = 0; i < ships.length; i++) {
+			String[] parts = ships[i].trim().split("=");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Not a ship: " + ships[i]);
+			}
+			names[i] = parts[0].trim();
+			lengths[i] = Integer.parseInt(parts[1].trim());
+		}
+		return new GameMode(line.substring(0, colon).trim(), names, lengths);
+	}
+
+	/**
+	 * Get the name of the mode.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get how many ships are in the fleet.
+	 *
+	 * @return the number of ships
+	 */
+	public int getShipCount() {
+		return shipLengths.length;
+	}
+
+	/**
+	 * Get the name of a ship.
+	 *
+	 * @param ship the index of the ship
+	 * @return its name
+	 */
+	public String getShipName(int ship) {
+		return shipNames[ship];
+	}
+
+	/**
+	 * Get the length of a ship.
+	 *
+	 * @param ship the index of the ship
+	 * @return its length
+	 */
+	public int getShipLength(int ship) {
+		return shipLengths[ship];
+	}
+
+	/**
+	 * Get the length of every ship.
+	 *
+	 * @return a copy of the lengths, in fleet order
+	 */
+	public int[] getShipLengths() {
+		return shipLengths.clone();
+	}
+
+	/**
+	 * Get a key for this mode's fleet, to keep things worked out for one fleet
+	 * apart from another's in a cache.
+	 *
+	 * Modes with the same ship lengths have the same key, and the classic
+	 * fleet's key is 0.
+	 *
+	 * @return the key
+	 */
+	public long getFleetKey() {
+		return fleetKey;
+	}
+
+	/**
+	 * Writes this mode as a line of text.
+	 *
+	 * @return a line that parse() can read back
+	 */
+	@Override
+	public String toString() {
+		StringBuilder line = new StringBuilder(name).append(':');
+		for (int i = 0; i < shipLengths.length; i++) {
+			if (i > 0) {
+				line.append(',');
+			}
+			line.append(shipNames[i]).append('=').append(shipLengths[i]);
+		}
+		return line.toString();
+	}
+}
@@ -0,0 +1,135 @@
+package model;
+
+/**
+ * 
+ * An immutable, versioned copy of one of the grids. The model publishes a new
+ * snapshot after every change, so anyone outside the game thread (a spectator,
+ * an AI advisor, metrics, saving the game) can read a consistent board without
+ * locking and without racing the game thread.
+ * 
+ * Snapshots share structure: when a move changes one square, the new snapshot
+ * only copies that square's row, and points at the same row arrays as the
+ * previous snapshot for every other row. No row is ever written to once it has
+ * been handed to a snapshot.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class GridSnapshot {
+	/**
+	 * Which publication this is. Later snapshots always have bigger versions.
+	 */
+	private final long version;
+	/**
+	 * The grid's Zobrist hash when this snapshot was taken.
+	 */
+	private final long hash;
+	/**
+	 * The rows of the grid. Never modified, and possibly shared with other snapshots.
+	 */
+	private final char[][] rows;
+	
+	/**
+	 * The constructor. Only the model makes these, through of() and withRow().
+	 * 
+	 * @param rows the rows, which must not be changed after this
+	 * @param version the version number
+	 * @param hash the grid's Zobrist hash
+	 */
+	private GridSnapshot(char[][] rows, long version, long hash) {
+		this.rows = rows;
+		this.version = version;
+		this.hash = hash;
+	}
+	
+	/**
+	 * Makes a snapshot by copying every row of a grid.
+	 * 
+	 * @param grid the live grid to copy
+	 * @param version the version number for this snapshot
+	 * @param hash the grid's Zobrist hash
+	 * @return a new snapshot
+	 */
+	static GridSnapshot of(char[][] grid, long version, long hash) {
+		char[][] rows = new char[grid.length][];
+		for (int row = 0; row < grid.length; row++) {
+			rows[row] = grid[row].clone();
+		}
+		return new GridSnapshot(rows, version, hash);
+	}
+	
+	/**
+	 * Makes the next snapshot, where only a single row has changed.
+	 * 
+	 * Only the changed row is copied. The rest are shared with this snapshot.
+	 * 
+	 * @param row the index of the row that changed
+	 * @param source the new contents of that row, which will be copied
+	 * @param version the version number for the new snapshot
+	 * @param hash the grid's Zobrist hash after the change
+	 * @return a new snapshot
+	 */
+	GridSnapshot withRow(int row, char[] source, long version, long hash) {
+		char[][] newRows = rows.clone();
+		newRows[row] = source.clone();
+		return new GridSnapshot(newRows, version, hash);
+	}
+	
+	/**
+	 * Get the version of this snapshot.
+	 * 
+	 * @return the version number
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Get the grid's Zobrist hash as of this snapshot.
+	 * 
+	 * Snapshots with the same shots on them have the same hash, even if their
+	 * versions differ.
+	 * 
+	 * @return the hash
+	 */
+	public long getHash() {
+		return hash;
+	}
+	
+	/**
+	 * Get the size of the grid.
+	 * 
+	 * @return the number of rows (and columns)
+	 */
+	public int getSize() {
+		return rows.length;
+	}
+	
+	/**
+	 * Get a single square.
+	 * 
+	 * @param outerArray the row
+	 * @param innerArray the column
+	 * @return the char at that square, e.g. 's', 'h' or 'm'
+	 */
+	public char charAt(int outerArray, int innerArray) {
+		return rows[outerArray][innerArray];
+	}
+	
+	/**
+	 * Copies this snapshot out into a brand new char[][].
+	 * 
+	 * Handy for code that still wants a grid to work with. The copy belongs to
+	 * the caller, and changing it does nothing to the snapshot.
+	 * 
+	 * @return a copy of the grid
+	 */
+	public char[][] toArray() {
+		char[][] copy = new char[rows.length][];
+		for (int row = 0; row < rows.length; row++) {
+			copy[row] = rows[row].clone();
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,121 @@
+package model;
+
+/**
+ *
+ * What happened when a run of moves was applied all at once by
+ * BSModel.applyMoves(). Rebuilding a game from its moves would otherwise tell the
+ * observers about every single shot; instead, they get one of these at the end,
+ * with the totals, and can repaint from the dirty squares in one go.
+ *
+ * Moves that couldn't be made, because the square was off the grid or already
+ * shot, are skipped and counted rather than stopping the batch.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class MoveBatch {
+	/**
+	 * How many moves were made.
+	 */
+	private final int applied;
+	/**
+	 * How many of those were hits.
+	 */
+	private final int hits;
+	/**
+	 * How many moves were skipped.
+	 */
+	private final int invalid;
+	/**
+	 * The index of the first skipped move, or -1 if none were.
+	 */
+	private final int firstInvalid;
+	/**
+	 * Whether every one of your ships was sunk once the batch was done.
+	 */
+	private final boolean gameOver;
+
+	/**
+	 * The constructor. Only the model makes these.
+	 *
+	 * @param applied how many moves were made
+	 * @param hits how many of those were hits
+	 * @param invalid how many moves were skipped
+	 * @param firstInvalid the index of the first skipped move, or -1
+	 * @param gameOver whether your whole fleet was sunk afterwards
+	 */
+	MoveBatch(int applied, int hits, int invalid, int firstInvalid, boolean gameOver) {
+		this.applied = applied;
+		this.hits = hits;
+		this.invalid = invalid;
+		this.firstInvalid = firstInvalid;
+		this.gameOver = gameOver;
+	}
+
+	/**
+	 * Get how many moves were made.
+	 *
+	 * @return the number of moves made
+	 */
+	public int getApplied() {
+		return applied;
+	}
+
+	/**
+	 * Get how many of the moves made were hits.
+	 *
+	 * @return the number of hits
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Get how many of the moves made were misses.
+	 *
+	 * @return the number of misses
+	 */
+	public int getMisses() {
+		return applied - hits;
+	}
+
+	/**
+	 * Get how many moves were skipped because they couldn't be made.
+	 *
+	 * @return the number of skipped moves
+	 */
+	public int getInvalid() {
+		return invalid;
+	}
+
+	/**
+	 * Get where the first skipped move was.
+	 *
+	 * @return its index in the array given to applyMoves(), or -1 if every move
+	 * was made
+	 */
+	public int getFirstInvalid() {
+		return firstInvalid;
+	}
+
+	/**
+	 * Checks if the game was over once the batch was done.
+	 *
+	 * @return true if every one of your ships was sunk, false if not
+	 */
+	public boolean isGameOver() {
+		return gameOver;
+	}
+
+	/**
+	 * Describes the batch, for debug messages.
+	 *
+	 * @return the totals
+	 */
+	@Override
+	public String toString() {
+		return "MoveBatch[applied=" + applied + ", hits=" + hits + ", invalid=" + invalid
+				+ ", firstInvalid=" + firstInvalid + ", gameOver=" + gameOver + "]";
+	}
+}
@@ -0,0 +1,264 @@
+package model;
+
+/**
+ * 
+ * Bit-parallel versions of the loops that slide a ship along a row or down a
+ * column: checking if a ship fits, and counting all the ways ships can lie for the
+ * AI's density map. Each row of a grid is packed into the bits of a long, one bit
+ * per column, so one AND tests every column of a row at once. A ship of length n
+ * fits starting at column c when bits c to c + n - 1 are all free, and shifting the
+ * row against itself and ANDing finds every such c in about log n steps. Down a
+ * column, it's one AND of each row's bits, which again covers every column at once.
+ * 
+ * Rows have to fit in a long, so grids can be up to MAX_SIZE wide. densityScalar()
+ * does the same work one square at a time, and gives exactly the same numbers. It's
+ * used instead of the kernels when the battleship.scalarKernels system property is
+ * true, which is handy for ruling the kernels out when something looks wrong.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class PlacementKernels {
+	/**
+	 * The widest grid the bit-parallel kernels handle.
+	 */
+	public static final int MAX_SIZE = 63;
+	/**
+	 * Whether to use the scalar loops instead of the kernels.
+	 */
+	private static final boolean SCALAR = Boolean.getBoolean("battleship.scalarKernels");
+	
+	/**
+	 * Only static methods here, so no instances.
+	 */
+	private PlacementKernels() {
+	}
+	
+	/**
+	 * Finds every column a ship can start at in a row and run to the right.
+	 * 
+	 * @param freeRow the row, with a bit set for each column the ship may cover
+	 * @param length the ship's length
+	 * @return a bit set for each column c where columns c to c + length - 1 are free
+	 */
+	public static long windowStarts(long freeRow, int length) {
+		long starts = freeRow;
+		int span = 1;
+		//After each step, a set bit means the next span columns are all free.
+		while (span * 2 <= length) {
+			starts &= starts >>> span;
+			span *= 2;
+		}
+		if (span < length) {
+			starts &= starts >>> (length - span);
+		}
+		return starts;
+	}
+	
+	/**
+	 * Finds every column where a ship can run down from a row.
+	 * 
+	 * @param freeRows the rows, with a bit set for each column the ship may cover
+	 * @param row the row the ship starts at
+	 * @param length the ship's length
+	 * @return a bit set for each column that's free in all the rows from row to
+	 * row + length - 1
+	 */
+	public static long columnStarts(long[] freeRows, int row, int length) {
+		long starts = -1;
+		for (int i = 0; i < length; i++) {
+			starts &= freeRows[row + i];
+		}
+		return starts;
+	}
+	
+	/**
+	 * Checks if a ship can be placed, the way the game places them: from an
+	 * origin square, running UP toward row 0 or LEFT toward column 0.
+	 * 
+	 * @param occupiedRows each row of the grid, with a bit set for each column
+	 * that already has a ship
+	 * @param outerArray the origin's row
+	 * @param innerArray the origin's column
+	 * @param length the ship's length
+	 * @param dir which way the ship points
+	 * @return true if it stays on the grid and doesn't touch another ship
+	 */
+	public static boolean fitsAt(long[] occupiedRows, int outerArray, int innerArray, int length, Directions dir) {
+		if (dir == Directions.UP) {
+			int top = outerArray - length + 1;
+			if (top < 0) {
+				return false;
+			}
+			long column = 0;
+			for (int row = top; row <= outerArray; row++) {
+				column |= occupiedRows[row];
+			}
+			return (column & (1L << innerArray)) == 0;
+		}
+		int left = innerArray - length + 1;
+		if (left < 0) {
+			return false;
+		}
+		long window = ((1L << length) - 1) << left;
+		return (occupiedRows[outerArray] & window) == 0;
+	}
+	
+	/**
+	 * Adds up every way each ship can lie, for the AI's density map.
+	 * 
+	 * Every horizontal and vertical spot for every ship that doesn't cross a miss
+	 * adds 1 + hitWeight * (hits it covers) to each of its squares. Length one
+	 * ships are only counted once, since they look the same either way.
+	 * 
+	 * @param missRows each row, with a bit set for each column that was a miss
+	 * @param hitRows each row, with a bit set for each column that was a hit
+	 * @param size the number of rows, which is also the number of columns
+	 * @param shipSizes the lengths of the ships
+	 * @param hitWeight how much more a spot counts for each hit it covers
+	 * @param scores where to add the counts, row * size + column
+	 * @throws IllegalArgumentException if size is more than MAX_SIZE
+	 */
+	public static void density(long[] missRows, long[] hitRows, int size, int[] shipSizes,
+			double hitWeight, double[] scores) {
+		checkSize(size);
+		if (SCALAR) {
+			densityScalar(missRows, hitRows, size, shipSizes, hitWeight, scores);
+			return;
+		}
+		long full = (1L << size) - 1;
+		long[] freeRows = new long[size];
+		for (int row = 0; row < size; row++) {
+			freeRows[row] = ~missRows[row] & full;
+		}
+		for (int length : shipSizes) {
+			if (length > size) {
+				continue;
+			}
+			long shipMask = (1L << length) - 1;
+			for (int row = 0; row < size; row++) {
+				long starts = windowStarts(freeRows[row], length);
+				while (starts != 0) {
+					int col = Long.numberOfTrailingZeros(starts);
+					starts &= starts - 1;
+					double weight = 1 + hitWeight * Long.bitCount(hitRows[row] & (shipMask << col));
+					for (int i = 0; i < length; i++) {
+						scores[row * size + col + i] += weight;
+					}
+				}
+			}
+			if (length == 1) {
+				continue;
+			}
+			for (int row = 0; row + length <= size; row++) {
+				long starts = columnStarts(freeRows, row, length);
+				while (starts != 0) {
+					int col = Long.numberOfTrailingZeros(starts);
+					starts &= starts - 1;
+					int hits = 0;
+					for (int i = 0; i < length; i++) {
+						hits += (int) (hitRows[row + i] >>> col) & 1;
+					}
+					double weight = 1 + hitWeight * hits;
+					for (int i = 0; i < length; i++) {
+						scores[(row + i) * size + col] += weight;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The same as density(), one square at a time.
+	 * 
+	 * This is the fallback when the kernels are switched off, and what they're
+	 * checked against.
+	 * 
+	 * @param missRows each row, with a bit set for each column that was a miss
+	 * @param hitRows each row, with a bit set for each column that was a hit
+	 * @param size the number of rows, which is also the number of columns
+	 * @param shipSizes the lengths of the ships
+	 * @param hitWeight how much more a spot counts for each hit it covers
+	 * @param scores where to add the counts, row * size + column
+	 * @throws IllegalArgumentException if size is more than MAX_SIZE
+	 */
+	public static void densityScalar(long[] missRows, long[] hitRows, int size, int[] shipSizes,
+			double hitWeight, double[] scores) {
+		checkSize(size);
+		for (int length : shipSizes) {
+			for (int outerArray = 0; outerArray < size; outerArray++) {
+				for (int innerArray = 0; innerArray < size; innerArray++) {
+					addScalar(missRows, hitRows, size, hitWeight, scores, outerArray, innerArray, length, 0, 1);
+					if (length > 1) {
+						addScalar(missRows, hitRows, size, hitWeight, scores, outerArray, innerArray, length, 1, 0);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Makes sure every row of a grid fits in a long.
+	 * 
+	 * A row wider than MAX_SIZE columns doesn't fit in the long bitmasks, and
+	 * shifting 1L by 64 or more wraps around instead of giving 0, so the masks
+	 * would silently come out wrong.
+	 * 
+	 * @param size the number of rows, which is also the number of columns
+	 */
+	private static void checkSize(int size) {
+		if (size < 0 || size > MAX_SIZE) {
+			throw new IllegalArgumentException("Grids can be up to " + MAX_SIZE + " wide: " + size);
+		}
+	}
+	
+	/**
+	 * Adds one spot for a ship to the density scores, if it's on the grid and
+	 * doesn't cross a miss.
+	 * 
+	 * @param missRows each row, with a bit set for each column that was a miss
+	 * @param hitRows each row, with a bit set for each column that was a hit
+	 * @param size the number of rows
+	 * @param hitWeight how much more a spot counts for each hit it covers
+	 * @param scores the scores to add to
+	 * @param outerArray the row of the ship's first square
+	 * @param innerArray the column of the ship's first square
+	 * @param length the ship's length
+	 * @param rowStep 1 if the ship runs down the rows, 0 if not
+	 * @param colStep 1 if the ship runs along the columns, 0 if not
+	 */
+	private static void addScalar(long[] missRows, long[] hitRows, int size, double hitWeight, double[] scores,
+			int outerArray, int innerArray, int length, int rowStep, int colStep) {
+		if (outerArray + (length - 1) * rowStep >= size || innerArray + (length - 1) * colStep >= size) {
+			return;
+		}
+		int hits = 0;
+		for (int i = 0; i < length; i++) {
+			int row = outerArray + i * rowStep;
+			int col = innerArray + i * colStep;
+			if (isSet(missRows, row, col)) {
+				return;
+			}
+			if (isSet(hitRows, row, col)) {
+				hits++;
+			}
+		}
+		double weight = 1 + hitWeight * hits;
+		for (int i = 0; i < length; i++) {
+			scores[(outerArray + i * rowStep) * size + innerArray + i * colStep] += weight;
+		}
+	}
+	
+	/**
+	 * Checks a square's bit.
+	 * 
+	 * @param rows the rows
+	 * @param row the row
+	 * @param col the column
+	 * @return true if the bit is set, false if not
+	 */
+	private static boolean isSet(long[] rows, int row, int col) {
+		return ((rows[row] >>> col) & 1) != 0;
+	}
+}
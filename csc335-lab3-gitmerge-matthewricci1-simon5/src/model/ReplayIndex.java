@@ -0,0 +1,183 @@
+package model;
+
+/**
+ *
+ * Lets a replay jump to any move of a recorded game without playing it from the
+ * start. Every interval moves, a keyframe with both grids is kept; to see the
+ * board after move k, the nearest keyframe at or before k is restored and the
+ * few moves after it are applied with BSModel.applyMoves(). That's never more
+ * than interval - 1 moves, however long the game is, so a replay can be scrubbed
+ * back and forth at interactive speed.
+ *
+ * The index drives one BSModel, which needs to have the game's ships placed on
+ * both grids and no shots made when the index is built. Keyframes are worked out
+ * right away with makeShot() and unmakeShot(), so building leaves the model where
+ * it started, and nobody is notified. Each keyframe is a flat char[] of both
+ * grids, 2 * GRID_SIZE * GRID_SIZE long.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class ReplayIndex {
+	/**
+	 * How many moves apart keyframes are, unless told otherwise.
+	 */
+	public static final int DEFAULT_INTERVAL = 16;
+	/**
+	 * The model being replayed into.
+	 */
+	private final BSModel model;
+	/**
+	 * The cell of each move.
+	 */
+	private final int[] cells;
+	/**
+	 * For each move, whether it was a shot at the other grid.
+	 */
+	private final boolean[] myTurns;
+	/**
+	 * How many moves apart keyframes are.
+	 */
+	private final int interval;
+	/**
+	 * The keyframes. Keyframe i is the grids after the first i * interval moves.
+	 */
+	private final char[][] keyframes;
+	/**
+	 * How many moves are on the model right now.
+	 */
+	private int position = 0;
+
+	/**
+	 * The constructor, with keyframes every DEFAULT_INTERVAL moves.
+	 *
+	 * @param model the model to replay into, with ships placed and no shots made
+	 * @param cells the cell of each move
+	 * @param myTurns for each move, true if it was a shot at the other grid
+	 */
+	public ReplayIndex(BSModel model, int[] cells, boolean[] myTurns) {
+		this(model, cells, myTurns, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * The constructor. Works out every keyframe, leaving the model as it was.
+	 *
+	 * @param model the model to replay into, with ships placed and no shots made
+	 * @param cells the cell of each move
+	 * @param myTurns for each move, true if it was a shot at the other grid
+	 * @param interval how many moves apart keyframes should be
+	 */
+	public ReplayIndex(BSModel model, int[] cells, boolean[] myTurns, int interval) {
+		if (cells.length != myTurns.length) {
+			throw new IllegalArgumentException("Every move needs exactly one turn.");
+		}
+		if (interval < 1) {
+			throw new IllegalArgumentException("Keyframes need to be at least one move apart: " + interval);
+		}
+		this.model = model;
+		this.cells = cells.clone();
+		this.myTurns = myTurns.clone();
+		this.interval = interval;
+		this.keyframes = new char[cells.length / interval + 1][2 * Cell.COUNT];
+
+		int[] tokens = new int[cells.length];
+		int made = 0;
+		model.captureKeyframe(keyframes[0]);
+		for (int move = 0; move < cells.length; move++) {
+			int cell = cells[move];
+			if (Cell.isValid(cell)) {
+				int token = model.makeShot(Cell.row(cell), Cell.col(cell), myTurns[move]);
+				if (token != BSModel.INVALID_SHOT) {
+					tokens[made++] = token;
+				}
+			}
+			if ((move + 1) % interval == 0) {
+				model.captureKeyframe(keyframes[(move + 1) / interval]);
+			}
+		}
+		while (made > 0) {
+			model.unmakeShot(tokens[--made]);
+		}
+	}
+
+	/**
+	 * Shows the game as it was after some number of moves.
+	 *
+	 * The nearest keyframe is restored, which only rewrites the squares that are
+	 * different, and then the rest of the moves are applied. Observers get a
+	 * single MoveBatch for the moves after the keyframe, and can repaint from the
+	 * dirty squares.
+	 *
+	 * @param move how many moves to show, from 0 for the start to getMoveCount()
+	 * for the end
+	 * @return what the moves after the keyframe did
+	 */
+	public MoveBatch seek(int move) {
+		if (move < 0 || move > cells.length) {
+			throw new IndexOutOfBoundsException("No move " + move + " in a game of " + cells.length);
+		}
+		int keyframe = move / interval;
+		model.restoreKeyframe(keyframes[keyframe]);
+		position = move;
+		return model.applyMoves(cells, myTurns, keyframe * interval, move);
+	}
+
+	/**
+	 * Moves one move forward, if there is one.
+	 *
+	 * Just applies the next move, without going back to a keyframe.
+	 *
+	 * @return what the move did
+	 */
+	public MoveBatch stepForward() {
+		int from = position;
+		position = Math.min(position + 1, cells.length);
+		return model.applyMoves(cells, myTurns, from, position);
+	}
+
+	/**
+	 * Moves one move back, if there is one.
+	 *
+	 * @return what the moves after the keyframe did
+	 */
+	public MoveBatch stepBack() {
+		return seek(Math.max(position - 1, 0));
+	}
+
+	/**
+	 * Get how many moves are on the model right now.
+	 *
+	 * @return the current move
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * Get how many moves the game has.
+	 *
+	 * @return the number of moves
+	 */
+	public int getMoveCount() {
+		return cells.length;
+	}
+
+	/**
+	 * Get how many moves apart keyframes are.
+	 *
+	 * @return the interval
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Get how many keyframes are kept.
+	 *
+	 * @return the number of keyframes, including the one for the start
+	 */
+	public int getKeyframeCount() {
+		return keyframes.length;
+	}
+}
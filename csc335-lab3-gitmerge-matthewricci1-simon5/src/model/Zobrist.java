@@ -0,0 +1,101 @@
+package model;
+
+import java.util.SplittableRandom;
+
+import objects.Fleet;
+
+/**
+ * 
+ * The random keys behind the 64-bit hashes the model keeps of each grid. A grid's
+ * hash is the XOR of a key for every hit, a key for every miss, and, for your own
+ * grid, a key for every sunk ship. XOR undoes itself, so a shot changes the hash in
+ * one step, and taking a shot back changes it back. Two grids with the same shots
+ * on them get the same hash, no matter what order the shots came in.
+ * 
+ * The keys come from a fixed seed, so every server and every run agrees on them,
+ * and hashes can be shared between matches, or saved to files.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class Zobrist {
+	/**
+	 * The seed for the keys. Changing it makes every saved hash useless.
+	 */
+	private static final long SEED = 0x5EED_BA77_1E5EL;
+	/**
+	 * A key for a hit on each cell.
+	 */
+	private static final long[] HIT = new long[BSModel.GRID_SIZE * BSModel.GRID_SIZE];
+	/**
+	 * A key for a miss on each cell.
+	 */
+	private static final long[] MISS = new long[BSModel.GRID_SIZE * BSModel.GRID_SIZE];
+	/**
+	 * A key for each ship being sunk, enough for the biggest fleet.
+	 */
+	private static final long[] SUNK = new long[Fleet.MAX_SHIPS];
+	
+	static {
+		SplittableRandom random = new SplittableRandom(SEED);
+		for (int cell = 0; cell < HIT.length; cell++) {
+			HIT[cell] = random.nextLong();
+			MISS[cell] = random.nextLong();
+		}
+		for (int ship = 0; ship < SUNK.length; ship++) {
+			SUNK[ship] = random.nextLong();
+		}
+	}
+	
+	/**
+	 * Only static methods here, so no instances.
+	 */
+	private Zobrist() {
+	}
+	
+	/**
+	 * Get the key for a shot.
+	 * 
+	 * @param cell the cell that was shot, row * GRID_SIZE + column
+	 * @param square what the square became, 'h' or 'm'
+	 * @return the key to XOR into the hash, or 0 for anything that isn't a shot
+	 */
+	public static long shot(int cell, char square) {
+		if (square == 'h') {
+			return HIT[cell];
+		} else if (square == 'm') {
+			return MISS[cell];
+		}
+		return 0;
+	}
+	
+	/**
+	 * Get the key for a ship being sunk.
+	 * 
+	 * @param ship the ship's index in its Fleet
+	 * @return the key to XOR into the hash
+	 */
+	public static long sunk(int ship) {
+		return SUNK[ship];
+	}
+	
+	/**
+	 * Works out the hash of a grid's shots from scratch.
+	 * 
+	 * Sunk ships can't be told from the grid alone, so they're left out. This
+	 * is what the model starts from when a whole grid is swapped in.
+	 * 
+	 * @param grid the grid
+	 * @return the XOR of the keys of every hit and miss on it
+	 */
+	public static long of(char[][] grid) {
+		long hash = 0;
+		for (int outerArray = 0; outerArray < grid.length; outerArray++) {
+			for (int innerArray = 0; innerArray < grid[outerArray].length; innerArray++) {
+				hash ^= shot(outerArray * BSModel.GRID_SIZE + innerArray, grid[outerArray][innerArray]);
+			}
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,504 @@
+package network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 
+ * A transport for two processes on the same machine, through a memory-mapped file.
+ * The file holds two ring buffers, one for each direction. Sending copies the message
+ * into the ring and bumps its write position; receiving waits for the write position
+ * to move past the read position, copies the message out and bumps the read position.
+ * Nothing goes through the network stack, and there are no syscalls once the file is
+ * mapped.
+ * 
+ * Each ring has exactly one writer and one reader, so the positions only ever need
+ * ordered reads and writes, never locks. Messages are encoded by hand instead of with
+ * Java serialization, since the protocol only has two of them: an Integer cell, and a
+ * char[][].
+ * 
+ * The server end makes the file with create(), and the client end waits for it with
+ * open(). Every session gets a brand new file: create() sets it up under a temporary
+ * name, with the control blocks zeroed, and only then renames it into place, so a
+ * file from an earlier game is replaced rather than truncated under whoever still
+ * has it mapped. open() only takes a file whose server is still running and that no
+ * other client has claimed, and removes the name once it has, so a stale file from a
+ * crash or an old game can't be picked up. close() unmaps the file and deletes it if
+ * it's still there.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class MappedTransport implements Transport {
+	/**
+	 * How many bytes of messages each ring can hold. Must be a power of two.
+	 */
+	private static final int CAPACITY = 1 << 16;
+	/**
+	 * The bytes at the start of each ring holding its write position, read position
+	 * and closed flag. The positions are on different cache lines.
+	 */
+	private static final int CONTROL = 192;
+	/**
+	 * Where the write position lives in a ring.
+	 */
+	private static final int WRITE_POS = 0;
+	/**
+	 * Where the read position lives in a ring.
+	 */
+	private static final int READ_POS = 64;
+	/**
+	 * Where the closed flag lives in a ring.
+	 */
+	private static final int CLOSED_FLAG = 128;
+	/**
+	 * The total size of a ring, control block included.
+	 */
+	private static final int RING_BYTES = CONTROL + CAPACITY;
+	/**
+	 * Where the ready marker lives, after both rings.
+	 */
+	private static final int READY_POS = 2 * RING_BYTES;
+	/**
+	 * Where the process id of the server lives, after the ready marker.
+	 */
+	private static final int OWNER_POS = READY_POS + 8;
+	/**
+	 * Where the flag a client sets to claim the session lives.
+	 */
+	private static final int CLAIMED_POS = READY_POS + 16;
+	/**
+	 * The size of whatever isn't a ring: the ready marker, the owner and the claim.
+	 */
+	private static final int TRAILER = 64;
+	/**
+	 * The size of the whole file.
+	 */
+	private static final int FILE_BYTES = READY_POS + TRAILER;
+	/**
+	 * Written last by the server, so the client knows the file is set up.
+	 */
+	private static final long READY = 0x42534D4150504544L;
+	/**
+	 * Message type for an Integer cell.
+	 */
+	private static final byte CELL = 1;
+	/**
+	 * Message type for a char[][].
+	 */
+	private static final byte GRID = 2;
+	/**
+	 * Ordered access to the longs in the mapped file.
+	 */
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+	
+	/**
+	 * The whole mapped file.
+	 */
+	private final MappedByteBuffer buffer;
+	/**
+	 * Where the ring this end writes to starts.
+	 */
+	private final int outRing;
+	/**
+	 * Where the ring this end reads from starts.
+	 */
+	private final int inRing;
+	/**
+	 * Where the file was put.
+	 */
+	private final Path file;
+	/**
+	 * What the file system calls the file this end mapped, so close() only deletes
+	 * that file and never a newer one made under the same name.
+	 */
+	private final Object fileKey;
+	/**
+	 * Whether this end has been closed.
+	 */
+	private volatile boolean closed = false;
+	/**
+	 * How many calls are using the mapping right now. close() waits for them to
+	 * leave before unmapping it.
+	 */
+	private final AtomicInteger users = new AtomicInteger();
+	
+	/**
+	 * The constructor. Use create() or open() instead.
+	 * 
+	 * @param buffer the mapped file
+	 * @param server true for the server end, false for the client end
+	 * @param file where the file was put
+	 * @param fileKey the file system's key for the mapped file
+	 */
+	private MappedTransport(MappedByteBuffer buffer, boolean server, Path file, Object fileKey) {
+		this.buffer = buffer;
+		this.file = file;
+		this.fileKey = fileKey;
+		outRing = server ? 0 : RING_BYTES;
+		inRing = server ? RING_BYTES : 0;
+	}
+	
+	/**
+	 * Makes a fresh file and maps it, as the server.
+	 * 
+	 * The file is set up under a temporary name next to the real one, with both
+	 * control blocks zeroed before it's marked ready, and then renamed over
+	 * anything left at the real name. Whoever still has an old file mapped keeps
+	 * their own copy.
+	 * 
+	 * @param file where to put the file
+	 * @return the server end of the transport
+	 * @throws IOException if the file could not be made
+	 */
+	public static MappedTransport create(Path file) throws IOException {
+		Path absolute = file.toAbsolutePath();
+		Path fresh = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".new");
+		try {
+			MappedByteBuffer buffer;
+			try (FileChannel channel = FileChannel.open(fresh, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+			}
+			for (int ring : new int[] {0, RING_BYTES}) {
+				for (int i = 0; i < CONTROL; i += 8) {
+					LONGS.setOpaque(buffer, ring + i, 0L);
+				}
+			}
+			for (int i = 0; i < TRAILER; i += 8) {
+				LONGS.setOpaque(buffer, READY_POS + i, 0L);
+			}
+			LONGS.setOpaque(buffer, OWNER_POS, ProcessHandle.current().pid());
+			LONGS.setRelease(buffer, READY_POS, READY);
+			Object key = Files.readAttributes(fresh, BasicFileAttributes.class).fileKey();
+			Files.move(fresh, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			return new MappedTransport(buffer, true, absolute, key);
+		} finally {
+			Files.deleteIfExists(fresh);
+		}
+	}
+	
+	/**
+	 * Waits for the server to make the file, then maps it, as the client.
+	 * 
+	 * A file is only taken if it's marked ready, neither end has closed it, the
+	 * server that made it is still running, and this client is the first to claim
+	 * it. Once claimed, the name is deleted, since both ends have it mapped.
+	 * 
+	 * @param file where the server puts the file
+	 * @return the client end of the transport
+	 * @throws IOException if the file could not be mapped
+	 */
+	public static MappedTransport open(Path file) throws IOException {
+		Path absolute = file.toAbsolutePath();
+		while (true) {
+			try (FileChannel channel = FileChannel.open(absolute, StandardOpenOption.READ, 
+					StandardOpenOption.WRITE)) {
+				if (channel.size() >= FILE_BYTES) {
+					Object key = Files.readAttributes(absolute, BasicFileAttributes.class).fileKey();
+					MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+					long owner = (long) LONGS.getAcquire(buffer, OWNER_POS);
+					boolean live = (long) LONGS.getAcquire(buffer, READY_POS) == READY
+							&& (long) LONGS.getAcquire(buffer, CLOSED_FLAG) == 0
+							&& (long) LONGS.getAcquire(buffer, RING_BYTES + CLOSED_FLAG) == 0
+							&& ProcessHandle.of(owner).map(ProcessHandle::isAlive).orElse(false);
+					if (live && LONGS.compareAndSet(buffer, CLAIMED_POS, 0L, 1L)) {
+						MappedTransport transport = new MappedTransport(buffer, false, absolute, key);
+						transport.deleteFile();
+						return transport;
+					}
+					unmap(buffer);
+				}
+			} catch (NoSuchFileException e) {
+				//The server hasn't made it yet.
+			}
+			LockSupport.parkNanos(10_000_000L);
+		}
+	}
+	
+	@Override
+	public void send(Object message) throws IOException {
+		enter();
+		try {
+			sendEncoded(message);
+		} finally {
+			users.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * Does the work of send(), once the mapping is known to stay put.
+	 * 
+	 * @param message the message to send
+	 * @throws IOException if the other end closed its ring
+	 */
+	private void sendEncoded(Object message) throws IOException {
+		ByteBuffer encoded = encode(message);
+		int length = encoded.remaining();
+		if (length + 4 > CAPACITY) {
+			throw new IllegalArgumentException("Message too big for the ring: " + length);
+		}
+		long write = (long) LONGS.getOpaque(buffer, outRing + WRITE_POS);
+		//Wait for the reader to make room.
+		int idle = 0;
+		while (write + 4 + length - (long) LONGS.getAcquire(buffer, outRing + READ_POS) > CAPACITY) {
+			if (closed || isClosed(inRing)) {
+				throw new EOFException();
+			}
+			idle = backOff(idle);
+		}
+		putInt(outRing, write, length);
+		for (int i = 0; i < length; i++) {
+			buffer.put(dataIndex(outRing, write + 4 + i), encoded.get(i));
+		}
+		LONGS.setRelease(buffer, outRing + WRITE_POS, write + 4 + length);
+	}
+	
+	@Override
+	public Object receive() throws IOException, ClassNotFoundException {
+		enter();
+		try {
+			return receiveEncoded();
+		} finally {
+			users.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * Does the work of receive(), once the mapping is known to stay put.
+	 * 
+	 * @return the message
+	 * @throws IOException if the transport was closed while waiting
+	 */
+	private Object receiveEncoded() throws IOException {
+		long read = (long) LONGS.getOpaque(buffer, inRing + READ_POS);
+		//Wait for the writer to send something.
+		int idle = 0;
+		while ((long) LONGS.getAcquire(buffer, inRing + WRITE_POS) == read) {
+			if (closed || isClosed(inRing)) {
+				throw new EOFException();
+			}
+			idle = backOff(idle);
+		}
+		int length = getInt(inRing, read);
+		ByteBuffer encoded = ByteBuffer.allocate(length);
+		for (int i = 0; i < length; i++) {
+			encoded.put(i, buffer.get(dataIndex(inRing, read + 4 + i)));
+		}
+		LONGS.setRelease(buffer, inRing + READ_POS, read + 4 + length);
+		return decode(encoded);
+	}
+	
+	/**
+	 * Unmaps the file and deletes it, after telling the other end.
+	 * 
+	 * Waits for any send() or receive() still running on another thread to notice
+	 * and leave first, since touching the mapping after it's gone would crash.
+	 * 
+	 * @throws IOException if the file couldn't be deleted
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		LONGS.setRelease(buffer, outRing + CLOSED_FLAG, 1L);
+		int idle = 0;
+		while (users.get() != 0) {
+			idle = backOff(idle);
+		}
+		unmap(buffer);
+		deleteFile();
+	}
+	
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * Registers a call that's about to use the mapping.
+	 * 
+	 * @throws IOException if the transport is already closed
+	 */
+	private void enter() throws IOException {
+		users.incrementAndGet();
+		if (closed) {
+			users.decrementAndGet();
+			throw new EOFException("Transport is closed.");
+		}
+	}
+	
+	/**
+	 * Deletes the file, but only if the name still belongs to the file this end
+	 * mapped and not to a newer session's.
+	 * 
+	 * @throws IOException if the file couldn't be deleted
+	 */
+	private void deleteFile() throws IOException {
+		try {
+			Object key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+			if (key != null && key.equals(fileKey)) {
+				Files.deleteIfExists(file);
+			}
+		} catch (NoSuchFileException e) {
+			//Already gone.
+		}
+	}
+	
+	/**
+	 * Unmaps a buffer now, instead of whenever the garbage collector gets to it.
+	 * 
+	 * There's no public way to do this, so it goes through the JDK's internal
+	 * cleaner. If that can't be reached, the mapping is left for the collector.
+	 * 
+	 * @param mapped the buffer to unmap, which must not be used again
+	 */
+	private static void unmap(MappedByteBuffer mapped) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), mapped);
+		} catch (ReflectiveOperationException|RuntimeException e) {
+			//Left for the garbage collector.
+		}
+	}
+	
+	/**
+	 * Checks if the writer of a ring has closed it.
+	 * 
+	 * @param ring where the ring starts
+	 * @return true if it was closed
+	 */
+	private boolean isClosed(int ring) {
+		return (long) LONGS.getAcquire(buffer, ring + CLOSED_FLAG) != 0;
+	}
+	
+	/**
+	 * Waits a little while, longer the longer we've been waiting.
+	 * 
+	 * Spins at first, since the other end usually answers quickly, then starts
+	 * parking so an idle game doesn't burn a whole core.
+	 * 
+	 * @param idle how many times we've waited so far
+	 * @return the new count
+	 */
+	private static int backOff(int idle) {
+		if (idle < 1000) {
+			Thread.onSpinWait();
+		} else if (idle < 2000) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(100_000L);
+		}
+		return idle + 1;
+	}
+	
+	/**
+	 * Finds where a position in a ring falls in the file.
+	 * 
+	 * @param ring where the ring starts
+	 * @param position the ever-increasing position in that ring
+	 * @return the index of that byte in the buffer
+	 */
+	private static int dataIndex(int ring, long position) {
+		return ring + CONTROL + (int) (position & (CAPACITY - 1));
+	}
+	
+	/**
+	 * Writes an int into a ring, one byte at a time since it may wrap around.
+	 * 
+	 * @param ring where the ring starts
+	 * @param position the position to write at
+	 * @param value the int to write
+	 */
+	private void putInt(int ring, long position, int value) {
+		for (int i = 0; i < 4; i++) {
+			buffer.put(dataIndex(ring, position + i), (byte) (value >>> (8 * i)));
+		}
+	}
+	
+	/**
+	 * Reads an int written by putInt().
+	 * 
+	 * @param ring where the ring starts
+	 * @param position the position to read at
+	 * @return the int
+	 */
+	private int getInt(int ring, long position) {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value |= (buffer.get(dataIndex(ring, position + i)) & 0xFF) << (8 * i);
+		}
+		return value;
+	}
+	
+	/**
+	 * Turns a message into bytes.
+	 * 
+	 * @param message an Integer cell or a char[][]
+	 * @return the bytes, ready to be read
+	 */
+	private static ByteBuffer encode(Object message) {
+		if (message instanceof Integer) {
+			ByteBuffer encoded = ByteBuffer.allocate(5);
+			encoded.put(CELL).putInt((Integer) message);
+			return encoded.flip();
+		} else if (message instanceof char[][]) {
+			char[][] grid = (char[][]) message;
+			int cols = (grid.length == 0) ? 0 : grid[0].length;
+			ByteBuffer encoded = ByteBuffer.allocate(9 + 2 * grid.length * cols);
+			encoded.put(GRID).putInt(grid.length).putInt(cols);
+			for (char[] row : grid) {
+				for (char square : row) {
+					encoded.putChar(square);
+				}
+			}
+			return encoded.flip();
+		}
+		throw new IllegalArgumentException("Can't send a " + message.getClass().getName());
+	}
+	
+	/**
+	 * Turns bytes made by encode() back into a message.
+	 * 
+	 * @param encoded the bytes
+	 * @return the Integer cell or char[][] they describe
+	 * @throws StreamCorruptedException if the bytes aren't a message
+	 */
+	private static Object decode(ByteBuffer encoded) throws StreamCorruptedException {
+		byte type = encoded.get();
+		if (type == CELL) {
+			return encoded.getInt();
+		} else if (type == GRID) {
+			char[][] grid = new char[encoded.getInt()][encoded.getInt()];
+			for (char[] row : grid) {
+				for (int col = 0; col < row.length; col++) {
+					row[col] = encoded.getChar();
+				}
+			}
+			return grid;
+		}
+		throw new StreamCorruptedException("Unknown message type " + type);
+	}
+}
@@ -0,0 +1,115 @@
+package network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 
+ * A transport for two ends of a game inside the same process. Each end has a queue,
+ * and sending just puts the message on the other end's queue, so there are no
+ * syscalls and no serialization at all. Messages are copied on the way through,
+ * because each end changes the grid it was sent, just like it would with its own
+ * deserialized copy over a socket.
+ * 
+ * Make both ends at once with pair().
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class QueueTransport implements Transport {
+	/**
+	 * Put on a queue to tell the reader that the transport was closed.
+	 */
+	private static final Object CLOSED = new Object();
+	/**
+	 * The messages waiting for this end.
+	 */
+	private final BlockingQueue<Object> inbox = new LinkedBlockingQueue<>();
+	/**
+	 * The other end.
+	 */
+	private QueueTransport peer;
+	/**
+	 * Whether this end has been closed, by either side.
+	 */
+	private volatile boolean closed = false;
+	
+	/**
+	 * Only pair() makes these.
+	 */
+	private QueueTransport() {
+	}
+	
+	/**
+	 * Makes two connected ends.
+	 * 
+	 * @return a QueueTransport[] of length 2; whatever one sends, the other receives
+	 */
+	public static QueueTransport[] pair() {
+		QueueTransport first = new QueueTransport();
+		QueueTransport second = new QueueTransport();
+		first.peer = second;
+		second.peer = first;
+		return new QueueTransport[] {first, second};
+	}
+	
+	@Override
+	public void send(Object message) throws IOException {
+		if (closed) {
+			throw new IOException("Transport is closed.");
+		}
+		peer.inbox.add(copyOf(message));
+	}
+	
+	@Override
+	public Object receive() throws IOException {
+		if (closed && inbox.isEmpty()) {
+			throw new EOFException();
+		}
+		try {
+			Object message = inbox.take();
+			if (message == CLOSED) {
+				closed = true;
+				inbox.add(CLOSED);
+				throw new EOFException();
+			}
+			return message;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+	
+	@Override
+	public void close() {
+		closed = true;
+		inbox.add(CLOSED);
+		peer.inbox.add(CLOSED);
+	}
+	
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * Copies a message, so the two ends never share a mutable object.
+	 * 
+	 * @param message a char[][], or something immutable like an Integer cell
+	 * @return a copy of the message
+	 */
+	public static Object copyOf(Object message) {
+		if (message instanceof char[][]) {
+			char[][] grid = (char[][]) message;
+			char[][] copy = new char[grid.length][];
+			for (int row = 0; row < grid.length; row++) {
+				copy[row] = grid[row].clone();
+			}
+			return copy;
+		}
+		return message;
+	}
+}
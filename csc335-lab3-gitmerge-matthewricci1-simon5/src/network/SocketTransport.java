@@ -0,0 +1,87 @@
+package network;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * 
+ * The original way of playing: a TCP socket with Java serialization on top. Works
+ * between any two machines, but even on the same machine every message goes through
+ * the loopback network stack.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class SocketTransport implements Transport {
+	/**
+	 * The connected socket.
+	 */
+	private final Socket socket;
+	/**
+	 * The output stream, used to send Integer cells and char[][] objects.
+	 */
+	private final ObjectOutputStream output;
+	/**
+	 * The input stream, used to receive Integer cells and char[][] objects.
+	 */
+	private final ObjectInputStream input;
+	
+	/**
+	 * The constructor. Wraps an already connected socket.
+	 * 
+	 * @param socket the connected Socket
+	 * @throws IOException if the streams could not be made
+	 */
+	public SocketTransport(Socket socket) throws IOException {
+		this.socket = socket;
+		output = new ObjectOutputStream(socket.getOutputStream());
+		input = new ObjectInputStream(socket.getInputStream());
+	}
+	
+	/**
+	 * Connects to a server as the client.
+	 * 
+	 * @param host the host the server is on, e.g. "localhost"
+	 * @param port the port the server is listening on
+	 * @return the connected transport
+	 * @throws IOException if the connection failed
+	 */
+	public static SocketTransport connect(String host, int port) throws IOException {
+		return new SocketTransport(new Socket(host, port));
+	}
+	
+	/**
+	 * Waits for a client to connect, as the server.
+	 * 
+	 * @param server the ServerSocket to accept on
+	 * @return the connected transport
+	 * @throws IOException if accepting failed
+	 */
+	public static SocketTransport accept(ServerSocket server) throws IOException {
+		return new SocketTransport(server.accept());
+	}
+	
+	@Override
+	public void send(Object message) throws IOException {
+		output.writeObject(message);
+	}
+	
+	@Override
+	public Object receive() throws IOException, ClassNotFoundException {
+		return input.readObject();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+	
+	@Override
+	public boolean isClosed() {
+		return socket.isClosed();
+	}
+}
@@ -0,0 +1,52 @@
+package network;
+
+import java.io.IOException;
+
+/**
+ * 
+ * The way the two ends of a game talk to each other. The protocol only ever sends
+ * two kinds of messages: the char[][] grid that each side trades at the start, and
+ * the cell of every shot after that, as an Integer (see model.Cell). How those messages actually get across is up
+ * to the implementation: a TCP socket, a memory-mapped file shared by two processes
+ * on the same machine, or a pair of queues inside one process.
+ * 
+ * The methods throw the same exceptions as ObjectOutputStream and ObjectInputStream,
+ * so the game loop treats every transport the same way it treated the socket.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public interface Transport {
+	
+	/**
+	 * Sends a message to the other end.
+	 * 
+	 * @param message an Integer cell or a char[][]
+	 * @throws IOException if the transport is closed or broken
+	 */
+	void send(Object message) throws IOException;
+	
+	/**
+	 * Waits for the next message from the other end.
+	 * 
+	 * @return the message that was sent
+	 * @throws IOException if the transport is closed, including by the other end
+	 * @throws ClassNotFoundException if the message could not be understood
+	 */
+	Object receive() throws IOException, ClassNotFoundException;
+	
+	/**
+	 * Closes this end. The other end will get an IOException on its next receive().
+	 * 
+	 * @throws IOException if closing failed
+	 */
+	void close() throws IOException;
+	
+	/**
+	 * Checks if this end has been closed.
+	 * 
+	 * @return true if close() has been called, false if not
+	 */
+	boolean isClosed();
+}
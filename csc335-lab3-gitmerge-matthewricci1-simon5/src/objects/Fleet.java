@@ -0,0 +1,209 @@
+package objects;
+
+import java.util.Arrays;
+
+import model.GameMode;
+
+/**
+ *
+ * The state of every ship in one side's fleet, kept as plain arrays instead of one
+ * object per ship: an int[] of lengths, an int[] of hits taken, and a long with one
+ * bit for each ship that's sunk. A whole fleet fits in a couple of cache lines,
+ * checking if everyone is sunk is a single compare, and starting a new game just
+ * zeroes the hits, so setting up a game allocates nothing.
+ *
+ * The Ship objects the rest of the game passes around are handles into this: each
+ * is just the fleet and an index, made once when the fleet is made.
+ *
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public final class Fleet {
+	/**
+	 * The most ships a fleet can have, one per bit of the sunk set.
+	 */
+	public static final int MAX_SHIPS = 64;
+	/**
+	 * The mode this fleet was laid out from.
+	 */
+	private final GameMode mode;
+	/**
+	 * The length of each ship.
+	 */
+	private final int[] lengths;
+	/**
+	 * How many hits each ship has taken.
+	 */
+	private final int[] hits;
+	/**
+	 * A bit for each ship that's sunk.
+	 */
+	private long sunk = 0;
+	/**
+	 * A bit for every ship in the fleet.
+	 */
+	private final long everyShip;
+	/**
+	 * The handles for each ship, made once.
+	 */
+	private final Ship[] ships;
+
+	/**
+	 * The constructor. Every ship starts with no hits.
+	 *
+	 * @param mode the game mode with the ships to use
+	 */
+	public Fleet(GameMode mode) {
+		this.mode = mode;
+		this.lengths = mode.getShipLengths();
+		this.hits = new int[lengths.length];
+		this.everyShip = (lengths.length == MAX_SHIPS) ? -1 : (1L << lengths.length) - 1;
+		this.ships = Ship.handlesFor(this);
+	}
+
+	/**
+	 * Get the mode this fleet was laid out from.
+	 *
+	 * @return the GameMode
+	 */
+	public GameMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Get how many ships are in the fleet.
+	 *
+	 * @return the number of ships
+	 */
+	public int size() {
+		return lengths.length;
+	}
+
+	/**
+	 * Get the handles for every ship, in fleet order.
+	 *
+	 * It's the same array every time, so don't change it.
+	 *
+	 * @return the ships
+	 */
+	public Ship[] getShips() {
+		return ships;
+	}
+
+	/**
+	 * Get a ship's length.
+	 *
+	 * @param ship the index of the ship
+	 * @return its length
+	 */
+	public int getLength(int ship) {
+		return lengths[ship];
+	}
+
+	/**
+	 * Get a ship's name.
+	 *
+	 * @param ship the index of the ship
+	 * @return its name
+	 */
+	public String getName(int ship) {
+		return mode.getShipName(ship);
+	}
+
+	/**
+	 * Get how many hits a ship has taken.
+	 *
+	 * @param ship the index of the ship
+	 * @return the number of hits
+	 */
+	public int getHits(int ship) {
+		return hits[ship];
+	}
+
+	/**
+	 * Checks if a ship is sunk.
+	 *
+	 * @param ship the index of the ship
+	 * @return true if it's sunk, false if not
+	 */
+	public boolean isSunk(int ship) {
+		return ((sunk >>> ship) & 1) != 0;
+	}
+
+	/**
+	 * Checks if every ship is sunk, which ends the game.
+	 *
+	 * @return true if the whole fleet is sunk, false if not
+	 */
+	public boolean allSunk() {
+		return sunk == everyShip;
+	}
+
+	/**
+	 * Registers a hit on a ship, sinking it if that was its last square.
+	 *
+	 * @param ship the index of the ship
+	 */
+	public void markHit(int ship) {
+		hits[ship]++;
+		updateSunk(ship);
+	}
+
+	/**
+	 * Takes back a hit made by markHit().
+	 *
+	 * @param ship the index of the ship
+	 */
+	public void unmarkHit(int ship) {
+		hits[ship]--;
+		updateSunk(ship);
+	}
+
+	/**
+	 * Takes away every hit on one ship.
+	 *
+	 * @param ship the index of the ship
+	 */
+	public void reset(int ship) {
+		hits[ship] = 0;
+		sunk &= ~(1L << ship);
+	}
+
+	/**
+	 * Takes away every hit on every ship, for a new game.
+	 */
+	public void reset() {
+		Arrays.fill(hits, 0);
+		sunk = 0;
+	}
+
+	/**
+	 * Get the lengths of the ships that haven't been sunk.
+	 *
+	 * @return the lengths, in fleet order
+	 */
+	public int[] getRemainingLengths() {
+		int[] remaining = new int[lengths.length - Long.bitCount(sunk)];
+		int next = 0;
+		for (int ship = 0; ship < lengths.length; ship++) {
+			if (!isSunk(ship)) {
+				remaining[next++] = lengths[ship];
+			}
+		}
+		return remaining;
+	}
+
+	/**
+	 * Sets or clears a ship's sunk bit from its hits.
+	 *
+	 * @param ship the index of the ship
+	 */
+	private void updateSunk(int ship) {
+		if (hits[ship] == lengths[ship]) {
+			sunk |= 1L << ship;
+		} else {
+			sunk &= ~(1L << ship);
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package objects;
+
+import java.util.Arrays;
+
+import model.BSModel;
+import model.Cell;
+import model.Directions;
+import model.GameMode;
+
+/**
+ * 
+ * An archived record of one side of a finished match: where the defender placed
+ * their fleet, and every shot the attacker fired at it, in order. A full match is
+ * simply two of these. Cells are stored as a single int, row * GRID_SIZE + column,
+ * where the row is the outerArray of the grid and the column is the innerArray.
+ * Whether a shot was a hit is never stored, since the layout already tells us.
+ * Each record knows the GameMode its fleet was laid out for, which says how long
+ * each ship is, but the mode isn't written out with it, so a record that's read
+ * back is for the classic game.
+ * 
+ * Records can be written out as a single line of text and read back, so an archive
+ * of games can be streamed one line at a time instead of being loaded all at once.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class GameRecord {
+	/**
+	 * The mode the fleet was laid out for.
+	 */
+	private final GameMode mode;
+	/**
+	 * The origin cell of each ship, with indices matching the mode's ships.
+	 */
+	private final int[] shipCells;
+	/**
+	 * The direction each ship extends from its origin.
+	 */
+	private final Directions[] shipDirs;
+	/**
+	 * Every shot fired at this fleet, in the order they were made.
+	 */
+	private final int[] shots;
+	
+	/**
+	 * The constructor, for a classic game. Give it the fleet layout and the shots.
+	 * 
+	 * @param shipCells the origin cell of each ship
+	 * @param shipDirs the direction of each ship, matching shipCells
+	 * @param shots the cells that were shot, in order
+	 * @throws IllegalArgumentException if a ship or a shot is off the grid
+	 */
+	public GameRecord(int[] shipCells, Directions[] shipDirs, int[] shots) {
+		this(shipCells, shipDirs, shots, GameMode.CLASSIC);
+	}
+	
+	/**
+	 * The constructor, for a game of any mode.
+	 * 
+	 * Every ship has to lie entirely on the grid, at the length the mode gives
+	 * it, and every shot has to be a cell on the grid, so nothing reading the
+	 * record later can run off the board.
+	 * 
+	 * @param shipCells the origin cell of each ship
+	 * @param shipDirs the direction of each ship, matching shipCells
+	 * @param shots the cells that were shot, in order
+	 * @param mode the mode the fleet was laid out for
+	 * @throws IllegalArgumentException if a ship or a shot is off the grid, or
+	 * there are more ships than the mode has
+	 */
+	public GameRecord(int[] shipCells, Directions[] shipDirs, int[] shots, GameMode mode) {
+		if (shipCells.length != shipDirs.length) {
+			throw new IllegalArgumentException("Every ship needs exactly one direction.");
+		}
+		checkFleet(shipCells, shipDirs, mode);
+		for (int shot : shots) {
+			if (!Cell.isValid(shot)) {
+				throw new IllegalArgumentException("Not a cell on the grid: " + shot);
+			}
+		}
+		this.mode = mode;
+		this.shipCells = shipCells;
+		this.shipDirs = shipDirs;
+		this.shots = shots;
+	}
+	
+	/**
+	 * Makes sure a whole fleet fits a mode and lies on the grid.
+	 * 
+	 * @param shipCells the origin cell of each ship
+	 * @param shipDirs the direction of each ship, matching shipCells
+	 * @param mode the mode with the ships' lengths
+	 */
+	private static void checkFleet(int[] shipCells, Directions[] shipDirs, GameMode mode) {
+		if (shipCells.length > mode.getShipCount()) {
+			throw new IllegalArgumentException("Too many ships for a " + mode.getName() + " fleet: " + shipCells.length);
+		}
+		for (int ship = 0; ship < shipCells.length; ship++) {
+			checkShip(shipCells[ship], shipDirs[ship], mode.getShipLength(ship));
+		}
+	}
+	
+	/**
+	 * Makes sure a ship lies on the grid, going up or left from its origin.
+	 * 
+	 * @param cell the origin cell of the ship
+	 * @param dir the direction the ship goes
+	 * @param length the length of the ship
+	 */
+	private static void checkShip(int cell, Directions dir, int length) {
+		if (!Cell.isValid(cell)) {
+			throw new IllegalArgumentException("Not a cell on the grid: " + cell);
+		}
+		int room;
+		if (dir == Directions.UP) {
+			room = Cell.row(cell);
+		} else if (dir == Directions.LEFT) {
+			room = Cell.col(cell);
+		} else {
+			throw new IllegalArgumentException("Not a ship direction: " + dir);
+		}
+		if (room < length - 1) {
+			throw new IllegalArgumentException("Ship goes off the grid from " + Cell.toString(cell));
+		}
+	}
+	
+	/**
+	 * Get the mode the fleet was laid out for.
+	 * 
+	 * @return the GameMode
+	 */
+	public GameMode getMode() {
+		return mode;
+	}
+	
+	/**
+	 * Get the number of ships in this record.
+	 * 
+	 * @return the number of ships in the fleet
+	 */
+	public int getShipCount() {
+		return shipCells.length;
+	}
+	
+	/**
+	 * Get the origin cell of a ship.
+	 * 
+	 * @param ship the index of the ship
+	 * @return the cell the ship was placed from
+	 */
+	public int getShipCell(int ship) {
+		return shipCells[ship];
+	}
+	
+	/**
+	 * Get the direction of a ship.
+	 * 
+	 * @param ship the index of the ship
+	 * @return whether the ship goes up or left from its origin
+	 */
+	public Directions getShipDir(int ship) {
+		return shipDirs[ship];
+	}
+	
+	/**
+	 * Get the number of shots fired in this record.
+	 * 
+	 * @return the number of shots
+	 */
+	public int getShotCount() {
+		return shots.length;
+	}
+	
+	/**
+	 * Get a single shot.
+	 * 
+	 * @param move the move number, starting at 0
+	 * @return the cell that was shot on that move
+	 */
+	public int getShot(int move) {
+		return shots[move];
+	}
+	
+	/**
+	 * Marks every cell covered by the fleet.
+	 * 
+	 * Fills in the given array so that each cell holds the index of the ship on
+	 * it plus one, or 0 if the cell is empty. The caller supplies the array so it
+	 * can be reused across many records without making garbage. Ships go up or left
+	 * from their origin, the same way BSModel.updateGridWithShips() places them,
+	 * and are as long as this record's mode says.
+	 * 
+	 * @param occupancy an int[] of at least GRID_SIZE * GRID_SIZE cells
+	 */
+	public void fillOccupancy(int[] occupancy) {
+		fillOccupancy(occupancy, mode);
+	}
+	
+	/**
+	 * Marks every cell covered by the fleet, with the ship lengths of a given mode.
+	 * 
+	 * This is for records that were read back, which don't know their mode, when
+	 * the caller does.
+	 * 
+	 * @param occupancy an int[] of at least GRID_SIZE * GRID_SIZE cells
+	 * @param mode the mode the fleet was laid out for
+	 * @throws IllegalArgumentException if the fleet doesn't fit that mode
+	 */
+	public void fillOccupancy(int[] occupancy, GameMode mode) {
+		if (mode != this.mode) {
+			checkFleet(shipCells, shipDirs, mode);
+		}
+		Arrays.fill(occupancy, 0);
+		for (int ship = 0; ship < shipCells.length; ship++) {
+			int length = mode.getShipLength(ship);
+			int step = (shipDirs[ship] == Directions.UP) ? BSModel.GRID_SIZE : 1;
+			int cell = shipCells[ship];
+			for (int i = 0; i < length; i++) {
+				occupancy[cell] = ship + 1;
+				cell -= step;
+			}
+		}
+	}
+	
+	/**
+	 * Reads a record back from a line of text.
+	 * 
+	 * The line is made by toLine(): the ship cells, then the directions as U or L,
+	 * then the shots, separated by semicolons.
+	 * 
+	 * @param line the line of text to read
+	 * @return the GameRecord it describes
+	 * @throws IllegalArgumentException if the line isn't a valid record
+	 */
+	public static GameRecord parse(String line) {
+		String[] parts = line.split(";", -1);
+		if (parts.length != 3) {
+			throw new IllegalArgumentException("Not a game record: " + line);
+		}
+		int[] shipCells = parseInts(parts[0]);
+		Directions[] shipDirs = new Directions[parts[1].length()];
+		for (int i = 0; i < shipDirs.length; i++) {
+			char dir = parts[1].charAt(i);
+			if (dir != 'U' && dir != 'L') {
+				throw new IllegalArgumentException("Not a game record: " + line);
+			}
+			shipDirs[i] = (dir == 'U') ? Directions.UP : Directions.LEFT;
+		}
+		return new GameRecord(shipCells, shipDirs, parseInts(parts[2]));
+	}
+	
+	/**
+	 * Writes this record as a single line of text.
+	 * 
+	 * @return a line that parse() can read back
+	 */
+	public String toLine() {
+		StringBuilder line = new StringBuilder();
+		appendInts(line, shipCells);
+		line.append(';');
+		for (Directions dir : shipDirs) {
+			line.append(dir == Directions.UP ? 'U' : 'L');
+		}
+		line.append(';');
+		appendInts(line, shots);
+		return line.toString();
+	}
+	
+	/**
+	 * Reads a comma separated list of ints.
+	 * 
+	 * @param text the list
+	 * @return the ints in it
+	 */
+	private static int[] parseInts(String text) {
+		if (text.isEmpty()) {
+			return new int[0];
+		}
+		String[] pieces = text.split(",");
+		int[] ints = new int[pieces.length];
+		for (int i = 0; i < pieces.length; i++) {
+			ints[i] = Integer.parseInt(pieces[i]);
+		}
+		return ints;
+	}
+	
+	/**
+	 * Writes a comma separated list of ints.
+	 * 
+	 * @param line where to write them
+	 * @param ints the ints to write
+	 */
+	private static void appendInts(StringBuilder line, int[] ints) {
+		for (int i = 0; i < ints.length; i++) {
+			if (i > 0) {
+				line.append(',');
+			}
+			line.append(ints[i]);
+		}
+	}
+}
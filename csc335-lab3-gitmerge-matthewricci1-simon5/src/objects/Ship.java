@@ -1,81 +1,73 @@
 package objects;
 
-import java.awt.Point;
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * 
- * This object represents a Ship, which stores state such as its length, its name,
- * whether or not it is sunk, its representation, and most importantly how many
- * hits it has taken. In addition, a point is mapped to a ship, so when a hit is made,
- * it is easy to find out exactly which Ship took the hit.
+ * This object represents a Ship. Its state, such as its length, its name, how
+ * many hits it has taken and whether or not it is sunk, lives in the Fleet it
+ * belongs to, and a Ship is just a handle on its spot in there. Which Ship is on
+ * which square is kept by the model the ship was placed in, so games and rematches
+ * never see each other's ships.
  * 
  * @author Matthew Ricci
  * @version JDK 14.0.1
  *
  */
-public class Ship implements Cloneable {
-	/**
-	 * The length of this ship.
-	 */
-	private int length;
-	/**
-	 * Whether or not this ship is sunk.
-	 */
-	private boolean isSunk;
-	/**
-	 * A char[] representation of the ship, represented by 'o'.
-	 */
-	private char[] rep;
-	/**
-	 * The name of the ship. Good for debugging.
-	 */
-	private String name;
+public class Ship {
 	/**
-	 * How many hits the ship has taken. If it equals length, we know we have
-	 * a sunken ship.
+	 * The fleet this ship's state lives in.
 	 */
-	private int numOfHits = 0;
+	private final Fleet fleet;
 	/**
-	 * Points mapping to Ship objects for easy hit retrieval.
+	 * This ship's index in its fleet.
 	 */
-	private static Map<Integer, Map<Integer, Ship>> points = new HashMap<>();
+	private final int index;
 	
 	
 	/**
-	 * The constructor. Give it a length and a name, and you're in business. 
+	 * The constructor. Only handlesFor() makes these, so every index is one the
+	 * fleet really has.
 	 * 
-	 * 
-	 * @param length how long the ship is
-	 * @param name the name of the ship for debugging purposes
+	 * @param fleet the fleet the ship belongs to
+	 * @param index the ship's index in that fleet
 	 */
-	public Ship(int length, String name) {
-		this.length = length;
-		this.name = name;
-		isSunk = false;
+	Ship(Fleet fleet, int index) {
+		this.fleet = fleet;
+		this.index = index;
 	}
-
+	
 	/**
-	 * Set the length.
+	 * Makes a handle for every ship in a fleet.
 	 * 
-	 * Set the length method. Good for when you want to clone it.
+	 * A Fleet calls this once when it's made, and hands out the same Ships for
+	 * as long as it lives.
 	 * 
-	 * @param length
+	 * @param fleet the fleet to make handles for
+	 * @return one Ship for each index in the fleet, in order
 	 */
-	public void setLength(int length) {
-		this.length = length;
+	static Ship[] handlesFor(Fleet fleet) {
+		Ship[] ships = new Ship[fleet.size()];
+		for (int ship = 0; ship < ships.length; ship++) {
+			ships[ship] = new Ship(fleet, ship);
+		}
+		return ships;
 	}
 	
 	/**
-	 * Set the ship name.
+	 * Get the fleet this ship belongs to.
 	 * 
-	 * Set the name of the ship.
+	 * @return the Fleet holding this ship's state
+	 */
+	public Fleet getFleet() {
+		return fleet;
+	}
+	
+	/**
+	 * Get this ship's index in its fleet.
 	 * 
-	 * @param name
+	 * @return the index
 	 */
-	public void setName(String name) {
-		this.name = name;
+	public int getIndex() {
+		return index;
 	}
 	
 	/**
@@ -86,94 +78,69 @@ public class Ship implements Cloneable {
 	 * @return length the length of the ship
 	 */
 	public int getLength() {
-		return length;
+		return fleet.getLength(index);
 	}
 	
-	
-	
 	/**
-	 * Add a point that is associated with this Ship.
-	 * 
-	 * A point, what will be associated with this Ship, so when a hit is made,
-	 * we know which Ship to update. It also goes into the master list of points
-	 * to ships.
+	 * Get the ship's name.
 	 * 
-	 * @param point
+	 * @return the name of the ship, good for debugging
 	 */
-	public void addPoint(Point point) {
-		//System.out.println("Ship.addPoint" + point + " Ship: " + this);
-		int outerArray = point.y;
-		int innerArray = point.x;
-		if (points.containsKey(innerArray)) {
-			 Map<Integer, Ship> innerMap = points.get(innerArray);
-			 innerMap.put(outerArray, this);
-		} else {
-			Map<Integer, Ship> innerMap = new HashMap<>();
-			innerMap.put(outerArray, this);
-			points.put(innerArray, innerMap);
-		}
+	public String getName() {
+		return fleet.getName(index);
 	}
 	
+	
+	
 	/**
-	 * Gets the Ship at that point.
-	 * 
-	 * Retrieves the point that was made by the addPoint() method, so you know
-	 * which Ship was hit. 
+	 * The ship has been hit so we increment number of hits, check if it's sunk.
 	 * 
-	 * @param point the point that you want to get the ship at
-	 * @return the Ship object that is at that point
+	 * The ship has been hit, so we're going to increment the number of hits
+	 * and then check if it's sunk.
 	 */
-	public static Ship getShipAt(Point point) {
-		int outerArray = point.y;
-		int innerArray = point.x;
-		return points.get(innerArray).get(outerArray);
+	public void setHit() {
+		System.out.println("Ship.setHit. Ship: " + this);
+		fleet.markHit(index);
+		System.out.println("Num of Hits: " + fleet.getHits(index));
 	}
 	
 	/**
-	 * Sets a char[] representation for the ship.
+	 * Registers a hit without printing anything.
 	 * 
-	 * Set the representation for this ship as a series of 'o' chars.
+	 * The quiet version of setHit(), used by BSModel.makeShot() when searching
+	 * through hypothetical shots.
 	 */
-	public void setRep() {
-		rep = new char[length];
-		for (int i = 0; i < length; i++) {
-			rep[i] = 'o';
-		}
+	public void markHit() {
+		fleet.markHit(index);
 	}
 	
 	/**
-	 * The ship has been hit so we increment number of hits, check if it's sunk.
+	 * Takes back a hit made by markHit().
 	 * 
-	 * The ship has been hit, so we're going to increment the number of hits
-	 * and then check if it's sunk.
+	 * Used by BSModel.unmakeShot() to put the ship back the way it was.
 	 */
-	public void setHit() {
-		System.out.println("Ship.setHit. Ship: " + this);
-		numOfHits++;
-		System.out.println("Num of Hits: " + numOfHits);
-		checkSunk();
+	public void unmarkHit() {
+		fleet.unmarkHit(index);
 	}
 	
 	/**
-	 * Check if the ship is sunk or not.
+	 * Takes away every hit, for a rematch.
 	 * 
-	 * If the number of hits == length, we know the ship is sunk. Otherwise, it's
-	 * clearly not.
+	 * The ship keeps its name and length, so it can be placed again.
 	 */
-	public void checkSunk() {
-		isSunk = (numOfHits == length) ? true : false;
+	public void reset() {
+		fleet.reset(index);
 	}
 	
 	/**
-	 * Get the isSunk field.
+	 * Check if the ship is sunk or not.
 	 * 
-	 * A simple getter for the isSunk field.
+	 * The fleet marks a ship sunk once its number of hits == length.
 	 * 
-	 * @return isSunk which is true if the ship has been sunk, false if not.
+	 * @return true if the ship has been sunk, false if not.
 	 */
 	public boolean isSunk() {
-		return isSunk;
-		
+		return fleet.isSunk(index);
 	}
 	
 	/**
@@ -185,19 +152,7 @@ public class Ship implements Cloneable {
 	 */
 	@Override
 	public String toString() {
-		return String.format("Ship name: %s, Ship length: %d, num of hits: %d", name, length, numOfHits);
-	}
-	
-	/**
-	 * Overrides clone() of Object.
-	 * 
-	 * A simple override of the Object clone() method.
-	 *
-	 * @return Object which should be a ship
-	 * @throws CloneNotSupportedException
-	 */
-	@Override
-	public Object clone() throws CloneNotSupportedException {
-		return super.clone();
+		return String.format("Ship name: %s, Ship length: %d, num of hits: %d", getName(), getLength(), fleet.getHits(index));
 	}
+
 }
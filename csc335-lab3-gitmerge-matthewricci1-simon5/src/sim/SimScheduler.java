@@ -0,0 +1,184 @@
+package sim;
+
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+
+import controller.TurnClock;
+
+/**
+ * 
+ * Runs a simulation one event at a time, on one thread, in virtual time. Events are
+ * run in order of their time. When several are due at the same time, which one goes
+ * first is picked by a seeded random number generator, so the same seed always gives
+ * the same order and a different seed tries a different one. That is how races that
+ * normally only show up under load (like a click and a remote shot landing at once)
+ * can be found and then replayed exactly.
+ * 
+ * It is also an Executor and a TurnClock, so anything that takes one can be run
+ * inside the simulation, timeouts included.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class SimScheduler implements Executor, TurnClock {
+	/**
+	 * An event waiting to be run.
+	 */
+	private static class Event implements Comparable<Event> {
+		/**
+		 * When it's due.
+		 */
+		final long time;
+		/**
+		 * A random number, to break ties between events due at the same time.
+		 */
+		final long tieBreak;
+		/**
+		 * The order it was scheduled in, in case tieBreak is the same too.
+		 */
+		final long sequence;
+		/**
+		 * What to run.
+		 */
+		final Runnable task;
+		
+		/**
+		 * The constructor.
+		 * 
+		 * @param time when it's due
+		 * @param tieBreak a random number for ties
+		 * @param sequence the order it was scheduled in
+		 * @param task what to run
+		 */
+		Event(long time, long tieBreak, long sequence, Runnable task) {
+			this.time = time;
+			this.tieBreak = tieBreak;
+			this.sequence = sequence;
+			this.task = task;
+		}
+		
+		@Override
+		public int compareTo(Event other) {
+			if (time != other.time) {
+				return Long.compare(time, other.time);
+			}
+			if (tieBreak != other.tieBreak) {
+				return Long.compare(tieBreak, other.tieBreak);
+			}
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+	
+	/**
+	 * The virtual clock this scheduler moves forward.
+	 */
+	private final VirtualClock clock = new VirtualClock();
+	/**
+	 * The events that haven't run yet.
+	 */
+	private final PriorityQueue<Event> events = new PriorityQueue<>();
+	/**
+	 * Where all the randomness in the simulation comes from.
+	 */
+	private final SplittableRandom random;
+	/**
+	 * How many events have been scheduled so far.
+	 */
+	private long sequence = 0;
+	
+	/**
+	 * The constructor. Same seed, same simulation.
+	 * 
+	 * @param seed the seed for every random choice in the simulation
+	 */
+	public SimScheduler(long seed) {
+		random = new SplittableRandom(seed);
+	}
+	
+	/**
+	 * Get the virtual clock.
+	 * 
+	 * @return the clock this scheduler moves forward
+	 */
+	public VirtualClock getClock() {
+		return clock;
+	}
+	
+	/**
+	 * Makes a new random number generator for part of the simulation.
+	 * 
+	 * Each part (a transport, a bot) gets its own, so adding randomness to one
+	 * part doesn't change the numbers another part sees.
+	 * 
+	 * @return a SplittableRandom split off of the seeded one
+	 */
+	public SplittableRandom split() {
+		return random.split();
+	}
+	
+	/**
+	 * Schedules a task to run after a virtual delay.
+	 * 
+	 * @param delayNanos how long from now, in virtual nanoseconds
+	 * @param task what to run
+	 * @return something to run to take the task back out, if it hasn't run yet
+	 */
+	@Override
+	public Runnable schedule(long delayNanos, Runnable task) {
+		Event event = new Event(clock.nanoTime() + delayNanos, random.nextLong(), sequence++, task);
+		events.add(event);
+		return () -> events.remove(event);
+	}
+	
+	/**
+	 * Schedules a task to run now, after anything else already due now.
+	 * 
+	 * @param task what to run
+	 */
+	@Override
+	public void execute(Runnable task) {
+		schedule(0, task);
+	}
+	
+	/**
+	 * Runs the next event, moving the clock forward to its time.
+	 * 
+	 * @return true if an event was run, false if there were none left
+	 */
+	public boolean step() {
+		Event event = events.poll();
+		if (event == null) {
+			return false;
+		}
+		clock.advanceTo(event.time);
+		event.task.run();
+		return true;
+	}
+	
+	/**
+	 * Runs events until there are none left.
+	 * 
+	 * @return how many events were run
+	 */
+	public long runUntilIdle() {
+		long count = 0;
+		while (step()) {
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Runs every event due up to a given virtual time.
+	 * 
+	 * @param time the virtual time to stop at
+	 */
+	public void runUntil(long time) {
+		while (!events.isEmpty() && events.peek().time <= time) {
+			step();
+		}
+		clock.advanceTo(Math.max(time, clock.nanoTime()));
+	}
+}
@@ -0,0 +1,218 @@
+package sim;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+import network.QueueTransport;
+import network.Transport;
+
+/**
+ * 
+ * A transport whose network is made up. Every message is delivered after a random
+ * virtual delay picked from a seeded generator, so the same seed always delivers in
+ * the same way. Messages normally arrive in the order they were sent, like TCP, but
+ * reordering can be turned on, and the link can be cut at a chosen virtual time.
+ * 
+ * Messages can be picked up two ways. A listener set with setListener() is called
+ * as each one arrives, which is how sessions are driven inside a simulation. Without
+ * one, they wait in an inbox, and receive() runs the simulation until one shows up.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class SimTransport implements Transport {
+	/**
+	 * The scheduler that delivers messages.
+	 */
+	private final SimScheduler scheduler;
+	/**
+	 * Picks the delays for messages sent from this end.
+	 */
+	private final SplittableRandom random;
+	/**
+	 * The shortest delay a message can have, in virtual nanoseconds.
+	 */
+	private final long minDelay;
+	/**
+	 * The longest delay a message can have, in virtual nanoseconds.
+	 */
+	private final long maxDelay;
+	/**
+	 * The other end.
+	 */
+	private SimTransport peer;
+	/**
+	 * Messages that arrived with no listener to take them.
+	 */
+	private final Deque<Object> inbox = new ArrayDeque<>();
+	/**
+	 * Called with each message as it arrives, if set.
+	 */
+	private Consumer<Object> listener;
+	/**
+	 * Called when the other end closes or the link is cut, if set.
+	 */
+	private Runnable disconnectListener;
+	/**
+	 * Whether messages can overtake each other.
+	 */
+	private boolean reordering = false;
+	/**
+	 * When the last message sent from this end is due, so that without reordering
+	 * the next one is never due any sooner.
+	 */
+	private long lastDelivery = 0;
+	/**
+	 * Whether this end was closed.
+	 */
+	private boolean closed = false;
+	/**
+	 * Whether the other end closed, or the link was cut.
+	 */
+	private boolean disconnected = false;
+	
+	/**
+	 * The constructor. Use pair() instead.
+	 * 
+	 * @param scheduler the scheduler that delivers messages
+	 * @param minDelay the shortest delay
+	 * @param maxDelay the longest delay
+	 */
+	private SimTransport(SimScheduler scheduler, long minDelay, long maxDelay) {
+		this.scheduler = scheduler;
+		this.random = scheduler.split();
+		this.minDelay = minDelay;
+		this.maxDelay = maxDelay;
+	}
+	
+	/**
+	 * Makes two connected ends.
+	 * 
+	 * @param scheduler the scheduler of the simulation
+	 * @param minDelayNanos the shortest virtual delay of a message
+	 * @param maxDelayNanos the longest virtual delay of a message
+	 * @return a SimTransport[] of length 2; whatever one sends, the other receives
+	 */
+	public static SimTransport[] pair(SimScheduler scheduler, long minDelayNanos, long maxDelayNanos) {
+		SimTransport first = new SimTransport(scheduler, minDelayNanos, maxDelayNanos);
+		SimTransport second = new SimTransport(scheduler, minDelayNanos, maxDelayNanos);
+		first.peer = second;
+		second.peer = first;
+		return new SimTransport[] {first, second};
+	}
+	
+	/**
+	 * Sets who gets messages as they arrive.
+	 * 
+	 * @param listener called with each message
+	 * @param disconnectListener called if the other end goes away
+	 */
+	public void setListener(Consumer<Object> listener, Runnable disconnectListener) {
+		this.listener = listener;
+		this.disconnectListener = disconnectListener;
+	}
+	
+	/**
+	 * Lets messages sent from this end overtake each other.
+	 * 
+	 * @param reordering true to allow it, false to keep them in order
+	 */
+	public void setReordering(boolean reordering) {
+		this.reordering = reordering;
+	}
+	
+	/**
+	 * Cuts the link between the two ends at a virtual time.
+	 * 
+	 * Both ends see the other one go away. Messages still on their way are lost.
+	 * 
+	 * @param delayNanos how long from now to cut it
+	 */
+	public void disconnectAfter(long delayNanos) {
+		scheduler.schedule(delayNanos, () -> {
+			disconnected();
+			peer.disconnected();
+		});
+	}
+	
+	@Override
+	public void send(Object message) throws IOException {
+		if (closed || disconnected) {
+			throw new IOException("Transport is closed.");
+		}
+		long now = scheduler.getClock().nanoTime();
+		long due = now + minDelay + ((maxDelay > minDelay) ? random.nextLong(maxDelay - minDelay + 1) : 0);
+		if (!reordering) {
+			due = Math.max(due, lastDelivery);
+		}
+		lastDelivery = due;
+		Object copy = QueueTransport.copyOf(message);
+		scheduler.schedule(due - now, () -> peer.deliver(copy));
+	}
+	
+	/**
+	 * Hands a message to this end, once its delay is up.
+	 * 
+	 * @param message the message that arrived
+	 */
+	private void deliver(Object message) {
+		if (closed || disconnected) {
+			return;
+		}
+		if (listener != null) {
+			listener.accept(message);
+		} else {
+			inbox.add(message);
+		}
+	}
+	
+	/**
+	 * The other end went away.
+	 */
+	private void disconnected() {
+		if (disconnected || closed) {
+			return;
+		}
+		disconnected = true;
+		if (disconnectListener != null) {
+			disconnectListener.run();
+		}
+	}
+	
+	/**
+	 * Waits for the next message by running the simulation until one arrives.
+	 * 
+	 * @return the next message
+	 * @throws EOFException if the link is closed, or nothing will ever arrive
+	 */
+	@Override
+	public Object receive() throws IOException {
+		while (inbox.isEmpty()) {
+			if (closed || disconnected || !scheduler.step()) {
+				throw new EOFException();
+			}
+		}
+		return inbox.poll();
+	}
+	
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		//The other end finds out once the close gets there.
+		long delay = Math.max(lastDelivery - scheduler.getClock().nanoTime(), minDelay);
+		scheduler.schedule(delay, () -> peer.disconnected());
+	}
+	
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+}
@@ -0,0 +1,235 @@
+package sim;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import controller.BSController;
+import controller.MatchSession;
+import model.Cell;
+
+/**
+ * 
+ * A whole networked match, run deterministically in virtual time. Both sides get a
+ * MatchSession over a pair of SimTransports, and each side is played by a bot that
+ * "clicks" a random square it hasn't shot yet at random moments. Every click, shot
+ * and disconnect goes through the one SimScheduler, so the whole match is decided by
+ * the seed: run it twice with the same seed and you get the same trace, event for
+ * event. Since virtual time never waits, a long match finishes as fast as the CPU
+ * can run its events.
+ * 
+ * Network trouble is injected through the transports: see getServerTransport() and
+ * getClientTransport().
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class Simulation {
+	/**
+	 * Runs every event in the match.
+	 */
+	private final SimScheduler scheduler;
+	/**
+	 * The server's end of the link.
+	 */
+	private final SimTransport serverTransport;
+	/**
+	 * The client's end of the link.
+	 */
+	private final SimTransport clientTransport;
+	/**
+	 * The server's controller.
+	 */
+	private final BSController serverSide;
+	/**
+	 * The client's controller.
+	 */
+	private final BSController clientSide;
+	/**
+	 * The server's session. The server shoots first.
+	 */
+	private final MatchSession server;
+	/**
+	 * The client's session.
+	 */
+	private final MatchSession client;
+	/**
+	 * How long a bot takes to click, on average, in virtual nanoseconds.
+	 */
+	private final long thinkNanos;
+	/**
+	 * Everything that happened, in order, with the virtual time it happened at.
+	 */
+	private final List<String> trace = new ArrayList<>();
+	
+	/**
+	 * The constructor. Both controllers should already have their ships placed.
+	 * 
+	 * @param seed the seed that decides everything random in the match
+	 * @param serverSide the server's controller
+	 * @param clientSide the client's controller
+	 * @param minDelayNanos the shortest virtual network delay
+	 * @param maxDelayNanos the longest virtual network delay
+	 * @param thinkNanos the average virtual time a bot takes to click
+	 */
+	public Simulation(long seed, BSController serverSide, BSController clientSide, 
+			long minDelayNanos, long maxDelayNanos, long thinkNanos) {
+		scheduler = new SimScheduler(seed);
+		this.serverSide = serverSide;
+		this.clientSide = clientSide;
+		SimTransport[] ends = SimTransport.pair(scheduler, minDelayNanos, maxDelayNanos);
+		serverTransport = ends[0];
+		clientTransport = ends[1];
+		server = new MatchSession(serverSide, serverTransport, true, scheduler);
+		client = new MatchSession(clientSide, clientTransport, false, scheduler);
+		serverTransport.setListener(server::onMessage, server::onDisconnect);
+		clientTransport.setListener(client::onMessage, client::onDisconnect);
+		this.thinkNanos = thinkNanos;
+	}
+	
+	/**
+	 * Runs the match until it's over, or until a virtual time limit.
+	 * 
+	 * @param maxNanos the most virtual time to let the match take
+	 * @return the trace of everything that happened
+	 */
+	public List<String> run(long maxNanos) {
+		try {
+			server.sendGrid(serverSide.getMyGrid());
+			client.sendGrid(clientSide.getMyGrid());
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		startBot("server", server, serverSide, scheduler.split());
+		startBot("client", client, clientSide, scheduler.split());
+		while (!(server.isEnded() && client.isEnded()) && scheduler.getClock().nanoTime() <= maxNanos) {
+			if (!scheduler.step()) {
+				break;
+			}
+		}
+		record("server " + (server.didIWin() ? "won" : "did not win"));
+		record("client " + (client.didIWin() ? "won" : "did not win"));
+		return trace;
+	}
+	
+	/**
+	 * Get the scheduler, e.g. to schedule extra events.
+	 * 
+	 * @return the scheduler running the match
+	 */
+	public SimScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	/**
+	 * Get the server's end of the link, to inject delays, reordering or disconnects.
+	 * 
+	 * @return the server's SimTransport
+	 */
+	public SimTransport getServerTransport() {
+		return serverTransport;
+	}
+	
+	/**
+	 * Get the client's end of the link, to inject delays, reordering or disconnects.
+	 * 
+	 * @return the client's SimTransport
+	 */
+	public SimTransport getClientTransport() {
+		return clientTransport;
+	}
+	
+	/**
+	 * Get the server's session.
+	 * 
+	 * @return the server's MatchSession
+	 */
+	public MatchSession getServer() {
+		return server;
+	}
+	
+	/**
+	 * Get the client's session.
+	 * 
+	 * @return the client's MatchSession
+	 */
+	public MatchSession getClient() {
+		return client;
+	}
+	
+	/**
+	 * Starts a bot clicking for one side.
+	 * 
+	 * The bot wakes up after a random think time. If it's its turn, it shoots a random
+	 * square it hasn't shot yet. Either way it goes back to thinking, until the game
+	 * is over.
+	 * 
+	 * @param name the side's name, for the trace
+	 * @param session the side's session
+	 * @param controller the side's controller
+	 * @param random the bot's own random number generator
+	 */
+	private void startBot(String name, MatchSession session, BSController controller, SplittableRandom random) {
+		scheduler.schedule(thinkTime(random), new Runnable() {
+			@Override
+			public void run() {
+				if (session.isEnded()) {
+					return;
+				}
+				if (session.isMyTurn()) {
+					int cell = pickShot(controller, random);
+					try {
+						if (session.localMove(cell)) {
+							record(name + " shot " + Cell.col(cell) + "," + Cell.row(cell));
+						}
+					} catch (IOException e) {
+						record(name + " could not send " + Cell.col(cell) + "," + Cell.row(cell));
+					}
+				}
+				scheduler.schedule(thinkTime(random), this);
+			}
+		});
+	}
+	
+	/**
+	 * Picks a random square of the other grid that hasn't been shot yet.
+	 * 
+	 * @param controller the side's controller
+	 * @param random the bot's random number generator
+	 * @return the Cell to shoot
+	 */
+	private static int pickShot(BSController controller, SplittableRandom random) {
+		char[][] otherGrid = controller.getOtherGrid();
+		int size = otherGrid.length;
+		int start = random.nextInt(size * size);
+		for (int i = 0; i < size * size; i++) {
+			int cell = (start + i) % (size * size);
+			char square = otherGrid[cell / size][cell % size];
+			if (square != 'h' && square != 'm') {
+				return cell;
+			}
+		}
+		return start;
+	}
+	
+	/**
+	 * Picks how long a bot thinks before clicking again.
+	 * 
+	 * @param random the bot's random number generator
+	 * @return between half and one and a half times thinkNanos
+	 */
+	private long thinkTime(SplittableRandom random) {
+		return thinkNanos / 2 + random.nextLong(thinkNanos + 1);
+	}
+	
+	/**
+	 * Adds a line to the trace, stamped with the virtual time.
+	 * 
+	 * @param event what happened
+	 */
+	private void record(String event) {
+		trace.add(scheduler.getClock().nanoTime() + " " + event);
+	}
+}
@@ -0,0 +1,41 @@
+package sim;
+
+/**
+ * 
+ * A clock that only moves when the simulation says so. Everything in a simulation
+ * asks this clock for the time instead of System.nanoTime(), so an hour of game
+ * traffic takes as long as it takes to run the events in it, not an hour.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class VirtualClock {
+	/**
+	 * The current virtual time, in nanoseconds since the simulation started.
+	 */
+	private long now = 0;
+	
+	/**
+	 * Get the current virtual time.
+	 * 
+	 * @return nanoseconds since the simulation started
+	 */
+	public long nanoTime() {
+		return now;
+	}
+	
+	/**
+	 * Moves the clock forward.
+	 * 
+	 * Only the SimScheduler does this, right before it runs an event.
+	 * 
+	 * @param time the new time, which can't be earlier than the current one
+	 */
+	void advanceTo(long time) {
+		if (time < now) {
+			throw new IllegalStateException("The clock can't go backwards.");
+		}
+		now = time;
+	}
+}
@@ -0,0 +1,612 @@
+package tests;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import ai.AnytimeStrategy;
+import ai.CellProbabilities;
+import ai.EndgameSolver;
+import ai.InferenceEngine;
+import ai.LayoutSampler;
+import ai.OpeningBook;
+import ai.OpponentBoard;
+import ai.PlacementBias;
+import ai.RandomStrategy;
+import ai.Strategy;
+import ai.StrategyRunner;
+import ai.TranspositionCache;
+import archive.GameArchive;
+import controller.BSController;
+import model.BSModel;
+import model.Cell;
+import model.Directions;
+import model.GameMode;
+import objects.GameRecord;
+
+/**
+ * 
+ * JUnit test suite for the bots: finding them, running them on a budget, and
+ * the moves they pick.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class AITest {
+	
+	/*
+	 * The random strategy is registered in META-INF/services, so ServiceLoader
+	 * should find it by name.
+	 */
+	@Test
+	void test_strategies_are_discovered() {
+		List<Strategy> strategies = StrategyRunner.discover();
+		assertTrue(strategies.stream().anyMatch((strategy) -> strategy instanceof RandomStrategy));
+		assertTrue(StrategyRunner.find("random") instanceof RandomStrategy);
+		assertTrue(StrategyRunner.find("nobody") == null);
+	}
+	
+	/*
+	 * A strategy that never answers should get the fallback move once its
+	 * budget is up, and one that picks a square that was already shot should
+	 * get it too. The real strategy should only pick squares that haven't
+	 * been shot, and the board should hide the ships it hasn't hit.
+	 */
+	@Test
+	void test_runner_enforces_budget() {
+		BSController controller = NetworkTest.makeSide();
+		controller.updateTheirGrid(NetworkTest.makeSide().getMyGrid());
+		controller.makeMove(Cell.of(0, 0), true);
+		OpponentBoard board = controller.getOpponentBoard();
+		assertTrue(board.isHit(0, 0) && !board.isLegal(Cell.of(0, 0)));
+		assertTrue(controller.getOtherGrid()[1][0] == 's' && board.isUnknown(1, 0));
+		
+		Strategy stuck = new Strategy() {
+			public String getName() {
+				return "stuck";
+			}
+			public int chooseShot(OpponentBoard board, long deadlineNanos) {
+				while (!Thread.currentThread().isInterrupted()) {
+					Thread.onSpinWait();
+				}
+				return Cell.of(5, 5);
+			}
+		};
+		Strategy cheater = new Strategy() {
+			public String getName() {
+				return "cheater";
+			}
+			public int chooseShot(OpponentBoard board, long deadlineNanos) {
+				return Cell.of(0, 0);
+			}
+		};
+		StrategyRunner runner = new StrategyRunner(2, 4);
+		try {
+			long start = System.nanoTime();
+			int shot = runner.chooseShot(stuck, board, 20_000_000).join();
+			assertTrue(shot == Cell.of(0, 1));
+			assertTrue(System.nanoTime() - start < 2_000_000_000L);
+			assertTrue(runner.chooseShot(cheater, board, 1_000_000_000).join() == Cell.of(0, 1));
+			assertTrue(runner.getFallbacks() == 2);
+			
+			for (int i = 0; i < 100; i++) {
+				assertTrue(board.isLegal(runner.chooseShot(new RandomStrategy(), board, 1_000_000_000).join()));
+			}
+		} finally {
+			runner.shutdown();
+		}
+	}
+	
+	/*
+	 * With one hit on the board, the anytime bot should shoot next to it,
+	 * whether it only has time for the density heuristic or has time to
+	 * sample as well.
+	 */
+	@Test
+	void test_anytime_follows_up_hits() {
+		BSController controller = NetworkTest.makeSide();
+		controller.updateTheirGrid(NetworkTest.makeSide().getMyGrid());
+		controller.makeMove(Cell.of(2, 0), true);
+		OpponentBoard board = controller.getOpponentBoard();
+		assertTrue(board.isHit(2, 0));
+		
+		AnytimeStrategy anytime = new AnytimeStrategy();
+		int quick = anytime.chooseShot(board, System.nanoTime());
+		assertTrue(distance(quick, Cell.of(2, 0)) == 1);
+		
+		int slow = anytime.chooseShot(board, System.nanoTime() + 50_000_000);
+		assertTrue(distance(slow, Cell.of(2, 0)) == 1);
+	}
+	
+	/*
+	 * Samples layouts around one hit. The same seed should give the same
+	 * estimates, the hit's neighbours should be likelier than a far corner,
+	 * and the error bounds should be small and get smaller with more samples.
+	 * The chains should spread over the threads of the pool they're given, and
+	 * an interrupted caller should get back straight away, still interrupted.
+	 */
+	@Test
+	void test_layout_sampler() {
+		BSController controller = NetworkTest.makeSide();
+		controller.updateTheirGrid(NetworkTest.makeSide().getMyGrid());
+		controller.makeMove(Cell.of(2, 0), true);
+		controller.makeMove(Cell.of(9, 0), true);
+		OpponentBoard board = controller.getOpponentBoard();
+		assertTrue(board.isHit(2, 0) && board.isMiss(9, 0));
+		
+		LayoutSampler sampler = new LayoutSampler(board);
+		CellProbabilities first = sampler.estimate(8, 2000, 5, Long.MAX_VALUE);
+		CellProbabilities again = sampler.estimate(8, 2000, 5, Long.MAX_VALUE);
+		CellProbabilities more = sampler.estimate(8, 20000, 5, Long.MAX_VALUE);
+		assertTrue(first.getSamples() == 8 * 2000);
+		for (int row = 0; row < BSModel.GRID_SIZE; row++) {
+			for (int col = 0; col < BSModel.GRID_SIZE; col++) {
+				assertTrue(first.getProbability(row, col) == again.getProbability(row, col));
+			}
+		}
+		assertTrue(first.getProbability(9, 0) == 0 && first.getProbability(2, 0) == 0);
+		assertTrue(first.getProbability(1, 0) > first.getProbability(9, 9));
+		assertTrue(first.getStandardError(1, 0) < 0.05);
+		assertTrue(more.getStandardError(9, 9) < first.getStandardError(9, 9));
+		assertTrue(distance(first.best(board), Cell.of(2, 0)) == 1);
+		
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			Set<Thread> used = ConcurrentHashMap.newKeySet();
+			Executor watched = (work) -> pool.execute(() -> {
+				used.add(Thread.currentThread());
+				work.run();
+			});
+			CellProbabilities pooled = new LayoutSampler(board, BSModel.SHIP_SIZES, null, watched).estimate(8, 2000, 5, Long.MAX_VALUE);
+			assertTrue(used.size() == 4 && pooled.getProbability(1, 0) == first.getProbability(1, 0));
+			
+			Thread.currentThread().interrupt();
+			CellProbabilities stopped = new LayoutSampler(board, BSModel.SHIP_SIZES, null, watched).estimate(8, Long.MAX_VALUE, 5, Long.MAX_VALUE);
+			assertTrue(Thread.interrupted() && stopped.getSamples() == 0);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	/*
+	 * Once the only thread is busy and another shot is waiting, a new shot
+	 * should get a smaller budget, but never less than the minimum.
+	 */
+	@Test
+	void test_budgets_shrink_under_load() throws InterruptedException {
+		OpponentBoard board = NetworkTest.makeSide().getOpponentBoard();
+		CountDownLatch release = new CountDownLatch(1);
+		Strategy waiting = new Strategy() {
+			public String getName() {
+				return "waiting";
+			}
+			public int chooseShot(OpponentBoard board, long deadlineNanos) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return board.firstUnknown();
+			}
+		};
+		StrategyRunner runner = new StrategyRunner(1, 4);
+		try {
+			assertTrue(runner.scaleBudget(1_000_000_000) == 1_000_000_000);
+			runner.chooseShot(waiting, board, 10_000_000_000L);
+			runner.chooseShot(waiting, board, 10_000_000_000L);
+			long budget = runner.scaleBudget(1_000_000_000);
+			assertTrue(budget < 1_000_000_000 && budget >= StrategyRunner.MIN_BUDGET_NANOS);
+			assertTrue(runner.scaleBudget(10) == 10);
+		} finally {
+			release.countDown();
+			runner.shutdown();
+		}
+	}
+	
+	/*
+	 * A strategy that ignores its interrupt keeps the only thread of a runner.
+	 * Once the grace period is up, the thread should be replaced, so a good
+	 * strategy still gets to answer, and the extra thread should go away when
+	 * the stuck one finally returns.
+	 */
+	@Test
+	void test_runner_replaces_stuck_threads() throws InterruptedException {
+		OpponentBoard board = NetworkTest.makeSide().getOpponentBoard();
+		CountDownLatch release = new CountDownLatch(1);
+		Strategy deaf = new Strategy() {
+			public String getName() {
+				return "deaf";
+			}
+			public int chooseShot(OpponentBoard board, long deadlineNanos) {
+				while (release.getCount() > 0) {
+					Thread.interrupted();
+					Thread.onSpinWait();
+				}
+				return Cell.of(5, 5);
+			}
+		};
+		Strategy quick = new Strategy() {
+			public String getName() {
+				return "quick";
+			}
+			public int chooseShot(OpponentBoard board, long deadlineNanos) {
+				return Cell.of(3, 3);
+			}
+		};
+		StrategyRunner runner = new StrategyRunner(1, 4);
+		try {
+			assertTrue(runner.chooseShot(deaf, board, 10_000_000).join() == board.firstUnknown());
+			long waitUntil = System.nanoTime() + 5_000_000_000L;
+			while (runner.getStuckWorkers() == 0 && System.nanoTime() < waitUntil) {
+				Thread.sleep(5);
+			}
+			assertTrue(runner.getStuckWorkers() == 1);
+			assertTrue(runner.chooseShot(quick, board, 2_000_000_000).join() == Cell.of(3, 3));
+			assertTrue(runner.getFallbacks() == 1);
+			
+			release.countDown();
+			while (runner.getStuckWorkers() == 1 && System.nanoTime() < waitUntil) {
+				Thread.sleep(5);
+			}
+			assertTrue(runner.getStuckWorkers() == 0);
+		} finally {
+			release.countDown();
+			runner.shutdown();
+		}
+	}
+	
+	/*
+	 * A request that runs out of time while it's still waiting for the only
+	 * thread never got a thread, so it gets the fallback move without anything
+	 * being written off as stuck.
+	 */
+	@Test
+	void test_runner_queued_timeout_is_not_stuck() throws InterruptedException {
+		OpponentBoard board = NetworkTest.makeSide().getOpponentBoard();
+		CountDownLatch started = new CountDownLatch(1);
+		Strategy slow = new Strategy() {
+			public String getName() {
+				return "slow";
+			}
+			public int chooseShot(OpponentBoard board, long deadlineNanos) {
+				started.countDown();
+				long until = System.nanoTime() + 200_000_000;
+				while (System.nanoTime() < until) {
+					Thread.onSpinWait();
+				}
+				return Cell.of(3, 3);
+			}
+		};
+		StrategyRunner runner = new StrategyRunner(1, 4);
+		try {
+			CompletableFuture<Integer> first = runner.chooseShot(slow, board, 2_000_000_000);
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			assertTrue(runner.chooseShot(slow, board, 1_000_000).join() == board.firstUnknown());
+			assertTrue(first.join() == Cell.of(3, 3));
+			Thread.sleep(StrategyRunner.STUCK_GRACE_NANOS / 1_000_000 * 3);
+			assertTrue(runner.getStuckWorkers() == 0 && runner.getFallbacks() == 1);
+		} finally {
+			runner.shutdown();
+		}
+	}
+	
+	/*
+	 * Entries should come back by their hash. A different hash in the same
+	 * slot should push the old entry out, not be confused with it, and lots of
+	 * threads sharing the cache should only ever read back what was stored
+	 * under the hash they asked for.
+	 */
+	@Test
+	void test_transposition_cache() {
+		TranspositionCache<Long> cache = new TranspositionCache<Long>(1000);
+		assertTrue(cache.getCapacity() == 1024);
+		cache.put(5, 50L);
+		assertTrue(cache.get(5) == 50L);
+		cache.put(5 + 1024, 60L);
+		assertTrue(cache.get(5) == null && cache.get(5 + 1024) == 60L);
+		assertTrue(cache.getHits() == 2 && cache.getMisses() == 1);
+		
+		assertTrue(IntStream.range(0, 100_000).parallel().allMatch((i) -> {
+			long hash = i * 0x9E3779B97F4A7C15L;
+			cache.put(hash, hash + 1);
+			Long value = cache.get(hash);
+			return value == null || value == hash + 1;
+		}));
+	}
+	
+	/*
+	 * Shoots every square but a few, leaving only the second raft unfound.
+	 * With two squares left it could be on, either one is a coin flip, so it
+	 * takes one and a half shots on average. With three, it takes two, and each
+	 * first shot should be searched as its own task on the pool. Out of time or
+	 * interrupted, it gives up. The anytime bot should hand the move to the solver.
+	 * Against another mode's fleet, the same shots are a different board.
+	 */
+	@Test
+	void test_endgame_solver() {
+		OpponentBoard twoLeft = boardWithUnshot(Cell.of(4, 7), Cell.of(9, 9));
+		EndgameSolver solver = new EndgameSolver(twoLeft);
+		assertTrue(solver.solve(System.nanoTime() + 10_000_000_000L));
+		assertTrue(solver.getLayoutCount() == 2);
+		assertTrue(Math.abs(solver.getExpectedShots() - 1.5) < 1e-9);
+		assertTrue(twoLeft.isLegal(solver.getBestShot()));
+		
+		OpponentBoard threeLeft = boardWithUnshot(Cell.of(4, 7), Cell.of(9, 9), Cell.of(9, 8));
+		solver = new EndgameSolver(threeLeft);
+		assertTrue(solver.solve(System.nanoTime() + 10_000_000_000L));
+		assertTrue(Math.abs(solver.getExpectedShots() - 2) < 1e-9);
+		
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			AtomicInteger tasks = new AtomicInteger();
+			Executor counted = (work) -> {
+				tasks.incrementAndGet();
+				pool.execute(work);
+			};
+			solver = new EndgameSolver(threeLeft, BSModel.SHIP_SIZES, counted);
+			assertTrue(solver.solve(System.nanoTime() + 10_000_000_000L));
+			assertTrue(Math.abs(solver.getExpectedShots() - 2) < 1e-9 && tasks.get() == 3);
+			assertTrue(threeLeft.isLegal(solver.getBestShot()));
+		} finally {
+			pool.shutdownNow();
+		}
+		
+		assertTrue(!new EndgameSolver(threeLeft).solve(System.nanoTime()));
+		Thread.currentThread().interrupt();
+		boolean interrupted = new EndgameSolver(twoLeft).solve(System.nanoTime() + 10_000_000_000L);
+		assertTrue(Thread.interrupted() && !interrupted);
+		assertTrue(!new EndgameSolver(NetworkTest.makeSide().getOpponentBoard()).solve(System.nanoTime() + 10_000_000_000L));
+		assertTrue(threeLeft.isLegal(new AnytimeStrategy().chooseShot(threeLeft, System.nanoTime() + 1_000_000_000)));
+		
+		//The same shots against another fleet are another position, and a lone
+		//destroyer can't account for all those hits.
+		GameMode duel = GameMode.parse("duel:destroyer=2");
+		OpponentBoard duelBoard = boardWithUnshot(duel, Cell.of(4, 7), Cell.of(9, 9));
+		assertTrue(duelBoard.getHash() != twoLeft.getHash() && GameMode.CLASSIC.getFleetKey() == 0);
+		assertTrue(GameMode.parse("a:x=2,y=3").getFleetKey() == GameMode.parse("b:y=3,x=2").getFleetKey());
+		assertTrue(!new EndgameSolver(duelBoard).solve(System.nanoTime() + 10_000_000_000L));
+		assertTrue(duelBoard.isLegal(new AnytimeStrategy().chooseShot(duelBoard, System.nanoTime() + 1_000_000_000)));
+	}
+	
+	/*
+	 * Shoots the usual layout in a random order, feeding each shot to one engine
+	 * as it happens. After every shot it should match an engine built from
+	 * scratch, and no square with a ship on it should ever be called impossible.
+	 * Then a few small boards where the answer is known.
+	 */
+	@Test
+	void test_inference_engine() {
+		BSController controller = NetworkTest.makeSide();
+		char[][] theirGrid = NetworkTest.makeSide().getMyGrid();
+		controller.updateTheirGrid(theirGrid);
+		int size = BSModel.GRID_SIZE;
+		InferenceEngine engine = new InferenceEngine(size, BSModel.SHIP_SIZES);
+		List<Integer> cells = new ArrayList<Integer>();
+		for (int cell = 0; cell < size * size; cell++) {
+			cells.add(cell);
+		}
+		Collections.shuffle(cells, new Random(42));
+		for (int cell : cells) {
+			int row = cell / size;
+			int col = cell % size;
+			boolean hit = theirGrid[row][col] == 's';
+			controller.makeMove(Cell.of(row, col), true);
+			engine.shot(row, col, hit);
+			InferenceEngine fresh = InferenceEngine.of(controller.getOpponentBoard(), BSModel.SHIP_SIZES);
+			for (int outerArray = 0; outerArray < size; outerArray++) {
+				assertTrue(engine.getImpossibleRow(outerArray) == fresh.getImpossibleRow(outerArray));
+				assertTrue(engine.getCertainRow(outerArray) == fresh.getCertainRow(outerArray));
+				for (int innerArray = 0; innerArray < size; innerArray++) {
+					assertTrue(!(theirGrid[outerArray][innerArray] == 's' && engine.isImpossible(outerArray, innerArray)));
+				}
+			}
+		}
+		
+		//A four long ship covers the hit in the corner, and the miss below means it lies along the row.
+		InferenceEngine corner = new InferenceEngine(size, new int[] {4});
+		corner.shot(1, 0, false);
+		corner.shot(0, 0, true);
+		assertTrue(corner.getCertainRow(0) == 0b1110 && corner.firstCertain() == 1);
+		corner.setRemaining(new int[] {4, 1});
+		assertTrue(corner.firstCertain() == -1);
+		
+		//Boxed in by misses, so nothing three long fits across the middle square.
+		InferenceEngine boxed = new InferenceEngine(size, new int[] {3});
+		boxed.shot(5, 4, false);
+		boxed.shot(5, 6, false);
+		boxed.shot(4, 5, false);
+		boxed.shot(6, 5, false);
+		assertTrue(boxed.isImpossible(5, 5) && boxed.countImpossible() == 1);
+	}
+	
+	/*
+	 * Builds a small book for the anytime strategy and maps it back in. The
+	 * empty board should be in it, and a runner with the book should answer
+	 * from it straight away, but only for the strategy that built it. Then a
+	 * book for a strategy with a long name, picked up through the property.
+	 */
+	@Test
+	void test_opening_book() throws IOException, InterruptedException, ExecutionException {
+		Path file = Files.createTempFile("battleship", ".book");
+		StrategyRunner runner = new StrategyRunner(1, 4);
+		try {
+			int boards = OpeningBook.build(file, new AnytimeStrategy(), 3, 5_000_000);
+			assertTrue(boards > 1 && boards <= 7);
+			OpeningBook book = OpeningBook.open(file);
+			assertTrue(book.getCount() == boards && book.getStrategyName().equals("anytime"));
+			
+			OpponentBoard empty = NetworkTest.makeSide().getOpponentBoard();
+			int opening = book.lookup(empty);
+			assertTrue(empty.isLegal(opening));
+			assertTrue(book.lookup(AITest.boardWithUnshot(Cell.of(9, 9))) == Cell.NONE);
+			
+			runner.setOpeningBook(book);
+			CompletableFuture<Integer> shot = runner.chooseShot(new AnytimeStrategy(), empty, 1_000_000_000);
+			assertTrue(shot.isDone() && shot.get() == opening && runner.getBookHits() == 1);
+			runner.chooseShot(new RandomStrategy(), empty, 1_000_000_000).get();
+			assertTrue(runner.getBookHits() == 1);
+			
+			//A long name with characters past ASCII comes back whole, and the
+			//system property is enough for a new runner to use the book.
+			String longName = "corner-\u0109\u0109\u0109\u0109\u0109\u0109\u0109\u0109\u0109\u0109\u0109\u0109\u0109\u0109\u0109\u0109\u0109\u0109\u0109\u0109";
+			Strategy corner = new Strategy() {
+				public String getName() {
+					return longName;
+				}
+				public int chooseShot(OpponentBoard board, long deadlineNanos) {
+					return Cell.of(0, 0);
+				}
+			};
+			assertTrue(OpeningBook.build(file, corner, 1, 1_000_000) == 1);
+			assertTrue(OpeningBook.open(file).getStrategyName().equals(longName));
+			System.setProperty(StrategyRunner.BOOK_PROPERTY, file.toString());
+			StrategyRunner fromProperty = new StrategyRunner(1, 4);
+			try {
+				assertTrue(fromProperty.chooseShot(corner, empty, 1_000_000_000).isDone());
+				assertTrue(fromProperty.getBookHits() == 1);
+			} finally {
+				fromProperty.shutdown();
+			}
+		} finally {
+			System.clearProperty(StrategyRunner.BOOK_PROPERTY);
+			runner.shutdown();
+			Files.deleteIfExists(file);
+		}
+	}
+	
+	/*
+	 * Records the usual layout for one player, from four threads at once, and
+	 * checks no game was lost. Then has a player switch layouts and checks the
+	 * old one fades by half every half-life, while someone never seen has no
+	 * prior at all.
+	 */
+	@Test
+	void test_placement_bias() throws InterruptedException, IOException {
+		int[] shipCells = new int[TestInitializer.listOfPoints.length];
+		for (int i = 0; i < shipCells.length; i++) {
+			shipCells[i] = TestInitializer.listOfPoints[i].x * BSModel.GRID_SIZE + TestInitializer.listOfPoints[i].y;
+		}
+		GameRecord usual = new GameRecord(shipCells, TestInitializer.correspondingDirs, new int[0]);
+		PlacementBias bias = new PlacementBias(1_000_000);
+		Thread[] recorders = new Thread[4];
+		for (int i = 0; i < recorders.length; i++) {
+			recorders[i] = new Thread(() -> {
+				for (int game = 0; game < 500; game++) {
+					bias.record("alice", usual);
+				}
+			});
+			recorders[i].start();
+		}
+		for (Thread recorder : recorders) {
+			recorder.join();
+		}
+		assertTrue(bias.getGames("alice") == 2000);
+		assertTrue(bias.getWeight("alice", 0, 40, Directions.UP) == 2000);
+		assertTrue(bias.getWeight("alice", 0, 40, Directions.LEFT) == 0);
+		//The carrier runs from [4][0] up to [0][0].
+		double[] prior = bias.prior("alice");
+		assertTrue(Math.abs(prior[0] - 1) < 1e-9 && prior[50] == 0);
+		assertTrue(Arrays.stream(bias.prior("bob")).allMatch((p) -> p == 0));
+		
+		PlacementBias fading = new PlacementBias(10);
+		for (int game = 0; game < 20; game++) {
+			fading.record("carol", usual);
+		}
+		double before = fading.getWeight("carol", 0, 40, Directions.UP);
+		int[] moved = shipCells.clone();
+		moved[0] = 99;
+		for (int game = 0; game < 20; game++) {
+			fading.record("carol", new GameRecord(moved, TestInitializer.correspondingDirs, new int[0]));
+		}
+		double after = fading.getWeight("carol", 0, 40, Directions.UP);
+		assertTrue(Math.abs(after - before / 4) < 1e-3);
+		assertTrue(fading.getWeight("carol", 0, 99, Directions.UP) > after);
+		
+		OpponentBoard board = NetworkTest.makeSide().getOpponentBoard();
+		assertTrue(board.isLegal(new AnytimeStrategy(bias, "alice").chooseShot(board, System.nanoTime() + 5_000_000)));
+		
+		//Weighting layouts by alice's habits should put more ships where she keeps her carrier.
+		double[] weights = new double[Cell.COUNT];
+		for (int cell = 0; cell < weights.length; cell++) {
+			weights[cell] = 1 + 2 * prior[cell];
+		}
+		CellProbabilities plain = new LayoutSampler(board).estimate(4, 2000, 44, Long.MAX_VALUE);
+		CellProbabilities weighted = new LayoutSampler(board, BSModel.SHIP_SIZES, weights).estimate(4, 2000, 44, Long.MAX_VALUE);
+		assertTrue(weighted.getProbability(0, 0) > plain.getProbability(0, 0) + 0.1);
+		
+		Path file = Files.createTempFile("battleship", ".archive");
+		try {
+			PlacementBias learned = new PlacementBias(1_000_000);
+			try (GameArchive.Writer writer = GameArchive.create(file, learned)) {
+				writer.append(usual, "dave");
+				writer.append(usual);
+			}
+			assertTrue(learned.getGames("dave") == 1 && learned.getWeight("dave", 0, 40, Directions.UP) == 1);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+	
+	/**
+	 * Makes a board where every square of the usual layout has been shot,
+	 * except for some.
+	 * 
+	 * @param unshot the cells to leave alone
+	 * @return the board
+	 */
+	static OpponentBoard boardWithUnshot(int... unshot) {
+		return boardWithUnshot(GameMode.CLASSIC, unshot);
+	}
+	
+	/**
+	 * Makes a board where every square of the usual layout has been shot,
+	 * except for some, as seen by a game of some mode.
+	 * 
+	 * @param mode the mode whose fleet is being shot at
+	 * @param unshot the cells to leave alone
+	 * @return the board
+	 */
+	static OpponentBoard boardWithUnshot(GameMode mode, int... unshot) {
+		BSController controller = NetworkTest.makeSide();
+		controller.updateTheirGrid(NetworkTest.makeSide().getMyGrid());
+		for (int cell = 0; cell < Cell.COUNT; cell++) {
+			final int shot = cell;
+			if (IntStream.of(unshot).noneMatch((skip) -> skip == shot)) {
+				controller.makeMove(cell, true);
+			}
+		}
+		return new OpponentBoard(controller.getOtherSnapshot(), mode);
+	}
+	
+	/**
+	 * Counts the steps from one square to another, moving only along rows and
+	 * columns.
+	 * 
+	 * @param cell one square
+	 * @param other the other square
+	 * @return the number of steps, so 1 for squares that are next to each other
+	 */
+	static int distance(int cell, int other) {
+		return Math.abs(Cell.row(cell) - Cell.row(other)) + Math.abs(Cell.col(cell) - Cell.col(other));
+	}
+}
@@ -2,14 +2,46 @@ package tests;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.Point;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
 
 import org.junit.jupiter.api.Test;
 
+import analytics.HeatmapPipeline;
+import analytics.ShotHeatmap;
+import archive.ColumnarArchive;
+import archive.GameArchive;
+import archive.MatchQuery;
+import archive.MatchSummary;
 import controller.BSController;
+import controller.ShotResult;
 import model.BSModel;
+import model.Cell;
+import model.CellSet;
 import model.Directions;
+import model.GameMode;
+import model.GridSnapshot;
+import model.MoveBatch;
+import model.PlacementKernels;
+import model.ReplayIndex;
+import model.Zobrist;
+import objects.GameRecord;
 import objects.Ship;
 import view.BSView;
+import view.WhichGrid;
 
 /**
  * 
@@ -29,6 +61,7 @@ public class BSTest {
 			new Point(4,4), 
 			new Point(4,5),
 			new Point(4,7)};
+	static int[] listOfCells = Arrays.stream(listOfPoints).mapToInt((point) -> Cell.of(point.x, point.y)).toArray();
 	static Directions[] correspondingDirs = new Directions[]{Directions.UP, Directions.LEFT, 
 			Directions.UP, Directions.LEFT, Directions.UP, Directions.UP,
 			Directions.UP};
@@ -50,7 +83,7 @@ public class BSTest {
 		BSController controller = curGame.getController();
 		Ship[] shipStates = controller.getShipStates();
 		for (int i = 0; i < shipStates.length; i++) {
-			controller.placeShip(listOfPoints[i], 
+			controller.placeShip(listOfCells[i], 
 					shipStates[i], correspondingDirs[i]);
 		}
 
@@ -89,11 +122,11 @@ public class BSTest {
 		BSController controller = curGame.getController();
 		Ship[] shipStates = controller.getShipStates();
 		for (int i = 0; i < shipStates.length; i++) {
-			controller.placeShip(listOfPoints[i], 
+			controller.placeShip(listOfCells[i], 
 					shipStates[i], correspondingDirs[i]);
 		}
 		for (int i = 0; i < shipStates.length; i++) {
-			controller.placeShipOnOther(listOfPoints[i], 
+			controller.placeShipOnOther(listOfCells[i], 
 					shipStates[i], correspondingDirs[i]);
 		}
 	
@@ -113,7 +146,7 @@ public class BSTest {
 			//System.out.println("ABOUT TO MAKE A HIT.");
 			Point hit = givenHits[hitNumber];
 			//System.out.println("TEST HIT: " + hit);
-			controller.makeMove(hit, myTurn);
+			controller.makeMove(Cell.of(hit.y, hit.x), myTurn);
 			hitNumber++;
 			//System.out.println();
 			//System.out.println("Hit Number: " + hitNumber);
@@ -121,7 +154,7 @@ public class BSTest {
 			
 			//System.out.println("ABOUT TO RECEIVE A HIT.");
 			Point receivedHit = receivedHits[getHitNumber];
-			controller.makeMove(receivedHit, myTurn);
+			controller.makeMove(Cell.of(receivedHit.y, receivedHit.x), myTurn);
 			getHitNumber++;
 			//System.out.println("Get Hit Number: " + getHitNumber);
 			myTurn = true;
@@ -163,46 +196,784 @@ public class BSTest {
 		 */
 		//Place carrier first
 		Ship carrier = controller.getShipStates()[0]; 
-		controller.placeShip(new Point(4,0), carrier, Directions.UP);
+		controller.placeShip(Cell.of(4, 0), carrier, Directions.UP);
 		Ship battleship = controller.getShipStates()[1]; //4
 		Ship cruiser = controller.getShipStates()[2]; //3
 		Ship destroyer = controller.getShipStates()[3]; //2
 		Ship destroyer2 = controller.getShipStates()[4]; //1
 		
 		//Place the rest
-		controller.placeShip(new Point(0, 3), battleship, Directions.LEFT);
-		controller.placeShip(new Point(0, 4), battleship, Directions.LEFT);
-		controller.placeShip(new Point(2, 3), cruiser, Directions.UP);
-		controller.placeShip(new Point(4, 0), destroyer, Directions.LEFT);
-		controller.placeShip(new Point(0, 4), destroyer2, Directions.UP);
+		controller.placeShip(Cell.of(0, 3), battleship, Directions.LEFT);
+		controller.placeShip(Cell.of(0, 4), battleship, Directions.LEFT);
+		controller.placeShip(Cell.of(2, 3), cruiser, Directions.UP);
+		controller.placeShip(Cell.of(4, 0), destroyer, Directions.LEFT);
+		controller.placeShip(Cell.of(0, 4), destroyer2, Directions.UP);
 		
 		//Ta-da
 		System.out.println("MY GRID");
 		TestInitializer.print2DArray(controller.getMyGrid());
 
-		controller.placeShipOnOther(new Point(4,0), carrier, Directions.UP);
-		controller.placeShipOnOther(new Point(0, 3), battleship, Directions.LEFT);
-		controller.placeShip(new Point(0, 4), battleship, Directions.LEFT);
-		controller.placeShipOnOther(new Point(2, 3), cruiser, Directions.UP);
-		controller.placeShipOnOther(new Point(4, 0), destroyer, Directions.LEFT);
-		controller.placeShipOnOther(new Point(0, 4), destroyer2, Directions.UP);
+		controller.placeShipOnOther(Cell.of(4, 0), carrier, Directions.UP);
+		controller.placeShipOnOther(Cell.of(0, 3), battleship, Directions.LEFT);
+		controller.placeShip(Cell.of(0, 4), battleship, Directions.LEFT);
+		controller.placeShipOnOther(Cell.of(2, 3), cruiser, Directions.UP);
+		controller.placeShipOnOther(Cell.of(4, 0), destroyer, Directions.LEFT);
+		controller.placeShipOnOther(Cell.of(0, 4), destroyer2, Directions.UP);
 		System.out.println("OTHER GRID");
 		TestInitializer.print2DArray(controller.getOtherGrid());
 		
 		//Testing hitting/missing twice for coverage's sake.
 		//My turn = true --> Affect other grid
 		boolean myTurn = true;
-		controller.makeMove(new Point(4,0), myTurn);
-		controller.makeMove(new Point(4,0), myTurn);
-		controller.makeMove(new Point(9,9), myTurn);
-		controller.makeMove(new Point(9,9), myTurn);
+		controller.makeMove(Cell.of(0, 4), myTurn);
+		controller.makeMove(Cell.of(0, 4), myTurn);
+		controller.makeMove(Cell.of(9, 9), myTurn);
+		controller.makeMove(Cell.of(9, 9), myTurn);
 		myTurn = false;
-		controller.makeMove(new Point(4,0), myTurn);
-		controller.makeMove(new Point(4,0), myTurn);
-		controller.makeMove(new Point(9,9), myTurn);
-		controller.makeMove(new Point(9,9), myTurn);
+		controller.makeMove(Cell.of(0, 4), myTurn);
+		controller.makeMove(Cell.of(0, 4), myTurn);
+		controller.makeMove(Cell.of(9, 9), myTurn);
+		controller.makeMove(Cell.of(9, 9), myTurn);
 		
 
 	}
 	
+	/*
+	 * Streams the same game through the heatmap pipeline a bunch of times, and
+	 * makes sure the merged counters come out the same as counting them by hand.
+	 * Records of other modes lay out their ships at that mode's lengths.
+	 */
+	@Test
+	void test_heatmap_pipeline() {
+		int[] shipCells = new int[listOfPoints.length];
+		for (int i = 0; i < listOfPoints.length; i++) {
+			shipCells[i] = listOfPoints[i].x * BSModel.GRID_SIZE + listOfPoints[i].y;
+		}
+		//Carrier is at [0..4][0], so 40 is a hit and 99 is a miss.
+		GameRecord record = new GameRecord(shipCells, correspondingDirs, new int[] {99, 40});
+		GameRecord copy = GameRecord.parse(record.toLine());
+		
+		ShotHeatmap heatmap = HeatmapPipeline.run(Stream.generate(() -> copy).limit(1000));
+		assertTrue(heatmap.getGames() == 1000);
+		assertTrue(heatmap.firstShotHeatmap()[9][9] == 1.0);
+		assertTrue(heatmap.hitProbability(0)[9][9] == 0.0);
+		assertTrue(heatmap.hitProbability(1)[4][0] == 1.0);
+		assertTrue(heatmap.placementHeatmap(0)[0][0] == 1.0);
+		assertTrue(heatmap.placementHeatmap(0)[5][0] == 0.0);
+		
+		//A record knows its mode, and ships are as long as the mode says.
+		GameMode pair = GameMode.parse("pair:barge=9,skiff=1");
+		GameRecord barge = new GameRecord(new int[] {Cell.of(9, 0), Cell.of(9, 9)},
+				new Directions[] {Directions.UP, Directions.LEFT}, new int[] {Cell.of(1, 0)}, pair);
+		int[] occupancy = new int[Cell.COUNT];
+		barge.fillOccupancy(occupancy);
+		assertTrue(barge.getMode() == pair && occupancy[Cell.of(1, 0)] == 1 && occupancy[Cell.of(0, 0)] == 0);
+		assertTrue(IntStream.of(occupancy).filter((ship) -> ship != 0).count() == 10);
+		GameRecord.parse(barge.toLine()).fillOccupancy(occupancy, pair);
+		assertTrue(occupancy[Cell.of(1, 0)] == 1 && record.getMode() == GameMode.CLASSIC);
+		GameMode flotilla = GameMode.parse("flotilla:a=1,b=1,c=1,d=1,e=1,f=1,g=1,h=1");
+		int[] rafts = IntStream.range(0, 8).toArray();
+		Directions[] rafting = new Directions[8];
+		Arrays.fill(rafting, Directions.LEFT);
+		new ShotHeatmap().accept(new GameRecord(rafts, rafting, new int[] {7}, flotilla));
+		
+		int[] offGrid = shipCells.clone();
+		offGrid[0] = 0;
+		GameMode longer = GameMode.parse("longer:barge=10");
+		List<Runnable> bad = List.of(
+				() -> new GameRecord(new int[] {shipCells[0]}, new Directions[] {Directions.UP}, new int[0], longer),
+				() -> new GameRecord(shipCells, correspondingDirs, new int[0], longer),
+				() -> record.fillOccupancy(new int[Cell.COUNT], longer),
+				() -> new GameRecord(shipCells, correspondingDirs, new int[] {Cell.COUNT}),
+				() -> new GameRecord(shipCells, correspondingDirs, new int[] {-1}),
+				() -> new GameRecord(offGrid, correspondingDirs, new int[0]),
+				() -> GameRecord.parse(record.toLine().replace(";U", ";X")),
+				() -> heatmap.hitProbability(Cell.COUNT),
+				() -> heatmap.placementHeatmap(BSModel.SHIP_SIZES.length));
+		for (Runnable input : bad) {
+			boolean rejected = false;
+			try {
+				input.run();
+			} catch (IllegalArgumentException e) {
+				rejected = true;
+			}
+			assertTrue(rejected);
+		}
+	}
+	
+	/*
+	 * Makes a stack of hypothetical shots with makeShot(), then unmakes them
+	 * in reverse, and checks that the grids and ships are right back where
+	 * they started.
+	 */
+	@Test
+	void test_make_unmake_shot() {
+		BSModel model = new BSModel();
+		model.initShipStates();
+		model.initGrid(WhichGrid.THIS_GRID);
+		for (int i = 0; i < model.shipStates.length; i++) {
+			model.updateGridWithShips(listOfCells[i], model.shipStates[i], correspondingDirs[i]);
+			model.updateOtherGridWithShips(listOfCells[i], model.shipStates[i], correspondingDirs[i]);
+		}
+		char[][] before = TestInitializer.getIdealShipPlacement();
+		
+		//The raft is a single square at [4][5], so one hit sinks it.
+		int[] tokens = new int[4];
+		tokens[0] = model.makeShot(4, 5, false);
+		tokens[1] = model.makeShot(9, 9, false);
+		tokens[2] = model.makeShot(0, 0, true);
+		tokens[3] = model.makeShot(4, 5, false);
+		assertTrue(model.shipStates[5].isSunk());
+		assertTrue(model.grid[9][9] == 'm' && model.otherGrid[0][0] == 'h');
+		assertTrue(tokens[3] == BSModel.INVALID_SHOT);
+		
+		for (int i = 2; i >= 0; i--) {
+			model.unmakeShot(tokens[i]);
+		}
+		assertTrue(!model.shipStates[5].isSunk());
+		for (int row = 0; row < BSModel.GRID_SIZE; row++) {
+			for (int col = 0; col < BSModel.GRID_SIZE; col++) {
+				assertTrue(model.grid[row][col] == before[row][col]);
+			}
+		}
+		assertTrue(model.otherGrid[0][0] == 's');
+	}
+	
+	/*
+	 * Takes a snapshot, makes a move, and checks that the old snapshot didn't
+	 * change while the new one has the hit.
+	 */
+	@Test
+	void test_grid_snapshots() {
+		BSView curGame = new BSView();
+		curGame.reset();
+		curGame.initRects();
+		BSController controller = curGame.getController();
+		Ship[] shipStates = controller.getShipStates();
+		for (int i = 0; i < shipStates.length; i++) {
+			controller.placeShipOnOther(listOfCells[i], 
+					shipStates[i], correspondingDirs[i]);
+		}
+		GridSnapshot before = controller.getOtherSnapshot();
+		controller.makeMove(Cell.of(4, 0), true);
+		GridSnapshot after = controller.getOtherSnapshot();
+		
+		assertTrue(before.charAt(4, 0) == 's');
+		assertTrue(after.charAt(4, 0) == 'h');
+		assertTrue(after.getVersion() > before.getVersion());
+		assertTrue(after.charAt(0, 0) == 's');
+	}
+	
+	/*
+	 * After a move, only the square that was shot should come back as dirty,
+	 * and draining should leave nothing behind for next time. There's no view
+	 * here, since the view would drain them itself.
+	 */
+	@Test
+	void test_dirty_cells() {
+		BSController controller = new BSController(new BSModel());
+		controller.initShipStates();
+		controller.initGrid(WhichGrid.THIS_GRID);
+		CellSet dirty = new CellSet(BSModel.GRID_SIZE * BSModel.GRID_SIZE);
+		controller.drainDirty(WhichGrid.THIS_GRID, dirty);
+		dirty.clear();
+		
+		controller.makeMove(Cell.of(7, 3), false);
+		controller.drainDirty(WhichGrid.THIS_GRID, dirty);
+		assertTrue(dirty.size() == 1 && dirty.contains(7 * BSModel.GRID_SIZE + 3));
+		
+		dirty.clear();
+		controller.drainDirty(WhichGrid.THIS_GRID, dirty);
+		assertTrue(dirty.isEmpty());
+	}
+	
+	/*
+	 * Plays part of a game, starts a rematch, and checks that the same grids
+	 * and ships are back to a blank state and can be used again.
+	 */
+	@Test
+	void test_rematch_in_place() {
+		BSView curGame = new BSView();
+		curGame.reset();
+		curGame.initRects();
+		BSController controller = curGame.getController();
+		Ship[] shipStates = controller.getShipStates();
+		for (int i = 0; i < shipStates.length; i++) {
+			controller.placeShip(listOfCells[i], 
+					shipStates[i], correspondingDirs[i]);
+		}
+		controller.makeMove(Cell.of(4, 5), false);
+		assertTrue(shipStates[5].isSunk());
+		char[] firstRow = controller.getMyGrid()[0];
+		
+		controller.rematch();
+		assertTrue(controller.getMyGrid()[0] == firstRow);
+		assertTrue(!shipStates[5].isSunk());
+		for (char[] row : controller.getMyGrid()) {
+			for (char square : row) {
+				assertTrue(square == ' ');
+			}
+		}
+		
+		controller.placeShip(listOfCells[5], shipStates[5], correspondingDirs[5]);
+		controller.makeMove(Cell.of(4, 5), false);
+		assertTrue(shipStates[5].isSunk());
+	}
+	
+	/*
+	 * Submits moves while the executor is held up, so they all wait. Past
+	 * MAX_PENDING, moves should be turned away straight away. Once the
+	 * executor runs, the waiting moves should finish in order with the right
+	 * results.
+	 */
+	@Test
+	void test_async_moves() {
+		List<Runnable> held = new ArrayList<Runnable>();
+		BSController controller = new BSController(new BSModel(), held::add);
+		controller.initShipStates();
+		controller.initGrid(WhichGrid.THIS_GRID);
+		Ship[] shipStates = controller.getShipStates();
+		for (int i = 0; i < shipStates.length; i++) {
+			controller.placeShip(listOfCells[i], 
+					shipStates[i], correspondingDirs[i]);
+		}
+		
+		List<CompletableFuture<ShotResult>> moves = new ArrayList<CompletableFuture<ShotResult>>();
+		moves.add(controller.makeMoveAsync(Cell.of(4, 5), false));
+		moves.add(controller.makeMoveAsync(Cell.of(4, 5), false));
+		moves.add(controller.makeMoveAsync(Cell.of(9, 9), false));
+		while (moves.size() < BSController.MAX_PENDING) {
+			moves.add(controller.makeMoveAsync(Cell.of(9, 9), false));
+		}
+		CompletableFuture<ShotResult> tooMany = controller.makeMoveAsync(Cell.of(0, 0), false);
+		assertTrue(tooMany.isCompletedExceptionally());
+		assertTrue(controller.getPending() == BSController.MAX_PENDING);
+		
+		//The actor only hands the executor one drain at a time.
+		while (!held.isEmpty()) {
+			held.remove(0).run();
+		}
+		assertTrue(moves.get(0).join() == ShotResult.HIT);
+		assertTrue(moves.get(1).join() == ShotResult.INVALID);
+		assertTrue(moves.get(2).join() == ShotResult.MISS);
+		assertTrue(moves.get(BSController.MAX_PENDING - 1).join() == ShotResult.INVALID);
+		assertTrue(controller.getPending() == 0);
+		assertTrue(!controller.makeMoveAsync(Cell.of(0, 0), false).isDone());
+	}
+	
+	/*
+	 * Shoots the same squares in two different orders. Both boards should end
+	 * up with the same hash, which should match working it out from scratch,
+	 * and a make and unmake should leave the hash as it was. Sinking a ship
+	 * should change the hash even though the shot was the same.
+	 */
+	@Test
+	void test_zobrist_hash() {
+		BSController first = NetworkTest.makeSide();
+		BSController second = NetworkTest.makeSide();
+		BSModel model = new BSModel();
+		model.initShipStates();
+		model.initGrid(WhichGrid.THIS_GRID);
+		int[] shots = {Cell.of(0, 0), Cell.of(9, 9), Cell.of(4, 5), Cell.of(3, 3)};
+		for (int i = 0; i < shots.length; i++) {
+			first.makeMove(shots[i], false);
+			second.makeMove(shots[shots.length - 1 - i], false);
+			first.makeMove(shots[i], true);
+		}
+		assertTrue(first.getMySnapshot().getHash() == second.getMySnapshot().getHash());
+		assertTrue(first.getMySnapshot().getHash() != 0);
+		assertTrue(first.getOtherSnapshot().getHash() == Zobrist.of(first.getOtherGrid()));
+		
+		//Cell.of(4, 5) sank the raft, so the sunk ship is in the hash too.
+		assertTrue(first.getShipStates()[5].isSunk());
+		assertTrue(first.getMySnapshot().getHash() == (Zobrist.of(first.getMyGrid()) ^ Zobrist.sunk(5)));
+		
+		model.updateGridWithShips(listOfCells[6], model.shipStates[6], correspondingDirs[6]);
+		long before = model.getHash(WhichGrid.THIS_GRID);
+		int token = model.makeShot(4, 7, false);
+		assertTrue(model.shipStates[6].isSunk());
+		assertTrue(model.getHash(WhichGrid.THIS_GRID) == (before ^ Zobrist.shot(47, 'h') ^ Zobrist.sunk(6)));
+		model.unmakeShot(token);
+		assertTrue(model.getHash(WhichGrid.THIS_GRID) == before);
+	}
+	
+	/*
+	 * Runs the bit-parallel density kernel and the square-by-square version on a
+	 * few hundred random boards. Every score should come out exactly the same.
+	 * Then checks that canPlaceShip() agrees with trying every spot on a grid
+	 * by hand.
+	 */
+	@Test
+	void test_placement_kernels() {
+		SplittableRandom random = new SplittableRandom(41);
+		int size = BSModel.GRID_SIZE;
+		for (int board = 0; board < 300; board++) {
+			long[] missRows = new long[size];
+			long[] hitRows = new long[size];
+			for (int row = 0; row < size; row++) {
+				for (int col = 0; col < size; col++) {
+					int roll = random.nextInt(10);
+					if (roll < 2) {
+						missRows[row] |= 1L << col;
+					} else if (roll < 3) {
+						hitRows[row] |= 1L << col;
+					}
+				}
+			}
+			double[] fast = new double[size * size];
+			double[] slow = new double[size * size];
+			PlacementKernels.density(missRows, hitRows, size, BSModel.SHIP_SIZES, 20, fast);
+			PlacementKernels.densityScalar(missRows, hitRows, size, BSModel.SHIP_SIZES, 20, slow);
+			assertTrue(Arrays.equals(fast, slow));
+		}
+		
+		int tooWide = PlacementKernels.MAX_SIZE + 1;
+		boolean rejected = false;
+		try {
+			PlacementKernels.density(new long[tooWide], new long[tooWide], tooWide, BSModel.SHIP_SIZES, 20,
+					new double[tooWide * tooWide]);
+		} catch (IllegalArgumentException e) {
+			rejected = true;
+		}
+		assertTrue(rejected);
+		
+		BSController controller = NetworkTest.makeSide();
+		char[][] grid = controller.getMyGrid();
+		for (int length = 1; length <= 5; length++) {
+			for (int outerArray = 0; outerArray < size; outerArray++) {
+				for (int innerArray = 0; innerArray < size; innerArray++) {
+					boolean up = outerArray - length + 1 >= 0;
+					boolean left = innerArray - length + 1 >= 0;
+					for (int i = 0; i < length; i++) {
+						up &= outerArray - i < 0 || grid[outerArray - i][innerArray] != 's';
+						left &= innerArray - i < 0 || grid[outerArray][innerArray - i] != 's';
+					}
+					assertTrue(controller.canPlaceShip(outerArray, innerArray, length, Directions.UP) == up);
+					assertTrue(controller.canPlaceShip(outerArray, innerArray, length, Directions.LEFT) == left);
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Plays a game mode with a made-up fleet from a config line. The fleet should
+	 * sink ship by ship, end the game once all three are sunk, and come back with
+	 * no hits after initShipStates(), using the same Ship handles as before.
+	 */
+	@Test
+	void test_custom_fleet() {
+		GameMode mode = GameMode.parse("duel:sub=3,sub=3,raft=1");
+		assertTrue(mode.getShipCount() == 3 && mode.getShipLength(1) == 3);
+		assertTrue(GameMode.parse(mode.toString()).toString().equals(mode.toString()));
+		assertTrue(GameMode.parse("classic") == GameMode.CLASSIC);
+		
+		BSController controller = new BSController(new BSModel(mode));
+		controller.initShipStates();
+		controller.initGrid(WhichGrid.THIS_GRID);
+		Ship[] ships = controller.getShipStates();
+		assertTrue(ships.length == 3);
+		controller.placeShip(Cell.of(2, 0), ships[0], Directions.UP);
+		controller.placeShip(Cell.of(2, 1), ships[1], Directions.UP);
+		controller.placeShip(Cell.of(9, 9), ships[2], Directions.LEFT);
+		for (int row = 0; row < 3; row++) {
+			controller.makeMove(Cell.of(row, 0), false);
+		}
+		assertTrue(ships[0].isSunk() && !ships[1].isSunk() && !controller.isGameOver());
+		assertTrue(ships[0].getFleet().getRemainingLengths().length == 2);
+		for (int row = 0; row < 3; row++) {
+			controller.makeMove(Cell.of(row, 1), false);
+		}
+		controller.makeMove(Cell.of(9, 9), false);
+		assertTrue(controller.isGameOver());
+		
+		controller.initShipStates();
+		assertTrue(controller.getShipStates() == ships);
+		assertTrue(!ships[0].isSunk() && !controller.isGameOver());
+		assertTrue(ships[2].getFleet().getHits(2) == 0 && ships[2].getName().equals("raft"));
+		
+		boolean rejected = false;
+		try {
+			GameMode.parse("huge:whale=" + (BSModel.GRID_SIZE + 1));
+		} catch (IllegalArgumentException e) {
+			rejected = true;
+		}
+		assertTrue(rejected);
+		
+		int[] lengths = new int[BSModel.GRID_SIZE + 1];
+		String[] names = new String[lengths.length];
+		Arrays.fill(lengths, BSModel.GRID_SIZE);
+		Arrays.fill(names, "whale");
+		rejected = false;
+		try {
+			new GameMode("crowded", names, lengths);
+		} catch (IllegalArgumentException e) {
+			rejected = true;
+		}
+		assertTrue(rejected);
+	}
+	
+	/*
+	 * Cells pack a row and column into one int, and the model and controller take
+	 * them directly. The old Point methods land on the same squares, and the
+	 * events the view gets name the square with an Integer cell.
+	 */
+	@Test
+	void test_packed_cells() {
+		int cell = Cell.of(3, 7);
+		assertTrue(Cell.row(cell) == 3 && Cell.col(cell) == 7 && Cell.toString(cell).equals("[3][7]"));
+		assertTrue(Cell.isValid(Cell.COUNT - 1) && !Cell.isValid(Cell.COUNT) && !Cell.isValid(Cell.NONE));
+		
+		BSModel model = new BSModel();
+		BSController controller = new BSController(model);
+		controller.initShipStates();
+		controller.initGrid(WhichGrid.THIS_GRID);
+		Ship[] ships = controller.getShipStates();
+		controller.placeShip(Cell.of(4, 0), ships[0], Directions.UP);
+		controller.placeShip(Cell.of(4, 1), ships[1], Directions.UP);
+		assertTrue(controller.getMyGrid()[4][0] == 's');
+		assertTrue(controller.getMyGrid()[4][1] == 's');
+		
+		List<Object> cells = new ArrayList<Object>();
+		model.addAsObserver((observable, event) -> {
+			if (event instanceof Object[] && ((Object[]) event).length == 4) {
+				cells.add(((Object[]) event)[2]);
+			}
+		});
+		assertTrue(controller.resolveMove(Cell.of(4, 0), false) == ShotResult.HIT);
+		assertTrue(controller.resolveMove(Cell.of(4, 0), false) == ShotResult.INVALID);
+		controller.makeMove(Cell.of(4, 1), false);
+		assertTrue(controller.getShipAt(Cell.of(4, 1)) == ships[1] && controller.getShipAt(Cell.of(5, 1)) == null);
+		assertTrue(cells.equals(List.of(Cell.of(4, 0), Cell.of(4, 1))));
+		
+		model.resetInPlace();
+		assertTrue(controller.getShipAt(Cell.of(4, 1)) == null);
+		assertTrue(new BSController(new BSModel()).getShipAt(Cell.of(4, 0)) == null);
+	}
+	
+	/*
+	 * Applying a run of moves at once ends up in the same place as making them
+	 * one at a time, skips the moves that can't be made, and tells the observers
+	 * just once.
+	 */
+	@Test
+	void test_apply_moves() {
+		BSModel bulk = new BSModel();
+		BSModel single = new BSModel();
+		BSController bulkController = new BSController(bulk);
+		BSController singleController = new BSController(single);
+		for (BSController controller : List.of(bulkController, singleController)) {
+			controller.initShipStates();
+			controller.initGrid(WhichGrid.THIS_GRID);
+			Ship[] shipStates = controller.getShipStates();
+			for (int i = 0; i < shipStates.length; i++) {
+				controller.placeShip(listOfCells[i], shipStates[i], correspondingDirs[i]);
+			}
+			char[][] theirGrid = new char[BSModel.GRID_SIZE][];
+			for (int row = 0; row < BSModel.GRID_SIZE; row++) {
+				theirGrid[row] = TestInitializer.getIdealShipPlacement()[row].clone();
+			}
+			controller.updateTheirGrid(theirGrid);
+		}
+		
+		SplittableRandom random = new SplittableRandom(46);
+		int[] cells = new int[2 * Cell.COUNT + 2];
+		boolean[] myTurns = new boolean[cells.length];
+		for (int i = 0; i < Cell.COUNT; i++) {
+			cells[2 * i] = i;
+			cells[2 * i + 1] = i;
+			myTurns[2 * i + 1] = true;
+		}
+		for (int i = Cell.COUNT * 2 - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int cell = cells[i];
+			cells[i] = cells[j];
+			cells[j] = cell;
+			boolean myTurn = myTurns[i];
+			myTurns[i] = myTurns[j];
+			myTurns[j] = myTurn;
+		}
+		cells[cells.length - 2] = cells[0];
+		myTurns[cells.length - 2] = myTurns[0];
+		cells[cells.length - 1] = Cell.NONE;
+		
+		List<Object> events = new ArrayList<Object>();
+		bulk.addAsObserver((observable, event) -> events.add(event));
+		MoveBatch first = bulkController.applyMoves(cells, myTurns, 0, Cell.COUNT);
+		MoveBatch rest = bulkController.applyMoves(cells, myTurns, Cell.COUNT, cells.length);
+		assertTrue(events.equals(List.of(first, rest)));
+		assertTrue(first.getApplied() == Cell.COUNT && first.getInvalid() == 0 && first.getFirstInvalid() == -1);
+		assertTrue(rest.getApplied() == Cell.COUNT && rest.getInvalid() == 2);
+		assertTrue(rest.getFirstInvalid() == cells.length - 2 && rest.isGameOver());
+		int shipSquares = 0;
+		for (int length : BSModel.SHIP_SIZES) {
+			shipSquares += length;
+		}
+		assertTrue(first.getHits() + rest.getHits() == 2 * shipSquares);
+		
+		for (int i = 0; i < cells.length; i++) {
+			if (Cell.isValid(cells[i])) {
+				singleController.makeMove(cells[i], myTurns[i]);
+			}
+		}
+		for (WhichGrid whichGrid : WhichGrid.values()) {
+			assertTrue(bulk.getHash(whichGrid) == single.getHash(whichGrid));
+			assertTrue(Arrays.deepEquals(bulk.getSnapshot(whichGrid).toArray(), single.getSnapshot(whichGrid).toArray()));
+		}
+		assertTrue(bulkController.isGameOver());
+		CellSet shipsLeft = new CellSet(Cell.COUNT);
+		bulk.getOtherShipsLeft(shipsLeft);
+		assertTrue(shipsLeft.isEmpty());
+	}
+	
+	/*
+	 * Seeking a replay to any move, in any order, gives the same grids and hash
+	 * as playing that many moves from the start, and building the index leaves
+	 * the game where it was. Stepping only repaints the squares near the keyframe.
+	 */
+	@Test
+	void test_replay_index() {
+		BSModel replayed = new BSModel();
+		BSController controller = new BSController(replayed);
+		controller.initShipStates();
+		controller.initGrid(WhichGrid.THIS_GRID);
+		Ship[] shipStates = controller.getShipStates();
+		for (int i = 0; i < shipStates.length; i++) {
+			controller.placeShip(listOfCells[i], shipStates[i], correspondingDirs[i]);
+		}
+		SplittableRandom random = new SplittableRandom(48);
+		int[] cells = new int[150];
+		boolean[] myTurns = new boolean[cells.length];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = random.nextInt(Cell.COUNT);
+			myTurns[i] = random.nextBoolean();
+		}
+		long startHash = replayed.getHash(WhichGrid.THIS_GRID);
+		ReplayIndex index = controller.indexReplay(cells, myTurns);
+		assertTrue(index.getKeyframeCount() == cells.length / ReplayIndex.DEFAULT_INTERVAL + 1);
+		assertTrue(replayed.getHash(WhichGrid.THIS_GRID) == startHash && index.getPosition() == 0);
+		
+		int[] moves = {cells.length, 0, 77, 16, 15, 149, 33, 32, 100};
+		for (int move : moves) {
+			MoveBatch batch = index.seek(move);
+			assertTrue(batch.getApplied() + batch.getInvalid() == move % ReplayIndex.DEFAULT_INTERVAL);
+			BSModel fresh = new BSModel();
+			BSController freshController = new BSController(fresh);
+			freshController.initShipStates();
+			freshController.initGrid(WhichGrid.THIS_GRID);
+			Ship[] freshShips = freshController.getShipStates();
+			for (int i = 0; i < freshShips.length; i++) {
+				freshController.placeShip(listOfCells[i], freshShips[i], correspondingDirs[i]);
+			}
+			freshController.applyMoves(cells, myTurns, 0, move);
+			for (WhichGrid whichGrid : WhichGrid.values()) {
+				assertTrue(replayed.getHash(whichGrid) == fresh.getHash(whichGrid));
+				assertTrue(Arrays.deepEquals(replayed.getSnapshot(whichGrid).toArray(), fresh.getSnapshot(whichGrid).toArray()));
+			}
+			assertTrue(controller.isGameOver() == freshController.isGameOver());
+		}
+		
+		index.seek(40);
+		CellSet dirty = new CellSet(Cell.COUNT);
+		controller.drainDirty(WhichGrid.THIS_GRID, dirty);
+		controller.drainDirty(WhichGrid.OTHER_GRID, dirty);
+		index.stepBack();
+		index.stepForward();
+		assertTrue(index.getPosition() == 40);
+		CellSet changed = new CellSet(Cell.COUNT);
+		controller.drainDirty(WhichGrid.THIS_GRID, changed);
+		controller.drainDirty(WhichGrid.OTHER_GRID, changed);
+		assertTrue(changed.size() <= ReplayIndex.DEFAULT_INTERVAL);
+	}
+	
+	/*
+	 * Writes enough games to fill more than one block, and reads them back every
+	 * way: all at once, one at a time, and through the heatmap pipeline, which
+	 * should count the same as it does for the text archive. Damaged blocks and
+	 * index entries are reported as IOExceptions, not crashes.
+	 */
+	@Test
+	void test_game_archive() throws IOException {
+		int[] shipCells = new int[listOfPoints.length];
+		for (int i = 0; i < shipCells.length; i++) {
+			shipCells[i] = listOfPoints[i].x * BSModel.GRID_SIZE + listOfPoints[i].y;
+		}
+		SplittableRandom random = new SplittableRandom(49);
+		List<GameRecord> games = new ArrayList<GameRecord>();
+		for (int game = 0; game < GameArchive.BLOCK_RECORDS + 500; game++) {
+			int[] order = new int[Cell.COUNT];
+			for (int cell = 0; cell < order.length; cell++) {
+				order[cell] = cell;
+			}
+			for (int i = order.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int cell = order[i];
+				order[i] = order[j];
+				order[j] = cell;
+			}
+			games.add(new GameRecord(shipCells, correspondingDirs, Arrays.copyOf(order, 17 + random.nextInt(60))));
+		}
+		
+		Path text = Files.createTempFile("games", ".txt");
+		Path packed = Files.createTempFile("games", ".archive");
+		try {
+			Files.write(text, games.stream().map(GameRecord::toLine).collect(Collectors.toList()));
+			try (GameArchive.Writer writer = GameArchive.create(packed)) {
+				for (GameRecord game : games) {
+					writer.append(game);
+				}
+			}
+			assertTrue(GameArchive.isArchive(packed) && !GameArchive.isArchive(text));
+			assertTrue(Files.size(packed) * 2 < Files.size(text));
+			try (GameArchive archive = GameArchive.open(packed)) {
+				assertTrue(archive.getRecordCount() == games.size() && archive.getBlockCount() == 2);
+				List<String> lines = archive.stream().map(GameRecord::toLine).collect(Collectors.toList());
+				assertTrue(lines.equals(Files.readAllLines(text)));
+				for (int game : new int[] {0, GameArchive.BLOCK_RECORDS - 1, GameArchive.BLOCK_RECORDS, games.size() - 1}) {
+					assertTrue(archive.get(game).toLine().equals(games.get(game).toLine()));
+				}
+			}
+			ShotHeatmap fromText = HeatmapPipeline.run(text);
+			ShotHeatmap fromArchive = HeatmapPipeline.run(packed);
+			assertTrue(fromArchive.getGames() == games.size());
+			assertTrue(Arrays.deepEquals(fromText.hitProbability(20), fromArchive.hitProbability(20)));
+			assertTrue(Arrays.deepEquals(fromText.placementHeatmap(0), fromArchive.placementHeatmap(0)));
+			
+			//Claim a second game in a block that only has one, so reading it runs out of bytes.
+			try (GameArchive.Writer writer = GameArchive.create(packed)) {
+				writer.append(games.get(0));
+			}
+			try (FileChannel channel = FileChannel.open(packed, StandardOpenOption.WRITE)) {
+				channel.write(ByteBuffer.allocate(4).putInt(0, 2), channel.size() - 8 - 4 - 8 - 4);
+			}
+			boolean damaged = false;
+			try (GameArchive archive = GameArchive.open(packed)) {
+				assertTrue(archive.get(0).toLine().equals(games.get(0).toLine()));
+				archive.get(1);
+			} catch (IOException e) {
+				damaged = e.getMessage().contains("block 0");
+			}
+			assertTrue(damaged);
+			
+			//Sizes in the index that can't be right are caught when it's opened.
+			long magic = ByteBuffer.wrap(Files.readAllBytes(packed)).getLong(0);
+			for (int rawSize : new int[] {-1, Integer.MAX_VALUE}) {
+				try (FileChannel channel = FileChannel.open(packed, StandardOpenOption.WRITE)) {
+					channel.write(ByteBuffer.allocate(4).putInt(0, rawSize), channel.size() - 8 - 4 - 8 - 8);
+				}
+				damaged = false;
+				try (GameArchive archive = GameArchive.open(packed)) {
+					archive.get(0);
+				} catch (IOException e) {
+					damaged = e.getMessage().contains("index");
+				}
+				assertTrue(damaged);
+			}
+			
+			//A block whose first count reads back negative is damaged too.
+			byte[] negative = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+			Deflater deflater = new Deflater();
+			deflater.setInput(negative);
+			deflater.finish();
+			byte[] block = new byte[64];
+			int length = deflater.deflate(block);
+			deflater.end();
+			ByteBuffer file = ByteBuffer.allocate(8 + 4 + length + 20 + 20);
+			file.putLong(magic).putInt(BSModel.GRID_SIZE).put(block, 0, length);
+			file.putLong(8 + 4).putInt(length).putInt(negative.length).putInt(1);
+			file.putLong(8 + 4 + length).putInt(1).putLong(magic);
+			Files.write(packed, file.array());
+			damaged = false;
+			try (GameArchive archive = GameArchive.open(packed)) {
+				archive.get(0);
+			} catch (IOException e) {
+				damaged = e.getMessage().contains("block 0");
+			}
+			assertTrue(damaged);
+		} finally {
+			Files.deleteIfExists(text);
+			Files.deleteIfExists(packed);
+		}
+	}
+	
+	/*
+	 * Fills a columnar archive with matches and checks that indexed queries find
+	 * exactly what checking every match would, while the block statistics and
+	 * bitmaps rule out blocks that can't have any.
+	 */
+	@Test
+	void test_columnar_archive() throws IOException {
+		int[] shipCells = new int[listOfPoints.length];
+		for (int i = 0; i < shipCells.length; i++) {
+			shipCells[i] = listOfPoints[i].x * BSModel.GRID_SIZE + listOfPoints[i].y;
+		}
+		int[] everyCell = new int[Cell.COUNT];
+		for (int cell = 0; cell < everyCell.length; cell++) {
+			everyCell[cell] = cell;
+		}
+		GameRecord sweep = new GameRecord(shipCells, correspondingDirs, everyCell);
+		MatchSummary won = MatchSummary.of(sweep, "anytime", "alice", GameMode.CLASSIC, 0);
+		assertTrue(won.getWinner().equals("anytime") && won.getShots() == Cell.COUNT && won.getMode().equals("classic"));
+		GameRecord quit = new GameRecord(shipCells, correspondingDirs, new int[] {0, 1});
+		assertTrue(MatchSummary.of(quit, "anytime", "alice", GameMode.CLASSIC, 0).getWinner().equals("alice"));
+		assertTrue(MatchSummary.fingerprint(quit) == won.getLayoutFingerprint());
+		//Read back, the record thinks it's classic, but the summary goes by the
+		//mode it's given: the barge is 9 long and the skiff 1, so this is a win.
+		GameMode pair = GameMode.parse("pair:barge=9,skiff=1");
+		int[] bargeShots = IntStream.rangeClosed(1, 10).map((row) -> row == 10 ? Cell.of(9, 9) : Cell.of(row, 0)).toArray();
+		GameRecord barge = GameRecord.parse(new GameRecord(new int[] {Cell.of(9, 0), Cell.of(9, 9)},
+				new Directions[] {Directions.UP, Directions.LEFT}, bargeShots, pair).toLine());
+		assertTrue(MatchSummary.of(barge, "anytime", "alice", pair, 0).getWinner().equals("anytime"));
+		assertTrue(MatchSummary.of(barge, "anytime", "alice", GameMode.CLASSIC, 0).getWinner().equals("alice"));
+		
+		String[] players = {"anytime", "random", "alice", "bob"};
+		SplittableRandom random = new SplittableRandom(50);
+		List<MatchSummary> matches = new ArrayList<MatchSummary>();
+		int total = ColumnarArchive.BLOCK_ROWS * 4 + 100;
+		for (int row = 0; row < total; row++) {
+			String player = (row >= ColumnarArchive.BLOCK_ROWS * 4) ? "newbot" : players[random.nextInt(players.length)];
+			String opponent = players[random.nextInt(players.length)];
+			matches.add(new MatchSummary(1_600_000_000_000L + row * 1000L, player, opponent,
+					random.nextBoolean() ? player : opponent, random.nextInt(10) == 0 ? "salvo" : "classic",
+					17 + random.nextInt(84), random.nextLong()));
+		}
+		
+		Path file = Files.createTempFile("matches", ".columns");
+		try {
+			try (ColumnarArchive.Writer writer = ColumnarArchive.create(file)) {
+				for (MatchSummary match : matches) {
+					writer.append(match);
+				}
+			}
+			try (ColumnarArchive archive = ColumnarArchive.open(file)) {
+				assertTrue(archive.getRowCount() == total && archive.getBlockCount() == 5);
+				List<MatchQuery> queries = List.of(new MatchQuery(),
+						new MatchQuery().player("anytime").shotsBelow(40),
+						new MatchQuery().winner("alice").mode("salvo").shotsBetween(50, 60),
+						new MatchQuery().opponent("bob").finishedBetween(1_600_000_000_000L, 1_600_000_000_000L + 3000_000L),
+						new MatchQuery().player("newbot").winner("newbot"),
+						new MatchQuery().player("nobody"));
+				for (MatchQuery query : queries) {
+					long[] expected = IntStream.range(0, total).filter((row) -> query.matches(matches.get(row)))
+							.asLongStream().toArray();
+					assertTrue(Arrays.equals(archive.find(query), expected));
+					assertTrue(archive.count(query) == expected.length);
+				}
+				assertTrue(Arrays.equals(archive.candidateBlocks(new MatchQuery().player("newbot")), new int[] {4}));
+				assertTrue(Arrays.equals(archive.candidateBlocks(queries.get(3)), new int[] {0}));
+				assertTrue(archive.candidateBlocks(new MatchQuery().player("nobody")).length == 0);
+				assertTrue(archive.candidateBlocks(new MatchQuery().shotsBelow(17)).length == 0);
+				
+				for (long row : new long[] {0, ColumnarArchive.BLOCK_ROWS, total - 1}) {
+					MatchSummary expected = matches.get((int) row);
+					MatchSummary actual = archive.getRow(row);
+					assertTrue(actual.getPlayer().equals(expected.getPlayer()) && actual.getWinner().equals(expected.getWinner()));
+					assertTrue(actual.getShots() == expected.getShots() && actual.getTimestamp() == expected.getTimestamp());
+					assertTrue(actual.getLayoutFingerprint() == expected.getLayoutFingerprint());
+				}
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+	
 }
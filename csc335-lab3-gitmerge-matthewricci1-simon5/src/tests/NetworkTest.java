@@ -0,0 +1,476 @@
+package tests;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import controller.BSController;
+import controller.MatchActor;
+import controller.MatchSession;
+import controller.ShotResult;
+import model.BSModel;
+import model.Cell;
+import network.MappedTransport;
+import network.QueueTransport;
+import network.Transport;
+import sim.SimScheduler;
+import sim.Simulation;
+import view.WhichGrid;
+
+/**
+ * 
+ * JUnit test suite for the networked half of the game. Instead of two GUI processes
+ * and real ports, both sides of each game run in this process and talk through an
+ * in-memory transport, so lots of full games can be played at once.
+ * 
+ * @author Matthew Ricci
+ * @version JDK 14.0.1
+ *
+ */
+public class NetworkTest {
+	
+	/*
+	 * Plays a thousand full games side by side over QueueTransports. The
+	 * server shoots from the top left and the client from the bottom right,
+	 * and since every ship is near the top, the server should always win.
+	 */
+	@Test
+	void test_many_games_in_memory() {
+		long serverWins = IntStream.range(0, 1000).parallel().filter((game) -> {
+			QueueTransport[] ends = QueueTransport.pair();
+			return playGame(ends[0], ends[1]);
+		}).count();
+		assertTrue(serverWins == 1000);
+	}
+	
+	/*
+	 * Plays one game over the memory-mapped transport, the same way as above,
+	 * to show the ring buffers carry grids and shots correctly.
+	 */
+	@Test
+	void test_game_over_shared_memory() throws IOException {
+		Path file = Files.createTempFile("battleship", ".ring");
+		try {
+			MappedTransport server = MappedTransport.create(file);
+			MappedTransport client = MappedTransport.open(file);
+			assertTrue(playGame(server, client));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+	
+	/*
+	 * Makes a second session at the same path while the first is still going.
+	 * The first pair should keep its own file and finish its game, the name
+	 * should be gone once a client has claimed it, and a server that's closed
+	 * without a client should leave nothing behind.
+	 */
+	@Test
+	void test_shared_memory_files_are_per_session() throws IOException {
+		Path dir = Files.createTempDirectory("battleship");
+		Path file = dir.resolve("battleship.ring");
+		try {
+			MappedTransport oldServer = MappedTransport.create(file);
+			MappedTransport oldClient = MappedTransport.open(file);
+			assertTrue(!Files.exists(file));
+			MappedTransport newServer = MappedTransport.create(file);
+			MappedTransport newClient = MappedTransport.open(file);
+			playGame(oldServer, oldClient);
+			playGame(newServer, newClient);
+			oldServer.close();
+			oldClient.close();
+			newServer.close();
+			newClient.close();
+			
+			MappedTransport abandoned = MappedTransport.create(file);
+			assertTrue(Files.exists(file));
+			abandoned.close();
+			assertTrue(!Files.exists(file));
+			try (Stream<Path> left = Files.list(dir)) {
+				assertTrue(left.count() == 0);
+			}
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(dir);
+		}
+	}
+	
+	/*
+	 * Plays a shot the way a click does, on a controller with its own game
+	 * thread, over a transport whose send() is stuck. submitMove() should
+	 * come back straight away, and the shot should only finish once the send
+	 * is let through.
+	 */
+	@Test
+	void test_click_returns_before_send() throws Exception {
+		CountDownLatch sending = new CountDownLatch(1);
+		CountDownLatch letThrough = new CountDownLatch(1);
+		Transport stuck = new Transport() {
+			private volatile boolean closed = false;
+			
+			@Override
+			public void send(Object message) throws IOException {
+				sending.countDown();
+				try {
+					letThrough.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			
+			@Override
+			public Object receive() throws IOException {
+				throw new IOException("Nothing to receive.");
+			}
+			
+			@Override
+			public void close() {
+				closed = true;
+			}
+			
+			@Override
+			public boolean isClosed() {
+				return closed;
+			}
+		};
+		ExecutorService gameThread = MatchSession.newGameThread();
+		try {
+			BSController side = makeSide(gameThread);
+			side.updateTheirGrid(makeSide().getMyGrid());
+			MatchSession session = new MatchSession(side, stuck, true);
+			CompletableFuture<ShotResult> shot = session.submitMove(Cell.of(0, 0));
+			assertTrue(sending.await(5, TimeUnit.SECONDS));
+			assertTrue(!shot.isDone());
+			letThrough.countDown();
+			assertTrue(shot.get(5, TimeUnit.SECONDS) != ShotResult.INVALID);
+			assertTrue(!session.isMyTurn());
+		} finally {
+			gameThread.shutdownNow();
+		}
+	}
+	
+	/*
+	 * Work that throws an Error should still fail its future instead of leaving
+	 * it hanging, and the mailbox should go on to the next task. A shot that's
+	 * made but can't be sent should say what it did to the board, and end the game.
+	 */
+	@Test
+	void test_failed_work_still_completes() throws Exception {
+		ExecutorService gameThread = MatchSession.newGameThread();
+		try {
+			BSController side = makeSide(gameThread);
+			CompletableFuture<Integer> broken = side.submit(() -> {
+				throw new AssertionError("broken");
+			});
+			CompletableFuture<Integer> next = side.submit(() -> 7);
+			assertTrue(next.get(5, TimeUnit.SECONDS) == 7);
+			assertTrue(broken.isCompletedExceptionally());
+		} finally {
+			gameThread.shutdownNow();
+		}
+		
+		QueueTransport[] ends = QueueTransport.pair();
+		BSController side = makeSide();
+		side.updateTheirGrid(makeSide().getMyGrid());
+		MatchSession session = new MatchSession(side, ends[0], true);
+		ends[0].close();
+		assertTrue(session.submitMove(Cell.of(0, 0)).get(5, TimeUnit.SECONDS) == ShotResult.HIT);
+		assertTrue(session.isEnded() && side.getOtherGrid()[0][0] == 'h');
+	}
+	
+	/*
+	 * Sends a grid before the first shot and another one after it. The first
+	 * should become the other grid, and the late one should be ignored, so the
+	 * shot already made stays on the board.
+	 */
+	@Test
+	void test_grid_only_before_play() throws IOException {
+		QueueTransport[] ends = QueueTransport.pair();
+		BSController side = makeSide();
+		MatchSession session = new MatchSession(side, ends[0], true);
+		session.onMessage(makeSide().getMyGrid());
+		assertTrue(session.localMove(Cell.of(0, 0)));
+		assertTrue(side.getOtherGrid()[0][0] == 'h');
+		
+		char[][] late = new char[BSModel.GRID_SIZE][BSModel.GRID_SIZE];
+		for (char[] row : late) {
+			Arrays.fill(row, 's');
+		}
+		session.onMessage(late);
+		assertTrue(side.getOtherGrid()[0][0] == 'h' && side.getOtherGrid()[9][9] != 's');
+	}
+	
+	/*
+	 * The other side sends shots that are off the grid or on a square it already
+	 * shot. Each should be ignored without touching the turn, so their next real
+	 * shot still counts.
+	 */
+	@Test
+	void test_bad_peer_shots() throws IOException {
+		QueueTransport[] ends = QueueTransport.pair();
+		BSController side = makeSide();
+		MatchSession session = new MatchSession(side, ends[0], false);
+		session.onMessage(makeSide().getMyGrid());
+		session.onMessage(Cell.COUNT + 150);
+		session.onMessage(-1);
+		assertTrue(!session.isMyTurn() && !session.isEnded());
+		session.onMessage(Cell.of(0, 0));
+		assertTrue(session.isMyTurn() && side.getMyGrid()[0][0] == 'h');
+		
+		assertTrue(session.localMove(Cell.of(9, 9)));
+		session.onMessage(Cell.of(0, 0));
+		assertTrue(!session.isMyTurn() && !session.isEnded());
+		session.onMessage(Cell.of(9, 9));
+		assertTrue(session.isMyTurn());
+	}
+	
+	/*
+	 * Shoots and never hears back, with the clock running in virtual time. Just
+	 * before the peer timeout nothing should happen, and right at it this side
+	 * should win. If their shot comes in time, the clock is stopped and the game
+	 * goes on however long they take afterwards.
+	 */
+	@Test
+	void test_peer_timeout() throws IOException {
+		SimScheduler scheduler = new SimScheduler(34);
+		QueueTransport[] ends = QueueTransport.pair();
+		MatchSession session = new MatchSession(makeSide(), ends[0], true, scheduler);
+		AtomicBoolean won = new AtomicBoolean();
+		session.setGameOverListener(won::set);
+		session.setPeerTimeout(50);
+		session.onMessage(makeSide().getMyGrid());
+		assertTrue(session.localMove(Cell.of(0, 0)));
+		scheduler.runUntil(49_999_999);
+		assertTrue(!session.isEnded());
+		scheduler.runUntil(50_000_000);
+		assertTrue(session.isEnded() && session.didIWin() && won.get());
+		
+		scheduler = new SimScheduler(34);
+		ends = QueueTransport.pair();
+		session = new MatchSession(makeSide(), ends[0], true, scheduler);
+		session.setPeerTimeout(200);
+		session.onMessage(makeSide().getMyGrid());
+		assertTrue(session.localMove(Cell.of(0, 0)));
+		scheduler.runUntil(150_000_000);
+		session.onMessage(Cell.of(9, 9));
+		assertTrue(session.isMyTurn());
+		scheduler.runUntil(10_000_000_000L);
+		assertTrue(!session.isEnded() && session.isMyTurn());
+	}
+	
+	/*
+	 * Runs the same simulated match twice with the same seed and checks that
+	 * every event happens at the same virtual time both runs. A different seed
+	 * should play out differently.
+	 */
+	@Test
+	void test_simulation_is_deterministic() {
+		List<String> first = new Simulation(42, makeSide(), makeSide(), 1_000_000, 50_000_000, 2_000_000_000L).run(Long.MAX_VALUE);
+		List<String> second = new Simulation(42, makeSide(), makeSide(), 1_000_000, 50_000_000, 2_000_000_000L).run(Long.MAX_VALUE);
+		List<String> other = new Simulation(43, makeSide(), makeSide(), 1_000_000, 50_000_000, 2_000_000_000L).run(Long.MAX_VALUE);
+		assertTrue(first.equals(second));
+		assertTrue(!first.equals(other));
+		assertTrue(first.get(first.size() - 1).endsWith("won") != first.get(first.size() - 2).endsWith("won"));
+	}
+	
+	/*
+	 * Cuts the link partway through a simulated match. Both sides should see
+	 * the game end, and it should happen at the same virtual time every run.
+	 */
+	@Test
+	void test_simulated_disconnect() {
+		Simulation simulation = new Simulation(7, makeSide(), makeSide(), 1_000_000, 50_000_000, 2_000_000_000L);
+		simulation.getServerTransport().disconnectAfter(30_000_000_000L);
+		simulation.getServerTransport().setReordering(true);
+		List<String> trace = simulation.run(Long.MAX_VALUE);
+		assertTrue(simulation.getServer().isEnded() && simulation.getClient().isEnded());
+		assertTrue(simulation.getScheduler().getClock().nanoTime() <= 30_000_000_000L + 50_000_000);
+		assertTrue(trace.size() > 2);
+	}
+	
+	/*
+	 * Has eight threads click at once, over and over. Only one click per turn
+	 * should ever get through, no matter how the threads line up.
+	 */
+	@Test
+	void test_only_one_move_per_turn() throws InterruptedException {
+		for (int round = 0; round < 200; round++) {
+			QueueTransport[] ends = QueueTransport.pair();
+			MatchSession session = new MatchSession(makeSide(), ends[0], true);
+			AtomicInteger madeMoves = new AtomicInteger();
+			CountDownLatch start = new CountDownLatch(1);
+			Thread[] clickers = new Thread[8];
+			for (int i = 0; i < clickers.length; i++) {
+				int cell = Cell.of(round % BSModel.GRID_SIZE, i);
+				clickers[i] = new Thread(() -> {
+					try {
+						start.await();
+						if (session.localMove(cell)) {
+							madeMoves.incrementAndGet();
+						}
+					} catch (InterruptedException|IOException e) {
+						throw new AssertionError(e);
+					}
+				});
+				clickers[i].start();
+			}
+			start.countDown();
+			for (Thread clicker : clickers) {
+				clicker.join();
+			}
+			assertTrue(madeMoves.get() == 1);
+			assertTrue(!session.isMyTurn());
+		}
+	}
+	
+	/*
+	 * Runs five hundred mailboxes on two shared threads, with tasks handed in
+	 * from four threads at once. Each mailbox should run its tasks one at a time
+	 * and in the order each thread handed them in.
+	 */
+	@Test
+	void test_many_mailboxes_on_few_threads() throws InterruptedException {
+		ExecutorService threads = Executors.newFixedThreadPool(2);
+		try {
+			MatchActor[] actors = new MatchActor[500];
+			int[][] lastSeen = new int[actors.length][4];
+			int[] counts = new int[actors.length];
+			AtomicInteger overlaps = new AtomicInteger();
+			AtomicInteger outOfOrder = new AtomicInteger();
+			AtomicBoolean[] running = new AtomicBoolean[actors.length];
+			for (int i = 0; i < actors.length; i++) {
+				actors[i] = new MatchActor(threads);
+				running[i] = new AtomicBoolean();
+			}
+			Thread[] senders = new Thread[4];
+			for (int sender = 0; sender < senders.length; sender++) {
+				int from = sender;
+				senders[sender] = new Thread(() -> {
+					for (int task = 1; task <= 200; task++) {
+						for (int i = 0; i < actors.length; i++) {
+							int which = i;
+							int number = task;
+							actors[i].execute(() -> {
+								if (running[which].getAndSet(true)) {
+									overlaps.incrementAndGet();
+								}
+								if (lastSeen[which][from] != number - 1) {
+									outOfOrder.incrementAndGet();
+								}
+								lastSeen[which][from] = number;
+								counts[which]++;
+								running[which].set(false);
+							});
+						}
+					}
+				});
+				senders[sender].start();
+			}
+			for (Thread sender : senders) {
+				sender.join();
+			}
+			for (MatchActor actor : actors) {
+				while (!actor.isIdle()) {
+					Thread.sleep(1);
+				}
+			}
+			threads.shutdown();
+			assertTrue(threads.awaitTermination(1, TimeUnit.MINUTES));
+			assertTrue(overlaps.get() == 0 && outOfOrder.get() == 0);
+			for (int i = 0; i < actors.length; i++) {
+				assertTrue(counts[i] == 800 && actors[i].isIdle());
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Makes one side of a game with the usual ships placed.
+	 * 
+	 * @return the controller for that side
+	 */
+	static BSController makeSide() {
+		return makeSide(Runnable::run);
+	}
+	
+	/**
+	 * Makes one side of a game whose submitted work runs on the given executor.
+	 * 
+	 * @param executor where the side's moves run
+	 * @return a BSController with every ship placed
+	 */
+	static BSController makeSide(Executor executor) {
+		BSController controller = new BSController(new BSModel(), executor);
+		controller.initShipStates();
+		controller.initGrid(WhichGrid.THIS_GRID);
+		for (int i = 0; i < controller.getShipStates().length; i++) {
+			controller.placeShip(TestInitializer.listOfCells[i], 
+					controller.getShipStates()[i], TestInitializer.correspondingDirs[i]);
+		}
+		return controller;
+	}
+	
+	/**
+	 * Plays a whole game between two sessions, taking turns on this thread.
+	 * 
+	 * Each side's shots are sent with localMove(), and the other side picks them
+	 * up with receiveOne(), which is the body of the read loop.
+	 * 
+	 * @param serverEnd the server's end of the transport
+	 * @param clientEnd the client's end of the transport
+	 * @return true if the server won
+	 */
+	static boolean playGame(Transport serverEnd, Transport clientEnd) {
+		BSController serverController = makeSide();
+		BSController clientController = makeSide();
+		MatchSession server = new MatchSession(serverController, serverEnd, true);
+		MatchSession client = new MatchSession(clientController, clientEnd, false);
+		try {
+			server.sendGrid(serverController.getMyGrid());
+			client.sendGrid(clientController.getMyGrid());
+			server.receiveGrid();
+			client.receiveGrid();
+			
+			int serverShot = 0;
+			int clientShot = BSModel.GRID_SIZE * BSModel.GRID_SIZE - 1;
+			while (!server.isEnded() && !client.isEnded()) {
+				if (server.isMyTurn()) {
+					server.localMove(serverShot);
+					serverShot++;
+					client.receiveOne();
+				} else {
+					client.localMove(clientShot);
+					clientShot--;
+					server.receiveOne();
+				}
+			}
+			//The loser closed the transport; let the winner find out.
+			if (!server.isEnded()) {
+				server.receiveOne();
+			}
+			if (!client.isEnded()) {
+				client.receiveOne();
+			}
+		} catch (ClassNotFoundException|IOException e) {
+			throw new AssertionError(e);
+		}
+		assertTrue(server.didIWin() != client.didIWin());
+		return server.didIWin();
+	}
+}
@@ -4,6 +4,7 @@ import java.awt.Point;
 import java.util.Arrays;
 
 import model.BSModel;
+import model.Cell;
 import model.Directions;
 
 /**
@@ -24,6 +25,7 @@ public class TestInitializer {
 			new Point(4,4), 
 			new Point(4,5),
 			new Point(4,7)};
+	static int[] listOfCells = Arrays.stream(listOfPoints).mapToInt((point) -> Cell.of(point.x, point.y)).toArray();
 	static Directions[] correspondingDirs = new Directions[]{Directions.UP, Directions.LEFT, 
 			Directions.UP, Directions.LEFT, Directions.UP, Directions.UP,
 			Directions.UP};
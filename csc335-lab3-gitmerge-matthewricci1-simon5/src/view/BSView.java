@@ -1,12 +1,10 @@
 package view;
 
-import java.awt.Point;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -14,9 +12,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.ExecutorService;
 
 import controller.BSController;
+import controller.MatchSession;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
@@ -27,7 +28,13 @@ import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.stage.Stage;
 import model.BSModel;
+import model.Cell;
+import model.CellSet;
 import model.Directions;
+import model.MoveBatch;
+import network.MappedTransport;
+import network.SocketTransport;
+import network.Transport;
 import objects.Ship;
 
 /**
@@ -41,6 +48,10 @@ import objects.Ship;
  * CLIENT COMMAND LINE ARGUMENTS:
  * client (port number)
  * 
+ * If both ends are on the same machine, add "shm" after the port number on both
+ * ends. The game will then talk through a memory-mapped file in the temp directory
+ * instead of a socket.
+ * 
  * 1. Make a run configuration with the arguments "server 4000" or whatever
  * port number you like. Do the same, but with "client 4000". Name them something
  * like "ServerBS" and "ClientBS" respectively.
@@ -52,8 +63,9 @@ import objects.Ship;
  * you are able to rotate the ship.
  * 5. Important: THE SERVER ALWAYS MAKES THE FIRST MOVE. So as the server, go ahead
  * and click your guess square, followed by the client. Repeat until one side wins.
- * 6. If you wish to play again, simply re-run this file in the same manner as 
- * described above.
+ * 6. If you wish to play again, press "n" once the game is over, on both ends.
+ * The same window is reused. Place your ships again, and the server and client
+ * will reconnect just like the first time.
  * 
  * As for implementation details, I use a VBox and an HBox in the scene in order to
  * center 2 gridPanes. To those grid panes I add Rectangle objects. Each Rectangle
@@ -90,6 +102,20 @@ public class BSView extends Application implements Observer {
 	 * The only acceptable string you can type, if you want to play as the client.
 	 */
 	private static final String CLIENT_STRING = "client";
+	/**
+	 * The optional third argument, for playing over shared memory on the same machine.
+	 */
+	private static final String SHARED_MEMORY_STRING = "shm";
+	/**
+	 * How long to wait for the other player's shot before they count as gone, in
+	 * milliseconds. The battleship.peerTimeout system property overrides it, and
+	 * 0 waits forever.
+	 */
+	private static final long PEER_TIMEOUT_MILLIS = Long.getLong("battleship.peerTimeout", 5 * 60 * 1000);
+	/**
+	 * Same as whichEndStore, but for whether to use shared memory.
+	 */
+	private static boolean sharedMemoryStore;
 	
 	/**
 	 * An array, tracking the state of the ships. Mostly used by the model
@@ -129,10 +155,6 @@ public class BSView extends Application implements Observer {
 	 * The port number that the server and client agree to connect to.
 	 */
 	private int port;
-	/**
-	 * Whether or not it is currently your turn.
-	 */
-	private boolean myTurn;
 	
 	/**
 	 * A map, that maps an outerArray, to an innerArray to a rectangle. Used for picking out
@@ -166,21 +188,40 @@ public class BSView extends Application implements Observer {
 	 */
 	private ServerSocket server;
 	/**
-	 * The associated Socket, if this instance is a client.
+	 * The connection to the other end, used to send and receive shots as Integer cells.
 	 */
-	private Socket socket;
+	private Transport transport;
 	/**
-	 * The output stream for this instance. Used to send Point objects.
+	 * The networked game, once connected. Tracks whose turn it is.
 	 */
-	private ObjectOutputStream output;
+	private volatile MatchSession session;
 	/**
-	 * The input stream for this instance. Used to receive Point objects.
+	 * Whether to talk over shared memory instead of a socket.
 	 */
-	private ObjectInputStream input;
+	private boolean sharedMemory;
 	/**
 	 * A boolean denoting whether or not you have won.
 	 */
 	private boolean iWin = true; 
+	/**
+	 * Scratch space for the enemy squares to show at the end of a game.
+	 */
+	private CellSet dirtyCells = new CellSet(BSModel.GRID_SIZE * BSModel.GRID_SIZE);
+	/**
+	 * Whether the last game has ended, meaning a rematch can be started.
+	 */
+	private volatile boolean gameOver = false;
+	/**
+	 * Where this game's moves run. Sending a shot can block on the network, so
+	 * clicks only hand the shot to this thread and return straight away.
+	 */
+	private final ExecutorService gameThread = MatchSession.newGameThread();
+	/**
+	 * Whether the JavaFX application is running. If it is, updates from other
+	 * threads are painted on the FX thread; if not, like in the tests, they're
+	 * painted right away.
+	 */
+	private static volatile boolean onScreen = false;
 	
 	/**
 	 * The constructor, that resets the shipStates, grid, and controller. Note that
@@ -204,6 +245,7 @@ public class BSView extends Application implements Observer {
 			throw new IllegalArgumentException(message);
 		}
 		portStore = port;
+		sharedMemoryStore = args.length > 2 && args[2].equals(SHARED_MEMORY_STRING);
 	    launch(args);
 	}
 
@@ -216,6 +258,7 @@ public class BSView extends Application implements Observer {
 	 */
 	@Override
 	public void start(Stage arg0) throws Exception {
+		onScreen = true;
 		BSView curGame = new BSView();
 		curGame.reset();
 		Stage main = new Stage();
@@ -302,24 +345,7 @@ public class BSView extends Application implements Observer {
 				myGrid.getChildren().add(rect);
 				
 				//Set events
-				rect.setOnMouseEntered((event) -> {
-					int outerArray = (int) rect.getX();
-					int innerArray = (int) rect.getY();
-					curRect = getRect(outerArray, innerArray, Turn.SERVER);
-					hoverShip(curRect);
-				});
-				rect.setOnMouseExited((event) -> {
-					int outerArray = (int) rect.getX();
-					int innerArray = (int) rect.getY();
-					curRect = getRect(outerArray, innerArray, Turn.SERVER);
-					unhoverShip(curRect);
-				});
-				rect.setOnMouseClicked((event) -> {
-					int outerArray = (int) rect.getX();
-					int innerArray = (int) rect.getY();
-					System.out.println("Clicked.");
-					permanentShip(curRect);
-				});
+				armForPlacement(rect);
 			}
 			
 		}
@@ -352,6 +378,8 @@ public class BSView extends Application implements Observer {
 				}
 			hoverShip(curRect);
 			
+			} else if (text.equals("n") && gameOver) {
+				rematch();
 			}
 			
 		});
@@ -361,6 +389,59 @@ public class BSView extends Application implements Observer {
 	}
 
 
+	/**
+	 * Sets up the ship-placing events on one of your Rectangles.
+	 * 
+	 * Hovering previews the current ship, leaving un-does the preview, and
+	 * clicking places it for good. Used when the scene is built, and again when
+	 * a rematch starts.
+	 * 
+	 * @param rect a Rectangle on your grid
+	 */
+	private void armForPlacement(Rectangle rect) {
+		rect.setOnMouseEntered((event) -> {
+			int outerArray = (int) rect.getX();
+			int innerArray = (int) rect.getY();
+			curRect = getRect(outerArray, innerArray, Turn.SERVER);
+			hoverShip(curRect);
+		});
+		rect.setOnMouseExited((event) -> {
+			int outerArray = (int) rect.getX();
+			int innerArray = (int) rect.getY();
+			curRect = getRect(outerArray, innerArray, Turn.SERVER);
+			unhoverShip(curRect);
+		});
+		rect.setOnMouseClicked((event) -> {
+			System.out.println("Clicked.");
+			permanentShip(curRect);
+		});
+	}
+	
+	/**
+	 * Starts a new game on the same scene, without rebuilding anything.
+	 * 
+	 * Once a game is over, pressing "n" calls this. Instead of making a new
+	 * BSModel, BSController and Scene like reset() and buildScene() do, it clears
+	 * the existing grids and ships in place, puts the same Rectangles back to blue
+	 * and re-arms them for placing ships. The server keeps its ServerSocket open
+	 * between games, so the next connection doesn't need to re-bind the port.
+	 */
+	public void rematch() {
+		gameOver = false;
+		iWin = true;
+		session = null;
+		curShipIndex = 0;
+		curDir = Directions.UP;
+		curRect = null;
+		controller.rematch();
+		for (Rectangle rect : allMyRects) {
+			armForPlacement(rect);
+		}
+		for (Rectangle rect : allOtherRects) {
+			rect.setOnMouseClicked((event) -> {});
+		}
+	}
+	
 	/**
 	 * Reset the instance variables for this game.
 	 * 
@@ -372,10 +453,14 @@ public class BSView extends Application implements Observer {
 		
 		whichEnd = whichEndStore;
 		port = portStore;
+		sharedMemory = sharedMemoryStore;
+		curShipIndex = 0;
+		myPointsToRects.clear();
+		otherPointsToRects.clear();
 		
 		BSModel model = new BSModel();
 		model.addAsObserver(this);
-		controller = new BSController(model);
+		controller = new BSController(model, gameThread);
 		
 		controller.initShipStates();
 		controller.initGrid(WhichGrid.THIS_GRID);
@@ -397,8 +482,6 @@ public class BSView extends Application implements Observer {
 	private void hoverShip(Rectangle rect) {
 		int outerArray = (int) rect.getX();
 		int innerArray = (int) rect.getY();
-		boolean overlapsOtherShip = false;
-		boolean notInRange = false;
 		Ship curShip = null;
 		/*
 		 * If we're done placing all the ships, we can go ahead and start
@@ -410,31 +493,8 @@ public class BSView extends Application implements Observer {
 			prepareForConnection();
 		} 
 		int shipLength = curShip.getLength();
-		switch (curDir) {
-			//Mathematically see in advance if it's in range, or collides. 
-			case UP:
-				if ((outerArray + 1) - shipLength < 0) {
-					notInRange = true; break;
-				}
-				for (int tempOuter = outerArray; tempOuter > (outerArray - shipLength); tempOuter--) {
-					if (controller.getMyGrid()[tempOuter][innerArray] == 's') {
-						overlapsOtherShip = true;
-						break;
-					}
-				}
-				break;
-			case LEFT:
-				if ((innerArray + 1) - shipLength < 0) {
-					notInRange = true; break;
-				}
-				for (int tempInner = innerArray; tempInner > (innerArray - shipLength); tempInner--) {
-					if (controller.getMyGrid()[outerArray][tempInner] == 's') {
-						overlapsOtherShip = true;
-						break;
-					}
-				}
-				break;
-		}
+		//Mathematically see in advance if it's in range, or collides.
+		boolean fits = controller.canPlaceShip(outerArray, innerArray, shipLength, curDir);
 		
 		
 		
@@ -442,7 +502,7 @@ public class BSView extends Application implements Observer {
 		 * It's in range, and it doesn't overlap another ship. Set those rectangles
 		 * to gray.
 		 */
-		if (notInRange == false && overlapsOtherShip == false) {
+		if (fits) {
 			switch (curDir) {
 			case UP:
 				for (int tempOuter = outerArray; tempOuter > (outerArray - shipLength); tempOuter--) {
@@ -477,8 +537,6 @@ public class BSView extends Application implements Observer {
 		//Mostly the same code as hoverShip so check that out.
 		int outerArray = (int) rect.getX();
 		int innerArray = (int) rect.getY();
-		boolean overlapsOtherShip = false;
-		boolean notInRange = false;
 		Ship curShip = null;
 		try {
 			curShip = shipStates[curShipIndex];
@@ -486,34 +544,11 @@ public class BSView extends Application implements Observer {
 			prepareForConnection();
 		} 
 		int shipLength = curShip.getLength();
-		switch (curDir) {
-			case UP:
-				if ((outerArray + 1) - shipLength < 0) {
-					notInRange = true; break;
-				}
-				for (int tempOuter = outerArray; tempOuter > (outerArray - shipLength); tempOuter--) {
-					if (controller.getMyGrid()[tempOuter][innerArray] == 's') {
-						overlapsOtherShip = true;
-						break;
-					}
-				}
-				break;
-			case LEFT:
-				if ((innerArray + 1) - shipLength < 0) {
-					notInRange = true; break;
-				}
-				for (int tempInner = innerArray; tempInner > (innerArray - shipLength); tempInner--) {
-					if (controller.getMyGrid()[outerArray][tempInner] == 's') {
-						overlapsOtherShip = true;
-						break;
-					}
-				}
-				break;
-		}
+		boolean fits = controller.canPlaceShip(outerArray, innerArray, shipLength, curDir);
 		
 		
 		
-		if (notInRange == false && overlapsOtherShip == false) {
+		if (fits) {
 			switch (curDir) {
 			case UP:
 				for (int tempOuter = outerArray; tempOuter > (outerArray - shipLength); tempOuter--) {
@@ -546,8 +581,6 @@ public class BSView extends Application implements Observer {
 	private void permanentShip(Rectangle rect) {
 		int outerArray = (int) rect.getX();
 		int innerArray = (int) rect.getY();
-		boolean overlapsOtherShip = false;
-		boolean notInRange = false;
 		Ship curShip = null;
 		try {
 			curShip = shipStates[curShipIndex];
@@ -555,41 +588,18 @@ public class BSView extends Application implements Observer {
 			prepareForConnection();
 		} 
 		int shipLength = curShip.getLength();
-		switch (curDir) {
-			case UP:
-				if ((outerArray + 1) - shipLength < 0) {
-					notInRange = true; break;
-				}
-				for (int tempOuter = outerArray; tempOuter > (outerArray - shipLength); tempOuter--) {
-					if (controller.getMyGrid()[tempOuter][innerArray] == 's') {
-						overlapsOtherShip = true;
-						break;
-					}
-				}
-				break;
-			case LEFT:
-				if ((innerArray + 1) - shipLength < 0) {
-					notInRange = true; break;
-				}
-				for (int tempInner = innerArray; tempInner > (innerArray - shipLength); tempInner--) {
-					if (controller.getMyGrid()[outerArray][tempInner] == 's') {
-						overlapsOtherShip = true;
-						break;
-					}
-				}
-				break;
-		}
+		boolean fits = controller.canPlaceShip(outerArray, innerArray, shipLength, curDir);
 		
 		
 		
-		if (notInRange == false && overlapsOtherShip == false) {
+		if (fits) {
 			System.out.println("Pass if");
 			switch (curDir) {
 			case UP:
 				for (int tempOuter = outerArray; tempOuter > (outerArray - shipLength); tempOuter--) {
 					Rectangle otherRect = getRect(tempOuter, innerArray, Turn.SERVER);
 					otherRect.setFill(Color.GRAY);
-					controller.placeShip(new Point(tempOuter, innerArray), curShip, curDir);
+					controller.placeShip(Cell.of(tempOuter, innerArray), curShip, curDir);
 					otherRect.setOnMouseClicked((event) -> {});
 					otherRect.setOnMouseEntered((event) -> {});
 					otherRect.setOnMouseExited((event) -> {});
@@ -603,7 +613,7 @@ public class BSView extends Application implements Observer {
 					Rectangle otherRect = getRect(outerArray, tempInner, Turn.SERVER);
 
 					otherRect.setFill(Color.GRAY);
-					controller.placeShip(new Point(outerArray, tempInner), curShip, curDir);
+					controller.placeShip(Cell.of(outerArray, tempInner), curShip, curDir);
 					otherRect.setOnMouseClicked((event) -> {});
 					otherRect.setOnMouseEntered((event) -> {});
 					otherRect.setOnMouseExited((event) -> {});
@@ -709,59 +719,132 @@ public class BSView extends Application implements Observer {
 		if (arg instanceof Ship[]) { //give me the newly formed shipStates
 			shipStates = (Ship[]) arg;
 		} else if (arg instanceof Object[]) {
-			arg = (Object[]) arg;
-			int length = ((Object[]) arg).length;
-			if (length == 2) { //Grid was initialized
-				WhichGrid whichGrid = (WhichGrid) ((Object[]) arg)[1];
-				char[][] updatedGrid = (char[][]) ((Object[]) arg)[0];
-				
-				switch(whichGrid) {
-					case THIS_GRID:
-						grid = updatedGrid; 
-						break;
-					case OTHER_GRID:
-						otherGrid = updatedGrid; 
-						break;
-				} 
-			} else if (length == 4) {
-				/*
-				 * We must have made a move. Color the appropriate square
-				 * white if it was a miss, red if a hit.
-				 */
-				System.out.println("Now we're in View.update method");
-				WhichGrid whichGrid = (WhichGrid) ((Object[]) arg)[1];
-				char[][] updatedGrid = (char[][]) ((Object[]) arg)[0];
-				Point point = (Point) ((Object[]) arg)[2];
-				Move move = (Move) ((Object[]) arg)[3];
-				System.out.println("Point received from model: " + point);
-				System.out.println("MOVE:" + move);
-				int outerArray = (int) point.getX();
-				int innerArray = (int) point.getY();
-				
-				Rectangle rect = null;
-				switch(whichGrid) {
+			/*
+			 * Either the grid was initialized (2 things), or we made a move (4 things)
+			 * and the squares that changed need to go white for a miss or red for a hit.
+			 * Either way, the changed squares are picked up here, on whatever thread
+			 * changed them, and painted on the FX thread.
+			 */
+			Object[] event = (Object[]) arg;
+			WhichGrid whichGrid = (WhichGrid) event[1];
+			char[][] updatedGrid = (char[][]) event[0];
+			if (event.length == 4) {
+				System.out.println("MOVE:" + (Move) event[3]);
+			}
+			switch(whichGrid) {
 				case THIS_GRID:
 					grid = updatedGrid; 
-					rect = getRect(outerArray, innerArray, Turn.SERVER);
 					break;
 				case OTHER_GRID:
 					otherGrid = updatedGrid; 
-					rect = getRect(outerArray, innerArray, Turn.CLIENT);
 					break;
 			}
+			int[] changes = takeDirty(whichGrid);
+			show(() -> paint(whichGrid, changes));
+		} else if (arg instanceof MoveBatch) { //A run of moves was applied at once
+			int[] mine = takeDirty(WhichGrid.THIS_GRID);
+			int[] theirs = takeDirty(WhichGrid.OTHER_GRID);
+			show(() -> {
+				paint(WhichGrid.THIS_GRID, mine);
+				paint(WhichGrid.OTHER_GRID, theirs);
+			});
+		} else if (arg instanceof Alert) {
+			Alert alert = (Alert) arg;
+			show(alert::showAndWait);
+		}
+	}
 	
-				System.out.println("\n");
-				if (move == Move.HIT) {
+	/**
+	 * Called by the MatchSession when the game ends.
+	 * 
+	 * @param won true if this side won, false if it lost
+	 */
+	private void gameOver(boolean won) {
+		iWin = won;
+		show(() -> {
+			try {
+				endGame();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+	}
+	
+	/**
+	 * Runs something that touches the scene on the FX thread.
+	 * 
+	 * Moves are made on the game thread and shots from the other side come in on
+	 * the connection thread, and neither can touch the scene. If the application
+	 * isn't running, there's no FX thread to wait for, so it runs right away.
+	 * 
+	 * @param work what to do to the scene
+	 */
+	private void show(Runnable work) {
+		if (onScreen && !Platform.isFxApplicationThread()) {
+			Platform.runLater(work);
+		} else {
+			work.run();
+		}
+	}
+	
+	/**
+	 * Asks the controller which squares of the grid changed, and what's in them now.
+	 * 
+	 * This runs on the thread that changed them, so painting can happen later on the
+	 * FX thread without reading the grid while the next move is being made.
+	 * 
+	 * @param whichGrid which grid changed
+	 * @return each changed Cell, shifted up 16 bits, with what's in the square
+	 * in the low 16 bits
+	 */
+	private int[] takeDirty(WhichGrid whichGrid) {
+		CellSet dirty = new CellSet(BSModel.GRID_SIZE * BSModel.GRID_SIZE);
+		controller.drainDirty(whichGrid, dirty);
+		char[][] source = (whichGrid == WhichGrid.THIS_GRID) ? grid : otherGrid;
+		int[] changes = new int[dirty.size()];
+		int i = 0;
+		for (int cell = dirty.nextCell(0); cell >= 0; cell = dirty.nextCell(cell + 1)) {
+			changes[i++] = (cell << 16) | source[Cell.row(cell)][Cell.col(cell)];
+		}
+		return changes;
+	}
+	
+	/**
+	 * Recolors the Rectangles of the squares that changed.
+	 * 
+	 * Gray for your ships, red for hits, white for misses and blue for everything
+	 * else. The other grid's ships stay hidden. Squares whose Rectangles haven't
+	 * been made yet are skipped, since they start out blue.
+	 * 
+	 * @param whichGrid which grid to repaint
+	 * @param changes the changed squares, as takeDirty() gives them
+	 */
+	private void paint(WhichGrid whichGrid, int[] changes) {
+		Map<Integer, Map<Integer, Rectangle>> pointsToRects = 
+				(whichGrid == WhichGrid.THIS_GRID) ? myPointsToRects : otherPointsToRects;
+		for (int change : changes) {
+			int cell = change >>> 16;
+			int outerArray = Cell.row(cell);
+			int innerArray = Cell.col(cell);
+			Map<Integer, Rectangle> row = pointsToRects.get(outerArray);
+			if (row == null || row.get(innerArray) == null) {
+				continue;
+			}
+			Rectangle rect = row.get(innerArray);
+			switch ((char) change) {
+				case 'h':
 					rect.setFill(Color.RED);
-				} else {
+					break;
+				case 'm':
 					rect.setFill(Color.WHITE);
-				}
+					break;
+				case 's':
+					rect.setFill(whichGrid == WhichGrid.THIS_GRID ? Color.GRAY : Color.BLUE);
+					break;
+				default:
+					rect.setFill(Color.BLUE);
+					break;
 			}
-			
-		} else if (arg instanceof Alert) {
-			Alert alert = (Alert) arg;
-			alert.showAndWait();
-
 		}
 	}
 	
@@ -771,7 +854,7 @@ public class BSView extends Application implements Observer {
 	 * This method is called when the ships are done being placed. It does all
 	 * the pre-work before the socket connection, including making your grid
 	 * totally non-interactive, and prepping the event handlers for the other 
-	 * grid to start sending Point objects. Based on the command line arguments,
+	 * grid to start sending shots. Based on the command line arguments,
 	 * the appropriate socket function is called.
 	 */
 	private void prepareForConnection() {
@@ -783,25 +866,16 @@ public class BSView extends Application implements Observer {
 		for (Rectangle rect : allOtherRects) {
 			rect.setOnMouseClicked((event) -> {
 				//Only send if it's my turn
-				if (myTurn) {
+				MatchSession curSession = session;
+				if (curSession != null && curSession.isMyTurn()) {
 					System.out.println("I made a move.");
 					int outerArray = (int) rect.getX();
 					int innerArray = (int) rect.getY();
-					Point point = new Point(innerArray, outerArray);
-					try {
-						//Should update THEIR grid.
-						System.out.println("My move: " + point);
-						boolean success = controller.makeMove(point, myTurn);
-						System.out.println("Move was valid: " + success);
-						if (success) {
-							myTurn = false;
-							output.writeObject(point);
-							System.out.println("Move was valid: " + success);
-						}
-					} catch (IOException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
+					int cell = Cell.of(outerArray, innerArray);
+					//Should update THEIR grid. The session checks the turn again
+					//when the move actually runs, so a double click can't shoot twice.
+					System.out.println("My move: " + Cell.toString(cell));
+					curSession.submitMove(cell);
 				}
 			});
 		}
@@ -810,7 +884,6 @@ public class BSView extends Application implements Observer {
 		if (whichEnd.equals("server")) {
 			Thread connectionThread = new Thread(() -> {
 				try {
-					myTurn = true;
 					makeServerSocket(port);
 				} catch (IOException e) {
 					// TODO Auto-generated catch block
@@ -821,7 +894,6 @@ public class BSView extends Application implements Observer {
 		} else {
 			Thread connectionThread = new Thread(() -> {
 				try {
-					myTurn = false;
 					makeClientSocket(port);
 				} catch (IOException e) {
 					// TODO Auto-generated catch block
@@ -836,74 +908,28 @@ public class BSView extends Application implements Observer {
 	/**
 	 * The reader for the server side socket.
 	 * 
-	 * Makes the server socket and accepts a connection. It first trades
-	 * grids with the client so it has a copy. The socket closing, and the
-	 * game being over are two conditions that trigger the endGame() method.
-	 * This also makes it clear who won or who lost.
+	 * Makes the server socket and accepts a connection, then plays the game
+	 * over it with play(). That trades grids with the client so it has a copy.
+	 * The socket closing, and the game being over are two conditions that
+	 * trigger the endGame() method. This also makes it clear who won or who lost.
 	 * 
 	 * @param port the port number specified in the program arguments.
 	 * @throws IOException
 	 */
 	private void makeServerSocket(int port) throws IOException {
-		server = new ServerSocket(port);
-		socket = server.accept();
-		System.out.println("Accepted");
-		output = new
-		ObjectOutputStream(socket.getOutputStream());
-		input = new
-		ObjectInputStream(socket.getInputStream());
-		
-		//TRADE GRIDS
-		output.writeObject(grid);
-		try {
-			char[][] theirGrid = (char[][]) input.readObject();
-			otherGrid = theirGrid;
-			controller.updateTheirGrid(theirGrid);
-			System.out.println("Grid received.");
-			printGrid();
-		} catch (ClassNotFoundException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
-		} catch (IOException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
-		}
-		
-		
-		//END TRADE GRIDS
-		
-		
-		
-		Object inputObject = null;
-		while (!socket.isClosed()) {
-
-			
-			//get hit
-			try {
-				inputObject = (Point) input.readObject();
-				if (!myTurn) {
-					System.out.println("I have received a message.");
-					controller.makeMove((Point) inputObject, myTurn);
-					System.out.println("That message is : " + inputObject);
-					//Will update Model
-	
-					myTurn = true;
-					if (controller.isGameOver()) {
-						System.out.println("Game is over so I closed the socket.");
-						iWin = false;
-						socket.close();
-						endGame();
-					}
-				}
-				
-			} catch (ClassNotFoundException|IOException e) {
-				socket.close();
-				endGame();
+		if (sharedMemory) {
+			transport = MappedTransport.create(ringFile(port));
+		} else {
+			//Keep the same ServerSocket between rematches.
+			if (server == null || server.isClosed()) {
+				server = new ServerSocket(port);
 			}
+			transport = SocketTransport.accept(server);
 		}
+		System.out.println("Accepted");
 		
-		
-		server.close();
+		//The server always goes first.
+		play(true);
 	}
 	
 	/**
@@ -917,59 +943,53 @@ public class BSView extends Application implements Observer {
 	 * @throws IOException
 	 */
 	private void makeClientSocket(int port) throws UnknownHostException, IOException {
-		socket = new Socket("localhost", port);
-		output = new
-		ObjectOutputStream(socket.getOutputStream());
-		input = new
-		ObjectInputStream(socket.getInputStream());
-		
-		
-		//TRADE GRIDS
-				output.writeObject(grid);
-				try {
-					char[][] theirGrid = (char[][]) input.readObject();
-					otherGrid = theirGrid;
-					controller.updateTheirGrid(theirGrid);
-					System.out.println("Grid received.");
-					printGrid();
-				} catch (ClassNotFoundException e1) {
-					// TODO Auto-generated catch block
-					e1.printStackTrace();
-				} catch (IOException e1) {
-					endGame();
-				} 
-
-				//TRADE GRIDS
-		
-		
-		
-		Object inputObject = null;
-		while (!socket.isClosed()) {
-
-			
-			//get hit
-			try {
-				inputObject = (Point) input.readObject();
-				if (!myTurn) {
-					controller.makeMove((Point) inputObject, myTurn);
-					myTurn = true;
-					if (controller.isGameOver()) {
-						System.out.println("Game is over so I closed the socket.");
-						iWin = false;
-						socket.close();
-						endGame();
-					}
-				}
-				
-			} catch (ClassNotFoundException|IOException e) {
-				socket.close();
-				endGame();
-			}
+		if (sharedMemory) {
+			transport = MappedTransport.open(ringFile(port));
+		} else {
+			transport = SocketTransport.connect("localhost", port);
 		}
 		
-		socket.close();
+		play(false);
+	}
+	
+	/**
+	 * Plays the game over the connected transport.
+	 * 
+	 * Hands the transport to a MatchSession, which trades grids and then runs
+	 * the read loop until someone wins. The session tells update() when the
+	 * game is over.
+	 * 
+	 * @param goFirst true if this end makes the first shot
+	 */
+	private void play(boolean goFirst) {
+		MatchSession newSession = new MatchSession(controller, transport, goFirst);
+		newSession.setPeerTimeout(PEER_TIMEOUT_MILLIS);
+		newSession.setGameOverListener(this::gameOver);
+		try {
+			newSession.tradeGrids(grid);
+			otherGrid = controller.getOtherGrid();
+			printGrid();
+		} catch (ClassNotFoundException|IOException e) {
+			// The read loop will notice the broken transport and end the game.
+			e.printStackTrace();
+		}
+		session = newSession;
+		newSession.run();
 	}
 	
+	/**
+	 * Where the shared memory file goes for a given port.
+	 * 
+	 * Both ends work this out from the port number, the same way they agree on
+	 * a port for a socket. The name is only used to meet: the server makes a new
+	 * file there every game, and the client removes the name once it's joined.
+	 * 
+	 * @param port the port number specified in the program arguments
+	 * @return the path of the memory-mapped file
+	 */
+	private static Path ringFile(int port) {
+		return Paths.get(System.getProperty("java.io.tmpdir"), "battleship-" + port + ".ring");
+	}
 	
 	/**
 	 * Ends the game, disabling interaction and displaying the enemy ships to the
@@ -981,13 +1001,10 @@ public class BSView extends Application implements Observer {
 	 * @throws IOException
 	 */
 	private void endGame() throws IOException {
-		
+		gameOver = true;
 		for (Rectangle rect : allOtherRects) {
 			rect.setOnMouseClicked((event) -> {});
 		}
-		input.close();
-		output.close();
-		
 		for (Ship ship : shipStates) {
 			System.out.println(ship);
 		}
@@ -997,15 +1014,14 @@ public class BSView extends Application implements Observer {
 			//controller.endGame(iWin);
 		} else {
 			/*
-			 * Change all the un-hit squares to gray to show.
+			 * Change all the un-hit squares to gray to show. The model already
+			 * knows which ones are left, so there's no need to scan the grid.
 			 */
-			for (int outerArray = 0; outerArray < BSModel.GRID_SIZE; outerArray++) {
-				for (int innerArray = 0; innerArray < BSModel.GRID_SIZE; innerArray++) {
-					if (otherGrid[outerArray][innerArray] == 's') {
-						Rectangle rect = getRect(outerArray, innerArray, Turn.CLIENT);	
-						rect.setFill(Color.GRAY);
-					}
-				}
+			dirtyCells.clear();
+			controller.getOtherShipsLeft(dirtyCells);
+			for (int cell = dirtyCells.nextCell(0); cell >= 0; cell = dirtyCells.nextCell(cell + 1)) {
+				Rectangle rect = getRect(cell / BSModel.GRID_SIZE, cell % BSModel.GRID_SIZE, Turn.CLIENT);	
+				rect.setFill(Color.GRAY);
 			}
 			System.out.println("You lose! :(");
 			//controller.endGame(iWin);
@@ -1032,7 +1048,7 @@ public class BSView extends Application implements Observer {
 	
 
 //
-	public void quickPlaceShips(Map<Point, Directions> points) {
+	public void quickPlaceShips(Map<Integer, Directions> cells) {
 		
 	}
 	